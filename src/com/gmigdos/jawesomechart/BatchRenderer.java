@@ -0,0 +1,356 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart;
+
+import com.gmigdos.jawesomechart.io.ImageFormat;
+import com.gmigdos.jawesomechart.io.PngEncoder;
+import com.gmigdos.jawesomechart.io.RenderOptions;
+import com.gmigdos.jawesomechart.util.ScratchImages;
+import com.gmigdos.jawesomechart.util.ThreadPools;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Renders many charts concurrently, overlapping drawing with encoding and
+ * writing.
+ *
+ * Jobs go through a two-stage pipeline:
+ *
+ * <ol>
+ * <li>render threads draw each PNG chart into a frame, a TYPE_INT_ARGB image
+ * taken from a pool of frames that are reused by the following jobs of the
+ * same size, and each SVG chart into an in-memory document;</li>
+ * <li>write threads encode the frames, from their pixels in place, straight
+ * to the destinations of the jobs, and hand them back to the pool, or copy
+ * the SVG documents to their destinations.</li>
+ * </ol>
+ *
+ * At most {@link #getMaxFramesInFlight()} frames and documents exist at a
+ * time: render threads wait for one to be written when the writers fall
+ * behind, which bounds memory usage. All the drawing thus happens on the
+ * render threads, however many writers there are. Render threads also
+ * reuse their shadow buffers from one chart to the next (see
+ * {@link ScratchImages}). Writes, which are mostly I/O when the
+ * destinations are remote, can run on virtual threads on runtimes that have
+ * them.
+ *
+ * A chart may appear in several jobs: jobs lock their chart while drawing
+ * it. Jobs without options are encoded on a single thread each, since the
+ * batch already keeps the processors busy.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class BatchRenderer {
+
+    private int renderThreadCount;
+    private int writeThreadCount;
+    private int maxFramesInFlight;
+    private boolean virtualThreads;
+
+    public BatchRenderer() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param renderThreadCount the number of threads drawing charts
+     * @param writeThreadCount the number of threads encoding and writing
+     * images, when they do not run on virtual threads
+     */
+    public BatchRenderer(int renderThreadCount, int writeThreadCount) {
+        if (renderThreadCount < 1 || writeThreadCount < 1) {
+            throw new IllegalArgumentException("Thread counts must be positive");
+        }
+        this.renderThreadCount = renderThreadCount;
+        this.writeThreadCount = writeThreadCount;
+        this.maxFramesInFlight = 2 * renderThreadCount;
+        this.virtualThreads = false;
+    }
+
+    public int getRenderThreadCount() {
+        return renderThreadCount;
+    }
+
+    public int getWriteThreadCount() {
+        return writeThreadCount;
+    }
+
+    /**
+     * Returns the maximum number of rendered frames and SVG documents
+     * waiting to be, or being, written, which is twice the number of render
+     * threads by default.
+     */
+    public int getMaxFramesInFlight() {
+        return maxFramesInFlight;
+    }
+
+    public void setMaxFramesInFlight(int maxFramesInFlight) {
+        if (maxFramesInFlight < 1) {
+            throw new IllegalArgumentException("At least one frame must be in flight");
+        }
+        this.maxFramesInFlight = maxFramesInFlight;
+    }
+
+    public boolean isVirtualThreadsOn() {
+        return virtualThreads;
+    }
+
+    /**
+     * Sets whether images are encoded and written on virtual threads, one
+     * per job, instead of {@link #getWriteThreadCount()} threads. Ignored on
+     * runtimes without virtual threads.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Renders <code>jobs</code> and waits until all their images are written.
+     * Failed jobs do not stop the others; they are listed by the report.
+     *
+     * @param jobs the jobs to render
+     * @return the outcome and throughput of the run
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting, in which case the remaining jobs are abandoned
+     */
+    public BatchReport render(Collection<RenderJob> jobs) throws InterruptedException {
+        final BatchReport report = new BatchReport(jobs.size());
+        long start = System.nanoTime();
+        ExecutorService renderers = Executors.newFixedThreadPool(renderThreadCount,
+                ThreadPools.newDaemonThreadFactory("BatchRenderer-render", new Runnable() {
+                    @Override
+                    public void run() {
+                        ScratchImages.install();
+                    }
+                }));
+        ExecutorService writers = virtualThreads ? ThreadPools.newVirtualThreadPerTaskExecutor() : null;
+        if (writers == null) {
+            writers = Executors.newFixedThreadPool(writeThreadCount,
+                    ThreadPools.newDaemonThreadFactory("BatchRenderer-write", null));
+        }
+        Pipeline pipeline = new Pipeline(report, writers, maxFramesInFlight, jobs.size());
+        try {
+            for (RenderJob job : jobs) {
+                renderers.execute(pipeline.new RenderTask(job));
+            }
+            pipeline.done.await();
+        } finally {
+            renderers.shutdownNow();
+            writers.shutdownNow();
+            report.setElapsedTime(System.nanoTime() - start);
+        }
+        return report;
+    }
+
+    /**
+     * The state shared by the tasks of a run.
+     */
+    private static final class Pipeline {
+
+        private final BatchReport report;
+        private final ExecutorService writers;
+        private final Semaphore frames;
+        private final ConcurrentLinkedQueue<BufferedImage> freeFrames;
+        private final CountDownLatch done;
+
+        Pipeline(BatchReport report, ExecutorService writers, int maxFramesInFlight, int jobCount) {
+            this.report = report;
+            this.writers = writers;
+            this.frames = new Semaphore(maxFramesInFlight);
+            this.freeFrames = new ConcurrentLinkedQueue<BufferedImage>();
+            this.done = new CountDownLatch(jobCount);
+        }
+
+        /**
+         * Returns a free frame of the given size, reused if possible. Frames
+         * of other sizes are dropped, so that at most as many frames as
+         * permits exist.
+         */
+        private BufferedImage takeFrame(int width, int height) {
+            BufferedImage frame = freeFrames.poll();
+            if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+                frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            }
+            return frame;
+        }
+
+        private void releaseFrame(BufferedImage frame) {
+            freeFrames.add(frame);
+            frames.release();
+        }
+
+        private void fail(RenderJob job, Throwable error) {
+            report.addFailure(job, error);
+            done.countDown();
+        }
+
+        private static RenderOptions getOptions(RenderJob job) {
+            if (job.getOptions() != null) {
+                return job.getOptions();
+            }
+            RenderOptions options = new RenderOptions();
+            options.setThreadCount(1);
+            return options;
+        }
+
+        private final class RenderTask implements Runnable {
+
+            private final RenderJob job;
+
+            RenderTask(RenderJob job) {
+                this.job = job;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    frames.acquire();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    fail(job, ex);
+                    return;
+                }
+                BufferedImage frame = null;
+                try {
+                    JAwesomeChart chart = job.getChart();
+                    long start = System.nanoTime();
+                    if (job.getFormat() == ImageFormat.SVG) {
+                        ByteArrayOutputStream document = new ByteArrayOutputStream();
+                        synchronized (chart) {
+                            chart.writeSvg(new BufferedWriter(new OutputStreamWriter(document, "UTF-8")));
+                        }
+                        report.addRendering(0, System.nanoTime() - start);
+                        writers.execute(new WriteTask(job, null, document));
+                        return;
+                    }
+                    synchronized (chart) {
+                        frame = takeFrame(chart.getWidth(), chart.getHeight());
+                        // Drawing replaces all the pixels of the previous job:
+                        chart.draw(frame);
+                    }
+                    report.addRendering((long) frame.getWidth() * frame.getHeight(), System.nanoTime() - start);
+                    writers.execute(new WriteTask(job, frame, null));
+                } catch (IOException ex) {
+                    abandon(frame, ex);
+                } catch (RuntimeException ex) {
+                    abandon(frame, ex);
+                } catch (Error error) {
+                    abandon(frame, error);
+                    throw error;
+                }
+            }
+
+            private void abandon(BufferedImage frame, Throwable error) {
+                if (frame != null) {
+                    releaseFrame(frame);
+                } else {
+                    frames.release();
+                }
+                fail(job, error);
+            }
+        }
+
+        private final class WriteTask implements Runnable {
+
+            private final RenderJob job;
+            private final BufferedImage frame;
+            private final ByteArrayOutputStream document;
+
+            /**
+             * Creates the task writing either a PNG frame or an SVG document.
+             */
+            WriteTask(RenderJob job, BufferedImage frame, ByteArrayOutputStream document) {
+                this.job = job;
+                this.frame = frame;
+                this.document = document;
+            }
+
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    CountingOutputStream out = new CountingOutputStream(job.getDestination().open());
+                    try {
+                        if (frame != null) {
+                            PngEncoder.encode(frame, out, getOptions(job));
+                        } else {
+                            document.writeTo(out);
+                        }
+                    } finally {
+                        out.close();
+                    }
+                    report.addEncoding(out.count, System.nanoTime() - start);
+                    report.addCompleted();
+                    done.countDown();
+                } catch (Exception ex) {
+                    fail(job, ex);
+                } catch (Error error) {
+                    fail(job, error);
+                    throw error;
+                } finally {
+                    if (frame != null) {
+                        releaseFrame(frame);
+                    } else {
+                        frames.release();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes written to a stream.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+            this.count = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
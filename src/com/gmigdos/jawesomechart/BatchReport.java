@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The outcome and throughput of a run of a {@link BatchRenderer}.
+ *
+ * Rendering and encoding times are summed over all the threads, so they
+ * show where the time goes rather than how long the run took; with
+ * rendering and encoding overlapped, their sum exceeds the elapsed time.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class BatchReport {
+
+    private final int jobCount;
+    private final AtomicInteger completedCount;
+    private final AtomicLong pixelCount;
+    private final AtomicLong byteCount;
+    private final AtomicLong renderingTime;
+    private final AtomicLong encodingTime;
+    private final Map<RenderJob, Throwable> failures;
+    private volatile long elapsedTime;
+
+    BatchReport(int jobCount) {
+        this.jobCount = jobCount;
+        this.completedCount = new AtomicInteger();
+        this.pixelCount = new AtomicLong();
+        this.byteCount = new AtomicLong();
+        this.renderingTime = new AtomicLong();
+        this.encodingTime = new AtomicLong();
+        this.failures = Collections.synchronizedMap(new IdentityHashMap<RenderJob, Throwable>());
+        this.elapsedTime = 0;
+    }
+
+    void addRendering(long pixels, long nanos) {
+        pixelCount.addAndGet(pixels);
+        renderingTime.addAndGet(nanos);
+    }
+
+    void addEncoding(long bytes, long nanos) {
+        byteCount.addAndGet(bytes);
+        encodingTime.addAndGet(nanos);
+    }
+
+    void addCompleted() {
+        completedCount.incrementAndGet();
+    }
+
+    void addFailure(RenderJob job, Throwable error) {
+        failures.put(job, error);
+    }
+
+    void setElapsedTime(long nanos) {
+        this.elapsedTime = nanos;
+    }
+
+    public int getJobCount() {
+        return jobCount;
+    }
+
+    /**
+     * Returns the number of images written successfully.
+     */
+    public int getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public int getFailedCount() {
+        return failures.size();
+    }
+
+    /**
+     * Returns the jobs that failed, with the error that made them fail.
+     */
+    public Map<RenderJob, Throwable> getFailures() {
+        synchronized (failures) {
+            return new IdentityHashMap<RenderJob, Throwable>(failures);
+        }
+    }
+
+    /**
+     * Returns the number of pixels of the PNG images rendered.
+     */
+    public long getPixelCount() {
+        return pixelCount.get();
+    }
+
+    /**
+     * Returns the number of bytes written.
+     */
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    /**
+     * Returns the time the run took, in nanoseconds.
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Returns the time spent drawing charts, summed over all threads, in
+     * nanoseconds.
+     */
+    public long getRenderingTime() {
+        return renderingTime.get();
+    }
+
+    /**
+     * Returns the time spent encoding and writing images, summed over all
+     * threads, in nanoseconds.
+     */
+    public long getEncodingTime() {
+        return encodingTime.get();
+    }
+
+    public double getChartsPerSecond() {
+        return perSecond(getCompletedCount());
+    }
+
+    public double getMegapixelsPerSecond() {
+        return perSecond(getPixelCount() / 1e6);
+    }
+
+    public double getMegabytesPerSecond() {
+        return perSecond(getByteCount() / 1e6);
+    }
+
+    private double perSecond(double amount) {
+        return elapsedTime > 0 ? amount * 1e9 / elapsedTime : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d charts in %.2f s (%.1f charts/s, %.1f Mpx/s, %.2f MB/s), %d failed;"
+                + " rendering %.2f s, encoding %.2f s",
+                getCompletedCount(), jobCount, elapsedTime / 1e9, getChartsPerSecond(), getMegapixelsPerSecond(),
+                getMegabytesPerSecond(), getFailedCount(), getRenderingTime() / 1e9, getEncodingTime() / 1e9);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart;
+
+import com.gmigdos.jawesomechart.core.DataSeries;
+import com.gmigdos.jawesomechart.core.DataSeriesDataProvider;
+import com.gmigdos.jawesomechart.core.DataSeriesList;
+import com.gmigdos.jawesomechart.core.dataproviders.SimpleDataProvider;
+import com.gmigdos.jawesomechart.io.ImageFormat;
+import com.gmigdos.jawesomechart.io.PngEncoder;
+import com.gmigdos.jawesomechart.io.RenderOptions;
+import com.gmigdos.jawesomechart.renderers.BaseChartRenderer;
+import com.gmigdos.jawesomechart.util.Fingerprint;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders many charts that only differ in their values, e.g. the charts of a
+ * report, from a chart set up once with the size, titles, legend, renderer,
+ * labels and series (names and colors) they share.
+ *
+ * The background, titles, legend and axes (the static layers of the chart)
+ * are drawn once and kept as an image; each chart then only draws its data
+ * and value labels over a copy of it. This requires the renderer to draw the
+ * static layers regardless of the values, see
+ * {@link BaseChartRenderer#areStaticLayersDataIndependent()}: for column and
+ * line charts the value range has to be fixed with
+ * {@link com.gmigdos.jawesomechart.renderers.twodimensional.Basic2DChartRenderer#setValueRange(double, double)}.
+ * Otherwise every chart is drawn in full.
+ *
+ * <pre>
+ * ColumnChartRenderer renderer = new ColumnChartRenderer();
+ * renderer.setValueRange(0, 100);
+ * chart.setRenderer(renderer);
+ * ChartTemplate template = new ChartTemplate(chart);
+ * for (double[][] values : report) {
+ *     template.render(out, ImageFormat.PNG, null, values);
+ * }
+ * </pre>
+ *
+ * The template sets the values on the chart it was created with, which must
+ * not be drawn or changed by other threads while the template is in use. Its
+ * settings may be changed between renders: the static layers are drawn again
+ * when anything but the values differs from the previous render.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class ChartTemplate {
+
+    private final JAwesomeChart chart;
+    private BufferedImage staticLayersImage;
+    private Fingerprint staticLayersFingerprint;
+    private BufferedImage renderBuffer;
+
+    /**
+     * Creates a template drawing <code>chart</code> with the values of each
+     * render.
+     * 
+     * @param chart the chart to draw, with the series (their values are
+     * replaced) and every setting shared by the charts
+     */
+    public ChartTemplate(JAwesomeChart chart) {
+        this.chart = chart;
+    }
+
+    public JAwesomeChart getChart() {
+        return chart;
+    }
+
+    /**
+     * Sets the values of the series of the chart: <code>values[i]</code>
+     * become the values of the i-th series. Series whose length does not
+     * change keep their data providers, which are only updated.
+     * 
+     * @param values the values of each series
+     * @throws IllegalArgumentException if the number of arrays is not the
+     * number of series of the chart
+     */
+    public synchronized void setValues(double[]... values) {
+        DataSeriesList dataseries = chart.getDataseries();
+        if (values.length != dataseries.size()) {
+            throw new IllegalArgumentException("Expected values for " + dataseries.size()
+                    + " series, got " + values.length + ".");
+        }
+        for (int i = 0; i < values.length; i++) {
+            setValues(dataseries.get(i), values[i]);
+        }
+    }
+
+    private static void setValues(DataSeries series, double[] values) {
+        if (series.size() == values.length) {
+            for (int i = 0; i < values.length; i++) {
+                DataSeriesDataProvider provider = series.get(i);
+                if (provider instanceof SimpleDataProvider) {
+                    ((SimpleDataProvider) provider).setValue(values[i]);
+                } else {
+                    series.set(i, new SimpleDataProvider(values[i]));
+                }
+            }
+        } else {
+            series.clear();
+            for (double value : values) {
+                series.add(new SimpleDataProvider(value));
+            }
+        }
+    }
+
+    /**
+     * Draws the chart with <code>values</code> on <code>image</code>, which
+     * must be at least as large as the chart.
+     * 
+     * @param image the image to draw on
+     * @param values the values of each series, see
+     * {@link #setValues(double[][])}
+     */
+    public synchronized void draw(BufferedImage image, double[]... values) {
+        setValues(values);
+        draw(image);
+    }
+
+    /**
+     * Renders the chart with <code>values</code> and encodes it straight to
+     * <code>out</code>, as
+     * {@link JAwesomeChart#render(java.io.OutputStream, ImageFormat, RenderOptions)}
+     * does. SVG documents are always drawn in full. The stream is flushed but
+     * not closed.
+     * 
+     * @param out the stream to write to
+     * @param format the format of the output
+     * @param options the settings of the encoding, or null for the defaults
+     * @param values the values of each series, see
+     * {@link #setValues(double[][])}
+     * @throws IOException if writing to the stream fails
+     */
+    public synchronized void render(OutputStream out, ImageFormat format, RenderOptions options,
+            double[]... values) throws IOException {
+        setValues(values);
+        if (format == ImageFormat.SVG) {
+            chart.render(out, format, options);
+            return;
+        }
+        if (options == null) {
+            options = new RenderOptions();
+        }
+        int width = chart.getWidth();
+        int height = chart.getHeight();
+        if (renderBuffer == null || renderBuffer.getWidth() != width || renderBuffer.getHeight() != height) {
+            renderBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        draw(renderBuffer);
+        PngEncoder.encode(renderBuffer, out, options);
+    }
+
+    /**
+     * Forgets the image of the static layers, e.g. to free its memory between
+     * reports.
+     */
+    public synchronized void reset() {
+        staticLayersImage = null;
+        staticLayersFingerprint = null;
+        renderBuffer = null;
+    }
+
+    private void draw(BufferedImage image) {
+        Fingerprint fingerprint = null;
+        if (chart.getRenderer() instanceof BaseChartRenderer
+                && ((BaseChartRenderer) chart.getRenderer()).areStaticLayersDataIndependent()) {
+            fingerprint = chart.getLayoutFingerprint();
+        }
+        if (fingerprint == null) {
+            // The static layers cannot be reused:
+            chart.draw(image);
+            return;
+        }
+        if (staticLayersImage == null || !fingerprint.equals(staticLayersFingerprint)) {
+            staticLayersImage = new BufferedImage(chart.getWidth(), chart.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            chart.drawLayers(staticLayersImage, null, JAwesomeChart.STATIC_LAYERS);
+            staticLayersFingerprint = fingerprint;
+        }
+        chart.drawLayers(image, staticLayersImage, JAwesomeChart.DYNAMIC_LAYERS);
+    }
+}
@@ -23,26 +23,58 @@
  */
 package com.gmigdos.jawesomechart;
 
+import com.gmigdos.jawesomechart.core.DataSeries;
+import com.gmigdos.jawesomechart.core.DataSeriesDataProvider;
 import com.gmigdos.jawesomechart.core.DataSeriesList;
 import com.gmigdos.jawesomechart.core.Labels;
 import com.gmigdos.jawesomechart.core.Legend;
+import com.gmigdos.jawesomechart.core.dataproviders.SimpleDataProvider;
+import com.gmigdos.jawesomechart.io.BandedPngWriter;
+import com.gmigdos.jawesomechart.io.ImageFormat;
+import com.gmigdos.jawesomechart.io.Palette;
+import com.gmigdos.jawesomechart.io.PngEncoder;
+import com.gmigdos.jawesomechart.io.RenderOptions;
+import com.gmigdos.jawesomechart.io.SvgSurface;
+import com.gmigdos.jawesomechart.renderers.BaseChartRenderer;
 import com.gmigdos.jawesomechart.renderers.ChartRenderer;
 import com.gmigdos.jawesomechart.renderers.twodimensional.horizontal.ColumnChartRenderer;
 import com.gmigdos.jawesomechart.util.Context2D;
+import com.gmigdos.jawesomechart.util.DisplayList;
+import com.gmigdos.jawesomechart.util.Fingerprint;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
+import com.gmigdos.jawesomechart.util.Fingerprintable;
+import com.gmigdos.jawesomechart.util.Observer;
+import com.gmigdos.jawesomechart.util.RasterSurface;
+import com.gmigdos.jawesomechart.util.RecordingContext2D;
+import com.gmigdos.jawesomechart.util.Subject;
+import com.gmigdos.jawesomechart.util.Surface;
+import com.gmigdos.jawesomechart.util.TiledRenderer;
 import com.gmigdos.jawesomechart.util.Utilities;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
-import javax.imageio.ImageIO;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
  *
  * @author Georgios Migdos <cyberpython@gmail.com>
  */
-public class JAwesomeChart {
+public class JAwesomeChart implements Subject {
 
     private final static double DEFAULT_PADDING_TOP = 10;
     private final static double DEFAULT_PADDING_BOTTOM = 10;
@@ -55,7 +87,11 @@ public class JAwesomeChart {
     private final static Font DEFAULT_SUBTITLE_FONT = new Font("SansSerif", Font.BOLD, 14);
     private final static Color DEFAULT_TITLE_COLOR = new Color(51, 51, 51);
     private final static Color DEFAULT_SUBTITLE_COLOR = new Color(88, 88, 88);
+    final static Set<Context2D.Layer> STATIC_LAYERS = Collections.unmodifiableSet(EnumSet.of(Context2D.Layer.BACKGROUND, Context2D.Layer.AXES));
+    final static Set<Context2D.Layer> DYNAMIC_LAYERS = Collections.unmodifiableSet(EnumSet.of(Context2D.Layer.DATA, Context2D.Layer.LABELS));
     public static final Color TRANSPARENT = new Color(1, 1, 1, 0.0f);
+    public static final long DEFAULT_PROGRESSIVE_TIME_BUDGET = 50;
+    private final static int MIN_COARSE_FRAME_LENGTH = 16;
     private String title;
     private String subtitle;
     private DataSeriesList dataseries;
@@ -79,6 +115,34 @@ public class JAwesomeChart {
     private Paint borderPaint;
     private BasicStroke borderStroke;
     private boolean drawLegend;
+    private boolean layerCaching;
+    private DisplayList cachedStaticLayers;
+    private BufferedImage cachedStaticLayersImage;
+    private boolean incrementalRedraw;
+    private boolean tiledRendering;
+    private TiledRenderer tiledRenderer;
+    private int tileSize;
+    private DisplayList retainedDisplayList;
+    private BufferedImage retainedImage;
+    private Fingerprint retainedFingerprint;
+    private Fingerprint retainedLayoutFingerprint;
+    private DataSeries[] retainedSeries;
+    private int[] retainedStructureVersions;
+    private int retainedShadowMargin;
+    private Rectangle areaDrawnSinceRecording;
+    private int retainedDrawCount;
+    private DisplayList dirtyRegionDisplayList;
+    private Fingerprint dirtyRegionFingerprint;
+    private int drawCount;
+    private Set<DataSeriesDataProvider> observedDataProviders;
+    private final Set<DataSeriesDataProvider> changedDataProviders;
+    private boolean dataProvidersNotifying;
+    private Observer dataProviderObserver;
+    private List<Observer> observers;
+    private long progressiveTimeBudget;
+    private int coarseFrameLength;
+    private long fullFrameTime;
+    private BufferedImage renderBuffer;
 
     public JAwesomeChart(int width, int height) {
 
@@ -116,6 +180,28 @@ public class JAwesomeChart {
         borderStroke = new BasicStroke();
 
         drawLegend = true;
+        layerCaching = false;
+        incrementalRedraw = false;
+        tiledRendering = false;
+        tileSize = TiledRenderer.DEFAULT_TILE_SIZE;
+        observedDataProviders = Collections.newSetFromMap(new IdentityHashMap<DataSeriesDataProvider, Boolean>());
+        changedDataProviders = Collections.newSetFromMap(new IdentityHashMap<DataSeriesDataProvider, Boolean>());
+        areaDrawnSinceRecording = new Rectangle();
+        dataProviderObserver = new Observer() {
+            @Override
+            public void update(Subject sender, Object o) {
+                if (sender instanceof DataSeriesDataProvider) {
+                    synchronized (changedDataProviders) {
+                        changedDataProviders.add((DataSeriesDataProvider) sender);
+                    }
+                }
+                notifyObservers(sender);
+            }
+        };
+        observers = new ArrayList<Observer>();
+        progressiveTimeBudget = DEFAULT_PROGRESSIVE_TIME_BUDGET;
+        coarseFrameLength = width / 4;
+        fullFrameTime = -1;
     }
 
     public void clearSeries() {
@@ -135,18 +221,641 @@ public class JAwesomeChart {
         //Graphics2D g2d = (Graphics2D) bi.createGraphics();
         
         Graphics2D g2d = (Graphics2D) g;
+        if (incrementalRedraw && isTranslationOnly(g2d.getTransform())) {
+            drawIncrementally(g2d);
+            return;
+        }
+        if (tiledRendering && isTranslationOnly(g2d.getTransform())) {
+            drawTiled(g2d);
+            return;
+        }
+        if (layerCaching && isTranslationOnly(g2d.getTransform())) {
+            drawWithCachedStaticLayers(g2d);
+            return;
+        }
         Context2D context = new Context2D(g2d, width, height);
 
+        draw(context);
+        //g.drawImage(bi, 0, 0, null);
+    }
+
+    /**
+     * Draws the chart reusing the image of its static layers (background,
+     * title, legend, axes and grid) from the previous call, if the operations
+     * recorded for them have not changed. Only the data and label layers are
+     * actually drawn.
+     */
+    private void drawWithCachedStaticLayers(Graphics2D g2d) {
+        DisplayList displayList = record();
+        if (cachedStaticLayersImage == null
+                || cachedStaticLayersImage.getWidth() != width
+                || cachedStaticLayersImage.getHeight() != height
+                || !displayList.hasSameContent(cachedStaticLayers, STATIC_LAYERS)) {
+            if (cachedStaticLayersImage == null
+                    || cachedStaticLayersImage.getWidth() != width
+                    || cachedStaticLayersImage.getHeight() != height) {
+                cachedStaticLayersImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            }
+            Graphics2D imageGraphics = cachedStaticLayersImage.createGraphics();
+            displayList.replay(imageGraphics, width, height, STATIC_LAYERS);
+            imageGraphics.dispose();
+            cachedStaticLayers = displayList;
+        }
+
+        Context2D context = new Context2D(g2d, width, height);
+        context.drawImage(cachedStaticLayersImage, 0, 0);
+        context.setVisibleLayers(DYNAMIC_LAYERS);
+        displayList.replay(context);
+    }
+
+    /**
+     * Draws the chart on <code>image</code>. Unlike
+     * {@link #draw(java.awt.Graphics)} with the graphics of the image, this
+     * lets renderers write to the pixels of the image directly where that is
+     * faster, e.g. for line charts with very many points.
+     * 
+     * @param image the image to draw on
+     */
+    public void draw(BufferedImage image) {
+        if (incrementalRedraw || tiledRendering || layerCaching) {
+            Graphics2D g2d = image.createGraphics();
+            draw(g2d);
+            g2d.dispose();
+            return;
+        }
+        draw(new Context2D(image, width, height));
+    }
+
+    /**
+     * Draws the chart on <code>surface</code>, e.g. a {@link RasterSurface}
+     * to draw without starting the AWT toolkit. Layer caching, incremental
+     * redraw and tiled rendering only apply to Java2D graphics and are
+     * ignored.
+     * 
+     * @param surface the surface to draw on
+     */
+    public void draw(Surface surface) {
+        draw(new Context2D(surface, width, height));
+    }
+
+    /**
+     * Writes the chart to <code>out</code> as an SVG document, streamed as
+     * the renderers draw. The writer is flushed but not closed.
+     * 
+     * @param out the writer to write the document to
+     * @throws IOException if writing the document failed
+     */
+    public void writeSvg(Writer out) throws IOException {
+        SvgSurface surface = new SvgSurface(out, width, height);
+        try {
+            draw(surface);
+            surface.finish();
+        } finally {
+            surface.dispose();
+        }
+    }
+
+    /**
+     * Draws the chart in successive passes of increasing quality, handing
+     * each frame to <code>listener</code> as soon as it is ready:
+     * 
+     * <ol>
+     * <li>a coarse frame, with the series reduced by
+     * {@link DataSeriesList#downsample(int)}, without shadows and without
+     * anti-aliasing, sized to be ready within
+     * {@link #getProgressiveTimeBudget()};</li>
+     * <li>if the series are longer than two entries per pixel column, an
+     * anti-aliased frame with the series reduced to that length;</li>
+     * <li>the full quality frame.</li>
+     * </ol>
+     * 
+     * The length of the coarse series is adapted to the time the previous
+     * coarse frame took. The first passes are skipped when the previous full
+     * quality frame took less than the budget or, before the first one, when
+     * no series is longer than the width of the chart.
+     * 
+     * Meant to be called from a worker thread, so that a slow chart does not
+     * block the event dispatch thread: the listener is called on the calling
+     * thread.
+     * 
+     * @param listener the listener to hand the frames to
+     * @return the last frame drawn
+     */
+    public BufferedImage drawProgressively(ProgressiveRenderingListener listener) {
+        int length = dataseries.getMaxDataSeriesLength();
+        boolean refine = fullFrameTime < 0 ? length > width : fullFrameTime > progressiveTimeBudget;
+        int pass = 0;
+        BufferedImage frame;
+        if (refine) {
+            int coarseLength = Math.max(Math.min(coarseFrameLength, length), MIN_COARSE_FRAME_LENGTH);
+            long start = System.nanoTime();
+            frame = drawDraft(coarseLength, false);
+            long elapsed = Math.max((System.nanoTime() - start) / 1000000, 1);
+            long adaptedLength = coarseLength * progressiveTimeBudget / elapsed;
+            coarseFrameLength = (int) Math.max(Math.min(adaptedLength, length), MIN_COARSE_FRAME_LENGTH);
+            if (!listener.frameRendered(this, frame, pass++, false)) {
+                return frame;
+            }
+            if (length > 2 * width) {
+                frame = drawDraft(2 * width, true);
+                if (!listener.frameRendered(this, frame, pass++, false)) {
+                    return frame;
+                }
+            }
+        }
+        long start = System.nanoTime();
+        frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        draw(frame);
+        fullFrameTime = (System.nanoTime() - start) / 1000000;
+        listener.frameRendered(this, frame, pass, true);
+        return frame;
+    }
+
+    /**
+     * Draws a draft of the chart, without shadows and with the series
+     * reduced to at most <code>maxLength</code> entries, into a new image.
+     */
+    private BufferedImage drawDraft(int maxLength, boolean antialiasing) {
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Context2D context = new Context2D(frame, width, height);
+        context.setShadowsOn(false);
+        context.setAntialiasingOn(antialiasing);
+        int length = dataseries.getMaxDataSeriesLength();
+        draw(context, dataseries.downsample(maxLength), labels.downsample(length, maxLength));
+        return frame;
+    }
+
+    /**
+     * Rasterizes the chart in tiles, on as many threads as there are
+     * processors, and draws the result.
+     */
+    private void drawTiled(Graphics2D g2d) {
+        if (tiledRenderer == null || tiledRenderer.getTileSize() != tileSize) {
+            tiledRenderer = new TiledRenderer(tileSize, Runtime.getRuntime().availableProcessors());
+        }
+        BufferedImage image = tiledRenderer.render(record());
+        Graphics2D g = (Graphics2D) g2d.create();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+    }
+
+    /**
+     * Draws the chart from the image retained from the previous call, after
+     * redrawing the area in which the new frame differs from it.
+     *
+     * If only values the chart was notified of changed, the area is the
+     * union of their areas according to the renderer, see
+     * {@link com.gmigdos.jawesomechart.renderers.BaseChartRenderer#getValueArea(Context2D, DataSeriesList, int, int)},
+     * and the chart is drawn clipped to it. Otherwise the frame is recorded
+     * and compared with the recording of the previous one.
+     */
+    private void drawIncrementally(Graphics2D g2d) {
+        observeDataProviders();
+        Set<DataSeriesDataProvider> changed;
+        synchronized (changedDataProviders) {
+            changed = Collections.newSetFromMap(new IdentityHashMap<DataSeriesDataProvider, Boolean>());
+            changed.addAll(changedDataProviders);
+            changedDataProviders.clear();
+        }
+        Fingerprint fingerprint = getFingerprint();
+        Rectangle area = calculateChangedValuesArea(fingerprint, changed);
+        if (area != null) {
+            if (!area.isEmpty()) {
+                drawArea(area);
+                // The retained image only differs from the recorded frame
+                // in the areas drawn since:
+                if (areaDrawnSinceRecording.isEmpty()) {
+                    areaDrawnSinceRecording = area;
+                } else {
+                    areaDrawnSinceRecording = areaDrawnSinceRecording.union(area);
+                }
+            }
+        } else {
+            // getDirtyRegion() may have recorded this frame already:
+            DisplayList displayList;
+            if (dirtyRegionDisplayList != null && fingerprint != null && fingerprint.equals(dirtyRegionFingerprint)) {
+                displayList = dirtyRegionDisplayList;
+            } else {
+                displayList = record();
+            }
+            area = calculateDirtyRegion(displayList);
+            if (retainedImage == null || retainedImage.getWidth() != width || retainedImage.getHeight() != height) {
+                retainedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            }
+            if (!area.isEmpty()) {
+                BufferedImage areaImage = displayList.renderArea(area);
+                Graphics2D imageGraphics = retainedImage.createGraphics();
+                imageGraphics.setComposite(AlphaComposite.Src);
+                imageGraphics.drawImage(areaImage, area.x, area.y, null);
+                imageGraphics.dispose();
+            }
+            retainedDisplayList = displayList;
+            retainedShadowMargin = displayList.getShadowMargin();
+            areaDrawnSinceRecording = new Rectangle();
+        }
+        dirtyRegionDisplayList = null;
+        dirtyRegionFingerprint = null;
+        retainedFingerprint = fingerprint;
+        retainedLayoutFingerprint = getLayoutFingerprint();
+        retainedDrawCount = drawCount;
+        retainedSeries = dataseries.toArray(new DataSeries[dataseries.size()]);
+        retainedStructureVersions = new int[retainedSeries.length];
+        for (int s = 0; s < retainedSeries.length; s++) {
+            retainedStructureVersions[s] = retainedSeries[s].getStructureVersion();
+        }
+
+        // Like a Context2D, replace whatever was drawn on the target:
+        Graphics2D g = (Graphics2D) g2d.create();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(retainedImage, 0, 0, null);
+        g.dispose();
+    }
+
+    /**
+     * Returns the area covered by the values that changed since the
+     * retained frame, empty if nothing changed, or null if it cannot be told
+     * without comparing recorded frames: when something else than the
+     * values of the <code>changed</code> providers changed, or the renderer
+     * does not know the area of some value.
+     */
+    private Rectangle calculateChangedValuesArea(Fingerprint fingerprint, Set<DataSeriesDataProvider> changed) {
+        if (retainedImage == null || retainedImage.getWidth() != width || retainedImage.getHeight() != height
+                || retainedFingerprint == null || fingerprint == null) {
+            return null;
+        }
+        if (fingerprint.equals(retainedFingerprint)) {
+            return new Rectangle();
+        }
+        // The renderer knows the areas of the values from its last drawing,
+        // which must be the one of the retained frame:
+        if (drawCount != retainedDrawCount) {
+            return null;
+        }
+        // Providers that do not notify may have changed too:
+        if (changed.isEmpty() || !dataProvidersNotifying || !(renderer instanceof BaseChartRenderer)
+                || !isSeriesStructureRetained() || !retainedLayoutFingerprint.equals(getLayoutFingerprint())) {
+            return null;
+        }
+        BaseChartRenderer chartRenderer = (BaseChartRenderer) renderer;
+        Context2D measuringContext = new Context2D(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB), width, height);
+        Rectangle2D bounds = null;
+        for (int s = 0; s < dataseries.size(); s++) {
+            DataSeries series = dataseries.get(s);
+            for (int i = 0; i < series.size(); i++) {
+                DataSeriesDataProvider dp = series.get(i);
+                if (dp != null && changed.contains(dp)) {
+                    Rectangle2D valueArea = chartRenderer.getValueArea(measuringContext, dataseries, s, i);
+                    if (valueArea == null) {
+                        return null;
+                    }
+                    if (bounds == null) {
+                        bounds = valueArea;
+                    } else {
+                        bounds.add(valueArea);
+                    }
+                }
+            }
+        }
+        if (bounds == null) {
+            // The changed providers were removed from the chart:
+            return null;
+        }
+        // The shadows of the values fall up to the shadow margin away:
+        Rectangle area = bounds.getBounds();
+        area.grow(retainedShadowMargin, retainedShadowMargin);
+        return area.intersection(new Rectangle(0, 0, width, height));
+    }
+
+    private boolean isSeriesStructureRetained() {
+        if (retainedSeries == null || retainedSeries.length != dataseries.size()) {
+            return false;
+        }
+        for (int s = 0; s < retainedSeries.length; s++) {
+            if (dataseries.get(s) != retainedSeries[s]
+                    || retainedSeries[s].getStructureVersion() != retainedStructureVersions[s]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Draws <code>area</code> of the chart on the retained image, drawing
+     * the chart clipped to the area enlarged by the shadow margin, so that
+     * shadows cast across its borders come out as in a full redraw.
+     */
+    private void drawArea(Rectangle area) {
+        Rectangle enlarged = new Rectangle(area);
+        enlarged.grow(retainedShadowMargin, retainedShadowMargin);
+        enlarged = enlarged.intersection(new Rectangle(0, 0, width, height));
+        BufferedImage image = new BufferedImage(enlarged.width, enlarged.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.clipRect(0, 0, enlarged.width, enlarged.height);
+        g2d.translate(-enlarged.x, -enlarged.y);
+        draw(new Context2D(g2d, width, height));
+        g2d.dispose();
+
+        Graphics2D imageGraphics = retainedImage.createGraphics();
+        imageGraphics.setComposite(AlphaComposite.Src);
+        imageGraphics.clipRect(area.x, area.y, area.width, area.height);
+        imageGraphics.drawImage(image, enlarged.x, enlarged.y, null);
+        imageGraphics.dispose();
+    }
+
+    private Rectangle calculateDirtyRegion(DisplayList displayList) {
+        if (retainedDisplayList == null || retainedImage == null
+                || retainedImage.getWidth() != width || retainedImage.getHeight() != height
+                || !displayList.hasSameContent(retainedDisplayList, STATIC_LAYERS)) {
+            // First frame, or the size, the scale of the axes or the chrome
+            // changed:
+            return new Rectangle(0, 0, width, height);
+        }
+        Rectangle area = displayList.getChangedArea(retainedDisplayList);
+        if (area.isEmpty()) {
+            return new Rectangle(areaDrawnSinceRecording);
+        }
+        return areaDrawnSinceRecording.isEmpty() ? area : area.union(areaDrawnSinceRecording);
+    }
+
+    /**
+     * Returns the area of the chart that the next call to
+     * {@link #draw(java.awt.Graphics)} will redraw, when incremental redraw
+     * is on. Components can pass it to <code>repaint()</code> when notified of
+     * a data change.
+     *
+     * When the area cannot be told from the changed values alone, the chart
+     * is recorded to compare it with the last frame, and the next call to
+     * {@link #draw(java.awt.Graphics)} reuses the recording if the chart has
+     * not changed since.
+     *
+     * @return the area that changed since the last frame, the whole chart if
+     * incremental redraw is off
+     */
+    public Rectangle getDirtyRegion() {
+        if (!incrementalRedraw) {
+            return new Rectangle(0, 0, width, height);
+        }
+        Set<DataSeriesDataProvider> changed = Collections.newSetFromMap(new IdentityHashMap<DataSeriesDataProvider, Boolean>());
+        synchronized (changedDataProviders) {
+            changed.addAll(changedDataProviders);
+        }
+        Fingerprint fingerprint = getFingerprint();
+        Rectangle area = calculateChangedValuesArea(fingerprint, changed);
+        if (area != null) {
+            return area;
+        }
+        DisplayList displayList = record();
+        dirtyRegionDisplayList = fingerprint != null ? displayList : null;
+        dirtyRegionFingerprint = fingerprint;
+        return calculateDirtyRegion(displayList);
+    }
+
+    /**
+     * Registers this chart as an observer of the data providers of its
+     * series, and unregisters it from the ones that were removed.
+     */
+    private void observeDataProviders() {
+        Set<DataSeriesDataProvider> previous = observedDataProviders;
+        observedDataProviders = Collections.newSetFromMap(new IdentityHashMap<DataSeriesDataProvider, Boolean>());
+        dataProvidersNotifying = true;
+        for (DataSeries series : dataseries) {
+            for (DataSeriesDataProvider dp : series) {
+                if (dp != null && observedDataProviders.add(dp) && !previous.remove(dp)) {
+                    dp.addObserver(dataProviderObserver);
+                }
+                // Only these are known to notify of every change:
+                dataProvidersNotifying &= dp == null || dp instanceof SimpleDataProvider;
+            }
+        }
+        for (DataSeriesDataProvider dp : previous) {
+            dp.deleteObserver(dataProviderObserver);
+        }
+    }
+
+    private static boolean isTranslationOnly(AffineTransform transform) {
+        int type = transform.getType();
+        return (type & ~AffineTransform.TYPE_TRANSLATION) == 0
+                && transform.getTranslateX() == Math.rint(transform.getTranslateX())
+                && transform.getTranslateY() == Math.rint(transform.getTranslateY());
+    }
+
+    /**
+     * Lays out the chart and records the drawing operations instead of
+     * executing them. The returned {@link DisplayList} can be replayed onto
+     * any number of {@link Graphics} objects, at any size, without repeating
+     * the layout, statistics, text fitting and label formatting.
+     * 
+     * @return the recorded drawing operations
+     */
+    public DisplayList record() {
+        RecordingContext2D context = new RecordingContext2D(width, height);
+        draw(context);
+        return context.getDisplayList();
+    }
+
+    /**
+     * Writes the chart as a PNG image to <code>out</code>, rendering it in
+     * horizontal bands of <code>bandHeight</code> rows that are encoded as
+     * soon as they are drawn. No image of the size of the chart is allocated,
+     * which makes this suitable for very large exports. The stream is not
+     * closed.
+     * 
+     * @param out the stream to write to
+     * @param bandHeight the number of rows rendered at a time
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeBandedPng(OutputStream out, int bandHeight) throws IOException {
+        new BandedPngWriter(bandHeight).write(record(), out);
+    }
+
+    /**
+     * Renders the chart and encodes it straight to <code>out</code>. PNG
+     * images are drawn into a buffer kept for the next calls while the size
+     * of the chart does not change, and encoded from its pixels in place, so
+     * serving a chart repeatedly allocates no image and copies no bytes. The
+     * stream is flushed but not closed.
+     * 
+     * @param out the stream to write to
+     * @param format the format of the output
+     * @param options the settings of the encoding, or null for the defaults
+     * @throws IOException if writing to the stream fails
+     */
+    public void render(OutputStream out, ImageFormat format, RenderOptions options) throws IOException {
+        if (options == null) {
+            options = new RenderOptions();
+        }
+        if (format == ImageFormat.SVG) {
+            writeSvg(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+            return;
+        }
+        if (renderBuffer == null || renderBuffer.getWidth() != width || renderBuffer.getHeight() != height) {
+            renderBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        // Drawing replaces all the pixels of the previous frame:
+        draw(renderBuffer);
+        PngEncoder.encode(renderBuffer, out, options);
+    }
+
+    /**
+     * Renders the chart and encodes it straight to <code>channel</code>, as
+     * {@link #render(java.io.OutputStream, ImageFormat, RenderOptions)}
+     * does. The channel is not closed.
+     * 
+     * @param channel the channel to write to
+     * @param format the format of the output
+     * @param options the settings of the encoding, or null for the defaults
+     * @throws IOException if writing to the channel fails
+     */
+    public void render(WritableByteChannel channel, ImageFormat format, RenderOptions options) throws IOException {
+        render(Channels.newOutputStream(channel), format, options);
+    }
+
+    /**
+     * Returns a fingerprint of everything that affects the output of the
+     * chart: its size, titles, colors and margins, the legend, the names,
+     * colors and values of the data series, the labels and the type and
+     * settings of the renderer. Charts with equal fingerprints draw the same
+     * image, so the fingerprint can key a cache of rendered output, e.g. a
+     * {@link RenderCache}.
+     *
+     * The series and the labels keep their fingerprints until they change,
+     * so only the settings are hashed again on each call, however much data
+     * the chart holds.
+     *
+     * @return the fingerprint, or null if the chart cannot be fingerprinted,
+     * e.g. because its renderer is not {@link Fingerprintable} or it uses a
+     * custom paint
+     */
+    public Fingerprint getFingerprint() {
+        return fingerprint(true);
+    }
+
+    /**
+     * Returns the fingerprint of everything but the values of the series:
+     * charts with the same layout fingerprint only differ in their values.
+     */
+    Fingerprint getLayoutFingerprint() {
+        return fingerprint(false);
+    }
+
+    private Fingerprint fingerprint(boolean includeValues) {
+        FingerprintBuilder builder = new FingerprintBuilder();
+        builder.add(width);
+        builder.add(height);
+        builder.add(title);
+        builder.add(subtitle);
+        builder.add(paddingTop);
+        builder.add(paddingBottom);
+        builder.add(paddingLeft);
+        builder.add(paddingRight);
+        builder.add(titleMargin);
+        builder.add(subtitleMargin);
+        builder.add(legendMargin);
+        builder.add(titleFont);
+        builder.add(subtitleFont);
+        builder.add(titleColor);
+        builder.add(subtitleColor);
+        builder.add(backgroundPaint);
+        builder.add(borderPaint);
+        builder.add(borderStroke);
+        builder.add(drawLegend);
+        if (drawLegend) {
+            builder.addObject(legend);
+        }
+        builder.add(dataseries.size());
+        for (DataSeries series : dataseries) {
+            if (includeValues) {
+                series.addFingerprint(builder);
+            } else {
+                builder.add(series.getName());
+                builder.add(series.getSeriesColor());
+                builder.add(series.size());
+            }
+        }
+        labels.addFingerprint(builder);
+        builder.addObject(renderer);
+        return builder.build();
+    }
+
+    private void draw(Context2D context) {
+        draw(context, dataseries, labels);
+    }
+
+    /**
+     * Draws only the given layers of the chart on <code>image</code>, over
+     * <code>underlay</code> if it is not null.
+     */
+    void drawLayers(BufferedImage image, BufferedImage underlay, Set<Context2D.Layer> layers) {
+        Context2D context = new Context2D(image, width, height);
+        if (underlay != null) {
+            context.drawImage(underlay, 0, 0);
+        }
+        context.setVisibleLayers(layers);
+        draw(context);
+    }
+
+    private void draw(Context2D context, DataSeriesList series, Labels labels) {
+        drawCount++;
+        context.setLayer(Context2D.Layer.BACKGROUND);
         fillBackground(context, backgroundPaint, width, height);
         drawOuterBorder(context, borderPaint, borderStroke, width, height);
 
         drawTitleAndSubtitle(context);
         
-        drawLegend(context);
+        Layout layout = layout(context);
+        drawLegend(context, layout);
 
-        drawChart(context); //NOTE: should always be last to draw as renderers 
+        drawChart(context, series, labels, layout); //NOTE: should always be last to draw as renderers 
                             //may not restore the context transformations correctly
-        //g.drawImage(bi, 0, 0, null);
+    }
+
+    /**
+     * Measures the titles and fits the legend on the context, and places the
+     * legend and the area of the renderer.
+     */
+    private Layout layout(Context2D context) {
+        Layout layout = new Layout();
+        double offsetTop = calculateOffsetCausedByTitleAndSubtitle(context);
+        layout.chartWidth = width - paddingLeft - paddingRight;
+        layout.chartHeight = height - offsetTop - paddingBottom;
+        layout.offsetTop = offsetTop;
+        if (legend != null && drawLegend) {
+            // A paged legend takes at most the height beside the chart, or
+            // half of it on top or at the bottom:
+            legend.setContext(context, legend.isPlacedOnLeftOrRight() ? layout.chartHeight : layout.chartHeight / 2);
+            Legend.LegendPosition position = legend.getPosition();
+            double legendWidth = legend.getWidth();
+            double legendHeight = legend.getHeight();
+
+            if (position.equals(Legend.LegendPosition.LEGEND_POSITION_LEFT)) {
+                layout.legendX = paddingLeft;
+                layout.legendY = offsetTop;
+            } else if (position.equals(Legend.LegendPosition.LEGEND_POSITION_RIGHT)) {
+                layout.legendX = width - paddingRight - legendWidth;
+                layout.legendY = offsetTop;
+            } else if (position.equals(Legend.LegendPosition.LEGEND_POSITION_TOP)) {
+                layout.legendX = paddingLeft;
+                layout.legendY = offsetTop;
+            } else if (position.equals(Legend.LegendPosition.LEGEND_POSITION_BOTTOM)) {
+                layout.legendX = paddingLeft;
+                layout.legendY = height - paddingBottom - legendHeight;
+            }
+
+            if (position.equals(Legend.LegendPosition.LEGEND_POSITION_LEFT)
+                    || position.equals(Legend.LegendPosition.LEGEND_POSITION_RIGHT)) {
+                layout.chartWidth -= legendWidth + legendMargin;
+                if (position.equals(Legend.LegendPosition.LEGEND_POSITION_LEFT)) {
+                    layout.chartOffsetX = legendWidth + legendMargin;
+                }
+            } else {
+                layout.chartHeight -= legendHeight + legendMargin;
+                if (position.equals(Legend.LegendPosition.LEGEND_POSITION_TOP)) {
+                    layout.chartOffsetY = legendHeight + legendMargin;
+                }
+            }
+        }
+        return layout;
     }
 
     private void fillBackground(Context2D context, Paint backgroundPaint, double width, double height) {
@@ -169,7 +878,7 @@ public class JAwesomeChart {
 
     private void drawTitleAndSubtitle(Context2D context) {
         double widthWithoutPadding = width - paddingLeft - paddingRight;
-        context.save();
+        context.saveState();
 
         context.translate(0, paddingTop);
 
@@ -190,68 +899,28 @@ public class JAwesomeChart {
            context.translate(0, titleMargin);
         }
 
-        context.restore();
+        context.restoreState();
     }
 
-    private void drawChart(Context2D context) {
+    private void drawChart(Context2D context, DataSeriesList series, Labels labels, Layout layout) {
         if (renderer != null) {
-            double offsetTop = calculateOffsetCausedByTitleAndSubtitle(context);
-            double chartWidth = width - paddingLeft - paddingRight;
-            double chartHeight = height - offsetTop - paddingBottom;
-            
-            context.save();
-            context.translate(paddingLeft, offsetTop);
-
-            if (drawLegend && legend != null) {
-                Legend.LegendPosition position = legend.getPosition();
-                if (position.equals(Legend.LegendPosition.LEGEND_POSITION_LEFT)
-                        || position.equals(Legend.LegendPosition.LEGEND_POSITION_RIGHT)) {
-
-                    chartWidth -= legend.getWidth() + legendMargin;
-
-                    if (position.equals(Legend.LegendPosition.LEGEND_POSITION_LEFT)) {
-                        context.translate(legend.getWidth()+legendMargin, 0);
-                    }
-                    
-                } else {
-                    chartHeight -= legend.getHeight() + legendMargin;
-                    if (position.equals(Legend.LegendPosition.LEGEND_POSITION_TOP)) {
-                        context.translate(0, legend.getHeight()+legendMargin);
-                    }
-                }
+            context.saveState();
+            context.translate(paddingLeft, layout.offsetTop);
+            if (layout.chartOffsetX != 0 || layout.chartOffsetY != 0) {
+                context.translate(layout.chartOffsetX, layout.chartOffsetY);
             }
-            
-            context.resize(chartWidth, chartHeight);
-            renderer.draw(context, dataseries, labels);
-            context.restore();
+            context.resize(layout.chartWidth, layout.chartHeight);
+            renderer.draw(context, series, labels);
+            context.restoreState();
         }
     }
 
-    private void drawLegend(Context2D context) {
+    private void drawLegend(Context2D context, Layout layout) {
         if (legend != null && drawLegend) {
-            legend.setContext(context);
-            double tX = 0;
-            double tY = 0;
-            double offsetTop = calculateOffsetCausedByTitleAndSubtitle(context);
-            Legend.LegendPosition position = legend.getPosition();
-
-            if (position.equals(Legend.LegendPosition.LEGEND_POSITION_LEFT)) {
-                tX = paddingLeft;
-                tY = offsetTop;
-            } else if (position.equals(Legend.LegendPosition.LEGEND_POSITION_RIGHT)) {
-                tX = width - paddingRight - legend.getWidth();
-                tY = offsetTop;
-            } else if (position.equals(Legend.LegendPosition.LEGEND_POSITION_TOP)) {
-                tX = paddingLeft;
-                tY = offsetTop;
-            } else if (position.equals(Legend.LegendPosition.LEGEND_POSITION_BOTTOM)) {
-                tX = paddingLeft;
-                tY = height - paddingBottom - legend.getHeight();
-            }
-            context.save();
-            context.translate(tX, tY);
+            context.saveState();
+            context.translate(layout.legendX, layout.legendY);
             legend.draw();
-            context.restore();
+            context.restoreState();
         }
     }
 
@@ -548,29 +1217,163 @@ public class JAwesomeChart {
         this.drawLegend = drawLegend;
     }
 
-    public static void drawAndSaveChartAsImageFile(JAwesomeChart ac, String filePath) {
-        BufferedImage bi = new BufferedImage(ac.getWidth(), ac.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        long t1 = System.currentTimeMillis();
-        double i;
-        int iterations = 1;
-        for (i = 0; i < iterations; i += 1) {
-            ac.draw(bi.getGraphics());
+    public long getProgressiveTimeBudget() {
+        return progressiveTimeBudget;
+    }
+
+    /**
+     * Sets the time, in milliseconds, within which
+     * {@link #drawProgressively(ProgressiveRenderingListener)} should produce
+     * its first frame.
+     * 
+     * @param progressiveTimeBudget the progressiveTimeBudget to set
+     */
+    public void setProgressiveTimeBudget(long progressiveTimeBudget) {
+        this.progressiveTimeBudget = progressiveTimeBudget;
+    }
+
+    public boolean isLayerCachingOn() {
+        return layerCaching;
+    }
+
+    /**
+     * Enables or disables caching of the static layers of the chart
+     * (background, title, legend, axes and grid) between calls to
+     * {@link #draw(java.awt.Graphics)}. When on, each call records the chart,
+     * compares the static layers with the ones of the previous call and, if
+     * they are unchanged, draws them from an image instead of re-rendering
+     * them. Useful when the data of a chart is updated frequently.
+     * 
+     * @param layerCaching true to cache the static layers
+     */
+    public void setLayerCaching(boolean layerCaching) {
+        this.layerCaching = layerCaching;
+        if (!layerCaching) {
+            cachedStaticLayers = null;
+            cachedStaticLayersImage = null;
         }
-        long t2 = System.currentTimeMillis();
-        System.out.println(ac.getRenderer().getHumanReadableName() + " chart - mean time: " + ((t2 - t1) / i) + " ms");
-        try {
-            File f = new File(filePath);
-            if (f.exists()) {
-                f.delete();
+    }
+
+    public boolean isIncrementalRedrawOn() {
+        return incrementalRedraw;
+    }
+
+    /**
+     * Enables or disables incremental redraw. When on, the chart keeps the
+     * image of the last frame drawn by {@link #draw(java.awt.Graphics)}, and
+     * each call only redraws the area in which the new frame differs.
+     * 
+     * The chart observes the data providers of its series, and notifies its
+     * own observers, with the provider as argument, whenever a value
+     * changes; see {@link #getDirtyRegion()}. When only values it was
+     * notified of changed and they still fit the axes, the area is the one
+     * the renderer gives for them, e.g. the strip of a column and its labels
+     * or the two segments around a point of a line, and nothing else is
+     * compared. Otherwise the frame is recorded and compared, operation by
+     * operation, with the recording of the previous one. As the columns and
+     * lines of a series are drawn as one path, this comparison yields the
+     * bounds of the whole series whose value changed; changes to the chrome
+     * or the range of the axes redraw the whole chart.
+     * 
+     * @param incrementalRedraw true to redraw incrementally
+     */
+    public void setIncrementalRedraw(boolean incrementalRedraw) {
+        this.incrementalRedraw = incrementalRedraw;
+        if (incrementalRedraw) {
+            observeDataProviders();
+        } else {
+            for (DataSeriesDataProvider dp : observedDataProviders) {
+                dp.deleteObserver(dataProviderObserver);
             }
-            f.mkdirs();
-            ImageIO.write(bi, "png", f);
-        } catch (IOException ioe) {
-            System.err.println(ioe.getMessage());
+            observedDataProviders.clear();
+            synchronized (changedDataProviders) {
+                changedDataProviders.clear();
+            }
+            retainedDisplayList = null;
+            retainedImage = null;
+            retainedFingerprint = null;
+            retainedLayoutFingerprint = null;
+            retainedSeries = null;
+            retainedStructureVersions = null;
+            dirtyRegionDisplayList = null;
+            dirtyRegionFingerprint = null;
+        }
+    }
+
+    public boolean isTiledRenderingOn() {
+        return tiledRendering;
+    }
+
+    /**
+     * Enables or disables tiled rendering. When on,
+     * {@link #draw(java.awt.Graphics)} records the chart and rasterizes it
+     * in tiles of {@link #getTileSize()} pixels on all available processors.
+     * Meant for very large charts, e.g. wall-sized exports.
+     * 
+     * @param tiledRendering true to render in parallel tiles
+     */
+    public void setTiledRendering(boolean tiledRendering) {
+        this.tiledRendering = tiledRendering;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    @Override
+    public void addObserver(Observer o) {
+        this.observers.add(o);
+    }
+
+    @Override
+    public void deleteObserver(Observer o) {
+        this.observers.remove(o);
+    }
+
+    @Override
+    public void clearObservers() {
+        this.observers.clear();
+    }
+
+    @Override
+    public void notifyObservers(Object o) {
+        for (Observer observer : observers) {
+            observer.update(this, o);
+        }
+    }
+
+    public static void drawAndSaveChartAsImageFile(JAwesomeChart ac, String filePath) throws IOException {
+        drawAndSaveChartAsImageFile(ac, filePath, false);
+    }
+
+    /**
+     * Draws <code>ac</code> and saves it as a PNG image, creating the
+     * missing parent directories of the file.
+     * 
+     * @param ac the chart to draw
+     * @param filePath the path of the image file
+     * @param indexedColors true to save an indexed image, with a palette of
+     * up to 256 colors quantized from the chart, false to save an RGBA image
+     * @throws IOException if the file cannot be written
+     */
+    public static void drawAndSaveChartAsImageFile(JAwesomeChart ac, String filePath, boolean indexedColors) throws IOException {
+        RenderOptions options = new RenderOptions();
+        if (indexedColors) {
+            options.setMaxColors(Palette.MAX_COLORS);
+        }
+        OutputStream out = RenderJob.openFile(new File(filePath));
+        try {
+            ac.render(out, ImageFormat.PNG, options);
+        } finally {
+            out.close();
         }
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         
         JAwesomeChart ac = new JAwesomeChart(960, 450);
         ac.setTitle("Αποτελέσματα Βουλευτικών Εκλογών 17/06/2012");
@@ -592,4 +1395,19 @@ public class JAwesomeChart {
         
         Utilities.xdgOpenFile(new File("/home/cyberpython/Desktop/greek-legislative-elections-2012-06-17-bars.png"));
     }
+
+    /**
+     * The placement of the parts of the chart, computed once per draw before
+     * painting.
+     */
+    private static final class Layout {
+
+        private double offsetTop;
+        private double legendX;
+        private double legendY;
+        private double chartOffsetX;
+        private double chartOffsetY;
+        private double chartWidth;
+        private double chartHeight;
+    }
 }
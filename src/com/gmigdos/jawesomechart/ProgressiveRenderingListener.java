@@ -0,0 +1,52 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Receives the frames produced by
+ * {@link JAwesomeChart#drawProgressively(ProgressiveRenderingListener)}, from
+ * the coarsest to the final one.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public interface ProgressiveRenderingListener {
+
+    /**
+     * Called on the rendering thread each time a frame is ready. Each frame
+     * is a new image that the listener may keep, e.g. to hand it over to the
+     * event dispatch thread for display.
+     *
+     * @param chart the chart being drawn
+     * @param frame the image of the frame
+     * @param pass the number of the pass that produced the frame, starting
+     * from 0
+     * @param finalFrame true for the full quality frame, which is the last
+     * one
+     * @return false to stop refining, e.g. because the data changed and the
+     * chart is going to be drawn again anyway
+     */
+    public boolean frameRendered(JAwesomeChart chart, BufferedImage frame, int pass, boolean finalFrame);
+}
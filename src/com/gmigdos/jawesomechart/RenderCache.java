@@ -0,0 +1,513 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart;
+
+import com.gmigdos.jawesomechart.io.ImageFormat;
+import com.gmigdos.jawesomechart.io.PngEncoder;
+import com.gmigdos.jawesomechart.io.RenderOptions;
+import com.gmigdos.jawesomechart.util.Fingerprint;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of encoded charts, keyed by the {@link JAwesomeChart#getFingerprint()
+ * fingerprint} of the chart and the format and settings of the encoding.
+ *
+ * The cache holds at most {@link #getMaxBytes()} bytes of output, evicting
+ * the least recently used or the least frequently used images first. Charts
+ * requested by several threads at once are rendered once, the other threads
+ * waiting for the result. Charts that cannot be fingerprinted are rendered
+ * every time.
+ *
+ * <pre>
+ * RenderCache cache = new RenderCache(64 * 1024 * 1024, RenderCache.EvictionPolicy.LRU);
+ * byte[] png = cache.render(chart, ImageFormat.PNG, null);
+ * </pre>
+ *
+ * The arrays returned are shared by all the callers and must not be
+ * modified.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class RenderCache {
+
+    public enum EvictionPolicy {
+
+        /**
+         * Evicts the images that were requested least recently.
+         */
+        LRU,
+        /**
+         * Evicts the images that were requested least often, the least
+         * recently requested among them first.
+         */
+        LFU
+    }
+    private final long maxBytes;
+    private final EvictionPolicy policy;
+    private final Map<Key, Entry> entries;
+    private final TreeMap<Long, LinkedHashSet<Entry>> frequencies;
+    private final ConcurrentMap<Key, FutureTask<byte[]>> rendering;
+    private long size;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long uncacheableCount;
+
+    /**
+     * Creates a cache evicting the least recently used images.
+     */
+    public RenderCache(long maxBytes) {
+        this(maxBytes, EvictionPolicy.LRU);
+    }
+
+    /**
+     * @param maxBytes the maximum total size of the images held
+     * @param policy which images to evict when the cache is full
+     */
+    public RenderCache(long maxBytes, EvictionPolicy policy) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The size of the cache cannot be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        if (policy == EvictionPolicy.LRU) {
+            this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+        } else {
+            this.entries = new HashMap<Key, Entry>();
+        }
+        this.frequencies = new TreeMap<Long, LinkedHashSet<Entry>>();
+        this.rendering = new ConcurrentHashMap<Key, FutureTask<byte[]>>();
+    }
+
+    /**
+     * Returns the encoded chart, from the cache if it holds it or rendering
+     * it and adding it to the cache otherwise.
+     *
+     * @param chart the chart to render
+     * @param format the format of the output
+     * @param options the settings of the encoding, or null for the defaults
+     * @return the encoded chart; the array must not be modified
+     * @throws IOException if encoding the chart fails
+     */
+    public byte[] render(JAwesomeChart chart, ImageFormat format, RenderOptions options) throws IOException {
+        return render(chart, format, options, true, null, 0);
+    }
+
+    /**
+     * Renders the chart after a {@link #get(JAwesomeChart, ImageFormat, RenderOptions)}
+     * that missed, e.g. once the caller may use the CPU for it: as
+     * {@link #render(JAwesomeChart, ImageFormat, RenderOptions)}, but the
+     * lookup is not counted again. The cache is still checked, as another
+     * thread may have rendered the chart in between.
+     *
+     * @param chart the chart to render
+     * @param format the format of the output
+     * @param options the settings of the encoding, or null for the defaults
+     * @return the encoded chart; the array must not be modified
+     * @throws IOException if encoding the chart fails
+     */
+    public byte[] renderAfterMiss(JAwesomeChart chart, ImageFormat format, RenderOptions options) throws IOException {
+        return render(chart, format, options, false, null, 0);
+    }
+
+    /**
+     * As {@link #renderAfterMiss(JAwesomeChart, ImageFormat, RenderOptions)},
+     * but the chart is only drawn and encoded once a permit of
+     * <code>permits</code> is acquired, e.g. to bound the number of charts
+     * rendered at a time. The permit is taken by the thread that renders
+     * the chart, after checking the cache again; threads waiting for that
+     * thread to render the same chart hold no permit.
+     *
+     * @param chart the chart to render
+     * @param format the format of the output
+     * @param options the settings of the encoding, or null for the defaults
+     * @param permits the permits to render under
+     * @param timeout the time, in milliseconds, to wait for a permit
+     * @return the encoded chart; the array must not be modified
+     * @throws RejectedExecutionException if no permit was available within
+     * <code>timeout</code>
+     * @throws InterruptedIOException if interrupted while waiting for a
+     * permit or for another thread to render the chart
+     * @throws IOException if encoding the chart fails
+     */
+    public byte[] renderAfterMiss(JAwesomeChart chart, ImageFormat format, RenderOptions options,
+            Semaphore permits, long timeout) throws IOException {
+        return render(chart, format, options, false, permits, timeout);
+    }
+
+    private byte[] render(final JAwesomeChart chart, final ImageFormat format, final RenderOptions options,
+            boolean countLookup, final Semaphore permits, final long timeout) throws IOException {
+        Fingerprint fingerprint = chart.getFingerprint();
+        if (fingerprint == null) {
+            if (countLookup) {
+                synchronized (this) {
+                    uncacheableCount++;
+                }
+            }
+            return encode(chart, format, options, permits, timeout);
+        }
+        final Key key = new Key(fingerprint, format, options);
+        byte[] data = get(key, countLookup);
+        if (data != null) {
+            return data;
+        }
+        FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                // Another thread may have stored the image since the lookup:
+                byte[] data = get(key, false);
+                if (data == null) {
+                    data = encode(chart, format, options, permits, timeout);
+                    put(key, data);
+                }
+                return data;
+            }
+        });
+        FutureTask<byte[]> running = rendering.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                rendering.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the chart to be rendered");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Returns the encoded chart if the cache holds it, or null otherwise.
+     * The lookup counts as a hit or a miss.
+     *
+     * @return the encoded chart, or null; the array must not be modified
+     */
+    public byte[] get(JAwesomeChart chart, ImageFormat format, RenderOptions options) {
+        Fingerprint fingerprint = chart.getFingerprint();
+        if (fingerprint == null) {
+            synchronized (this) {
+                uncacheableCount++;
+            }
+            return null;
+        }
+        return get(new Key(fingerprint, format, options), true);
+    }
+
+    /**
+     * Returns true if the cache holds the encoded chart, without counting a
+     * hit or a miss or affecting which images are evicted.
+     */
+    public boolean contains(JAwesomeChart chart, ImageFormat format, RenderOptions options) {
+        Fingerprint fingerprint = chart.getFingerprint();
+        if (fingerprint == null) {
+            return false;
+        }
+        Key key = new Key(fingerprint, format, options);
+        synchronized (this) {
+            // get() of the access-ordered map would count as a use:
+            return entries.containsKey(key);
+        }
+    }
+
+    /**
+     * Adds the encoded chart to the cache, e.g. after rendering it outside
+     * of {@link #render(JAwesomeChart, ImageFormat, RenderOptions)}. Images
+     * larger than the cache are not added.
+     *
+     * @param data the encoded chart; the array must not be modified
+     * afterwards
+     */
+    public void put(JAwesomeChart chart, ImageFormat format, RenderOptions options, byte[] data) {
+        Fingerprint fingerprint = chart.getFingerprint();
+        if (fingerprint == null) {
+            synchronized (this) {
+                uncacheableCount++;
+            }
+            return;
+        }
+        put(new Key(fingerprint, format, options), data);
+    }
+
+    private synchronized byte[] get(Key key, boolean count) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (count) {
+                missCount++;
+            }
+            return null;
+        }
+        if (count) {
+            hitCount++;
+        }
+        if (policy == EvictionPolicy.LFU) {
+            removeFrequency(entry);
+            entry.frequency++;
+            addFrequency(entry);
+        }
+        return entry.data;
+    }
+
+    private synchronized void put(Key key, byte[] data) {
+        if (data.length > maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(key, data);
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            size -= previous.data.length;
+            if (policy == EvictionPolicy.LFU) {
+                removeFrequency(previous);
+                entry.frequency = previous.frequency;
+            }
+        }
+        size += data.length;
+        if (policy == EvictionPolicy.LFU) {
+            addFrequency(entry);
+        }
+        while (size > maxBytes) {
+            evict(entry);
+        }
+    }
+
+    /**
+     * Evicts the least recently or least frequently used image other than
+     * <code>added</code>.
+     */
+    private void evict(Entry added) {
+        Entry victim;
+        if (policy == EvictionPolicy.LRU) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            victim = iterator.next();
+            if (victim == added) {
+                victim = iterator.next();
+            }
+        } else {
+            Iterator<Entry> iterator = frequencies.firstEntry().getValue().iterator();
+            victim = iterator.next();
+            if (victim == added) {
+                victim = iterator.hasNext() ? iterator.next()
+                        : frequencies.higherEntry(added.frequency).getValue().iterator().next();
+            }
+            removeFrequency(victim);
+        }
+        entries.remove(victim.key);
+        size -= victim.data.length;
+        evictionCount++;
+    }
+
+    private void addFrequency(Entry entry) {
+        LinkedHashSet<Entry> bucket = frequencies.get(entry.frequency);
+        if (bucket == null) {
+            bucket = new LinkedHashSet<Entry>();
+            frequencies.put(entry.frequency, bucket);
+        }
+        bucket.add(entry);
+    }
+
+    private void removeFrequency(Entry entry) {
+        LinkedHashSet<Entry> bucket = frequencies.get(entry.frequency);
+        bucket.remove(entry);
+        if (bucket.isEmpty()) {
+            frequencies.remove(entry.frequency);
+        }
+    }
+
+    private static byte[] encode(JAwesomeChart chart, ImageFormat format, RenderOptions options,
+            Semaphore permits, long timeout) throws IOException {
+        if (permits == null) {
+            return encode(chart, format, options);
+        }
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("No render permit became available within " + timeout + " ms");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a render permit");
+        }
+        try {
+            return encode(chart, format, options);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static byte[] encode(JAwesomeChart chart, ImageFormat format, RenderOptions options) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        chart.render(out, format, options);
+        return out.toByteArray();
+    }
+
+    /**
+     * Removes all the images from the cache. The statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        frequencies.clear();
+        size = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the total size, in bytes, of the images held.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of requests for charts that could not be
+     * fingerprinted, and so bypassed the cache.
+     */
+    public synchronized long getUncacheableCount() {
+        return uncacheableCount;
+    }
+
+    /**
+     * Returns the fraction of the lookups that were hits, or 0 if there
+     * were none.
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : hitCount / (double) lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d images, %.1f of %.1f MB, %d hits, %d misses (%.1f%% hits), %d evictions, %d uncacheable",
+                entries.size(), size / 1e6, maxBytes / 1e6, hitCount, missCount, 100 * getHitRatio(),
+                evictionCount, uncacheableCount);
+    }
+
+    private static final class Entry {
+
+        private final Key key;
+        private final byte[] data;
+        private long frequency;
+
+        Entry(Key key, byte[] data) {
+            this.key = key;
+            this.data = data;
+            this.frequency = 1;
+        }
+    }
+
+    /**
+     * The fingerprint of a chart and the settings that change its encoding.
+     * The thread count of the encoder does not change the output.
+     */
+    private static final class Key {
+
+        private final Fingerprint fingerprint;
+        private final ImageFormat format;
+        private final int compressionLevel;
+        private final PngEncoder.FilterStrategy filterStrategy;
+        private final int maxColors;
+
+        Key(Fingerprint fingerprint, ImageFormat format, RenderOptions options) {
+            this.fingerprint = fingerprint;
+            this.format = format;
+            if (options == null || format == ImageFormat.SVG) {
+                options = new RenderOptions();
+            }
+            this.compressionLevel = options.getCompressionLevel();
+            this.filterStrategy = options.getFilterStrategy();
+            this.maxColors = options.getMaxColors();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return fingerprint.equals(k.fingerprint) && format == k.format
+                    && compressionLevel == k.compressionLevel && filterStrategy == k.filterStrategy
+                    && maxColors == k.maxColors;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = fingerprint.hashCode();
+            hash = 31 * hash + format.hashCode();
+            hash = 31 * hash + compressionLevel;
+            hash = 31 * hash + (filterStrategy == null ? 0 : filterStrategy.hashCode());
+            hash = 31 * hash + maxColors;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart;
+
+import com.gmigdos.jawesomechart.io.ImageFormat;
+import com.gmigdos.jawesomechart.io.RenderOptions;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A chart to render by a {@link BatchRenderer}, with the format and the
+ * destination of its image.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class RenderJob {
+
+    /**
+     * Where the image of a job is written.
+     */
+    public interface Destination {
+
+        /**
+         * Returns the stream to write the image to, which the batch renderer
+         * closes once the image is written.
+         */
+        OutputStream open() throws IOException;
+    }
+    private final JAwesomeChart chart;
+    private final Destination destination;
+    private final ImageFormat format;
+    private final RenderOptions options;
+
+    /**
+     * Creates a job writing <code>chart</code> to <code>file</code>, as SVG
+     * if its name ends with ".svg" and as PNG otherwise, with the default
+     * settings.
+     */
+    public RenderJob(JAwesomeChart chart, File file) {
+        this(chart, file, file.getName().toLowerCase().endsWith("." + ImageFormat.SVG.getFileExtension())
+                ? ImageFormat.SVG : ImageFormat.PNG, null);
+    }
+
+    /**
+     * Creates a job writing <code>chart</code> to <code>file</code>, whose
+     * missing parent directories are created.
+     */
+    public RenderJob(JAwesomeChart chart, final File file, ImageFormat format, RenderOptions options) {
+        this(chart, new Destination() {
+            @Override
+            public OutputStream open() throws IOException {
+                return openFile(file);
+            }
+        }, format, options);
+    }
+
+    /**
+     * @param chart the chart to render
+     * @param destination where to write the image
+     * @param format the format of the image
+     * @param options the settings of the encoding, or null for the defaults
+     * of the batch renderer
+     */
+    public RenderJob(JAwesomeChart chart, Destination destination, ImageFormat format, RenderOptions options) {
+        if (chart == null || destination == null || format == null) {
+            throw new IllegalArgumentException("The chart, destination and format of a job must not be null");
+        }
+        this.chart = chart;
+        this.destination = destination;
+        this.format = format;
+        this.options = options;
+    }
+
+    /**
+     * Opens a buffered stream writing to <code>file</code>, creating its
+     * missing parent directories.
+     */
+    static OutputStream openFile(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        return new BufferedOutputStream(new FileOutputStream(file));
+    }
+
+    public JAwesomeChart getChart() {
+        return chart;
+    }
+
+    public Destination getDestination() {
+        return destination;
+    }
+
+    public ImageFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the settings of the encoding, or null for the defaults of the
+     * batch renderer.
+     */
+    public RenderOptions getOptions() {
+        return options;
+    }
+}
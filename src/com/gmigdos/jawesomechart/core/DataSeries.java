@@ -23,10 +23,20 @@
  */
 package com.gmigdos.jawesomechart.core;
 
+import com.gmigdos.jawesomechart.core.dataproviders.SimpleDataProvider;
+import com.gmigdos.jawesomechart.util.Fingerprint;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
+import com.gmigdos.jawesomechart.util.Fingerprintable;
+import com.gmigdos.jawesomechart.util.Observer;
 import com.gmigdos.jawesomechart.util.StringsProvider;
+import com.gmigdos.jawesomechart.util.Subject;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -34,10 +44,17 @@ import java.util.Collections;
  * 
  * @author Georgios Migdos <cyberpython@gmail.com>
  */
-public class DataSeries extends ArrayList<DataSeriesDataProvider> {
+public class DataSeries extends ArrayList<DataSeriesDataProvider> implements Fingerprintable {
     
     private String name;
     private Color seriesColor;
+    private transient Fingerprint fingerprint;
+    private transient boolean fingerprintComputed;
+    private transient int fingerprintModCount;
+    private transient Observer valueObserver;
+    private transient boolean providersObserved;
+    private transient int observedModCount;
+    private transient int replacementCount;
     
     private final static Color DEFAULT_COLOR = new Color(220, 36, 0);
     private static int count = 1;
@@ -82,6 +99,7 @@ public class DataSeries extends ArrayList<DataSeriesDataProvider> {
      */
     public void setName(String name) {
         this.name = name;
+        invalidateFingerprint();
     }
 
     /**
@@ -102,6 +120,7 @@ public class DataSeries extends ArrayList<DataSeriesDataProvider> {
         }else{
             this.seriesColor = DEFAULT_COLOR;
         }
+        invalidateFingerprint();
     }
     
     /**
@@ -140,6 +159,186 @@ public class DataSeries extends ArrayList<DataSeriesDataProvider> {
             return null;
         }
     }
-    
-    
+
+    /**
+     * Replaces the element at the specified position in this list.
+     */
+    @Override
+    public DataSeriesDataProvider set(int index, DataSeriesDataProvider element) {
+        DataSeriesDataProvider previous = super.set(index, element);
+        // Unlike the other changes, replacing an element leaves modCount as
+        // it is:
+        synchronized (this) {
+            providersObserved = false;
+            fingerprintComputed = false;
+            replacementCount++;
+        }
+        if (previous != element) {
+            stopObserving(Collections.singletonList(previous));
+        }
+        return previous;
+    }
+
+    @Override
+    public DataSeriesDataProvider remove(int index) {
+        DataSeriesDataProvider removed = super.remove(index);
+        stopObserving(Collections.singletonList(removed));
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!super.remove(o)) {
+            return false;
+        }
+        if (o instanceof DataSeriesDataProvider) {
+            stopObserving(Collections.singletonList((DataSeriesDataProvider) o));
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        List<DataSeriesDataProvider> removed = new ArrayList<DataSeriesDataProvider>(this);
+        super.clear();
+        stopObserving(removed);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return removeAll(c, true);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return removeAll(c, false);
+    }
+
+    private boolean removeAll(Collection<?> c, boolean contained) {
+        List<DataSeriesDataProvider> removed = new ArrayList<DataSeriesDataProvider>();
+        for (DataSeriesDataProvider dp : this) {
+            if (c.contains(dp) == contained) {
+                removed.add(dp);
+            }
+        }
+        boolean changed = contained ? super.removeAll(c) : super.retainAll(c);
+        stopObserving(removed);
+        return changed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        List<DataSeriesDataProvider> removed = new ArrayList<DataSeriesDataProvider>(subList(fromIndex, toIndex));
+        super.removeRange(fromIndex, toIndex);
+        stopObserving(removed);
+    }
+
+    /**
+     * Unregisters this series from the data providers removed from it, so
+     * they do not keep it from being garbage collected. Providers still in
+     * the series, e.g. added twice, stay observed.
+     */
+    private synchronized void stopObserving(List<DataSeriesDataProvider> removed) {
+        if (valueObserver == null || removed.isEmpty()) {
+            return;
+        }
+        Set<DataSeriesDataProvider> unused = Collections.newSetFromMap(new IdentityHashMap<DataSeriesDataProvider, Boolean>());
+        for (DataSeriesDataProvider dp : removed) {
+            if (dp != null) {
+                unused.add(dp);
+            }
+        }
+        for (DataSeriesDataProvider dp : this) {
+            unused.remove(dp);
+        }
+        for (DataSeriesDataProvider dp : unused) {
+            dp.deleteObserver(valueObserver);
+        }
+    }
+
+    /**
+     * Returns a number that changes whenever data providers are added to,
+     * removed from or replaced in this series, but not when their values
+     * change.
+     */
+    public synchronized int getStructureVersion() {
+        return modCount + replacementCount;
+    }
+
+    /**
+     * Returns a fingerprint of the name, the color and the values of this
+     * series.
+     * 
+     * The fingerprint is kept until the series changes, so charts with long
+     * series are fingerprinted without hashing all their values every time.
+     * To notice the values changing, the series registers itself as an
+     * observer of its data providers, and unregisters itself from the ones
+     * removed from it.
+     * 
+     * @return the fingerprint of the series, or null if one of its data
+     * providers is neither a {@link SimpleDataProvider} nor
+     * {@link Fingerprintable}
+     */
+    public synchronized Fingerprint getFingerprint() {
+        if (fingerprintComputed && fingerprintModCount == modCount) {
+            return fingerprint;
+        }
+        if (valueObserver == null) {
+            valueObserver = new Observer() {
+                @Override
+                public void update(Subject sender, Object o) {
+                    invalidateFingerprint();
+                }
+            };
+        }
+        // Values changing do not change which providers to observe:
+        boolean observe = !providersObserved || observedModCount != modCount;
+        FingerprintBuilder builder = new FingerprintBuilder();
+        builder.add(name);
+        builder.add(seriesColor);
+        builder.add(size());
+        for (DataSeriesDataProvider dp : this) {
+            if (dp == null) {
+                builder.addObject(null);
+                continue;
+            }
+            if (observe) {
+                // Registered once, however many times the values are hashed:
+                dp.deleteObserver(valueObserver);
+                dp.addObserver(valueObserver);
+            }
+            if (dp instanceof SimpleDataProvider) {
+                Double value = dp.getDataValue();
+                if (value == null) {
+                    builder.add(false);
+                } else {
+                    builder.add(value.doubleValue());
+                }
+            } else {
+                // The text of other providers need not follow from their
+                // values:
+                builder.addObject(dp);
+            }
+        }
+        fingerprint = builder.build();
+        fingerprintComputed = true;
+        fingerprintModCount = modCount;
+        providersObserved = true;
+        observedModCount = modCount;
+        return fingerprint;
+    }
+
+    private synchronized void invalidateFingerprint() {
+        fingerprintComputed = false;
+    }
+
+    @Override
+    public void addFingerprint(FingerprintBuilder builder) {
+        Fingerprint f = getFingerprint();
+        if (f == null) {
+            builder.addUnknown();
+        } else {
+            builder.add(f);
+        }
+    }
 }
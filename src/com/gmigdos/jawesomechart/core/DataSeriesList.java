@@ -216,6 +216,66 @@ public class DataSeriesList extends ArrayList<DataSeries>{
         return min;
     }
     
+    /**
+     * Returns a reduced copy of this list, for quick previews of large data
+     * sets, in which no series is longer than <code>maxLength</code>.
+     * 
+     * The positions of the longest series are split in maxLength / 2 buckets
+     * of consecutive positions, shared by all series, and the lowest and the
+     * highest entry of each bucket are kept in their original order. The
+     * range of the values and the envelope of lines are thus preserved. The
+     * entries of the copy are the ones of this list, not copies.
+     * 
+     * @param maxLength the maximum length of the series of the copy, at least 2
+     * @return the reduced copy, or this list if no series is longer than
+     * <code>maxLength</code>
+     */
+    public DataSeriesList downsample(int maxLength){
+        int length = getMaxDataSeriesLength();
+        if(length<=maxLength){
+            return this;
+        }
+        int buckets = Math.max(maxLength / 2, 1);
+        DataSeriesList result = new DataSeriesList();
+        for (DataSeries series : this) {
+            DataSeries reduced = new DataSeries(series.getName(), series.getSeriesColor());
+            for (int b = 0; b < buckets; b++) {
+                int start = getBucketStart(b, buckets, length);
+                int end = Math.min(getBucketStart(b + 1, buckets, length), series.size());
+                if(start>=end){
+                    break;
+                }
+                int low = -1;
+                int high = -1;
+                for (int i = start; i < end; i++) {
+                    DataSeriesDataProvider dp = series.get(i);
+                    if(dp!=null && dp.getDataValue()!=null){
+                        if(low<0 || dp.getDataValue()<series.get(low).getDataValue()){
+                            low = i;
+                        }
+                        if(high<0 || dp.getDataValue()>series.get(high).getDataValue()){
+                            high = i;
+                        }
+                    }
+                }
+                reduced.add(low<0 ? null : series.get(Math.min(low, high)));
+                reduced.add(low<0 ? null : series.get(Math.max(low, high)));
+            }
+            result.add(reduced);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the first position of a bucket, when <code>length</code>
+     * positions are split in <code>buckets</code> buckets.
+     * 
+     * @see #downsample(int)
+     */
+    static int getBucketStart(int bucket, int buckets, int length){
+        return (int) ((long) bucket * length / buckets);
+    }
+    
     /**
      * Returns the longest series name in this list.
      * @return the longest series name in this list
@@ -23,6 +23,9 @@
  */
 package com.gmigdos.jawesomechart.core;
 
+import com.gmigdos.jawesomechart.util.Fingerprint;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
+import com.gmigdos.jawesomechart.util.Fingerprintable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,7 +33,10 @@ import java.util.List;
  * {@link List} of {@link String}s to be used as labels for the chart's x-axis.
  * @author Georgios Migdos <cyberpython@gmail.com>
  */
-public class Labels extends ArrayList<String> {
+public class Labels extends ArrayList<String> implements Fingerprintable {
+    
+    private transient Fingerprint fingerprint;
+    private transient int fingerprintModCount;
     
     /**
      * Returns the longest String in this List.
@@ -49,6 +55,29 @@ public class Labels extends ArrayList<String> {
         return result;
     }
     
+    /**
+     * Returns the labels matching the entries of a {@link DataSeriesList}
+     * reduced by {@link DataSeriesList#downsample(int)}: the label of the
+     * first position of each bucket, followed by a null label.
+     * 
+     * @param length the length of the longest series before reduction
+     * @param maxLength the maximum length passed to
+     * {@link DataSeriesList#downsample(int)}
+     * @return the reduced labels, or this list if no reduction takes place
+     */
+    public Labels downsample(int length, int maxLength){
+        if(length<=maxLength){
+            return this;
+        }
+        int buckets = Math.max(maxLength / 2, 1);
+        Labels result = new Labels();
+        for (int b = 0; b < buckets; b++) {
+            result.add(get(DataSeriesList.getBucketStart(b, buckets, length)));
+            result.add(null);
+        }
+        return result;
+    }
+    
     /**
      * Returns the element at the specified position in this list.
      * 
@@ -64,5 +93,34 @@ public class Labels extends ArrayList<String> {
             return null;
         }
     }
-    
+
+    /**
+     * Replaces the element at the specified position in this list.
+     */
+    @Override
+    public String set(int index, String element) {
+        fingerprint = null;
+        return super.set(index, element);
+    }
+
+    /**
+     * Returns a fingerprint of the labels, kept until the list changes.
+     */
+    public synchronized Fingerprint getFingerprint() {
+        if (fingerprint == null || fingerprintModCount != modCount) {
+            FingerprintBuilder builder = new FingerprintBuilder();
+            builder.add(size());
+            for (String label : this) {
+                builder.add(label);
+            }
+            fingerprint = builder.build();
+            fingerprintModCount = modCount;
+        }
+        return fingerprint;
+    }
+
+    @Override
+    public void addFingerprint(FingerprintBuilder builder) {
+        builder.add(getFingerprint());
+    }
 }
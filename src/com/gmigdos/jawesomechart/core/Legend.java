@@ -24,16 +24,22 @@
 package com.gmigdos.jawesomechart.core;
 
 import com.gmigdos.jawesomechart.util.Context2D;
-import com.gmigdos.jawesomechart.util.Utilities;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
+import com.gmigdos.jawesomechart.util.Fingerprintable;
+import com.gmigdos.jawesomechart.util.StringsProvider;
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  *
  * @author Georgios Migdos <cyberpython@gmail.com>
  */
-public class Legend {
+public class Legend implements Fingerprintable {
 
     public enum LegendPosition {
 
@@ -43,6 +49,8 @@ public class Legend {
     private static final double DEFAULT_VERTICAL_GAP = 5.0;
     private final static double DEFAULT_PADDING_VERTICAL = 10.0;
     private final static double DEFAULT_PADDING_HORIZONTAL = 10.0;
+    private final static int MAX_MEASURED_FONTS = 4;
+    private final static int MEASURED_NAMES_SLACK = 64;
     private LegendPosition position;
     private double height;
     private double leftOrRightWidth;
@@ -61,6 +69,12 @@ public class Legend {
     private Color textColor;
     private double markerDimension;
     private Context2D context;
+    private double maxHeight;
+    private boolean pagingOn;
+    private int firstVisibleEntry;
+    private LegendLayout layout;
+    private Object measurementKey;
+    private final Map<Font, NameMeasurements> measurements;
 
     public Legend(double leftOrRightWidth, double topOrBottomWidth, DataSeriesList series) {
         this(LegendPosition.LEGEND_POSITION_BOTTOM, leftOrRightWidth, topOrBottomWidth, series);
@@ -84,6 +98,10 @@ public class Legend {
         this.leftOrRightWidth = leftOrRightWidth;
         this.topOrBottomWidth = topOrBottomWidth;
         this.markerDimension = 0;
+        this.maxHeight = Double.POSITIVE_INFINITY;
+        this.pagingOn = false;
+        this.firstVisibleEntry = 0;
+        this.measurements = new HashMap<Font, NameMeasurements>();
         updateSize();
     }
 
@@ -92,10 +110,104 @@ public class Legend {
     }
 
     public void setContext(Context2D context) {
+        setContext(context, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Sets the context the legend is measured and drawn on and the height
+     * it may take, which only limits a paged legend.
+     * 
+     * @param context the context to draw on
+     * @param maxHeight the height available to the legend
+     */
+    public void setContext(Context2D context, double maxHeight) {
         this.context = context;
+        this.maxHeight = maxHeight;
         updateSize();
     }
 
+    public boolean isPagingOn() {
+        return pagingOn;
+    }
+
+    /**
+     * Enables or disables paging. A paged legend lays out and measures only
+     * the entries, from {@link #getFirstVisibleEntry()} on, that fit in the
+     * height available to it, and ends with an entry counting the series
+     * left out, e.g. "+1234 more". Its cost depends on the number of visible
+     * entries, not on the number of series, so it suits charts with
+     * thousands of series. Interactive views show the other entries with
+     * {@link #nextPage()}, {@link #previousPage()} or
+     * {@link #scrollBy(int)}.
+     * 
+     * @param pagingOn whether to page the legend
+     */
+    public void setPagingOn(boolean pagingOn) {
+        this.pagingOn = pagingOn;
+    }
+
+    public int getFirstVisibleEntry() {
+        return firstVisibleEntry;
+    }
+
+    /**
+     * Sets the index of the first series shown by a paged legend.
+     * 
+     * @param firstVisibleEntry the index of the series, limited to the
+     * series of the legend when it is laid out
+     */
+    public void setFirstVisibleEntry(int firstVisibleEntry) {
+        this.firstVisibleEntry = Math.max(firstVisibleEntry, 0);
+    }
+
+    /**
+     * Returns the number of series shown by the legend when it was last laid
+     * out: all of them unless it is paged.
+     */
+    public int getVisibleEntryCount() {
+        LegendLayout current = layout;
+        if (current == null) {
+            return 0;
+        }
+        return current.paged ? current.visibleEntryCount : current.names.length;
+    }
+
+    public boolean hasNextPage() {
+        return pagingOn && firstVisibleEntry + getVisibleEntryCount() < series.size();
+    }
+
+    public boolean hasPreviousPage() {
+        return pagingOn && firstVisibleEntry > 0;
+    }
+
+    /**
+     * Shows the entries after the visible ones. Takes effect on the next
+     * draw.
+     */
+    public void nextPage() {
+        if (hasNextPage()) {
+            firstVisibleEntry += Math.max(getVisibleEntryCount(), 1);
+        }
+    }
+
+    /**
+     * Shows the entries before the visible ones, as many as are visible now.
+     * Takes effect on the next draw.
+     */
+    public void previousPage() {
+        setFirstVisibleEntry(firstVisibleEntry - Math.max(getVisibleEntryCount(), 1));
+    }
+
+    /**
+     * Moves the entries of a paged legend by <code>entries</code> series,
+     * towards the last series if positive. Takes effect on the next draw.
+     * 
+     * @param entries the number of series to scroll by
+     */
+    public void scrollBy(int entries) {
+        setFirstVisibleEntry(Math.min(firstVisibleEntry + entries, Math.max(series.size() - 1, 0)));
+    }
+
     public LegendPosition getPosition() {
         return position;
     }
@@ -108,68 +220,411 @@ public class Legend {
         return (position.equals(LegendPosition.LEGEND_POSITION_LEFT) || position.equals(LegendPosition.LEGEND_POSITION_RIGHT));
     }
 
+    /**
+     * Measures the legend on the context: fits the font to the width of the
+     * legend and computes the height and the positions of the entries. The
+     * result is kept and reused while the font, the settings, the series
+     * names and the way the context measures text do not change. Names are
+     * measured once per font, so adding, removing or renaming a series only
+     * measures the names that are new.
+     */
     private void updateSize() {
+        if (context == null) {
+            return;
+        }
+        Object measurementKey = context.getTextMeasurementKey();
+        LegendLayout current = layout;
+        if (pagingOn) {
+            firstVisibleEntry = Math.min(firstVisibleEntry, Math.max(series.size() - 1, 0));
+            if (current == null || !current.isValidFor(measurementKey, font, this)
+                    || !current.paged || !current.hasPageOf(this)) {
+                current = createPagedLayout(measurementKey);
+                layout = current;
+            }
+            // The font is fitted to the entries of the page only, so it is
+            // not kept for the next pages:
+            markerDimension = current.markerDimension;
+            height = current.height;
+            context.setFont(current.fittedFont);
+            return;
+        }
+        String[] names = getSeriesNames();
+        if (current == null || !current.isValidFor(measurementKey, font, this)
+                || current.paged || !Arrays.equals(current.names, names)) {
+            current = createLayout(measurementKey, names);
+            layout = current;
+        }
+        markerDimension = current.markerDimension;
+        height = current.height;
+        font = current.fittedFont;
+        context.setFont(font);
+    }
+
+    private String[] getSeriesNames() {
+        String[] names = new String[series.size()];
+        int i = 0;
+        for (DataSeries dataSeries : series) {
+            names[i++] = dataSeries.getName();
+        }
+        return names;
+    }
+
+    private LegendLayout createLayout(Object measurementKey, String[] names) {
+        if (!measurementKey.equals(this.measurementKey)) {
+            measurements.clear();
+            this.measurementKey = measurementKey;
+        }
+
+        LegendLayout result = new LegendLayout(measurementKey, font, this);
+        result.names = names;
+        NameMeasurements inputFontMeasurements = getMeasurements(font, names.length);
         double width;
+        double height;
         
+        context.setFont(font);
+        String longestName = inputFontMeasurements.getWidestName(context, names);
         if (isPlacedOnLeftOrRight()) {
             width = this.leftOrRightWidth;
-            if (context != null) {
-
-                context.setFont(font);
-                String longestName = Utilities.calculateWidestSeriesName(context, series);
-                context.adjustFontSizeToFitTextInWidth(longestName, width - 2 * paddingHorizontal - horizontalGap);
-                markerDimension = context.getStandardLineHeight();
-                context.adjustFontSizeToFitTextInWidth(longestName, width - 2 * paddingHorizontal - horizontalGap - markerDimension);
-                markerDimension = context.getStandardLineHeight();
-                height = series.size() * (markerDimension + verticalGap) + 2 * paddingVertical;
-                font = context.getFont();
+            context.adjustFontSizeToFitTextInWidth(longestName, width - 2 * paddingHorizontal - horizontalGap);
+            double markerDimension = context.getStandardLineHeight();
+            context.adjustFontSizeToFitTextInWidth(longestName, width - 2 * paddingHorizontal - horizontalGap - markerDimension);
+            markerDimension = context.getStandardLineHeight();
+            height = names.length * (markerDimension + verticalGap) + 2 * paddingVertical;
+            result.fittedFont = context.getFont();
+            result.markerDimension = markerDimension;
+            result.markers = new Rectangle2D[names.length];
+            for (int i = 0; i < names.length; i++) {
+                result.markers[i] = new Rectangle2D.Double(paddingHorizontal, paddingVertical + i * (markerDimension + verticalGap), markerDimension, markerDimension);
             }
         } else {
             width = topOrBottomWidth;
-            if (context != null) {
-                context.setFont(font);
-                String longestName = Utilities.calculateWidestSeriesName(context, series);
-
-                double maxLineWidth = width - 2 * paddingHorizontal;
-                double totalHeight = paddingVertical;
+            double maxLineWidth = width - 2 * paddingHorizontal;
+            double totalHeight = paddingVertical;
+            double markerDimension = context.getStandardLineHeight();
+            double currentWidthSum = 0;
+            double currentLineMaxHeight = 0;
+
+            double entryWidth = markerDimension + horizontalGap + inputFontMeasurements.getWidth(context, longestName);
+            if (entryWidth > maxLineWidth) {
+                context.adjustFontSizeToFitTextInWidth("   " + longestName, width - 2 * paddingHorizontal);
                 markerDimension = context.getStandardLineHeight();
-                double currentWidthSum = 0;
-                double currentLineMaxHeight = 0;
+            }
+            Font fittedFont = context.getFont();
+            NameMeasurements fittedFontMeasurements = getMeasurements(fittedFont, names.length);
+            String name;
+            boolean first = true;
+            for (int i = 0; i < names.length; i++) {
+                name = names[i];
+                if (name != null) {
+                    if (first) {
+                        first = false;
+                        totalHeight += inputFontMeasurements.getLineHeight(context, name) + verticalGap;
+                    }
+                    entryWidth = markerDimension + horizontalGap + fittedFontMeasurements.getWidth(context, name);
+                    currentWidthSum += entryWidth;
+                    currentLineMaxHeight = Math.max(inputFontMeasurements.getLineHeight(context, name), currentLineMaxHeight);
+                    if (currentWidthSum > maxLineWidth) {
+                        totalHeight += currentLineMaxHeight;
+                        if (i + 1 < names.length) {
+                            totalHeight += verticalGap;
+                        }
+                        currentWidthSum = entryWidth;
+                    }
+                    currentWidthSum += 4 * horizontalGap;
+                }
+            }
+            totalHeight += paddingVertical;
+            height = totalHeight;
+            result.fittedFont = fittedFont;
+            result.markerDimension = markerDimension;
+            layOutEntries(result, fittedFontMeasurements, maxLineWidth);
+        }
+        result.height = height;
+        return result;
+    }
 
-                double entryWidth = markerDimension + horizontalGap + context.calculateStringWidth(longestName);
-                if (entryWidth > maxLineWidth) {
-                    context.adjustFontSizeToFitTextInWidth("   " + longestName, width - 2 * paddingHorizontal);
-                    markerDimension = context.getStandardLineHeight();
+    /**
+     * Places the markers and the names of the entries of a legend on top or
+     * at the bottom of the chart, where entries flow in lines, as drawn with
+     * the fitted font.
+     */
+    private void layOutEntries(LegendLayout result, NameMeasurements fittedFontMeasurements, double maxLineWidth) {
+        String[] names = result.names;
+        double markerDimension = result.markerDimension;
+        result.markers = new Rectangle2D[names.length];
+        result.textX = new double[names.length];
+        result.textY = new double[names.length];
+        context.setFont(result.fittedFont);
+        double moveTextVerticallyBy = context.getFontMetrics().getDescent();
+        double currentY = paddingVertical;
+        double currentWidthSum = 0;
+        double currentX = paddingHorizontal;
+        double currentLineMaxHeight = 0;
+        double entryWidth;
+        String name;
+        for (int i = 0; i < names.length; i++) {
+            name = names[i];
+            if (name != null) {
+                entryWidth = markerDimension + horizontalGap + fittedFontMeasurements.getWidth(context, name);
+                currentWidthSum += entryWidth;
+                if (currentWidthSum > maxLineWidth) {
+                    currentY += currentLineMaxHeight + verticalGap;
+                    currentWidthSum = entryWidth;
+                    currentX = paddingHorizontal;
                 }
-                String name;
-                boolean first = true;
-                for (Iterator<DataSeries> it = series.iterator(); it.hasNext();) {
-                    DataSeries dataSeries = it.next();
-                    name = dataSeries.getName();
-                    if (name != null) {
-                        if(first){
-                            first = false;
-                            totalHeight += context.getLineHeight(font, name)+verticalGap;
-                        }
-                        entryWidth = markerDimension + horizontalGap + context.calculateStringWidth(name);
-                        currentWidthSum += entryWidth;
-                        currentLineMaxHeight = Math.max(context.getLineHeight(font, name), currentLineMaxHeight);
-                        if (currentWidthSum > maxLineWidth) {
-                            totalHeight += currentLineMaxHeight;
-                            if(it.hasNext()){
-                                totalHeight += verticalGap;
-                            }
-                            currentWidthSum = entryWidth;
+                result.markers[i] = new Rectangle2D.Double(currentX, currentY, markerDimension, markerDimension);
+                result.textX[i] = currentX + markerDimension + horizontalGap;
+                result.textY[i] = currentY + markerDimension - moveTextVerticallyBy;
+
+                currentLineMaxHeight = Math.max(fittedFontMeasurements.getLineHeight(context, name), currentLineMaxHeight);
+                currentX += entryWidth + 4 * horizontalGap;
+                currentWidthSum += 4 * horizontalGap;
+            }
+        }
+    }
+
+    /**
+     * Lays out a paged legend: the entries from the first visible one that
+     * fit in the available height, followed by an entry counting the series
+     * after them, if any. Only the names of these entries are measured.
+     */
+    private LegendLayout createPagedLayout(Object measurementKey) {
+        if (!measurementKey.equals(this.measurementKey)) {
+            measurements.clear();
+            this.measurementKey = measurementKey;
+        }
+        LegendLayout result = new LegendLayout(measurementKey, font, this);
+        result.paged = true;
+        result.firstEntry = firstVisibleEntry;
+        result.seriesCount = series.size();
+        result.maxHeight = maxHeight;
+        if (isPlacedOnLeftOrRight()) {
+            layOutPagedColumn(result);
+        } else {
+            NameMeasurements inputFontMeasurements = getMeasurements(font, series.size());
+            context.setFont(font);
+            double maxLineWidth = topOrBottomWidth - 2 * paddingHorizontal;
+            String widest = layOutPagedLines(result, inputFontMeasurements, maxLineWidth);
+            if (widest != null) {
+                // An entry is wider than the legend: fit the font to it and
+                // lay out the page again.
+                context.adjustFontSizeToFitTextInWidth("   " + widest, maxLineWidth);
+                Font fittedFont = context.getFont();
+                layOutPagedLines(result, getMeasurements(fittedFont, series.size()), maxLineWidth);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lays out a page of a legend on the left or the right of the chart, one
+     * entry per row, with the font fitted to the widest visible name.
+     */
+    private void layOutPagedColumn(LegendLayout result) {
+        int first = result.firstEntry;
+        int remaining = result.seriesCount - first;
+        context.setFont(font);
+        double rowHeight = context.getStandardLineHeight() + verticalGap;
+        int rows = Math.max((int) Math.floor((maxHeight - 2 * paddingVertical) / rowHeight), 1);
+        int visible = Math.min(remaining, rows);
+        if (remaining > rows && rows > 1) {
+            // Keep the last row for the summary:
+            visible = rows - 1;
+        }
+        result.visibleEntryCount = visible;
+        result.names = getSeriesNames(first, Math.min(remaining, visible + 1));
+        if (first + visible < result.seriesCount) {
+            result.summary = String.format(StringsProvider.LEGEND_MORE_ENTRIES, result.seriesCount - first - visible);
+        }
+
+        NameMeasurements inputFontMeasurements = getMeasurements(font, result.seriesCount);
+        String longestName = inputFontMeasurements.getWidestName(context, Arrays.copyOf(result.names, visible));
+        if (result.summary != null && inputFontMeasurements.getWidth(context, result.summary) > inputFontMeasurements.getWidth(context, longestName)) {
+            longestName = result.summary;
+        }
+        double width = leftOrRightWidth;
+        context.adjustFontSizeToFitTextInWidth(longestName, width - 2 * paddingHorizontal - horizontalGap);
+        double markerDimension = context.getStandardLineHeight();
+        context.adjustFontSizeToFitTextInWidth(longestName, width - 2 * paddingHorizontal - horizontalGap - markerDimension);
+        markerDimension = context.getStandardLineHeight();
+        result.fittedFont = context.getFont();
+        result.markerDimension = markerDimension;
+        result.markers = new Rectangle2D[visible];
+        result.textX = new double[visible];
+        result.textY = new double[visible];
+        for (int i = 0; i < visible; i++) {
+            double y = paddingVertical + i * (markerDimension + verticalGap);
+            result.markers[i] = new Rectangle2D.Double(paddingHorizontal, y, markerDimension, markerDimension);
+            result.textX[i] = paddingHorizontal + markerDimension + horizontalGap;
+            result.textY[i] = y + markerDimension / 2;
+        }
+        int shownRows = visible;
+        if (result.summary != null) {
+            result.summaryX = paddingHorizontal + markerDimension + horizontalGap;
+            result.summaryY = paddingVertical + visible * (markerDimension + verticalGap) + markerDimension / 2;
+            shownRows++;
+        }
+        result.textAlignment = Context2D.VERTICAL_ALIGN_MIDDLE;
+        result.height = shownRows * (markerDimension + verticalGap) + 2 * paddingVertical;
+    }
+
+    /**
+     * Lays out a page of a legend on top or at the bottom of the chart, with
+     * entries flowing in lines, in the font of <code>nameMeasurements</code>.
+     * 
+     * @return the widest name of an entry that is wider than a line, if the
+     * font has to be fitted, else null
+     */
+    private String layOutPagedLines(LegendLayout result, NameMeasurements nameMeasurements, double maxLineWidth) {
+        int first = result.firstEntry;
+        int count = result.seriesCount;
+        Font entryFont = nameMeasurements.font;
+        context.setFont(entryFont);
+        double markerDimension = context.getStandardLineHeight();
+        double moveTextVerticallyBy = context.getFontMetrics().getDescent();
+        boolean fitted = !entryFont.equals(font);
+
+        List<Rectangle2D> markers = new ArrayList<Rectangle2D>();
+        double[] entryX = new double[16];
+        double[] entryY = new double[16];
+        double[] lineHeights = new double[16];
+        String widest = null;
+        double widestWidth = 0;
+        double currentX = paddingHorizontal;
+        double currentY = paddingVertical;
+        double currentLineMaxHeight = 0;
+        int visible = 0;
+        int examined = 0;
+        while (first + visible < count) {
+            String name = series.get(first + visible).getName();
+            examined = visible + 1;
+            if (name != null) {
+                double entryWidth = markerDimension + horizontalGap + nameMeasurements.getWidth(context, name);
+                if (entryWidth > maxLineWidth) {
+                    if (!fitted) {
+                        if (entryWidth > widestWidth) {
+                            widest = name;
+                            widestWidth = entryWidth;
                         }
-                        currentWidthSum += 4*horizontalGap;
-                        
+                    } else {
+                        break;
                     }
                 }
-                font = context.getFont();
-                totalHeight += paddingVertical;
-                height = totalHeight;
+                double lineHeight = nameMeasurements.getLineHeight(context, name);
+                double x = currentX;
+                double y = currentY;
+                double lineMaxHeight = Math.max(currentLineMaxHeight, lineHeight);
+                if (x > paddingHorizontal && x + entryWidth > paddingHorizontal + maxLineWidth) {
+                    y += currentLineMaxHeight + verticalGap;
+                    x = paddingHorizontal;
+                    lineMaxHeight = lineHeight;
+                }
+                if (visible > 0 && y + lineMaxHeight + verticalGap + paddingVertical > maxHeight) {
+                    break;
+                }
+                currentX = x;
+                currentY = y;
+                currentLineMaxHeight = lineMaxHeight;
+                markers.add(new Rectangle2D.Double(currentX, currentY, markerDimension, markerDimension));
+                currentX += entryWidth + 4 * horizontalGap;
+            } else {
+                markers.add(null);
+            }
+            if (visible == entryX.length) {
+                entryX = Arrays.copyOf(entryX, 2 * visible);
+                entryY = Arrays.copyOf(entryY, 2 * visible);
+                lineHeights = Arrays.copyOf(lineHeights, 2 * visible);
+            }
+            entryX[visible] = currentX;
+            entryY[visible] = currentY;
+            lineHeights[visible] = currentLineMaxHeight;
+            visible++;
+        }
+        if (widest != null) {
+            return widest;
+        }
+
+        // Make room for the summary after the last visible entry, dropping
+        // entries if needed:
+        String summary = null;
+        double summaryX = 0;
+        double summaryY = 0;
+        double bottom = currentY + currentLineMaxHeight;
+        while (first + visible < count) {
+            summary = String.format(StringsProvider.LEGEND_MORE_ENTRIES, count - first - visible);
+            double summaryWidth = nameMeasurements.getWidth(context, summary);
+            double summaryHeight = nameMeasurements.getLineHeight(context, summary);
+            double x = (visible > 0) ? entryX[visible - 1] : paddingHorizontal;
+            double y = (visible > 0) ? entryY[visible - 1] : paddingVertical;
+            double lineMaxHeight = (visible > 0) ? Math.max(lineHeights[visible - 1], summaryHeight) : summaryHeight;
+            if (x > paddingHorizontal && x + summaryWidth > paddingHorizontal + maxLineWidth) {
+                y += ((visible > 0) ? lineHeights[visible - 1] : 0) + verticalGap;
+                x = paddingHorizontal;
+                lineMaxHeight = summaryHeight;
+            }
+            if (visible == 0 || y + lineMaxHeight + verticalGap + paddingVertical <= maxHeight) {
+                summaryX = x;
+                summaryY = y;
+                bottom = y + lineMaxHeight;
+                break;
+            }
+            visible--;
+            markers.remove(visible);
+        }
+
+        result.fittedFont = entryFont;
+        result.markerDimension = markerDimension;
+        result.visibleEntryCount = visible;
+        result.names = getSeriesNames(first, Math.max(examined, visible));
+        result.markers = markers.toArray(new Rectangle2D[visible]);
+        result.textX = new double[visible];
+        result.textY = new double[visible];
+        for (int i = 0; i < visible; i++) {
+            Rectangle2D marker = result.markers[i];
+            if (marker != null) {
+                result.textX[i] = marker.getX() + markerDimension + horizontalGap;
+                result.textY[i] = marker.getY() + markerDimension - moveTextVerticallyBy;
+            }
+        }
+        result.summary = summary;
+        if (summary != null) {
+            result.summaryX = summaryX;
+            result.summaryY = summaryY + markerDimension - moveTextVerticallyBy;
+        } else if (visible > 0) {
+            bottom = entryY[visible - 1] + lineHeights[visible - 1];
+        }
+        result.textAlignment = Context2D.VERTICAL_ALIGN_BASELINE;
+        // As in an unpaged legend, the last line is followed by a gap:
+        result.height = bottom + verticalGap + paddingVertical;
+        return null;
+    }
+
+    private String[] getSeriesNames(int first, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = series.get(first + i).getName();
+        }
+        return names;
+    }
+
+    /**
+     * Returns the measurements of names in <code>font</code>. They are
+     * forgotten once they hold many more names than there are series, e.g.
+     * after many renames, to bound their size.
+     */
+    private NameMeasurements getMeasurements(Font font, int seriesCount) {
+        NameMeasurements result = measurements.get(font);
+        if (result != null && result.size() > 2 * seriesCount + MEASURED_NAMES_SLACK) {
+            result = null;
+        }
+        if (result == null) {
+            if (measurements.size() >= MAX_MEASURED_FONTS && !measurements.containsKey(font)) {
+                measurements.clear();
             }
+            result = new NameMeasurements(font);
+            measurements.put(font, result);
         }
+        return result;
     }
 
     public double getHeight() {
@@ -227,14 +682,6 @@ public class Legend {
 
     public void draw() {
         if (context != null) {
-            double width;
-            
-            if(isPlacedOnLeftOrRight()){
-                width = this.leftOrRightWidth;
-            }else{
-                width = this.topOrBottomWidth;
-            }
-            
             Rectangle2D legendArea = new Rectangle2D.Double(0, 0, getWidth(), getHeight());
             context.setStroke(legendBorder);
             context.setPaint(legendBackground);
@@ -243,14 +690,14 @@ public class Legend {
             context.draw(legendArea);
             
             updateSize();
-            context.setFont(font);
-            double moveTextVerticallyBy = context.getFontMetrics().getDescent();
-            Rectangle2D marker;
-            if (isPlacedOnLeftOrRight()) {                
+            LegendLayout current = layout;
+            if (current.paged) {
+                drawPage(current);
+            } else if (isPlacedOnLeftOrRight()) {                
                 int i = 0;
                 for (DataSeries dataSeries : series) {
 
-                    marker = new Rectangle2D.Double(paddingHorizontal, paddingVertical + i * (markerDimension + verticalGap), markerDimension, markerDimension);
+                    Rectangle2D marker = current.markers[i];
 
                     context.setStroke(markerBorder);
 
@@ -268,26 +715,10 @@ public class Legend {
                     i++;
                 }
             } else {
-                
-                double maxLineWidth = width - 2 * paddingHorizontal;
-                double currentY = paddingVertical;
-                double currentWidthSum = 0;
-                double currentX = paddingHorizontal;
-                double currentLineMaxHeight = 0;
-                double entryWidth;
-                String name;
+                int i = 0;
                 for (DataSeries dataSeries : series) {
-                    name = dataSeries.getName();
-                    if (name != null) {
-                        entryWidth = markerDimension + horizontalGap + context.calculateStringWidth(name);
-                        currentWidthSum += entryWidth;
-                        if (currentWidthSum > maxLineWidth) {
-                            currentY += currentLineMaxHeight+verticalGap;
-                            currentWidthSum = entryWidth;
-                            currentX = paddingHorizontal;
-                        }
-                        
-                        marker = new Rectangle2D.Double(currentX, currentY, markerDimension, markerDimension);
+                    Rectangle2D marker = current.markers[i];
+                    if (marker != null) {
                         context.setStroke(markerBorder);
 
                         context.setPaint(dataSeries.getSeriesColor());
@@ -297,17 +728,208 @@ public class Legend {
                         context.draw(marker);
                         
                         context.setPaint(textColor);
-                        context.drawText(name, currentX + markerDimension + horizontalGap, currentY + markerDimension - moveTextVerticallyBy, Context2D.HORIZONTAL_ALIGN_LEFT, Context2D.VERTICAL_ALIGN_BASELINE);
-                        
-                        currentLineMaxHeight = Math.max(context.getLineHeight(font, name), currentLineMaxHeight);
-                        currentX += entryWidth+4*horizontalGap;
-                        currentWidthSum += 4*horizontalGap;
+                        context.drawText(current.names[i], current.textX[i], current.textY[i], Context2D.HORIZONTAL_ALIGN_LEFT, Context2D.VERTICAL_ALIGN_BASELINE);
                     }
-                    
+                    i++;
                 }
                 
             }
             
         }
     }
+
+    private void drawPage(LegendLayout current) {
+        for (int i = 0; i < current.visibleEntryCount; i++) {
+            Rectangle2D marker = current.markers[i];
+            if (marker != null) {
+                DataSeries dataSeries = series.get(current.firstEntry + i);
+                context.setStroke(markerBorder);
+
+                context.setPaint(dataSeries.getSeriesColor());
+                context.fill(marker);
+
+                context.setPaint(markerBorderColor);
+                context.draw(marker);
+
+                context.setPaint(textColor);
+                if (current.names[i] != null) {
+                    context.drawText(current.names[i], current.textX[i], current.textY[i], Context2D.HORIZONTAL_ALIGN_LEFT, current.textAlignment);
+                }
+            }
+        }
+        if (current.summary != null) {
+            context.setPaint(textColor);
+            context.drawText(current.summary, current.summaryX, current.summaryY, Context2D.HORIZONTAL_ALIGN_LEFT, current.textAlignment);
+        }
+    }
+
+    /**
+     * Adds the settings of the legend and the names and colors of its series
+     * to <code>builder</code>. The size of the legend is derived from them.
+     */
+    @Override
+    public void addFingerprint(FingerprintBuilder builder) {
+        builder.add(position.name());
+        builder.add(leftOrRightWidth);
+        builder.add(topOrBottomWidth);
+        builder.add(horizontalGap);
+        builder.add(verticalGap);
+        builder.add(paddingVertical);
+        builder.add(paddingHorizontal);
+        builder.add(font);
+        builder.add(legendBorder);
+        builder.add(markerBorder);
+        builder.add(legendBorderColor);
+        builder.add(legendBackground);
+        builder.add(markerBorderColor);
+        builder.add(textColor);
+        builder.add(pagingOn);
+        if (pagingOn) {
+            builder.add(firstVisibleEntry);
+        }
+        builder.add(series == null ? -1 : series.size());
+        if (series != null) {
+            for (DataSeries s : series) {
+                builder.add(s.getName());
+                builder.add(s.getSeriesColor());
+            }
+        }
+    }
+
+    /**
+     * The width, in a given font, and the line height of the names of the
+     * series, measured as needed.
+     */
+    private static final class NameMeasurements {
+
+        private final Font font;
+        private final Map<String, Integer> widths;
+        private final Map<String, Float> lineHeights;
+
+        NameMeasurements(Font font) {
+            this.font = font;
+            this.widths = new HashMap<String, Integer>();
+            this.lineHeights = new HashMap<String, Float>();
+        }
+
+        int getWidth(Context2D context, String name) {
+            Integer width = widths.get(name);
+            if (width == null) {
+                width = context.calculateStringWidth(name, font);
+                widths.put(name, width);
+            }
+            return width;
+        }
+
+        float getLineHeight(Context2D context, String name) {
+            Float lineHeight = lineHeights.get(name);
+            if (lineHeight == null) {
+                lineHeight = context.getLineHeight(font, name);
+                lineHeights.put(name, lineHeight);
+            }
+            return lineHeight;
+        }
+
+        /**
+         * Returns the first of the widest names, or the empty string if all
+         * are null.
+         */
+        String getWidestName(Context2D context, String[] names) {
+            double maxWidth = 0;
+            double current;
+            String longest = "";
+            for (String name : names) {
+                if (name != null) {
+                    current = getWidth(context, name);
+                    if (current > maxWidth) {
+                        maxWidth = current;
+                        longest = name;
+                    }
+                }
+            }
+            return longest;
+        }
+
+        int size() {
+            return Math.max(widths.size(), lineHeights.size());
+        }
+    }
+
+    /**
+     * The measured legend: the font fitted to its width, its height and the
+     * positions of its entries, for the settings, series names and font it
+     * was computed with.
+     */
+    private static final class LegendLayout {
+
+        private final Object measurementKey;
+        private final Font font;
+        private final LegendPosition position;
+        private final double leftOrRightWidth;
+        private final double topOrBottomWidth;
+        private final double horizontalGap;
+        private final double verticalGap;
+        private final double paddingVertical;
+        private final double paddingHorizontal;
+        private String[] names;
+        private boolean paged;
+        private int firstEntry;
+        private int seriesCount;
+        private double maxHeight;
+        private int visibleEntryCount;
+        private String summary;
+        private double summaryX;
+        private double summaryY;
+        private int textAlignment;
+        private Font fittedFont;
+        private double markerDimension;
+        private double height;
+        private Rectangle2D[] markers;
+        private double[] textX;
+        private double[] textY;
+
+        LegendLayout(Object measurementKey, Font font, Legend legend) {
+            this.measurementKey = measurementKey;
+            this.font = font;
+            this.position = legend.position;
+            this.leftOrRightWidth = legend.leftOrRightWidth;
+            this.topOrBottomWidth = legend.topOrBottomWidth;
+            this.horizontalGap = legend.horizontalGap;
+            this.verticalGap = legend.verticalGap;
+            this.paddingVertical = legend.paddingVertical;
+            this.paddingHorizontal = legend.paddingHorizontal;
+        }
+
+        boolean isValidFor(Object measurementKey, Font font, Legend legend) {
+            return this.measurementKey.equals(measurementKey)
+                    && this.font.equals(font)
+                    && position == legend.position
+                    && leftOrRightWidth == legend.leftOrRightWidth
+                    && topOrBottomWidth == legend.topOrBottomWidth
+                    && horizontalGap == legend.horizontalGap
+                    && verticalGap == legend.verticalGap
+                    && paddingVertical == legend.paddingVertical
+                    && paddingHorizontal == legend.paddingHorizontal;
+        }
+
+        /**
+         * Returns whether this paged layout holds for the current page of
+         * <code>legend</code>: only the names of the series it measured are
+         * compared.
+         */
+        boolean hasPageOf(Legend legend) {
+            if (firstEntry != legend.firstVisibleEntry
+                    || seriesCount != legend.series.size()
+                    || maxHeight != legend.maxHeight) {
+                return false;
+            }
+            for (int i = 0; i < names.length; i++) {
+                String name = legend.series.get(firstEntry + i).getName();
+                if (name == null ? names[i] != null : !name.equals(names[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -26,10 +26,15 @@ package com.gmigdos.jawesomechart.core.dataproviders;
 import com.gmigdos.jawesomechart.core.DataSeriesDataProvider;
 import com.gmigdos.jawesomechart.util.Observer;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * A data provider holding a single value.
+ * 
+ * Observers may be added and removed from any thread, also while the
+ * provider is notifying them; each notification goes to the observers
+ * registered when it started.
  *
  * @author Georgios Migdos <cyberpython@gmail.com>
  */
@@ -40,7 +45,7 @@ public class SimpleDataProvider implements DataSeriesDataProvider{
 
     public SimpleDataProvider(Double d){
         this.value = d;
-        this.observers = new ArrayList<Observer>();
+        this.observers = new CopyOnWriteArrayList<Observer>();
     }
 
     @Override
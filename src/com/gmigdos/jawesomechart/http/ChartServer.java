@@ -0,0 +1,325 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.http;
+
+import com.gmigdos.jawesomechart.JAwesomeChart;
+import com.gmigdos.jawesomechart.RenderCache;
+import com.gmigdos.jawesomechart.exceptions.IllegalValueException;
+import com.gmigdos.jawesomechart.io.ImageFormat;
+import com.gmigdos.jawesomechart.io.RenderOptions;
+import com.gmigdos.jawesomechart.util.ThreadPools;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A lightweight HTTP server rendering charts, built on the HTTP server of
+ * the JDK.
+ *
+ * Charts are requested from {@link #CONTEXT_PATH}, or from it with a
+ * <code>.png</code> or <code>.svg</code> extension selecting the format,
+ * with a {@link ChartSpec} as the query of a GET request or the
+ * form-encoded body of a POST request:
+ *
+ * <pre>
+ * ChartServer server = new ChartServer(new InetSocketAddress("localhost", 8080));
+ * server.start();
+ * // GET http://localhost:8080/chart.png?type=pie&amp;series=A|3&amp;series=B|5
+ * </pre>
+ *
+ * Each request runs on its own virtual thread where the runtime has them,
+ * or on a thread of a cached pool otherwise, so slow clients only tie up
+ * cheap threads. Drawing and encoding, which are bound by the CPU, are
+ * limited to {@link #getMaxConcurrentRenders()} charts at a time; requests
+ * waiting longer than {@link #getRenderTimeout()} for their turn get a 503
+ * reply. Images are encoded into memory while the render permit is held and
+ * sent to the client after it is released. With a {@link RenderCache} set,
+ * charts already in it are served without waiting for a turn, and requests
+ * for a chart another request is rendering wait for it without taking a
+ * turn of their own.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class ChartServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final String CONTEXT_PATH = "/chart";
+    public static final long DEFAULT_RENDER_TIMEOUT = 30000;
+    private static final Logger LOGGER = Logger.getLogger(ChartServer.class.getName());
+    private static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final int maxConcurrentRenders;
+    private final Semaphore renderPermits;
+    private long renderTimeout;
+    private volatile RenderCache cache;
+
+    /**
+     * Creates a server listening on <code>address</code>, drawing as many
+     * charts at a time as there are processors.
+     */
+    public ChartServer(InetSocketAddress address) throws IOException {
+        this(address, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param address the address to listen on
+     * @param maxConcurrentRenders the maximum number of charts drawn at a
+     * time
+     * @throws IOException if the server cannot listen on the address
+     */
+    public ChartServer(InetSocketAddress address, int maxConcurrentRenders) throws IOException {
+        if (maxConcurrentRenders < 1) {
+            throw new IllegalArgumentException("At least one chart must be drawn at a time");
+        }
+        this.maxConcurrentRenders = maxConcurrentRenders;
+        this.renderPermits = new Semaphore(maxConcurrentRenders, true);
+        this.renderTimeout = DEFAULT_RENDER_TIMEOUT;
+        ExecutorService virtualThreadExecutor = ThreadPools.newVirtualThreadPerTaskExecutor();
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.executor = virtualThreads ? virtualThreadExecutor
+                : Executors.newCachedThreadPool(ThreadPools.newDaemonThreadFactory("ChartServer", null));
+        this.server = HttpServer.create(address, 0);
+        server.createContext(CONTEXT_PATH, new ChartHandler());
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting up to <code>delay</code> seconds for the
+     * current requests to complete.
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the address the server listens on, e.g. to find the port
+     * chosen by the system when created with port 0.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Returns true if requests are handled on virtual threads.
+     */
+    public boolean isVirtualThreadsOn() {
+        return virtualThreads;
+    }
+
+    public int getMaxConcurrentRenders() {
+        return maxConcurrentRenders;
+    }
+
+    /**
+     * Returns the time, in milliseconds, a request waits for its turn to
+     * draw before being rejected.
+     */
+    public long getRenderTimeout() {
+        return renderTimeout;
+    }
+
+    public void setRenderTimeout(long renderTimeout) {
+        this.renderTimeout = renderTimeout;
+    }
+
+    public RenderCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the cache to serve repeated charts from, or null to render every
+     * request.
+     */
+    public void setCache(RenderCache cache) {
+        this.cache = cache;
+    }
+
+    private class ChartHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                handleRequest(exchange);
+            } catch (IllegalValueException ex) {
+                sendError(exchange, 400, ex.getMessage());
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Rendering " + exchange.getRequestURI() + " failed", ex);
+                sendError(exchange, 500, "Rendering failed");
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void handleRequest(HttpExchange exchange) throws IOException, IllegalValueException {
+            String path = exchange.getRequestURI().getPath();
+            ImageFormat defaultFormat;
+            if (path.equals(CONTEXT_PATH) || path.equals(CONTEXT_PATH + "/")) {
+                defaultFormat = ImageFormat.PNG;
+            } else if (path.equals(CONTEXT_PATH + "." + ImageFormat.PNG.getFileExtension())) {
+                defaultFormat = ImageFormat.PNG;
+            } else if (path.equals(CONTEXT_PATH + "." + ImageFormat.SVG.getFileExtension())) {
+                defaultFormat = ImageFormat.SVG;
+            } else {
+                sendError(exchange, 404, "Not found: " + path);
+                return;
+            }
+            String form;
+            if (exchange.getRequestMethod().equals("GET")) {
+                form = exchange.getRequestURI().getRawQuery();
+            } else if (exchange.getRequestMethod().equals("POST")) {
+                form = readBody(exchange);
+                if (form == null) {
+                    sendError(exchange, 413, "The request is larger than " + MAX_REQUEST_SIZE + " bytes");
+                    return;
+                }
+            } else {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                sendError(exchange, 405, "Method not allowed: " + exchange.getRequestMethod());
+                return;
+            }
+
+            ChartSpec spec = ChartSpec.parse(form);
+            ImageFormat format = spec.getFormat(defaultFormat);
+            RenderOptions options = spec.getOptions();
+            JAwesomeChart chart = spec.createChart();
+            RenderCache renderCache = cache;
+            byte[] data = (renderCache != null) ? renderCache.get(chart, format, options) : null;
+
+            if (data == null) {
+                // Drawing and encoding, including the quantization of
+                // indexed images, happen under a permit; the client only
+                // reads the finished bytes once it is released.
+                try {
+                    if (renderCache != null) {
+                        // Only the thread rendering the chart takes a permit,
+                        // not the ones waiting for it to render the same one:
+                        data = renderCache.renderAfterMiss(chart, format, options, renderPermits, renderTimeout);
+                    } else {
+                        data = render(chart, format, options);
+                    }
+                } catch (RejectedExecutionException ex) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendError(exchange, 503, "Too many charts are being drawn");
+                    return;
+                } catch (InterruptedIOException ex) {
+                    sendError(exchange, 503, "The server is stopping");
+                    return;
+                }
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", format.getMimeType());
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, data.length);
+            OutputStream body = exchange.getResponseBody();
+            body.write(data);
+            body.close();
+        }
+
+        /**
+         * Renders the chart under a permit.
+         *
+         * @throws RejectedExecutionException if no permit was available
+         * within the render timeout
+         */
+        private byte[] render(JAwesomeChart chart, ImageFormat format, RenderOptions options) throws IOException {
+            try {
+                if (!renderPermits.tryAcquire(renderTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new RejectedExecutionException("No render permit became available");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a render permit");
+            }
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                chart.render(buffer, format, options);
+                return buffer.toByteArray();
+            } finally {
+                renderPermits.release();
+            }
+        }
+
+        /**
+         * Returns the body of the request, or null if it is too large.
+         */
+        private String readBody(HttpExchange exchange) throws IOException {
+            InputStream in = exchange.getRequestBody();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                body.write(buffer, 0, count);
+                if (body.size() > MAX_REQUEST_SIZE) {
+                    return null;
+                }
+            }
+            return body.toString("US-ASCII");
+        }
+
+        private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+            if (exchange.getResponseCode() != -1) {
+                // The headers are already sent; the client sees the
+                // response cut short.
+                return;
+            }
+            byte[] text = (message + "\n").getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, text.length);
+            OutputStream body = exchange.getResponseBody();
+            body.write(text);
+            body.close();
+        }
+    }
+
+    /**
+     * Starts a server on the port given as argument, or on
+     * {@link #DEFAULT_PORT}.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ChartServer server = new ChartServer(new InetSocketAddress(port));
+        server.start();
+        System.out.println("Serving charts on http://localhost:" + server.getAddress().getPort() + CONTEXT_PATH);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.http;
+
+import com.gmigdos.jawesomechart.JAwesomeChart;
+import com.gmigdos.jawesomechart.exceptions.IllegalValueException;
+import com.gmigdos.jawesomechart.io.ImageFormat;
+import com.gmigdos.jawesomechart.io.RenderOptions;
+import com.gmigdos.jawesomechart.renderers.PieChartRenderer;
+import com.gmigdos.jawesomechart.renderers.twodimensional.horizontal.ColumnChartRenderer;
+import com.gmigdos.jawesomechart.renderers.twodimensional.horizontal.LineChartRenderer;
+import java.awt.Color;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The description of a chart sent to a {@link ChartServer}, as
+ * <code>application/x-www-form-urlencoded</code> parameters:
+ *
+ * <ul>
+ * <li><code>type</code>: <code>column</code> (the default),
+ * <code>line</code>, <code>pie</code> or <code>doughnut</code>;</li>
+ * <li><code>width</code> and <code>height</code>: the size of the image, up
+ * to {@link #MAX_SIZE} pixels (600 by 400 by default);</li>
+ * <li><code>title</code> and <code>subtitle</code>;</li>
+ * <li><code>labels</code>: the comma-separated labels of the values;</li>
+ * <li><code>series</code>, once per series:
+ * <code>name|value,value,...|#RRGGBB</code>, the color being optional;</li>
+ * <li><code>legend</code>: <code>false</code> to hide the legend;</li>
+ * <li><code>format</code>: <code>png</code> or <code>svg</code>;</li>
+ * <li><code>colors</code>: the size of the palette of an indexed PNG image,
+ * up to 256.</li>
+ * </ul>
+ *
+ * For example:
+ * <code>type=line&amp;labels=Q1,Q2,Q3&amp;series=Sales|12,15,9|%23FF2400</code>.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class ChartSpec {
+
+    public static final int MAX_SIZE = 4096;
+    public static final int MAX_VALUES = 1000000;
+    private static final int DEFAULT_WIDTH = 600;
+    private static final int DEFAULT_HEIGHT = 400;
+    private final Map<String, List<String>> parameters;
+
+    private ChartSpec(Map<String, List<String>> parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Parses <code>application/x-www-form-urlencoded</code> parameters, e.g.
+     * the query of a URL or the body of a form.
+     *
+     * @param form the encoded parameters, or null for none
+     * @throws IllegalValueException if the parameters are malformed
+     */
+    public static ChartSpec parse(String form) throws IllegalValueException {
+        Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+        if (form != null) {
+            for (String pair : form.split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int separator = pair.indexOf('=');
+                String name = decode(separator < 0 ? pair : pair.substring(0, separator));
+                String value = separator < 0 ? "" : decode(pair.substring(separator + 1));
+                List<String> values = parameters.get(name);
+                if (values == null) {
+                    values = new ArrayList<String>();
+                    parameters.put(name, values);
+                }
+                values.add(value);
+            }
+        }
+        return new ChartSpec(parameters);
+    }
+
+    private static String decode(String s) throws IllegalValueException {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalValueException("Malformed parameter: " + s);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the last value of parameter <code>name</code>, or null if it
+     * is missing.
+     */
+    public String getParameter(String name) {
+        List<String> values = parameters.get(name);
+        return values == null ? null : values.get(values.size() - 1);
+    }
+
+    /**
+     * Returns all the values of parameter <code>name</code>.
+     */
+    public List<String> getParameters(String name) {
+        List<String> values = parameters.get(name);
+        return values == null ? Collections.<String>emptyList() : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Returns the format named by the <code>format</code> parameter, or
+     * <code>defaultFormat</code> if it is missing.
+     */
+    public ImageFormat getFormat(ImageFormat defaultFormat) throws IllegalValueException {
+        String format = getParameter("format");
+        if (format == null) {
+            return defaultFormat;
+        }
+        for (ImageFormat candidate : ImageFormat.values()) {
+            if (candidate.getFileExtension().equalsIgnoreCase(format)) {
+                return candidate;
+            }
+        }
+        throw new IllegalValueException("Unknown format: " + format);
+    }
+
+    /**
+     * Returns the settings of the encoding, with images encoded on a single
+     * thread.
+     */
+    public RenderOptions getOptions() throws IllegalValueException {
+        RenderOptions options = new RenderOptions();
+        options.setThreadCount(1);
+        options.setMaxColors(getInt("colors", 0, 0, 256));
+        return options;
+    }
+
+    /**
+     * Returns a new chart as described by the parameters.
+     *
+     * @throws IllegalValueException if a parameter is invalid
+     */
+    public JAwesomeChart createChart() throws IllegalValueException {
+        JAwesomeChart chart = new JAwesomeChart(getInt("width", DEFAULT_WIDTH, 1, MAX_SIZE),
+                getInt("height", DEFAULT_HEIGHT, 1, MAX_SIZE));
+        String type = getParameter("type");
+        if (type == null || type.equals("column")) {
+            chart.setRenderer(new ColumnChartRenderer());
+        } else if (type.equals("line")) {
+            chart.setRenderer(new LineChartRenderer());
+        } else if (type.equals("pie") || type.equals("doughnut")) {
+            PieChartRenderer renderer = new PieChartRenderer();
+            renderer.setIsDoughnut(type.equals("doughnut"));
+            chart.setRenderer(renderer);
+        } else {
+            throw new IllegalValueException("Unknown chart type: " + type);
+        }
+        if (getParameter("title") != null) {
+            chart.setTitle(getParameter("title"));
+        }
+        if (getParameter("subtitle") != null) {
+            chart.setSubtitle(getParameter("subtitle"));
+        }
+        if (getParameter("labels") != null) {
+            chart.setLabels(getParameter("labels").split(",", -1));
+        }
+        if ("false".equals(getParameter("legend"))) {
+            chart.setDrawLegend(false);
+        }
+        int valueCount = 0;
+        for (String series : getParameters("series")) {
+            String[] fields = series.split("\\|", -1);
+            if (fields.length < 2 || fields.length > 3) {
+                throw new IllegalValueException("Series must be name|values[|color]: " + series);
+            }
+            String[] items = fields[1].split(",");
+            valueCount += items.length;
+            if (valueCount > MAX_VALUES) {
+                throw new IllegalValueException("More than " + MAX_VALUES + " values");
+            }
+            double[] values = new double[items.length];
+            for (int i = 0; i < items.length; i++) {
+                try {
+                    values[i] = Double.parseDouble(items[i].trim());
+                } catch (NumberFormatException ex) {
+                    throw new IllegalValueException("Invalid value of series " + fields[0] + ": " + items[i]);
+                }
+            }
+            if (fields.length == 3 && !fields[2].isEmpty()) {
+                try {
+                    chart.addSeries(fields[0], values, Color.decode(fields[2]));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalValueException("Invalid color of series " + fields[0] + ": " + fields[2]);
+                }
+            } else {
+                chart.addSeries(fields[0], values);
+            }
+        }
+        return chart;
+    }
+
+    private int getInt(String name, int defaultValue, int min, int max) throws IllegalValueException {
+        String value = getParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value.trim());
+            if (i >= min && i <= max) {
+                return i;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below.
+        }
+        throw new IllegalValueException("Parameter " + name + " must be an integer from " + min + " to " + max + ": " + value);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.io;
+
+import com.gmigdos.jawesomechart.util.DisplayList;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a {@link DisplayList} as a PNG image, rendering it in horizontal
+ * bands into a single reusable buffer and streaming each band to a
+ * {@link PngEncoder}.
+ *
+ * Peak memory is proportional to the width of the image times the band
+ * height (plus twice the shadow margin of the list, rendered above and below
+ * each band so that shadows crossing band borders are exact), instead of to
+ * the size of the image.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class BandedPngWriter {
+
+    public static final int DEFAULT_BAND_HEIGHT = 256;
+
+    private int bandHeight;
+
+    public BandedPngWriter() {
+        this(DEFAULT_BAND_HEIGHT);
+    }
+
+    public BandedPngWriter(int bandHeight) {
+        if (bandHeight < 1) {
+            throw new IllegalArgumentException("Band height must be positive: " + bandHeight);
+        }
+        this.bandHeight = bandHeight;
+    }
+
+    public int getBandHeight() {
+        return bandHeight;
+    }
+
+    /**
+     * Renders <code>displayList</code> at the size it was recorded for and
+     * writes it as a PNG image to <code>out</code>. The stream is not closed.
+     *
+     * @param displayList the chart to write
+     * @param out the stream to write to
+     * @throws IOException if writing to the stream fails
+     */
+    public void write(DisplayList displayList, OutputStream out) throws IOException {
+        int width = displayList.getWidth();
+        int height = displayList.getHeight();
+        int margin = displayList.getShadowMargin();
+        int bufferHeight = Math.min(bandHeight + 2 * margin, height);
+        BufferedImage buffer = new BufferedImage(width, bufferHeight, BufferedImage.TYPE_INT_ARGB);
+        int[] rows = new int[width * Math.min(bandHeight, height)];
+        PngEncoder encoder = new PngEncoder(out, width, height);
+
+        try {
+            for (int y = 0; y < height; y += bandHeight) {
+                int rowCount = Math.min(bandHeight, height - y);
+                int top = Math.max(y - margin, 0);
+                int bottom = Math.min(y + rowCount + margin, height);
+                displayList.replay(buffer, new Rectangle(0, top, width, bottom - top));
+                buffer.getRaster().getDataElements(0, y - top, width, rowCount, rows);
+                encoder.writeRows(rows, 0, width, rowCount);
+            }
+            encoder.finish();
+        } finally {
+            encoder.close();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.io;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of up to 256 ARGB colors, for indexed PNG images.
+ *
+ * {@link #quantize(int[], int, int, int, int, int)} builds the palette of
+ * an image: images with few enough distinct colors get them all, so they
+ * are encoded losslessly; others get a median cut of their colors, refined
+ * by a few iterations of k-means. Colors are compared premultiplied by
+ * their alpha, so anti-aliased edges, which blend the series colors with
+ * transparency, share entries whatever their color when nearly transparent.
+ * Pixels are not dithered, which would add noise to the flat areas of charts
+ * and hurt compression.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public final class Palette {
+
+    public static final int MAX_COLORS = 256;
+    private static final int REFINEMENT_ITERATIONS = 3;
+    private final int[] colors;
+    private final double[][] premultipliedColors;
+
+    /**
+     * @param colors the non-premultiplied ARGB colors of the palette
+     */
+    public Palette(int[] colors) {
+        if (colors.length < 1 || colors.length > MAX_COLORS) {
+            throw new IllegalArgumentException("A palette has 1 to " + MAX_COLORS + " colors: " + colors.length);
+        }
+        this.colors = colors.clone();
+        this.premultipliedColors = new double[colors.length][];
+        for (int i = 0; i < colors.length; i++) {
+            premultipliedColors[i] = premultiply(colors[i]);
+        }
+    }
+
+    /**
+     * Returns the palette of at most <code>maxColors</code> colors that
+     * best represents <code>image</code>.
+     */
+    public static Palette quantize(BufferedImage image, int maxColors) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && image.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) image.getSampleModel();
+            DataBufferInt buffer = (DataBufferInt) image.getRaster().getDataBuffer();
+            int x = -image.getRaster().getSampleModelTranslateX();
+            int y = -image.getRaster().getSampleModelTranslateY();
+            int stride = sampleModel.getScanlineStride();
+            return quantize(buffer.getData(), buffer.getOffset() + y * stride + x, stride, width, height, maxColors);
+        }
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        return quantize(argb, 0, width, width, height, maxColors);
+    }
+
+    /**
+     * Returns the palette of at most <code>maxColors</code> colors that
+     * best represents the given pixels.
+     *
+     * @param argb the pixels, as non-premultiplied ARGB values
+     * @param offset the index of the first pixel of the first scanline
+     * @param scanlineStride the distance between the first pixels of two
+     * consecutive scanlines in <code>argb</code>
+     * @param width the number of pixels per scanline
+     * @param height the number of scanlines
+     * @param maxColors the maximum size of the palette, from 1 to 256
+     */
+    public static Palette quantize(int[] argb, int offset, int scanlineStride, int width, int height, int maxColors) {
+        if (maxColors < 1 || maxColors > MAX_COLORS) {
+            throw new IllegalArgumentException("A palette has 1 to " + MAX_COLORS + " colors: " + maxColors);
+        }
+        // Histogram of the distinct colors; charts are made of long runs of
+        // the same color, which are counted at once.
+        Map<Integer, int[]> histogram = new HashMap<Integer, int[]>();
+        for (int y = 0; y < height; y++) {
+            int p = offset + y * scanlineStride;
+            int end = p + width;
+            while (p < end) {
+                int color = normalize(argb[p]);
+                int run = 1;
+                while (p + run < end && normalize(argb[p + run]) == color) {
+                    run++;
+                }
+                int[] count = histogram.get(color);
+                if (count == null) {
+                    histogram.put(color, new int[]{run});
+                } else {
+                    count[0] += run;
+                }
+                p += run;
+            }
+        }
+        int n = histogram.size();
+        int[] distinct = new int[n];
+        double[] weights = new double[n];
+        int i = 0;
+        for (Map.Entry<Integer, int[]> entry : histogram.entrySet()) {
+            distinct[i] = entry.getKey();
+            weights[i] = entry.getValue()[0];
+            i++;
+        }
+        if (n <= maxColors) {
+            return new Palette(sortByAlpha(distinct));
+        }
+        double[][] points = new double[n][];
+        for (i = 0; i < n; i++) {
+            points[i] = premultiply(distinct[i]);
+        }
+        double[][] centers = medianCut(points, weights, maxColors);
+        refine(points, weights, centers);
+        int[] palette = new int[centers.length];
+        for (i = 0; i < centers.length; i++) {
+            palette[i] = unpremultiply(centers[i]);
+        }
+        return new Palette(sortByAlpha(palette));
+    }
+
+    /**
+     * Maps all the fully transparent colors to transparent black.
+     */
+    private static int normalize(int argb) {
+        return (argb >>> 24) == 0 ? 0 : argb;
+    }
+
+    /**
+     * Orders the colors by increasing alpha, so that the tRNS chunk of the
+     * image only lists the translucent ones.
+     */
+    private static int[] sortByAlpha(int[] colors) {
+        long[] keys = new long[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            keys[i] = ((long) (colors[i] >>> 24) << 32) | (colors[i] & 0xffffffffL);
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            sorted[i] = (int) keys[i];
+        }
+        return sorted;
+    }
+
+    private static double[] premultiply(int argb) {
+        double a = argb >>> 24;
+        double f = a / 255;
+        return new double[]{a, ((argb >> 16) & 0xff) * f, ((argb >> 8) & 0xff) * f, (argb & 0xff) * f};
+    }
+
+    private static int unpremultiply(double[] point) {
+        int a = (int) Math.round(point[0]);
+        if (a <= 0) {
+            return 0;
+        }
+        a = Math.min(a, 255);
+        double f = 255 / point[0];
+        int r = (int) Math.min(255, Math.round(point[1] * f));
+        int g = (int) Math.min(255, Math.round(point[2] * f));
+        int b = (int) Math.min(255, Math.round(point[3] * f));
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static double distance(double[] p, double[] q) {
+        double d = 0;
+        for (int c = 0; c < 4; c++) {
+            double delta = p[c] - q[c];
+            d += delta * delta;
+        }
+        return d;
+    }
+
+    /**
+     * Splits the points into <code>count</code> boxes, each time cutting the
+     * box and channel with the largest weighted squared error at the weighted
+     * median of the channel, and returns the weighted means of the boxes.
+     */
+    private static double[][] medianCut(final double[][] points, double[] weights, int count) {
+        List<Integer[]> boxes = new ArrayList<Integer[]>();
+        Integer[] all = new Integer[points.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        boxes.add(all);
+        while (boxes.size() < count) {
+            int bestBox = -1;
+            int bestChannel = 0;
+            double bestScore = 0;
+            for (int b = 0; b < boxes.size(); b++) {
+                Integer[] box = boxes.get(b);
+                if (box.length < 2) {
+                    continue;
+                }
+                double weight = 0;
+                double[] sum = new double[4];
+                double[] squares = new double[4];
+                for (Integer index : box) {
+                    double w = weights[index];
+                    weight += w;
+                    for (int c = 0; c < 4; c++) {
+                        double v = points[index][c];
+                        sum[c] += w * v;
+                        squares[c] += w * v * v;
+                    }
+                }
+                for (int c = 0; c < 4; c++) {
+                    // The squared error of the box on the channel:
+                    double score = squares[c] - sum[c] * sum[c] / weight;
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestBox = b;
+                        bestChannel = c;
+                    }
+                }
+            }
+            if (bestBox < 0) {
+                break;
+            }
+            final int channel = bestChannel;
+            Integer[] box = boxes.get(bestBox);
+            Arrays.sort(box, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i, Integer j) {
+                    return Double.compare(points[i][channel], points[j][channel]);
+                }
+            });
+            double total = 0;
+            for (Integer index : box) {
+                total += weights[index];
+            }
+            double half = total / 2;
+            double sum = 0;
+            int cut = 1;
+            for (int i = 0; i < box.length - 1; i++) {
+                sum += weights[box[i]];
+                cut = i + 1;
+                if (sum >= half) {
+                    break;
+                }
+            }
+            boxes.set(bestBox, Arrays.copyOfRange(box, 0, cut));
+            boxes.add(Arrays.copyOfRange(box, cut, box.length));
+        }
+        double[][] centers = new double[boxes.size()][];
+        for (int b = 0; b < centers.length; b++) {
+            double[] center = new double[4];
+            double weight = 0;
+            for (Integer index : boxes.get(b)) {
+                weight += weights[index];
+                for (int c = 0; c < 4; c++) {
+                    center[c] += points[index][c] * weights[index];
+                }
+            }
+            for (int c = 0; c < 4; c++) {
+                center[c] /= weight;
+            }
+            centers[b] = center;
+        }
+        return centers;
+    }
+
+    /**
+     * Moves each center to the weighted mean of the points closest to it.
+     */
+    private static void refine(double[][] points, double[] weights, double[][] centers) {
+        for (int iteration = 0; iteration < REFINEMENT_ITERATIONS; iteration++) {
+            double[][] sums = new double[centers.length][4];
+            double[] totals = new double[centers.length];
+            for (int i = 0; i < points.length; i++) {
+                int closest = 0;
+                double closestDistance = Double.MAX_VALUE;
+                for (int k = 0; k < centers.length; k++) {
+                    double d = distance(points[i], centers[k]);
+                    if (d < closestDistance) {
+                        closestDistance = d;
+                        closest = k;
+                    }
+                }
+                totals[closest] += weights[i];
+                for (int c = 0; c < 4; c++) {
+                    sums[closest][c] += points[i][c] * weights[i];
+                }
+            }
+            for (int k = 0; k < centers.length; k++) {
+                if (totals[k] > 0) {
+                    for (int c = 0; c < 4; c++) {
+                        centers[k][c] = sums[k][c] / totals[k];
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return colors.length;
+    }
+
+    /**
+     * Returns the non-premultiplied ARGB color of entry <code>index</code>.
+     */
+    public int getColor(int index) {
+        return colors[index];
+    }
+
+    /**
+     * Returns the index of the entry closest to <code>argb</code>, comparing
+     * colors premultiplied by their alpha.
+     */
+    public int findClosest(int argb) {
+        argb = normalize(argb);
+        double[] point = premultiply(argb);
+        int closest = 0;
+        double closestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < colors.length; i++) {
+            if (colors[i] == argb) {
+                return i;
+            }
+            double d = distance(point, premultipliedColors[i]);
+            if (d < closestDistance) {
+                closestDistance = d;
+                closest = i;
+            }
+        }
+        return closest;
+    }
+}
@@ -0,0 +1,833 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.io;
+
+import com.gmigdos.jawesomechart.util.ThreadPools;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming encoder of 8-bit RGBA and indexed PNG images.
+ *
+ * Scanlines are passed in order, as non-premultiplied ARGB pixels, and are
+ * filtered, compressed and written to the output stream as they arrive, so
+ * the whole image never has to be in memory:
+ *
+ * <pre>
+ * PngEncoder encoder = new PngEncoder(out, width, height);
+ * encoder.setCompressionLevel(Deflater.BEST_SPEED);
+ * encoder.writeRows(pixels, 0, width, rows);
+ * ...
+ * encoder.finish();
+ * </pre>
+ *
+ * Indexed images are written with the colors of a {@link Palette}, each
+ * pixel taking the closest one; the matches of recent colors are cached, so
+ * the palette is searched about once per distinct color.
+ *
+ * By default every scanline of RGBA images is filtered with the PNG "Up" filter, which
+ * suits the vertical gradients and large flat areas of charts, and
+ * indexed images are not filtered, as filters rarely help with palette
+ * indices; see {@link FilterStrategy} for the alternatives.
+ *
+ * Images larger than a few blocks of {@link #BLOCK_SIZE} bytes are
+ * compressed on several threads, in the manner of pigz: the filtered
+ * scanlines are split into blocks that are deflated independently, each
+ * primed with the last 32KB of the previous one, and the resulting deflate
+ * streams are concatenated in order. The output is a regular PNG image, a
+ * few percent larger than a single-threaded one. The blocks of all the
+ * encoders are compressed on the shared pool of
+ * {@link ThreadPools#getComputeExecutor()}, so concurrent encoders do not
+ * start more threads than there are processors.
+ *
+ * An encoder that is not finished, e.g. because writing to the stream
+ * failed, must be {@link #close() closed} to release its native
+ * compression state and cancel its pending blocks.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class PngEncoder {
+
+    /**
+     * The PNG filters applied to the scanlines before compression.
+     */
+    public enum FilterStrategy {
+
+        /** Scanlines are compressed as they are. */
+        NONE,
+        /** Each byte is predicted by the one of the pixel to its left. */
+        SUB,
+        /** Each byte is predicted by the one of the pixel above it. */
+        UP,
+        /** Each byte is predicted by the mean of the left and upper ones. */
+        AVERAGE,
+        /** Each byte is predicted by the Paeth predictor. */
+        PAETH,
+        /**
+         * Each scanline gets the filter minimizing the sum of the absolute
+         * values of its filtered bytes: usually the smallest output, for about
+         * twice the filtering time.
+         */
+        ADAPTIVE
+    }
+
+    /**
+     * The number of filtered bytes compressed by each task when compressing
+     * on several threads.
+     */
+    public static final int BLOCK_SIZE = 128 * 1024;
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int COLOR_TYPE_INDEXED = 3;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int COLOR_CACHE_SIZE = 4096;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final Palette palette;
+    private final int[] cachedColors;
+    private final byte[] cachedIndices;
+    private final CRC32 crc;
+    private int compressionLevel;
+    private FilterStrategy filterStrategy;
+    private int threadCount;
+    private Deflater deflater;
+    private byte[] previousRow;
+    private byte[] currentRow;
+    private byte[] filteredRow;
+    private byte[][] candidateRows;
+    private byte[] compressed;
+    private int compressedCount;
+    private int rowsWritten;
+    private boolean headerWritten;
+    private boolean finished;
+    private boolean closed;
+    private ExecutorService executor;
+    private ArrayDeque<Future<byte[]>> pendingBlocks;
+    private Adler32 adler;
+    private byte[] block;
+    private int blockLength;
+    private byte[] previousBlock;
+    private int previousBlockLength;
+
+    public PngEncoder(OutputStream out, int width, int height) {
+        this(out, width, height, null);
+    }
+
+    /**
+     * Creates an encoder of an image whose pixels are replaced by the
+     * closest color of <code>palette</code>.
+     *
+     * @param out the stream to write to
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param palette the colors of the image, or null to write an RGBA
+     * image
+     */
+    public PngEncoder(OutputStream out, int width, int height, Palette palette) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Image dimensions must be positive: " + width + "x" + height);
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.palette = palette;
+        this.bytesPerPixel = palette == null ? 4 : 1;
+        if (palette != null) {
+            this.cachedColors = new int[COLOR_CACHE_SIZE];
+            this.cachedIndices = new byte[COLOR_CACHE_SIZE];
+            // Color 0 hashes to slot 0, so the zero keys of the other slots
+            // never match; slot 0 starts with the index of color 0:
+            this.cachedIndices[0] = (byte) palette.findClosest(0);
+        } else {
+            this.cachedColors = null;
+            this.cachedIndices = null;
+        }
+        this.crc = new CRC32();
+        this.compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        this.filterStrategy = palette == null ? FilterStrategy.UP : FilterStrategy.NONE;
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+        this.deflater = null;
+        this.previousRow = new byte[width * bytesPerPixel];
+        this.currentRow = new byte[width * bytesPerPixel];
+        this.filteredRow = new byte[width * bytesPerPixel + 1];
+        this.candidateRows = null;
+        this.compressed = new byte[CHUNK_SIZE];
+        this.compressedCount = 0;
+        this.rowsWritten = 0;
+        this.headerWritten = false;
+        this.finished = false;
+        this.closed = false;
+        this.executor = null;
+    }
+
+    /**
+     * Creates an encoder writing to <code>channel</code>, e.g. a
+     * {@link java.nio.channels.FileChannel} or a socket channel.
+     */
+    public PngEncoder(WritableByteChannel channel, int width, int height) {
+        this(Channels.newOutputStream(channel), width, height, null);
+    }
+
+    /**
+     * Creates an encoder of an indexed image writing to
+     * <code>channel</code>.
+     */
+    public PngEncoder(WritableByteChannel channel, int width, int height, Palette palette) {
+        this(Channels.newOutputStream(channel), width, height, palette);
+    }
+
+    /**
+     * Encodes <code>image</code> as a PNG image into <code>out</code>, with
+     * the default settings. The stream is not closed.
+     *
+     * @param image the image to encode
+     * @param out the stream to write to
+     * @throws IOException if writing to the stream fails
+     */
+    public static void encode(BufferedImage image, OutputStream out) throws IOException {
+        PngEncoder encoder = new PngEncoder(out, image.getWidth(), image.getHeight());
+        try {
+            encoder.writeImage(image);
+            encoder.finish();
+        } finally {
+            encoder.close();
+        }
+    }
+
+    /**
+     * Encodes <code>image</code> as a PNG image into <code>out</code>, with
+     * the given settings. The stream is not closed.
+     *
+     * @param image the image to encode
+     * @param out the stream to write to
+     * @param options the settings of the encoding
+     * @throws IOException if writing to the stream fails
+     */
+    public static void encode(BufferedImage image, OutputStream out, RenderOptions options) throws IOException {
+        Palette palette = null;
+        if (options.getMaxColors() > 0) {
+            palette = Palette.quantize(image, options.getMaxColors());
+        }
+        PngEncoder encoder = new PngEncoder(out, image.getWidth(), image.getHeight(), palette);
+        encoder.setCompressionLevel(options.getCompressionLevel());
+        if (options.getFilterStrategy() != null) {
+            encoder.setFilterStrategy(options.getFilterStrategy());
+        }
+        encoder.setThreadCount(options.getThreadCount());
+        try {
+            encoder.writeImage(image);
+            encoder.finish();
+        } finally {
+            encoder.close();
+        }
+    }
+
+    /**
+     * Encodes <code>image</code> as an indexed PNG image into
+     * <code>out</code>, with a palette of up to 256 colors quantized from
+     * the image. The stream is not closed.
+     *
+     * @param image the image to encode
+     * @param out the stream to write to
+     * @throws IOException if writing to the stream fails
+     */
+    public static void encodeIndexed(BufferedImage image, OutputStream out) throws IOException {
+        Palette palette = Palette.quantize(image, Palette.MAX_COLORS);
+        PngEncoder encoder = new PngEncoder(out, image.getWidth(), image.getHeight(), palette);
+        try {
+            encoder.writeImage(image);
+            encoder.finish();
+        } finally {
+            encoder.close();
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the palette of the image, or null if it is an RGBA image.
+     */
+    public Palette getPalette() {
+        return palette;
+    }
+
+    /**
+     * Returns the number of scanlines written so far.
+     */
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the deflate compression level, from {@link Deflater#NO_COMPRESSION}
+     * to {@link Deflater#BEST_COMPRESSION}, or
+     * {@link Deflater#DEFAULT_COMPRESSION}. Must be called before the first
+     * scanline is written.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION
+                && (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        checkNotStarted();
+        this.compressionLevel = compressionLevel;
+    }
+
+    public FilterStrategy getFilterStrategy() {
+        return filterStrategy;
+    }
+
+    /**
+     * Sets the filter applied to the scanlines. Must be called before the
+     * first scanline is written.
+     */
+    public void setFilterStrategy(FilterStrategy filterStrategy) {
+        if (filterStrategy == null) {
+            throw new IllegalArgumentException("The filter strategy must not be null");
+        }
+        checkNotStarted();
+        this.filterStrategy = filterStrategy;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of blocks of large images compressed at a time, by
+     * default the number of available processors. The blocks are compressed
+     * on the shared pool of {@link ThreadPools#getComputeExecutor()}, so
+     * counts above the number of processors gain nothing. With 1, images are
+     * compressed as a single deflate stream on the calling thread. Must be
+     * called before the first scanline is written.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be positive");
+        }
+        checkNotStarted();
+        this.threadCount = threadCount;
+    }
+
+    private void checkNotStarted() {
+        if (headerWritten) {
+            throw new IllegalStateException("The encoding has already started");
+        }
+    }
+
+    /**
+     * Writes all the scanlines of <code>image</code>, which must have the
+     * size of the encoder. The pixels of TYPE_INT_ARGB images are read in
+     * place.
+     *
+     * @param image the image to write
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeImage(BufferedImage image) throws IOException {
+        if (image.getWidth() != width || image.getHeight() != height - rowsWritten) {
+            throw new IllegalArgumentException("The image does not match the remaining "
+                    + width + "x" + (height - rowsWritten) + " scanlines");
+        }
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && image.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) image.getSampleModel();
+            DataBufferInt buffer = (DataBufferInt) image.getRaster().getDataBuffer();
+            int x = -image.getRaster().getSampleModelTranslateX();
+            int y = -image.getRaster().getSampleModelTranslateY();
+            int stride = sampleModel.getScanlineStride();
+            writeRows(buffer.getData(), buffer.getOffset() + y * stride + x, stride, height - rowsWritten);
+            return;
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            writeRows(row, 0, width, 1);
+        }
+    }
+
+    /**
+     * Writes the next <code>rows</code> scanlines of the image.
+     *
+     * @param argb the pixels, as non-premultiplied ARGB values
+     * @param offset the index of the first pixel of the first scanline
+     * @param scanlineStride the distance between the first pixels of two
+     * consecutive scanlines in <code>argb</code>
+     * @param rows the number of scanlines to write
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeRows(int[] argb, int offset, int scanlineStride, int rows) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("The image has already been finished");
+        }
+        if (closed) {
+            throw new IllegalStateException("The encoder has been closed");
+        }
+        if (rowsWritten + rows > height) {
+            throw new IllegalArgumentException("Too many rows: " + (rowsWritten + rows) + " > " + height);
+        }
+        writeHeader();
+        for (int r = 0; r < rows; r++) {
+            int p = offset + r * scanlineStride;
+            byte[] row = currentRow;
+            if (palette != null) {
+                for (int x = 0; x < width; x++) {
+                    row[x] = getIndex(argb[p + x]);
+                }
+            } else {
+                for (int x = 0, i = 0; x < width; x++, i += 4) {
+                    int pixel = argb[p + x];
+                    row[i] = (byte) (pixel >> 16);
+                    row[i + 1] = (byte) (pixel >> 8);
+                    row[i + 2] = (byte) pixel;
+                    row[i + 3] = (byte) (pixel >>> 24);
+                }
+            }
+            byte[] filtered = filterRow(row, previousRow);
+            if (executor != null) {
+                appendToBlock(filtered);
+            } else {
+                deflate(filtered, filtered.length);
+            }
+            currentRow = previousRow;
+            previousRow = row;
+            rowsWritten++;
+        }
+    }
+
+    /**
+     * Returns the palette index of <code>argb</code>, through a
+     * direct-mapped cache of the recent matches.
+     */
+    private byte getIndex(int argb) {
+        int slot = (argb * 0x9E3779B1) >>> 20;
+        if (cachedColors[slot] != argb) {
+            cachedColors[slot] = argb;
+            cachedIndices[slot] = (byte) palette.findClosest(argb);
+        }
+        return cachedIndices[slot];
+    }
+
+    /**
+     * Completes the image and flushes the stream. The stream is not closed.
+     *
+     * @throws IOException if writing to the stream fails, or if fewer
+     * scanlines than the height of the image were written
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (closed) {
+            throw new IllegalStateException("The encoder has been closed");
+        }
+        if (rowsWritten != height) {
+            throw new IOException("Incomplete image: " + rowsWritten + " of " + height + " rows written");
+        }
+        writeHeader();
+        if (executor != null) {
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty()) {
+                writeNextBlock();
+            }
+            byte[] checksum = new byte[4];
+            writeInt(checksum, 0, (int) adler.getValue());
+            appendCompressed(checksum, checksum.length);
+        } else {
+            deflater.finish();
+            while (!deflater.finished()) {
+                drainDeflater();
+            }
+        }
+        flushCompressed();
+        writeChunk("IEND", new byte[0], 0);
+        out.flush();
+        finished = true;
+        close();
+    }
+
+    /**
+     * Releases the resources of the encoder: the native state of its
+     * deflater and the blocks still being compressed, which are cancelled.
+     * Called by {@link #finish()}; an encoder that fails before finishing
+     * must be closed by its caller, and can no longer be used. The stream is
+     * not closed. Closing a closed encoder has no effect.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pendingBlocks != null) {
+            for (Future<byte[]> pendingBlock : pendingBlocks) {
+                pendingBlock.cancel(false);
+            }
+            pendingBlocks.clear();
+        }
+        executor = null;
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten) {
+            return;
+        }
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) (palette == null ? COLOR_TYPE_RGBA : COLOR_TYPE_INDEXED);
+        header[10] = 0;
+        header[11] = 0;
+        header[12] = 0;
+        writeChunk("IHDR", header, header.length);
+        if (palette != null) {
+            writePalette();
+        }
+        headerWritten = true;
+        if (filterStrategy == FilterStrategy.ADAPTIVE) {
+            candidateRows = new byte[FilterStrategy.PAETH.ordinal() + 1][filteredRow.length];
+        }
+        long imageSize = (long) filteredRow.length * height;
+        if (threadCount > 1 && imageSize > 2L * BLOCK_SIZE) {
+            executor = ThreadPools.getComputeExecutor();
+            pendingBlocks = new ArrayDeque<Future<byte[]>>();
+            adler = new Adler32();
+            block = new byte[Math.max(BLOCK_SIZE, filteredRow.length)];
+            blockLength = 0;
+            previousBlock = null;
+            previousBlockLength = 0;
+            byte[] zlibHeader = getZlibHeader(compressionLevel);
+            appendCompressed(zlibHeader, zlibHeader.length);
+        } else {
+            deflater = new Deflater(compressionLevel);
+        }
+    }
+
+    /**
+     * Writes the PLTE chunk and, if some colors are translucent, the tRNS
+     * chunk with their alpha values; the palette lists them first.
+     */
+    private void writePalette() throws IOException {
+        int size = palette.size();
+        byte[] colors = new byte[3 * size];
+        byte[] alphas = new byte[size];
+        int translucentCount = 0;
+        for (int i = 0; i < size; i++) {
+            int color = palette.getColor(i);
+            colors[3 * i] = (byte) (color >> 16);
+            colors[3 * i + 1] = (byte) (color >> 8);
+            colors[3 * i + 2] = (byte) color;
+            alphas[i] = (byte) (color >>> 24);
+            if ((color >>> 24) != 255) {
+                translucentCount = i + 1;
+            }
+        }
+        writeChunk("PLTE", colors, colors.length);
+        if (translucentCount > 0) {
+            writeChunk("tRNS", alphas, translucentCount);
+        }
+    }
+
+    /**
+     * Returns the filtered scanline, starting with its filter type byte.
+     */
+    private byte[] filterRow(byte[] row, byte[] previous) {
+        if (filterStrategy != FilterStrategy.ADAPTIVE) {
+            filter(filterStrategy.ordinal(), row, previous, filteredRow);
+            return filteredRow;
+        }
+        byte[] best = null;
+        long bestSum = Long.MAX_VALUE;
+        for (int type = 0; type < candidateRows.length; type++) {
+            byte[] candidate = candidateRows[type];
+            filter(type, row, previous, candidate);
+            long sum = 0;
+            for (int i = 1; i < candidate.length && sum < bestSum; i++) {
+                sum += Math.abs(candidate[i]);
+            }
+            if (sum < bestSum) {
+                bestSum = sum;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Applies the PNG filter <code>type</code> on <code>row</code> into
+     * <code>filtered</code>, preceded by the type.
+     */
+    private void filter(int type, byte[] row, byte[] previous, byte[] filtered) {
+        int bpp = bytesPerPixel;
+        int length = row.length;
+        filtered[0] = (byte) type;
+        switch (type) {
+            case 0:
+                System.arraycopy(row, 0, filtered, 1, length);
+                break;
+            case 1:
+                System.arraycopy(row, 0, filtered, 1, bpp);
+                for (int i = bpp; i < length; i++) {
+                    filtered[i + 1] = (byte) (row[i] - row[i - bpp]);
+                }
+                break;
+            case 2:
+                for (int i = 0; i < length; i++) {
+                    filtered[i + 1] = (byte) (row[i] - previous[i]);
+                }
+                break;
+            case 3:
+                for (int i = 0; i < bpp; i++) {
+                    filtered[i + 1] = (byte) (row[i] - ((previous[i] & 0xff) >> 1));
+                }
+                for (int i = bpp; i < length; i++) {
+                    filtered[i + 1] = (byte) (row[i] - (((row[i - bpp] & 0xff) + (previous[i] & 0xff)) >> 1));
+                }
+                break;
+            default:
+                for (int i = 0; i < bpp; i++) {
+                    filtered[i + 1] = (byte) (row[i] - previous[i]);
+                }
+                for (int i = bpp; i < length; i++) {
+                    filtered[i + 1] = (byte) (row[i] - paeth(row[i - bpp] & 0xff, previous[i] & 0xff, previous[i - bpp] & 0xff));
+                }
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private void deflate(byte[] data, int length) throws IOException {
+        deflater.setInput(data, 0, length);
+        while (!deflater.needsInput()) {
+            drainDeflater();
+        }
+    }
+
+    private void drainDeflater() throws IOException {
+        int count = deflater.deflate(compressed, compressedCount, compressed.length - compressedCount);
+        compressedCount += count;
+        if (compressedCount == compressed.length) {
+            flushCompressed();
+        }
+    }
+
+    private void appendToBlock(byte[] filtered) throws IOException {
+        if (blockLength + filtered.length > block.length) {
+            submitBlock(false);
+        }
+        System.arraycopy(filtered, 0, block, blockLength, filtered.length);
+        blockLength += filtered.length;
+        adler.update(filtered, 0, filtered.length);
+    }
+
+    /**
+     * Hands the current block to a compression task and, if enough blocks
+     * are in flight, writes the oldest one, so that at most twice the thread
+     * count of blocks are held in memory.
+     */
+    private void submitBlock(boolean last) throws IOException {
+        pendingBlocks.add(executor.submit(new BlockCompression(compressionLevel, block, blockLength,
+                previousBlock, previousBlockLength, last)));
+        previousBlock = block;
+        previousBlockLength = blockLength;
+        block = new byte[block.length];
+        blockLength = 0;
+        while (pendingBlocks.size() > 2 * threadCount) {
+            writeNextBlock();
+        }
+    }
+
+    private void writeNextBlock() throws IOException {
+        try {
+            byte[] data = pendingBlocks.remove().get();
+            appendCompressed(data, data.length);
+        } catch (InterruptedException ex) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing the image");
+        } catch (ExecutionException ex) {
+            close();
+            throw new IOException("Compression of the image failed", ex.getCause());
+        }
+    }
+
+    private void appendCompressed(byte[] data, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = Math.min(length - offset, compressed.length - compressedCount);
+            System.arraycopy(data, offset, compressed, compressedCount, count);
+            compressedCount += count;
+            offset += count;
+            if (compressedCount == compressed.length) {
+                flushCompressed();
+            }
+        }
+    }
+
+    private void flushCompressed() throws IOException {
+        if (compressedCount > 0) {
+            writeChunk("IDAT", compressed, compressedCount);
+            compressedCount = 0;
+        }
+    }
+
+    /**
+     * Returns the two bytes starting a zlib stream compressed at the given
+     * level.
+     */
+    private static byte[] getZlibHeader(int level) {
+        int compressionMethod = 0x78;
+        int levelFlags;
+        if (level == Deflater.DEFAULT_COMPRESSION || level == 6) {
+            levelFlags = 2;
+        } else if (level < 2) {
+            levelFlags = 0;
+        } else if (level < 6) {
+            levelFlags = 1;
+        } else {
+            levelFlags = 3;
+        }
+        int flags = levelFlags << 6;
+        flags += 31 - (compressionMethod * 256 + flags) % 31;
+        return new byte[]{(byte) compressionMethod, (byte) flags};
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        byte[] buffer = new byte[4];
+        writeInt(buffer, 0, length);
+        out.write(buffer);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        writeInt(buffer, 0, (int) crc.getValue());
+        out.write(buffer);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Compresses a block of filtered scanlines into raw deflate data, ending
+     * on a byte boundary so that it can be followed by the next block, or
+     * with the final block of the stream.
+     */
+    private static final class BlockCompression implements Callable<byte[]> {
+
+        private final int level;
+        private final byte[] data;
+        private final int length;
+        private final byte[] previousData;
+        private final int previousLength;
+        private final boolean last;
+
+        BlockCompression(int level, byte[] data, int length, byte[] previousData, int previousLength, boolean last) {
+            this.level = level;
+            this.data = data;
+            this.length = length;
+            this.previousData = previousData;
+            this.previousLength = previousLength;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (previousData != null) {
+                    int dictionaryLength = Math.min(previousLength, DICTIONARY_SIZE);
+                    deflater.setDictionary(previousData, previousLength - dictionaryLength, dictionaryLength);
+                }
+                deflater.setInput(data, 0, length);
+                ByteArrayOutputStream result = new ByteArrayOutputStream(length / 4 + 64);
+                byte[] buffer = new byte[CHUNK_SIZE];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int count = deflater.deflate(buffer);
+                        result.write(buffer, 0, count);
+                    }
+                } else {
+                    int count;
+                    do {
+                        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        result.write(buffer, 0, count);
+                    } while (count == buffer.length);
+                }
+                return result.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.io;
+
+import java.util.zip.Deflater;
+
+/**
+ * Settings of the encoding of rendered charts. The PNG settings are ignored
+ * for SVG output.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class RenderOptions {
+
+    private int compressionLevel;
+    private PngEncoder.FilterStrategy filterStrategy;
+    private int threadCount;
+    private int maxColors;
+
+    public RenderOptions() {
+        this.compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        this.filterStrategy = null;
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+        this.maxColors = 0;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @see PngEncoder#setCompressionLevel(int)
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION
+                && (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the filter of the PNG scanlines, or null for the default of
+     * the {@link PngEncoder}.
+     */
+    public PngEncoder.FilterStrategy getFilterStrategy() {
+        return filterStrategy;
+    }
+
+    public void setFilterStrategy(PngEncoder.FilterStrategy filterStrategy) {
+        this.filterStrategy = filterStrategy;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @see PngEncoder#setThreadCount(int)
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be positive");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Returns the size of the palette of indexed PNG images, or 0 if RGBA
+     * images are written.
+     */
+    public int getMaxColors() {
+        return maxColors;
+    }
+
+    /**
+     * Sets the size of the palette quantized from the chart, from 1 to
+     * {@link Palette#MAX_COLORS}, to write indexed PNG images, or 0 to write
+     * RGBA images.
+     */
+    public void setMaxColors(int maxColors) {
+        if (maxColors < 0 || maxColors > Palette.MAX_COLORS) {
+            throw new IllegalArgumentException("Invalid palette size: " + maxColors);
+        }
+        this.maxColors = maxColors;
+    }
+}
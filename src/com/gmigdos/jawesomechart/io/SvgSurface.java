@@ -0,0 +1,893 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.io;
+
+import com.gmigdos.jawesomechart.util.Graphics2DSurface;
+import com.gmigdos.jawesomechart.util.ShadowBuffers;
+import com.gmigdos.jawesomechart.util.Surface;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link Surface} writing an SVG document to a {@link Writer} as it is
+ * drawn on, without keeping the document in memory.
+ *
+ * Geometry is written in device coordinates, so elements need no transform
+ * attribute unless they are text or images under rotation, shear or
+ * scaling. Styles are written once, as CSS classes, and referenced by all the
+ * elements that share them; clips, gradients and shadow filters are likewise
+ * defined once and referenced by id. Shadows are drawn by the viewer, with an
+ * SVG filter. Identifiers start with a prefix, so that several charts can be
+ * embedded in the same HTML page.
+ *
+ * Text is measured with Java2D, with fractional metrics, unless another
+ * surface is given to measure it (e.g. a
+ * {@link com.gmigdos.jawesomechart.util.RasterSurface} to avoid starting
+ * AWT); the viewer draws it with its own fonts. SVG has no equivalent of
+ * clearing pixels: shapes drawn with the Clear rule are skipped, and the Src
+ * rule is treated as SrcOver.
+ *
+ * Errors of the writer are kept and thrown by {@link #finish()}.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class SvgSurface implements Surface {
+
+    public static final String DEFAULT_ID_PREFIX = "jac";
+    private final Document document;
+    private final Surface measurer;
+    private AffineTransform transform;
+    private Shape deviceClip;
+    private String clipId;
+    private Paint paint;
+    private Stroke stroke;
+    private Font font;
+    private Composite composite;
+    private boolean antialiasingOn;
+
+    /**
+     * Creates a surface writing an SVG document of the given size to
+     * <code>out</code>, starting with the root element.
+     */
+    public SvgSurface(Writer out, int width, int height) {
+        this(out, width, height, DEFAULT_ID_PREFIX, null);
+    }
+
+    /**
+     * @param out the writer to write the document to
+     * @param width the width of the document
+     * @param height the height of the document
+     * @param idPrefix the prefix of the classes and ids of the document
+     * @param measurer the surface to measure text with, or null to use Java2D
+     */
+    public SvgSurface(Writer out, int width, int height, String idPrefix, Surface measurer) {
+        this.document = new Document(out, width, height, idPrefix);
+        if (measurer == null) {
+            Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            measurer = new Graphics2DSurface(g);
+            measurer.setAntialiasingOn(true);
+        }
+        this.measurer = measurer;
+        this.transform = new AffineTransform();
+        this.deviceClip = null;
+        this.clipId = null;
+        this.paint = Color.WHITE;
+        this.stroke = new BasicStroke();
+        this.font = new Font(Font.DIALOG, Font.PLAIN, 12);
+        this.composite = AlphaComposite.SrcOver;
+        this.antialiasingOn = false;
+        document.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+                + " version=\"1.1\" width=\"" + width + "\" height=\"" + height
+                + "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+    }
+
+    private SvgSurface(SvgSurface surface) {
+        this.document = surface.document;
+        this.measurer = surface.measurer.create();
+        this.transform = new AffineTransform(surface.transform);
+        this.deviceClip = surface.deviceClip;
+        this.clipId = surface.clipId;
+        this.paint = surface.paint;
+        this.stroke = surface.stroke;
+        this.font = surface.font;
+        this.composite = surface.composite;
+        this.antialiasingOn = surface.antialiasingOn;
+    }
+
+    /**
+     * Closes the open groups and the root element and flushes the writer,
+     * which is not closed.
+     *
+     * @throws IOException if writing the document failed
+     */
+    public void finish() throws IOException {
+        document.closeGroups();
+        document.write("</svg>\n");
+        if (document.error == null) {
+            try {
+                document.out.flush();
+            } catch (IOException ex) {
+                document.error = ex;
+            }
+        }
+        if (document.error != null) {
+            throw document.error;
+        }
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    @Override
+    public void setTransform(AffineTransform transform) {
+        this.transform = new AffineTransform(transform);
+    }
+
+    @Override
+    public void translate(double x, double y) {
+        transform.translate(x, y);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    @Override
+    public void transform(AffineTransform transform) {
+        this.transform.concatenate(transform);
+    }
+
+    @Override
+    public Shape getClip() {
+        if (deviceClip == null) {
+            return null;
+        }
+        try {
+            Shape clip = transform.createInverse().createTransformedShape(deviceClip);
+            if (deviceClip instanceof Rectangle2D && isRectilinear(transform)) {
+                return clip.getBounds2D();
+            }
+            return clip;
+        } catch (NoninvertibleTransformException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        if (clip == null) {
+            deviceClip = null;
+        } else if (clip instanceof Rectangle2D && isRectilinear(transform)) {
+            deviceClip = transform.createTransformedShape(clip).getBounds2D();
+        } else {
+            deviceClip = transform.createTransformedShape(clip);
+        }
+        clipId = null;
+    }
+
+    private static boolean isRectilinear(AffineTransform t) {
+        return (t.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE
+                | AffineTransform.TYPE_GENERAL_SCALE | AffineTransform.TYPE_FLIP)) == 0;
+    }
+
+    @Override
+    public Paint getPaint() {
+        return paint;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        this.paint = paint;
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    @Override
+    public void setStroke(Stroke stroke) {
+        this.stroke = stroke;
+    }
+
+    @Override
+    public Font getFont() {
+        return font;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        this.font = font;
+    }
+
+    @Override
+    public Composite getComposite() {
+        return composite;
+    }
+
+    @Override
+    public void setComposite(Composite composite) {
+        this.composite = composite;
+    }
+
+    @Override
+    public boolean isAntialiasingOn() {
+        return antialiasingOn;
+    }
+
+    @Override
+    public void setAntialiasingOn(boolean antialiasingOn) {
+        this.antialiasingOn = antialiasingOn;
+        measurer.setAntialiasingOn(antialiasingOn);
+    }
+
+    @Override
+    public void draw(Shape shape) {
+        if (isCleared()) {
+            return;
+        }
+        double scale = getConformalScale(transform);
+        if (!(stroke instanceof BasicStroke) || scale < 0) {
+            // Strokes that SVG cannot express, or that the transformation
+            // distorts, are drawn as the outline they produce:
+            fill(stroke.createStrokedShape(shape));
+            return;
+        }
+        StringBuilder style = new StringBuilder("fill:none;");
+        appendPaint(style, "stroke");
+        appendStroke(style, (BasicStroke) stroke, scale);
+        appendRendering(style, false);
+        writeShape(shape, style);
+    }
+
+    @Override
+    public void fill(Shape shape) {
+        if (isCleared()) {
+            return;
+        }
+        StringBuilder style = new StringBuilder();
+        appendPaint(style, "fill");
+        if (shape.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+            style.append("fill-rule:evenodd;");
+        }
+        appendRendering(style, false);
+        writeShape(shape, style);
+    }
+
+    /**
+     * Returns true if drawing with the current composite and paint leaves
+     * nothing visible in the document.
+     */
+    private boolean isCleared() {
+        if (composite instanceof AlphaComposite) {
+            AlphaComposite alphaComposite = (AlphaComposite) composite;
+            if (alphaComposite.getRule() == AlphaComposite.CLEAR || alphaComposite.getAlpha() == 0) {
+                return true;
+            }
+        }
+        return paint instanceof Color && ((Color) paint).getAlpha() == 0;
+    }
+
+    /**
+     * Returns the scale factor of <code>t</code> if it scales all
+     * directions alike, or -1 otherwise.
+     */
+    private static double getConformalScale(AffineTransform t) {
+        double sx = Math.hypot(t.getScaleX(), t.getShearY());
+        double sy = Math.hypot(t.getShearX(), t.getScaleY());
+        double dot = t.getScaleX() * t.getShearX() + t.getShearY() * t.getScaleY();
+        if (Math.abs(sx - sy) > 1e-9 * Math.max(sx, sy) || Math.abs(dot) > 1e-9 * sx * sy) {
+            return -1;
+        }
+        return sx;
+    }
+
+    private void writeShape(Shape shape, StringBuilder style) {
+        StringBuilder element = new StringBuilder("<path class=\"");
+        element.append(document.getStyleClass(style.toString()));
+        element.append("\" d=\"");
+        if (!appendPathData(element, shape, transform)) {
+            return;
+        }
+        element.append("\"/>\n");
+        writeElement(element);
+    }
+
+    /**
+     * Appends the path data of <code>shape</code> transformed by
+     * <code>t</code>, returning false if it is empty.
+     */
+    private static boolean appendPathData(StringBuilder sb, Shape shape, AffineTransform t) {
+        PathIterator iterator = shape.getPathIterator(t);
+        double[] coords = new double[6];
+        int length = sb.length();
+        while (!iterator.isDone()) {
+            int type = iterator.currentSegment(coords);
+            switch (type) {
+                case PathIterator.SEG_MOVETO:
+                    sb.append('M');
+                    appendPoints(sb, coords, 1);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    sb.append('L');
+                    appendPoints(sb, coords, 1);
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    sb.append('Q');
+                    appendPoints(sb, coords, 2);
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    sb.append('C');
+                    appendPoints(sb, coords, 3);
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    sb.append('Z');
+                    break;
+            }
+            iterator.next();
+        }
+        return sb.length() > length;
+    }
+
+    private static void appendPoints(StringBuilder sb, double[] coords, int count) {
+        for (int i = 0; i < 2 * count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            appendNumber(sb, coords[i]);
+        }
+    }
+
+    /**
+     * Appends <code>value</code> rounded to two decimals, without trailing
+     * zeros.
+     */
+    static void appendNumber(StringBuilder sb, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append('0');
+            return;
+        }
+        long hundredths = Math.round(value * 100);
+        if (hundredths < 0) {
+            sb.append('-');
+            hundredths = -hundredths;
+        }
+        sb.append(hundredths / 100);
+        long fraction = hundredths % 100;
+        if (fraction != 0) {
+            sb.append('.');
+            if (fraction < 10) {
+                sb.append('0').append(fraction);
+            } else if (fraction % 10 == 0) {
+                sb.append(fraction / 10);
+            } else {
+                sb.append(fraction);
+            }
+        }
+    }
+
+    private void appendPaint(StringBuilder style, String property) {
+        double alpha = 1;
+        if (composite instanceof AlphaComposite) {
+            alpha = ((AlphaComposite) composite).getAlpha();
+        }
+        if (paint instanceof Color) {
+            Color color = (Color) paint;
+            style.append(property).append(':');
+            appendColor(style, color);
+            alpha *= color.getAlpha() / 255.0;
+        } else if (paint instanceof GradientPaint) {
+            style.append(property).append(":url(#").append(document.getGradientId((GradientPaint) paint, transform)).append(");");
+        } else {
+            // Paints SVG cannot express are approximated by gray:
+            style.append(property).append(":#808080;");
+        }
+        if (alpha < 1) {
+            style.append(property).append("-opacity:");
+            appendNumber(style, alpha);
+            style.append(';');
+        }
+    }
+
+    private static void appendColor(StringBuilder sb, Color color) {
+        sb.append('#');
+        String hex = Integer.toHexString(color.getRGB() & 0xffffff);
+        for (int i = hex.length(); i < 6; i++) {
+            sb.append('0');
+        }
+        sb.append(hex).append(';');
+    }
+
+    private static void appendStroke(StringBuilder style, BasicStroke stroke, double scale) {
+        style.append("stroke-width:");
+        appendNumber(style, Math.max(stroke.getLineWidth() * scale, 0.01));
+        style.append(';');
+        if (stroke.getEndCap() == BasicStroke.CAP_ROUND) {
+            style.append("stroke-linecap:round;");
+        } else if (stroke.getEndCap() == BasicStroke.CAP_SQUARE) {
+            style.append("stroke-linecap:square;");
+        }
+        if (stroke.getLineJoin() == BasicStroke.JOIN_ROUND) {
+            style.append("stroke-linejoin:round;");
+        } else if (stroke.getLineJoin() == BasicStroke.JOIN_BEVEL) {
+            style.append("stroke-linejoin:bevel;");
+        } else if (stroke.getMiterLimit() != 4) {
+            style.append("stroke-miterlimit:");
+            appendNumber(style, Math.max(stroke.getMiterLimit(), 1));
+            style.append(';');
+        }
+        float[] dashes = stroke.getDashArray();
+        if (dashes != null) {
+            style.append("stroke-dasharray:");
+            for (int i = 0; i < dashes.length; i++) {
+                if (i > 0) {
+                    style.append(',');
+                }
+                appendNumber(style, dashes[i] * scale);
+            }
+            style.append(';');
+            if (stroke.getDashPhase() != 0) {
+                style.append("stroke-dashoffset:");
+                appendNumber(style, stroke.getDashPhase() * scale);
+                style.append(';');
+            }
+        }
+    }
+
+    private void appendRendering(StringBuilder style, boolean text) {
+        if (!antialiasingOn) {
+            style.append(text ? "text-rendering:optimizeSpeed;" : "shape-rendering:crispEdges;");
+        }
+    }
+
+    /**
+     * Writes an element inside the group of the current clip.
+     */
+    private void writeElement(CharSequence element) {
+        if (deviceClip != null && clipId == null) {
+            StringBuilder d = new StringBuilder();
+            if (!appendPathData(d, deviceClip, null)) {
+                // Nothing is visible within an empty clip.
+                return;
+            }
+            boolean evenOdd = deviceClip.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD;
+            clipId = document.getClipId(d.toString(), evenOdd);
+        }
+        document.openClipGroup(clipId);
+        document.write(element);
+    }
+
+    @Override
+    public void drawImage(Image image, double x, double y) {
+        if (isCleared() || !(image instanceof BufferedImage)) {
+            return;
+        }
+        BufferedImage bufferedImage = (BufferedImage) image;
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try {
+            PngEncoder.encode(bufferedImage, png);
+        } catch (IOException ex) {
+            // Not thrown by a ByteArrayOutputStream.
+            return;
+        }
+        StringBuilder element = new StringBuilder("<image");
+        appendPosition(element, x, y);
+        element.append(" width=\"").append(bufferedImage.getWidth());
+        element.append("\" height=\"").append(bufferedImage.getHeight());
+        element.append("\" preserveAspectRatio=\"none\"");
+        if (composite instanceof AlphaComposite && ((AlphaComposite) composite).getAlpha() < 1) {
+            element.append(" opacity=\"");
+            appendNumber(element, ((AlphaComposite) composite).getAlpha());
+            element.append('"');
+        }
+        element.append(" xlink:href=\"data:image/png;base64,");
+        appendBase64(element, png.toByteArray());
+        element.append("\"/>\n");
+        writeElement(element);
+    }
+
+    /**
+     * Appends the x and y attributes of an element positioned at (x, y) in
+     * user space, with a transform attribute unless the current
+     * transformation is a translation.
+     */
+    private void appendPosition(StringBuilder element, double x, double y) {
+        Point2D p;
+        if ((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0) {
+            p = transform.transform(new Point2D.Double(x, y), null);
+        } else {
+            element.append(" transform=\"matrix(");
+            double[] matrix = new double[6];
+            transform.getMatrix(matrix);
+            for (int i = 0; i < matrix.length; i++) {
+                if (i > 0) {
+                    element.append(' ');
+                }
+                // Rotations and scales need more precision than coordinates:
+                element.append((float) matrix[i]);
+            }
+            element.append(")\"");
+            p = new Point2D.Double(x, y);
+        }
+        element.append(" x=\"");
+        appendNumber(element, p.getX());
+        element.append("\" y=\"");
+        appendNumber(element, p.getY());
+        element.append('"');
+    }
+
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static void appendBase64(StringBuilder sb, byte[] data) {
+        for (int i = 0; i < data.length; i += 3) {
+            int b0 = data[i] & 0xff;
+            int b1 = i + 1 < data.length ? data[i + 1] & 0xff : 0;
+            int b2 = i + 2 < data.length ? data[i + 2] & 0xff : 0;
+            sb.append(BASE64[b0 >> 2]);
+            sb.append(BASE64[((b0 & 3) << 4) | (b1 >> 4)]);
+            sb.append(i + 1 < data.length ? BASE64[((b1 & 15) << 2) | (b2 >> 6)] : '=');
+            sb.append(i + 2 < data.length ? BASE64[b2 & 63] : '=');
+        }
+    }
+
+    @Override
+    public void drawString(String text, float x, float y) {
+        if (isCleared() || text.isEmpty()) {
+            return;
+        }
+        StringBuilder style = new StringBuilder();
+        appendPaint(style, "fill");
+        appendFont(style, font);
+        appendRendering(style, true);
+        StringBuilder element = new StringBuilder("<text class=\"");
+        element.append(document.getStyleClass(style.toString())).append('"');
+        appendPosition(element, x, y);
+        element.append('>');
+        appendEscaped(element, text);
+        element.append("</text>\n");
+        writeElement(element);
+    }
+
+    private static void appendFont(StringBuilder style, Font font) {
+        // The logical name, as the family would start the font system:
+        String name = font.getName();
+        String logicalName = name.replace(" ", "");
+        String family;
+        if (Font.DIALOG.equalsIgnoreCase(logicalName) || Font.SANS_SERIF.equalsIgnoreCase(logicalName)) {
+            family = "sans-serif";
+        } else if (Font.SERIF.equalsIgnoreCase(logicalName)) {
+            family = "serif";
+        } else if (Font.MONOSPACED.equalsIgnoreCase(logicalName) || Font.DIALOG_INPUT.equalsIgnoreCase(logicalName)) {
+            family = "monospace";
+        } else {
+            StringBuilder quoted = new StringBuilder("'");
+            for (char c : name.toCharArray()) {
+                if (c != '\'' && c != '"' && c != '\\' && c != ';' && c != '}' && c != '<' && c != '&') {
+                    quoted.append(c);
+                }
+            }
+            family = quoted.append("',sans-serif").toString();
+        }
+        style.append("font-family:").append(family).append(";font-size:");
+        appendNumber(style, font.getSize2D());
+        style.append("px;");
+        if (font.isBold()) {
+            style.append("font-weight:bold;");
+        }
+        if (font.isItalic()) {
+            style.append("font-style:italic;");
+        }
+        style.append("white-space:pre;");
+    }
+
+    static void appendEscaped(StringBuilder sb, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    // Control characters are not allowed in XML:
+                    if (c >= 0x20 || c == '\t') {
+                        sb.append(c);
+                    }
+            }
+        }
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font font) {
+        return measurer.getFontMetrics(font);
+    }
+
+    @Override
+    public Rectangle2D getStringBounds(String text, Font font) {
+        return measurer.getStringBounds(text, font);
+    }
+
+    @Override
+    public Rectangle2D getVisualBounds(String text, Font font) {
+        return measurer.getVisualBounds(text, font);
+    }
+
+    @Override
+    public LineMetrics getLineMetrics(String text, Font font) {
+        return measurer.getLineMetrics(text, font);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return measurer.getFontRenderContext();
+    }
+
+    @Override
+    public Surface create() {
+        return new SvgSurface(this);
+    }
+
+    /**
+     * Opens a group drawn with an SVG filter casting the shadow.
+     */
+    @Override
+    public boolean beginShadow(Paint color, int blurRadius, double xOffset, double yOffset) {
+        Point2D offset = transform.deltaTransform(new Point2D.Double(xOffset, yOffset), null);
+        Color shadowColor = color instanceof Color ? (Color) color : new Color(0f, 0f, 0f, 0.5f);
+        // The deviation of a box blur of the given radius:
+        double deviation = Math.sqrt(blurRadius * (blurRadius + 1) / 3.0);
+        document.openShadowGroup(document.getShadowFilterId(shadowColor, deviation, offset));
+        return true;
+    }
+
+    @Override
+    public void endShadow() {
+        document.closeShadowGroup();
+    }
+
+    /**
+     * Returns null: every shadow is drawn with an SVG filter.
+     */
+    @Override
+    public ShadowBuffers getShadowBuffers() {
+        return null;
+    }
+
+    @Override
+    public void dispose() {
+        measurer.dispose();
+    }
+
+    /**
+     * The state shared by all the surfaces writing the same document: the
+     * writer, the definitions written so far and the open groups.
+     */
+    private static final class Document {
+
+        private final Writer out;
+        private final int width;
+        private final int height;
+        private final String idPrefix;
+        private final Map<String, String> styleClasses;
+        private final Map<String, String> definitionIds;
+        private IOException error;
+        private String openClipId;
+        private int openShadowGroups;
+
+        Document(Writer out, int width, int height, String idPrefix) {
+            this.out = out;
+            this.width = width;
+            this.height = height;
+            this.idPrefix = idPrefix;
+            this.styleClasses = new HashMap<String, String>();
+            this.definitionIds = new HashMap<String, String>();
+            this.error = null;
+            this.openClipId = null;
+            this.openShadowGroups = 0;
+        }
+
+        void write(CharSequence s) {
+            if (error != null) {
+                return;
+            }
+            try {
+                out.append(s);
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+
+        /**
+         * Returns the class of the given style, writing its rule the first
+         * time it is used.
+         */
+        String getStyleClass(String style) {
+            String styleClass = styleClasses.get(style);
+            if (styleClass == null) {
+                styleClass = idPrefix + "s" + styleClasses.size();
+                styleClasses.put(style, styleClass);
+                write("<style>." + styleClass + "{" + style + "}</style>\n");
+            }
+            return styleClass;
+        }
+
+        /**
+         * Returns the id of the definition with the given key, writing it with
+         * <code>definition</code> (whose id attribute is written by this
+         * method) the first time it is used.
+         */
+        private String getDefinitionId(String key, String element, String definition) {
+            String id = definitionIds.get(key);
+            if (id == null) {
+                id = idPrefix + "d" + definitionIds.size();
+                definitionIds.put(key, id);
+                write("<defs><" + element + " id=\"" + id + "\"" + definition + "</defs>\n");
+            }
+            return id;
+        }
+
+        String getClipId(String pathData, boolean evenOdd) {
+            String rule = evenOdd ? " clip-rule=\"evenodd\"" : "";
+            return getDefinitionId("clip:" + pathData + rule, "clipPath",
+                    "><path d=\"" + pathData + "\"" + rule + "/></clipPath>");
+        }
+
+        String getGradientId(GradientPaint paint, AffineTransform transform) {
+            Point2D p1 = transform.transform(paint.getPoint1(), null);
+            Point2D p2 = transform.transform(paint.getPoint2(), null);
+            StringBuilder sb = new StringBuilder(" gradientUnits=\"userSpaceOnUse\" x1=\"");
+            appendNumber(sb, p1.getX());
+            sb.append("\" y1=\"");
+            appendNumber(sb, p1.getY());
+            sb.append("\" x2=\"");
+            appendNumber(sb, p2.getX());
+            sb.append("\" y2=\"");
+            appendNumber(sb, p2.getY());
+            sb.append('"');
+            if (paint.isCyclic()) {
+                sb.append(" spreadMethod=\"reflect\"");
+            }
+            sb.append('>');
+            appendStop(sb, 0, paint.getColor1());
+            appendStop(sb, 1, paint.getColor2());
+            sb.append("</linearGradient>");
+            String definition = sb.toString();
+            return getDefinitionId("gradient:" + definition, "linearGradient", definition);
+        }
+
+        private static void appendStop(StringBuilder sb, int offset, Color color) {
+            sb.append("<stop offset=\"").append(offset).append("\" style=\"stop-color:");
+            appendColor(sb, color);
+            if (color.getAlpha() < 255) {
+                sb.append("stop-opacity:");
+                appendNumber(sb, color.getAlpha() / 255.0);
+            }
+            sb.append("\"/>");
+        }
+
+        String getShadowFilterId(Color color, double deviation, Point2D offset) {
+            StringBuilder sb = new StringBuilder(" filterUnits=\"userSpaceOnUse\" x=\"0\" y=\"0\" width=\"");
+            sb.append(width).append("\" height=\"").append(height).append("\">");
+            sb.append("<feGaussianBlur in=\"SourceAlpha\" stdDeviation=\"");
+            appendNumber(sb, deviation);
+            sb.append("\"/><feOffset dx=\"");
+            appendNumber(sb, offset.getX());
+            sb.append("\" dy=\"");
+            appendNumber(sb, offset.getY());
+            sb.append("\" result=\"shadow\"/><feFlood style=\"flood-color:");
+            appendColor(sb, color);
+            sb.append("flood-opacity:");
+            appendNumber(sb, color.getAlpha() / 255.0);
+            sb.append("\"/><feComposite in2=\"shadow\" operator=\"in\"/>");
+            sb.append("<feMerge><feMergeNode/><feMergeNode in=\"SourceGraphic\"/></feMerge></filter>");
+            String definition = sb.toString();
+            return getDefinitionId("filter:" + definition, "filter", definition);
+        }
+
+        void openClipGroup(String clipId) {
+            if (clipId == null ? openClipId == null : clipId.equals(openClipId)) {
+                return;
+            }
+            closeClipGroup();
+            if (clipId != null) {
+                write("<g clip-path=\"url(#" + clipId + ")\">\n");
+                openClipId = clipId;
+            }
+        }
+
+        void closeClipGroup() {
+            if (openClipId != null) {
+                write("</g>\n");
+                openClipId = null;
+            }
+        }
+
+        void openShadowGroup(String filterId) {
+            closeClipGroup();
+            write("<g filter=\"url(#" + filterId + ")\">\n");
+            openShadowGroups++;
+        }
+
+        void closeShadowGroup() {
+            if (openShadowGroups > 0) {
+                closeClipGroup();
+                write("</g>\n");
+                openShadowGroups--;
+            }
+        }
+
+        void closeGroups() {
+            closeClipGroup();
+            while (openShadowGroups > 0) {
+                closeShadowGroup();
+            }
+        }
+    }
+}
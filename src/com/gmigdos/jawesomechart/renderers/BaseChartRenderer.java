@@ -26,6 +26,8 @@ package com.gmigdos.jawesomechart.renderers;
 import com.gmigdos.jawesomechart.core.DataSeriesList;
 import com.gmigdos.jawesomechart.core.Labels;
 import com.gmigdos.jawesomechart.util.Context2D;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
+import com.gmigdos.jawesomechart.util.Fingerprintable;
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
 import java.text.DecimalFormat;
@@ -34,7 +36,7 @@ import java.text.DecimalFormat;
  *
  * @author Georgios Migdos <cyberpython@gmail.com>
  */
-public class BaseChartRenderer implements ChartRenderer{
+public class BaseChartRenderer implements ChartRenderer, Fingerprintable{
     
     private final static Font DEFAULT_LABEL_FONT = new Font("SansSerif", Font.BOLD, 12);
     private final static Color DEFAULT_LABEL_COLOR = new Color(33, 33, 33);
@@ -85,6 +87,9 @@ public class BaseChartRenderer implements ChartRenderer{
     
     private boolean seriesNameRenderingOn;
     private boolean valueRenderingOn;
+    
+    private boolean cullingOn;
+    private GeometryCuller culler;
 
     public BaseChartRenderer() {
         
@@ -112,6 +117,31 @@ public class BaseChartRenderer implements ChartRenderer{
         shadowOffsetY = 0;
         shadowBlurRadius = 5;
         shadowColor = DEFAULT_SHADOW_COLOR;
+        
+        cullingOn = true;
+        culler = new GeometryCuller();
+    }
+
+    public boolean isCullingOn() {
+        return cullingOn;
+    }
+
+    /**
+     * Enables or disables culling of the data geometry that lies outside
+     * the visible area or is smaller than a pixel. Enabled by default.
+     * 
+     * @param cullingOn the cullingOn to set
+     */
+    public void setCullingOn(boolean cullingOn) {
+        this.cullingOn = cullingOn;
+    }
+
+    /**
+     * Returns the culling stage of the renderer, whose counters report how
+     * much geometry was culled during the last draw.
+     */
+    public GeometryCuller getCuller() {
+        return culler;
     }
 
     public double getShadowOffsetX() {
@@ -362,6 +392,8 @@ public class BaseChartRenderer implements ChartRenderer{
     @Override
     public void draw(Context2D context, DataSeriesList series, Labels labels) {
         
+        culler.reset();
+        context.setLayer(Context2D.Layer.BACKGROUND);
         context.setShadowBlurRadius(shadowBlurRadius);
         context.setShadowXOffset(shadowOffsetX);
         context.setShadowYOffset(shadowOffsetY);
@@ -383,8 +415,75 @@ public class BaseChartRenderer implements ChartRenderer{
         
     }
 
-    
+    /**
+     * Returns whether what this renderer draws in the static layers
+     * (background and axes) depends only on its settings, the labels and the
+     * number, names and colors of the series, and not on their values. If so,
+     * charts that only differ in their values can share the image of their
+     * static layers, see {@link com.gmigdos.jawesomechart.ChartTemplate}.
+     * 
+     * @return true if the static layers do not depend on the values
+     */
+    public boolean areStaticLayersDataIndependent() {
+        return true;
+    }
 
-    
-    
+    /**
+     * Returns the area of the chart, in the space of the chart (see
+     * {@link Context2D#getChartTransform()}), in which the drawing may change
+     * when the value at <code>index</code> of the series at
+     * <code>seriesIndex</code> changes, according to the last drawing of
+     * <code>series</code> by this renderer. Charts redrawn incrementally use
+     * it to only redraw the values they were notified of.
+     * 
+     * The area holds as long as nothing but the values of the series changed
+     * since that drawing. Renderers return null when they cannot tell, e.g.
+     * because the values no longer fit the same axes or changing one value
+     * changes how the others are drawn, as for the slices of a pie; the
+     * chart then compares recorded frames instead. By default null is
+     * returned.
+     * 
+     * @param context a context to measure text with
+     * @param series the series, with their current values
+     * @param seriesIndex the index of the series of the value
+     * @param index the index of the value in its series
+     * @return the area, or null if it is unknown
+     */
+    public Rectangle2D getValueArea(Context2D context, DataSeriesList series, int seriesIndex, int index) {
+        return null;
+    }
+
+    @Override
+    public void addFingerprint(FingerprintBuilder builder) {
+        builder.add(labelMargin);
+        builder.add(labelColor);
+        builder.add(labelFont);
+        builder.add(valueMargin);
+        builder.add(valueColor);
+        builder.add(valueFont);
+        builder.add(paddingTop);
+        builder.add(paddingBottom);
+        builder.add(paddingLeft);
+        builder.add(paddingRight);
+        // The default background is derived from the height of the chart:
+        builder.add(bgFillModified);
+        if (bgFillModified) {
+            builder.add(backgroundFill);
+        }
+        builder.add(borderPaint);
+        builder.add(borderStroke);
+        builder.add(shadowsOn);
+        builder.add(shadowOffsetX);
+        builder.add(shadowOffsetY);
+        builder.add(shadowBlurRadius);
+        builder.add(shadowColor);
+        builder.add(decimalFormat.toPattern());
+        builder.add(decimalFormat.getDecimalFormatSymbols().getDecimalSeparator());
+        builder.add(decimalFormat.getDecimalFormatSymbols().getGroupingSeparator());
+        builder.add(decimalFormat.getDecimalFormatSymbols().getMinusSign());
+        builder.add(decimalFormat.getRoundingMode().name());
+        builder.add(seriesNameRenderingOn);
+        builder.add(valueRenderingOn);
+        builder.add(cullingOn);
+    }
 }
@@ -0,0 +1,347 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.renderers;
+
+import com.gmigdos.jawesomechart.util.Context2D;
+import java.awt.BasicStroke;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Culling stage used by the renderers to avoid emitting geometry that
+ * cannot change the result.
+ *
+ * {@link #begin(Context2D)} takes a snapshot of the transform and of the
+ * visible area of a context; {@link #classify(Rectangle2D, double)} then
+ * tells whether a shape with the given user space bounds lies entirely
+ * outside that area, is smaller than a device pixel, or has to be drawn.
+ * Sub-pixel geometry is not dropped but collapsed: polylines keep a single
+ * vertical span per device pixel column and renderers merge runs of tiny
+ * shapes into one fill.
+ *
+ * The counters report how much was culled since the last {@link #reset()}.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class GeometryCuller {
+
+    public static final int VISIBLE = 0;
+    public static final int OUTSIDE = 1;
+    public static final int SUB_PIXEL = 2;
+
+    private AffineTransform transform;
+    private Rectangle2D visibleArea;
+    private double scale;
+    private int visibleCount;
+    private int culledCount;
+    private int collapsedCount;
+
+    public GeometryCuller() {
+        transform = new AffineTransform();
+        visibleArea = null;
+        scale = 1;
+        reset();
+    }
+
+    /**
+     * Resets the counters.
+     */
+    public void reset() {
+        visibleCount = 0;
+        culledCount = 0;
+        collapsedCount = 0;
+    }
+
+    /**
+     * @return the number of shapes or vertices classified as visible
+     */
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * @return the number of shapes or vertices skipped because they lie
+     * outside the visible area
+     */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    /**
+     * @return the number of shapes or vertices merged into others because
+     * they are smaller than a pixel
+     */
+    public int getCollapsedCount() {
+        return collapsedCount;
+    }
+
+    /**
+     * Takes a snapshot of the current transform and visible area of
+     * <code>context</code>. Must be called again whenever either changes.
+     */
+    public void begin(Context2D context) {
+        transform = context.getTransform();
+        visibleArea = context.getVisibleArea();
+        scale = Math.max(Math.hypot(transform.getScaleX(), transform.getShearY()),
+                Math.hypot(transform.getShearX(), transform.getScaleY()));
+    }
+
+    /**
+     * Returns the length, in device pixels, of a user space distance.
+     */
+    public double toDevice(double length) {
+        return length * scale;
+    }
+
+    /**
+     * Returns the distance, in user space, the outline drawn by
+     * <code>stroke</code> may extend beyond the outlined shape.
+     */
+    public static double getStrokePadding(Stroke stroke) {
+        if (stroke instanceof BasicStroke) {
+            BasicStroke s = (BasicStroke) stroke;
+            double halfWidth = s.getLineWidth() / 2;
+            if (s.getLineJoin() == BasicStroke.JOIN_MITER) {
+                halfWidth *= Math.max(s.getMiterLimit(), 1);
+            }
+            if (s.getEndCap() == BasicStroke.CAP_SQUARE) {
+                halfWidth *= Math.sqrt(2);
+            }
+            return halfWidth;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Classifies a shape and counts it.
+     *
+     * @param bounds the bounds of the shape, in user space
+     * @param padding how far, in user space, what is drawn for the shape may
+     * extend beyond its bounds (e.g. half the width of its outline)
+     * @return {@link #OUTSIDE} if nothing drawn for the shape can be visible,
+     * {@link #SUB_PIXEL} if the shape itself is less than a pixel wide or
+     * high, in which case the caller is expected to collapse it, or
+     * {@link #VISIBLE}
+     */
+    public int classify(Rectangle2D bounds, double padding) {
+        return classify(bounds, padding, null);
+    }
+
+    /**
+     * Like {@link #classify(Rectangle2D, double)}, for a shape that will be
+     * drawn under <code>clip</code>, in user space, instead of the clip the
+     * context had when {@link #begin(Context2D)} was called.
+     */
+    public int classify(Rectangle2D bounds, double padding, Rectangle2D clip) {
+        if (visibleArea == null) {
+            visibleCount++;
+            return VISIBLE;
+        }
+        Rectangle2D r = toDevice(bounds);
+        if (isOutside(r, padding, visibleArea) || (clip != null && isOutside(r, padding, toDevice(clip)))) {
+            culledCount++;
+            return OUTSIDE;
+        }
+        if (r.getWidth() < 1 || r.getHeight() < 1) {
+            collapsedCount++;
+            return SUB_PIXEL;
+        }
+        visibleCount++;
+        return VISIBLE;
+    }
+
+    /**
+     * Returns true, and counts the shape as culled, if nothing drawn for a
+     * shape with the given bounds can be visible. Otherwise counts the shape
+     * as visible. Unlike {@link #classify(Rectangle2D, double)} the size of
+     * the shape is not considered.
+     *
+     * @param bounds the bounds of the shape, in user space
+     * @param padding how far, in user space, what is drawn for the shape may
+     * extend beyond its bounds
+     */
+    public boolean isOutside(Rectangle2D bounds, double padding) {
+        if (visibleArea != null && isOutside(toDevice(bounds), padding, visibleArea)) {
+            culledCount++;
+            return true;
+        }
+        visibleCount++;
+        return false;
+    }
+
+    private boolean isOutside(Rectangle2D deviceBounds, double padding, Rectangle2D area) {
+        // Anti-aliasing may touch the pixels around the exact bounds:
+        double p = toDevice(padding) + 1;
+        return deviceBounds.getMaxX() + p <= area.getMinX() || deviceBounds.getMinX() - p >= area.getMaxX()
+                || deviceBounds.getMaxY() + p <= area.getMinY() || deviceBounds.getMinY() - p >= area.getMaxY();
+    }
+
+    private Rectangle2D toDevice(Rectangle2D bounds) {
+        if (transform.getShearX() == 0 && transform.getShearY() == 0) {
+            double x0 = transform.getScaleX() * bounds.getMinX() + transform.getTranslateX();
+            double x1 = transform.getScaleX() * bounds.getMaxX() + transform.getTranslateX();
+            double y0 = transform.getScaleY() * bounds.getMinY() + transform.getTranslateY();
+            double y1 = transform.getScaleY() * bounds.getMaxY() + transform.getTranslateY();
+            return new Rectangle2D.Double(Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1 - x0), Math.abs(y1 - y0));
+        }
+        return transform.createTransformedShape(bounds).getBounds2D();
+    }
+
+    /**
+     * Appends to <code>path</code> a rectangle covering <code>bounds</code>,
+     * grown around its center to at least a device pixel in each direction.
+     * Renderers use it to collapse the shapes classified as
+     * {@link #SUB_PIXEL} into a single fill, without outlines.
+     */
+    public void collapse(Path2D path, Rectangle2D bounds) {
+        double minSize = scale > 0 ? 1 / scale : 0;
+        double w = Math.max(bounds.getWidth(), minSize);
+        double h = Math.max(bounds.getHeight(), minSize);
+        double x = bounds.getCenterX() - w / 2;
+        double y = bounds.getCenterY() - h / 2;
+        path.moveTo(x, y);
+        path.lineTo(x + w, y);
+        path.lineTo(x + w, y + h);
+        path.lineTo(x, y + h);
+        path.closePath();
+    }
+
+    /**
+     * Counts a shape that has been merged into another one.
+     */
+    public void collapsed() {
+        collapsedCount++;
+    }
+
+    /**
+     * Appends a polyline to <code>path</code>, in user space, culling and
+     * collapsing its vertices. Vertices with a NaN coordinate break the
+     * line.
+     *
+     * Segments whose bounds, enlarged by <code>padding</code>, lie outside the
+     * visible area are replaced by a move. Runs of consecutive vertices that
+     * fall in the same device pixel column are collapsed to the first,
+     * lowest, highest and last of them, which covers the same pixels.
+     * Collapsing is only done when the transform has no rotation or shear.
+     *
+     * @param path the path to append to
+     * @param xPoints the x coordinates of the vertices
+     * @param yPoints the y coordinates of the vertices
+     * @param nPoints the number of vertices
+     * @param padding how far, in user space, the stroke of the line may
+     * extend beyond its vertices
+     */
+    public void appendPolyline(Path2D path, double[] xPoints, double[] yPoints, int nPoints, double padding) {
+        boolean collapse = visibleArea != null && transform.getShearX() == 0 && transform.getShearY() == 0;
+        double p = toDevice(padding) + 1;
+        boolean penDown = false;
+        // The run of vertices in the current device pixel column:
+        int runColumn = 0;
+        int runLength = 0;
+        int first = -1;
+        int low = -1;
+        int high = -1;
+        int last = -1;
+
+        for (int i = 0; i < nPoints; i++) {
+            double x = xPoints[i];
+            double y = yPoints[i];
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                penDown = flushRun(path, xPoints, yPoints, first, low, high, last, runLength, penDown);
+                runLength = 0;
+                penDown = false;
+                continue;
+            }
+            if (visibleArea != null && i > 0 && !Double.isNaN(xPoints[i - 1]) && !Double.isNaN(yPoints[i - 1])
+                    && isSegmentOutside(xPoints[i - 1], yPoints[i - 1], x, y, p)) {
+                if (penDown || runLength > 1) {
+                    flushRun(path, xPoints, yPoints, first, low, high, last, runLength, penDown);
+                } else {
+                    // A lone vertex between two culled segments:
+                    culledCount += runLength;
+                }
+                culledCount++;
+                penDown = false;
+                runLength = 0;
+            }
+            int column = collapse ? (int) Math.floor(transform.getScaleX() * x + transform.getTranslateX()) : i;
+            if (runLength > 0 && column == runColumn) {
+                if (y < yPoints[low]) {
+                    low = i;
+                }
+                if (y > yPoints[high]) {
+                    high = i;
+                }
+                last = i;
+                runLength++;
+                continue;
+            }
+            penDown = flushRun(path, xPoints, yPoints, first, low, high, last, runLength, penDown);
+            first = low = high = last = i;
+            runLength = 1;
+            runColumn = column;
+        }
+        flushRun(path, xPoints, yPoints, first, low, high, last, runLength, penDown);
+    }
+
+    private boolean isSegmentOutside(double x0, double y0, double x1, double y1, double padding) {
+        double dx0 = transform.getScaleX() * x0 + transform.getShearX() * y0 + transform.getTranslateX();
+        double dy0 = transform.getShearY() * x0 + transform.getScaleY() * y0 + transform.getTranslateY();
+        double dx1 = transform.getScaleX() * x1 + transform.getShearX() * y1 + transform.getTranslateX();
+        double dy1 = transform.getShearY() * x1 + transform.getScaleY() * y1 + transform.getTranslateY();
+        return Math.max(dx0, dx1) + padding <= visibleArea.getMinX() || Math.min(dx0, dx1) - padding >= visibleArea.getMaxX()
+                || Math.max(dy0, dy1) + padding <= visibleArea.getMinY() || Math.min(dy0, dy1) - padding >= visibleArea.getMaxY();
+    }
+
+    /**
+     * Appends the vertices kept from a run, in the order they appear in the
+     * polyline, and returns whether the pen is down afterwards.
+     */
+    private boolean flushRun(Path2D path, double[] xPoints, double[] yPoints, int first, int low, int high, int last, int runLength, boolean penDown) {
+        if (runLength == 0) {
+            return penDown;
+        }
+        int[] kept = {first, Math.min(low, high), Math.max(low, high), last};
+        int previous = -1;
+        for (int k = 0; k < kept.length; k++) {
+            int index = kept[k];
+            if (index == previous) {
+                continue;
+            }
+            if (penDown) {
+                path.lineTo(xPoints[index], yPoints[index]);
+            } else {
+                path.moveTo(xPoints[index], yPoints[index]);
+                penDown = true;
+            }
+            visibleCount++;
+            runLength--;
+            previous = index;
+        }
+        collapsedCount += runLength;
+        return true;
+    }
+}
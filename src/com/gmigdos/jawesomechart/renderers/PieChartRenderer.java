@@ -30,12 +30,14 @@ import com.gmigdos.jawesomechart.core.DataSeriesList;
 import com.gmigdos.jawesomechart.core.Labels;
 import com.gmigdos.jawesomechart.core.Legend;
 import com.gmigdos.jawesomechart.util.Context2D;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
 import com.gmigdos.jawesomechart.util.StringsProvider;
 import com.gmigdos.jawesomechart.util.Utilities;
 import java.awt.*;
 import java.awt.geom.Arc2D;
 import java.awt.geom.Ellipse2D;
 import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
 
 /**
@@ -93,7 +95,8 @@ public class PieChartRenderer extends BaseChartRenderer{
         DecimalFormat format = getDecimalFormat();
         
         if (series.size() > 0) {
-            context.save();
+            context.saveState();
+            context.setLayer(Context2D.Layer.DATA);
             
             boolean shadowsOn = isShadowsOn();
             if (shadowsOn) {
@@ -148,6 +151,7 @@ public class PieChartRenderer extends BaseChartRenderer{
                 context.draw(arc);
                 
                 if (drawSeriesNamesEnabled || drawValuesEnabled) {
+                    context.setLayer(Context2D.Layer.LABELS);
                     context.setFont(labelFont);
                     context.setPaint(labelColor);
                     String text = (drawSeriesNamesEnabled?(s.getName()+(drawValuesEnabled?" - ":"")):"") + (drawValuesEnabled?s.get(0).toString(format):"");
@@ -174,12 +178,27 @@ public class PieChartRenderer extends BaseChartRenderer{
                 
                 context.translate(chartAreaCenterX, chartAreaCenterY);
                 
+                // Consecutive slices whose arc is shorter than a pixel are
+                // collapsed into one slice, drawn in the color of the first:
+                boolean cullingOn = isCullingOn();
+                GeometryCuller culler = getCuller();
+                double collapsedExtent = 0;
+                Color collapsedColor = null;
+                if (cullingOn) {
+                    culler.begin(context);
+                }
+                
                 for (DataSeries dataseries : series) {
                     dp = dataseries.get(0);
                     if (dp != null) {
                         value = dp.getDataValue();
                         if (value > 0) {
                             angExt = value * factor;
+                            boolean subPixel = cullingOn && culler.toDevice(pieRadius * Math.toRadians(angExt)) < 1;
+                            if (!subPixel && collapsedExtent > 0) {
+                                drawSlice(context, pieRadius, collapsedExtent, explOffset, collapsedColor);
+                                collapsedExtent = 0;
+                            }
                             arc = new Arc2D.Double();
                             
                             context.rotate(Math.toRadians(angExt));
@@ -188,11 +207,25 @@ public class PieChartRenderer extends BaseChartRenderer{
                             arc.setArcByCenter(0, 0, pieRadius, 0, angExt, Arc2D.PIE);
                             
 
-                            context.setPaint(dataseries.getSeriesColor(), pieFillOpacity);
-                            context.fill(arc);
-                            context.setStroke(pieBorderStroke);
-                            context.setPaint(pieBorderColor);
-                            context.draw(arc);
+                            context.setLayer(Context2D.Layer.DATA);
+                            if (subPixel) {
+                                if (collapsedExtent == 0) {
+                                    collapsedColor = dataseries.getSeriesColor();
+                                }
+                                collapsedExtent += angExt;
+                                culler.collapsed();
+                            } else {
+                                if (cullingOn) {
+                                    culler.begin(context);
+                                }
+                                if (!cullingOn || !culler.isOutside(arc.getBounds2D(), GeometryCuller.getStrokePadding(pieBorderStroke))) {
+                                    context.setPaint(dataseries.getSeriesColor(), pieFillOpacity);
+                                    context.fill(arc);
+                                    context.setStroke(pieBorderStroke);
+                                    context.setPaint(pieBorderColor);
+                                    context.draw(arc);
+                                }
+                            }
                             
                             
 
@@ -200,6 +233,7 @@ public class PieChartRenderer extends BaseChartRenderer{
                             if (drawSeriesNamesEnabled || drawValuesEnabled) {
                                 textAngle = angExt / 2;
                                 
+                                context.setLayer(Context2D.Layer.LABELS);
                                 context.setFont(labelFont);
                                 context.setPaint(dataseries.getSeriesColor());
                                 
@@ -228,8 +262,12 @@ public class PieChartRenderer extends BaseChartRenderer{
                         }
                     }
                 }
+                if (collapsedExtent > 0) {
+                    drawSlice(context, pieRadius, collapsedExtent, explOffset, collapsedColor);
+                }
                 
                 if(isDoughnut){
+                    context.setLayer(Context2D.Layer.DATA);
                     Composite tmpComposite = context.getComposite();
                     context.setComposite(AlphaComposite.Clear);
                     double d = pieRadius;
@@ -247,11 +285,28 @@ public class PieChartRenderer extends BaseChartRenderer{
                 context.endShadowedDrawing();
             }
             
-            context.restore();
+            context.restoreState();
         }
         startAngle = startAngleBefore;
     }
 
+    /**
+     * Draws a slice of the given extent starting at angle 0 of the current
+     * rotation, where the run of collapsed slices ends.
+     */
+    private void drawSlice(Context2D context, double pieRadius, double angExt, double explOffset, Color color) {
+        context.setLayer(Context2D.Layer.DATA);
+        context.translate(explOffset, -explOffset);
+        Arc2D.Double arc = new Arc2D.Double();
+        arc.setArcByCenter(0, 0, pieRadius, 0, angExt, Arc2D.PIE);
+        context.setPaint(color, pieFillOpacity);
+        context.fill(arc);
+        context.setStroke(pieBorderStroke);
+        context.setPaint(pieBorderColor);
+        context.draw(arc);
+        context.translate(-explOffset, explOffset);
+    }
+
     public Paint getPieBorderColor() {
         return pieBorderColor;
     }
@@ -301,7 +356,7 @@ public class PieChartRenderer extends BaseChartRenderer{
         this.explosionOffset = explosionOffset;
     }
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 
         JAwesomeChart ac = new JAwesomeChart(600, 400);
 
@@ -330,5 +385,19 @@ public class PieChartRenderer extends BaseChartRenderer{
         
         Utilities.xdgOpenFile(new File("/home/cyberpython/temp/awesomechart/01-pie-chart.png"));
     }
-    
+
+    @Override
+    public void addFingerprint(FingerprintBuilder builder) {
+        super.addFingerprint(builder);
+        builder.add(pieBorderStroke);
+        builder.add(pieBorderColor);
+        builder.add(pieFillOpacity);
+        builder.add(startAngle);
+        builder.add(overrideTotal);
+        if (overrideTotal) {
+            builder.add(total);
+        }
+        builder.add(explosionOffset);
+        builder.add(isDoughnut);
+    }
 }
@@ -26,10 +26,14 @@ package com.gmigdos.jawesomechart.renderers.twodimensional;
 import com.gmigdos.jawesomechart.core.DataSeriesList;
 import com.gmigdos.jawesomechart.exceptions.IllegalValueException;
 import com.gmigdos.jawesomechart.renderers.BaseChartRenderer;
+import com.gmigdos.jawesomechart.util.Context2D;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -115,6 +119,15 @@ public abstract class Basic2DChartRenderer extends BaseChartRenderer{
     private Color horizontalLineColorForZero;
     private Color verticalLineColor;
 
+    private Double fixedMinValue;
+    private Double fixedMaxValue;
+    private DataSeriesList drawnSeries;
+    private double drawnMinValue;
+    private double drawnMaxValue;
+    private double drawnMinData;
+    private double drawnMaxData;
+    private AffineTransform valueTransform;
+
     public Basic2DChartRenderer() {
         valueAxisCaptionFont = DEFAULT_VALUE_AXIS_CAPTION_FONT;
         valueAxisCaptionColor = DEFAULT_VALUE_AXIS_CAPTION_COLOR;
@@ -448,6 +461,117 @@ public abstract class Basic2DChartRenderer extends BaseChartRenderer{
         this.valueAxisSegments = valueAxisSegments;
     }
 
+    /**
+     * Fixes the range of the value axis to [<code>minValue</code>,
+     * <code>maxValue</code>] instead of the range of the values of the
+     * series. The axis then no longer depends on the data, so charts that
+     * only differ in their values can share its image. Values outside the
+     * range are drawn beyond the axis.
+     * 
+     * @param minValue the value at the start of the value axis
+     * @param maxValue the value at the end of the value axis
+     * @throws IllegalValueException if <code>minValue</code> is greater than
+     * <code>maxValue</code> or either is not finite
+     */
+    public void setValueRange(double minValue, double maxValue) throws IllegalValueException {
+        if (Double.isNaN(minValue) || Double.isInfinite(minValue)
+                || Double.isNaN(maxValue) || Double.isInfinite(maxValue)) {
+            throw new IllegalValueException("The value range must be finite.");
+        }
+        if (minValue > maxValue) {
+            throw new IllegalValueException("The minimum of the value range must be <= its maximum.");
+        }
+        this.fixedMinValue = minValue;
+        this.fixedMaxValue = maxValue;
+    }
+
+    /**
+     * Makes the value axis span the range of the values of the series again.
+     */
+    public void clearValueRange() {
+        this.fixedMinValue = null;
+        this.fixedMaxValue = null;
+    }
+
+    public boolean isValueRangeFixed() {
+        return fixedMinValue != null;
+    }
+
+    /**
+     * Returns the value at the start of the value axis: the fixed minimum if
+     * a range has been set, else the minimum value of <code>series</code>.
+     */
+    protected double getMinValue(DataSeriesList series) {
+        Double min = fixedMinValue;
+        return (min != null) ? min.doubleValue() : series.getMinValue();
+    }
+
+    /**
+     * Returns the value at the end of the value axis: the fixed maximum if a
+     * range has been set, else the maximum value of <code>series</code>.
+     */
+    protected double getMaxValue(DataSeriesList series) {
+        Double max = fixedMaxValue;
+        return (max != null) ? max.doubleValue() : series.getMaxValue();
+    }
+
+    /**
+     * The axes are drawn from the values of the series unless the value range
+     * is fixed.
+     */
+    @Override
+    public boolean areStaticLayersDataIndependent() {
+        return isValueRangeFixed();
+    }
+
+    /**
+     * Keeps the value range of <code>series</code> and the current
+     * transformation of <code>context</code>, in which its values are drawn,
+     * for {@link #getValueArea(DataSeriesList, double, double, double, double)}.
+     */
+    protected void keepValueGeometry(Context2D context, DataSeriesList series) {
+        drawnSeries = series;
+        drawnMinValue = getMinValue(series);
+        drawnMaxValue = getMaxValue(series);
+        drawnMinData = series.getMinValue();
+        drawnMaxData = series.getMaxValue();
+        valueTransform = context.getChartTransform();
+    }
+
+    /**
+     * Returns the minimum value of the series kept by
+     * {@link #keepValueGeometry(Context2D, DataSeriesList)}.
+     */
+    protected double getDrawnMinData() {
+        return drawnMinData;
+    }
+
+    /**
+     * Returns the maximum value of the series kept by
+     * {@link #keepValueGeometry(Context2D, DataSeriesList)}.
+     */
+    protected double getDrawnMaxData() {
+        return drawnMaxData;
+    }
+
+    /**
+     * Returns the rectangle from (x0, y0) to (x1, y1), in the user space the
+     * values were drawn in, in the space of the chart; or null if
+     * <code>series</code> was not the last drawn or its values no longer
+     * span the same range, which moves the axes and every value.
+     */
+    protected Rectangle2D getValueArea(DataSeriesList series, double x0, double y0, double x1, double y1) {
+        if (series != drawnSeries || valueTransform == null
+                || getMinValue(series) != drawnMinValue || getMaxValue(series) != drawnMaxValue
+                || series.getMinValue() != drawnMinData || series.getMaxValue() != drawnMaxData) {
+            return null;
+        }
+        if (Double.isInfinite(x0) || Double.isInfinite(y0) || Double.isInfinite(x1) || Double.isInfinite(y1)) {
+            return null;
+        }
+        return valueTransform.createTransformedShape(new Rectangle2D.Double(x0, y0, x1 - x0, y1 - y0)).getBounds2D();
+    }
+
     protected Double getDataDistance(double maxData, double minData) {
         if (maxData < 0) {
             return -minData;
@@ -459,8 +583,8 @@ public abstract class Basic2DChartRenderer extends BaseChartRenderer{
     }
 
     protected double getPositiveAreaSize(DataSeriesList series, double totalMinusMargins) {
-        double maxData = series.getMaxValue();
-        double minData = series.getMinValue();
+        double maxData = getMaxValue(series);
+        double minData = getMinValue(series);
         if (maxData < 0) {
             return 0;
         } else if (minData < 0 && maxData > 0) {
@@ -471,8 +595,8 @@ public abstract class Basic2DChartRenderer extends BaseChartRenderer{
     }
     
     protected double getNegativeAreaSize(DataSeriesList series, double totalMinusMargins) {
-        double maxData = series.getMaxValue();
-        double minData = series.getMinValue();
+        double maxData = getMaxValue(series);
+        double minData = getMinValue(series);
         if (maxData < 0) {
             return  totalMinusMargins;
         } else if (minData < 0 && maxData > 0) {
@@ -567,5 +691,43 @@ public abstract class Basic2DChartRenderer extends BaseChartRenderer{
         return "Basic 2D";
     }
 
-    
+    @Override
+    public void addFingerprint(FingerprintBuilder builder) {
+        super.addFingerprint(builder);
+        builder.add(valueAxisCaptionFont);
+        builder.add(labelAxisCaptionFont);
+        builder.add(valueAxisFont);
+        builder.add(labelAxisFont);
+        builder.add(valueAxisCaptionColor);
+        builder.add(labelAxisCaptionColor);
+        builder.add(valueAxisTextColor);
+        builder.add(labelAxisTextColor);
+        builder.add(valueAxisCaptionMargin);
+        builder.add(labelAxisCaptionMargin);
+        builder.add(valueAxisMargin);
+        builder.add(labelAxisMargin);
+        builder.add(axisMarkerSize);
+        builder.add(valueAxisCaption);
+        builder.add(labelAxisCaption);
+        builder.add(valueAxisSegments);
+        builder.add(drawValueAxis);
+        builder.add(drawLabelAxis);
+        builder.add(drawHorizontalLines);
+        builder.add(drawVerticalLines);
+        builder.add(axisMarkerStroke);
+        builder.add(axisMarkerStrokeForZero);
+        builder.add(horizontalLineStroke);
+        builder.add(horizontalLineStrokeForZero);
+        builder.add(verticalLineStroke);
+        builder.add(axisMarkerColor);
+        builder.add(axisMarkerColorForZero);
+        builder.add(horizontalLineColor);
+        builder.add(horizontalLineColorForZero);
+        builder.add(verticalLineColor);
+        builder.add(isValueRangeFixed());
+        if (isValueRangeFixed()) {
+            builder.add(fixedMinValue.doubleValue());
+            builder.add(fixedMaxValue.doubleValue());
+        }
+    }
 }
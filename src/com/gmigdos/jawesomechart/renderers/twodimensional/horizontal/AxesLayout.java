@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.renderers.twodimensional.horizontal;
+
+import com.gmigdos.jawesomechart.util.Fingerprint;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The measured parts of the layout of the axes of a
+ * {@link Basic2DHorizontalChartRenderer}: the value axis marks, the space
+ * taken by the axes and their captions and the widest label.
+ *
+ * Measuring formats and measures every tick label and every label, so a
+ * layout is kept by the renderer and reused by the next draws while the
+ * settings of the renderer, the labels, the value axis marks and the way
+ * text is measured stay the same, e.g. while only data values change
+ * within the range of the axis.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public final class AxesLayout {
+
+    private final Object measurementKey;
+    private final Fingerprint settings;
+    private final Fingerprint labels;
+    private final List<Double> valueAxisMarks;
+    private final double offsetForValueAxisCaption;
+    private final double offsetForLabelAxisCaption;
+    private final double widestValueWidth;
+    private final double offsetForValueAxis;
+    private final double offsetForLabelAxis;
+    private final String widestLabel;
+
+    AxesLayout(Object measurementKey, Fingerprint settings, Fingerprint labels, List<Double> valueAxisMarks,
+            double offsetForValueAxisCaption, double offsetForLabelAxisCaption, double widestValueWidth,
+            double offsetForValueAxis, double offsetForLabelAxis, String widestLabel) {
+        this.measurementKey = measurementKey;
+        this.settings = settings;
+        this.labels = labels;
+        this.valueAxisMarks = Collections.unmodifiableList(valueAxisMarks);
+        this.offsetForValueAxisCaption = offsetForValueAxisCaption;
+        this.offsetForLabelAxisCaption = offsetForLabelAxisCaption;
+        this.widestValueWidth = widestValueWidth;
+        this.offsetForValueAxis = offsetForValueAxis;
+        this.offsetForLabelAxis = offsetForLabelAxis;
+        this.widestLabel = widestLabel;
+    }
+
+    /**
+     * Returns true if the layout holds for a draw with the given inputs. A
+     * layout computed without a fingerprint of the settings never does.
+     */
+    boolean isValidFor(Object measurementKey, Fingerprint settings, Fingerprint labels, List<Double> valueAxisMarks) {
+        return this.settings != null && this.settings.equals(settings)
+                && this.labels.equals(labels)
+                && this.measurementKey.equals(measurementKey)
+                && this.valueAxisMarks.equals(valueAxisMarks);
+    }
+
+    public List<Double> getValueAxisMarks() {
+        return valueAxisMarks;
+    }
+
+    public double getOffsetForValueAxisCaption() {
+        return offsetForValueAxisCaption;
+    }
+
+    public double getOffsetForLabelAxisCaption() {
+        return offsetForLabelAxisCaption;
+    }
+
+    /**
+     * Returns the width of the widest tick label of the value axis, or 0 if
+     * the axis is not drawn.
+     */
+    public double getWidestValueWidth() {
+        return widestValueWidth;
+    }
+
+    public double getOffsetForValueAxis() {
+        return offsetForValueAxis;
+    }
+
+    public double getOffsetForLabelAxis() {
+        return offsetForLabelAxis;
+    }
+
+    /**
+     * Returns the label that is widest in the label axis font, to which the
+     * font is fitted.
+     */
+    public String getWidestLabel() {
+        return widestLabel;
+    }
+}
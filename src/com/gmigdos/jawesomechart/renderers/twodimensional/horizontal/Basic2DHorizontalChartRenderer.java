@@ -27,6 +27,8 @@ import com.gmigdos.jawesomechart.core.DataSeriesList;
 import com.gmigdos.jawesomechart.core.Labels;
 import com.gmigdos.jawesomechart.renderers.twodimensional.Basic2DChartRenderer;
 import com.gmigdos.jawesomechart.util.Context2D;
+import com.gmigdos.jawesomechart.util.Fingerprint;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
 import com.gmigdos.jawesomechart.util.Utilities;
 import java.awt.Color;
 import java.awt.Font;
@@ -43,16 +45,18 @@ import java.util.List;
  */
 public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
 
+    private volatile AxesLayout layout;
+
     public void drawValueAxisCaption(double x, double y, Context2D context, String text) {
         if (text != null) {
             context.setFont(getValueAxisCaptionFont());
             context.setPaint(getValueAxisCaptionColor());
 
-            context.save();
+            context.saveState();
             context.translate(x, y);
             context.rotate(Math.toRadians(-90));
             context.drawText(text, 0, 0, Context2D.HORIZONTAL_ALIGN_CENTER, Context2D.VERTICAL_ALIGN_TOP);
-            context.restore();
+            context.restoreState();
         }
     }
 
@@ -61,10 +65,10 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
             context.setFont(getLabelAxisCaptionFont());
             context.setPaint(getLabelAxisCaptionColor());
 
-            context.save();
+            context.saveState();
             context.translate(x, y);
             context.drawText(text, 0, 0, Context2D.HORIZONTAL_ALIGN_CENTER, Context2D.VERTICAL_ALIGN_TOP);
-            context.restore();
+            context.restoreState();
         }
     }
 
@@ -102,7 +106,54 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
         return 0;
     }
 
+    /**
+     * Returns the layout of the axes for drawing <code>series</code> and
+     * <code>labels</code> on <code>context</code>. The layout of the previous
+     * draw is returned if it still holds, i.e. if only data values changed
+     * and the value axis marks stayed the same.
+     */
+    public AxesLayout getLayout(Context2D context, DataSeriesList series, Labels labels) {
+        List<Double> valueAxisMarks = generateValueAxisMarkPositions(getMinValue(series), getMaxValue(series), getValueAxisSegments());
+        FingerprintBuilder builder = new FingerprintBuilder();
+        addFingerprint(builder);
+        Fingerprint settings = builder.build();
+        AxesLayout previous = layout;
+        if (previous != null && previous.isValidFor(context.getTextMeasurementKey(), settings, labels.getFingerprint(), valueAxisMarks)) {
+            return previous;
+        }
+        AxesLayout result = createLayout(context, labels, valueAxisMarks, settings);
+        layout = result;
+        return result;
+    }
+
+    private AxesLayout createLayout(Context2D context, Labels labels, List<Double> valueAxisMarks, Fingerprint settings) {
+        context.saveState();
+        double offsetForValueAxisCaption = getOffsetForValueAxisCaption(context);
+        double offsetForLabelAxisCaption = getOffsetForLabelAxisCaption(context);
+        double widestValueWidth = 0;
+        double offsetForValueAxis = 0;
+        if (isDrawValueAxisOn()) {
+            context.setFont(getValueAxisFont());
+            widestValueWidth = Utilities.calculateWidestValueWidth(context, valueAxisMarks, getDecimalFormat());
+            offsetForValueAxis = widestValueWidth + getValueAxisMargin() + getAxisMarkerSize();
+        }
+        double offsetForLabelAxis = getOffsetForLabelAxis(context, labels);
+        context.setFont(getLabelAxisFont());
+        String widestLabel = Utilities.calculateWidestLabel(context, labels);
+        context.restoreState();
+        return new AxesLayout(context.getTextMeasurementKey(), settings, labels.getFingerprint(), valueAxisMarks,
+                offsetForValueAxisCaption, offsetForLabelAxisCaption, widestValueWidth,
+                offsetForValueAxis, offsetForLabelAxis, widestLabel);
+    }
+
     public void drawLabelAxisAndVericallLines(Context2D context, DataSeriesList series, Labels labels, List<Double> valueAxisMarks) {
+        drawLabelAxisAndVericallLines(context, series, labels, createLayout(context, labels, valueAxisMarks, null));
+    }
+
+    /**
+     * Draws the label axis and the vertical lines with the given layout.
+     */
+    public void drawLabelAxisAndVericallLines(Context2D context, DataSeriesList series, Labels labels, AxesLayout layout) {
 
         boolean drawLabelAxis = isDrawLabelAxisOn();
         boolean drawVerticalLines = isDrawVerticalLinesOn();
@@ -113,9 +164,9 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
             double axisMarkerSize = drawLabelAxis ? getAxisMarkerSize() : 0;
             double paddingLeft = getPaddingLeft();
             double paddingRight = getPaddingRight();
-            double offsetX = getOffsetForValueAxis(context, series, valueAxisMarks);
-            double width = context.getWidth() - paddingLeft - paddingRight - getOffsetForValueAxis(context, series, valueAxisMarks);
-            double offsetY = getOffsetForLabelAxis(context, labels);
+            double offsetX = layout.getOffsetForValueAxis();
+            double width = context.getWidth() - paddingLeft - paddingRight - offsetX;
+            double offsetY = layout.getOffsetForLabelAxis();
             double height = context.getHeight();
             Font font = getLabelAxisFont();
             Paint labelColor = getLabelColor();
@@ -125,13 +176,12 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
             Stroke verticalLineStroke = getVerticalLineStroke();
             int numberOfLabels = series.getMaxDataSeriesLength();
 
-            context.save();
+            context.saveState();
 
             context.setFont(font);
             double step = width / numberOfLabels;
 
-            String longestLabel = Utilities.calculateWidestLabel(context, labels);
-            context.adjustFontSizeToFitTextInWidth(longestLabel, step);
+            context.adjustFontSizeToFitTextInWidth(layout.getWidestLabel(), step);
 
             double halfStep = step / 2;
             double x;
@@ -159,26 +209,33 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
                 x += step;
             }
 
-            context.restore();
+            context.restoreState();
 
         }
     }
 
     public void drawValueAxisAndHorizontalLines(Context2D context, DataSeriesList series, Labels labels, List<Double> valueAxisMarks) {
+        drawValueAxisAndHorizontalLines(context, series, labels, createLayout(context, labels, valueAxisMarks, null));
+    }
+
+    /**
+     * Draws the value axis and the horizontal lines with the given layout.
+     */
+    public void drawValueAxisAndHorizontalLines(Context2D context, DataSeriesList series, Labels labels, AxesLayout layout) {
         boolean drawValueAxis = isDrawValueAxisOn();
         boolean drawHorizontalLines = isDrawHorizontalLinesOn();
         if (drawValueAxis || drawHorizontalLines) {
             DecimalFormat df = getDecimalFormat();
-            double minData = series.getMinValue();
-            double maxData = series.getMaxValue();
+            double minData = getMinValue(series);
+            double maxData = getMaxValue(series);
                     
             double margin = drawValueAxis ? getValueAxisMargin() : 0;
             double axisMarkerSize = drawValueAxis ? getAxisMarkerSize() : 0;
             double dataDistance = getDataDistance(maxData, minData);
             double paddingTop = getPaddingTop();
             double paddingBottom = getPaddingBottom();
-            double height = context.getHeight() - paddingTop - paddingBottom - getOffsetForLabelAxis(context, labels);
-            double width = context.getWidth() - getOffsetForValueAxis(context, series, valueAxisMarks);
+            double height = context.getHeight() - paddingTop - paddingBottom - layout.getOffsetForLabelAxis();
+            double width = context.getWidth() - layout.getOffsetForValueAxis();
             double posH = getPositiveAreaSize(series, height);
             double x;
             double y;
@@ -196,7 +253,7 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
             Stroke horizontalLineStrokeForZero = getHorizontalLineStrokeForZero();
 
             context.setFont(font);
-            double maxValueWidth = drawValueAxis ? Utilities.calculateWidestValueWidth(context, valueAxisMarks, df) : 0;
+            double maxValueWidth = layout.getWidestValueWidth();
 
 
             if (maxData < 0) {
@@ -210,10 +267,10 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
                 minValue = minData;
             }
 
-            context.save();
+            context.saveState();
             context.translate(maxValueWidth, paddingTop + posH);
 
-            for (Double value : valueAxisMarks) {
+            for (Double value : layout.getValueAxisMarks()) {
 
                 if (value >= minValue && value <= maxValue) {
                     y = -(value * height / dataDistance);
@@ -254,7 +311,7 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
                 }
             }
 
-            context.restore();
+            context.restoreState();
         }
     }
 
@@ -267,23 +324,23 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
         String labelAxisCaption = getLabelAxisCaption();
         double width = context.getWidth();
         double height = context.getHeight();
-        List<Double> valueAxisMarks = generateValueAxisMarkPositions(series.getMinValue(), series.getMaxValue(), getValueAxisSegments());
-
+        AxesLayout layout = getLayout(context, series, labels);
 
-        double offsetForValueAxisCaption = getOffsetForValueAxisCaption(context);
-        double offsetForLabelAxisCaption = getOffsetForLabelAxisCaption(context);
-        double offsetForValueAxis = getOffsetForValueAxis(context, series, valueAxisMarks);
-        double offsetForLabelAxis = getOffsetForLabelAxis(context, labels);
+        double offsetForValueAxisCaption = layout.getOffsetForValueAxisCaption();
+        double offsetForLabelAxisCaption = layout.getOffsetForLabelAxisCaption();
+        double offsetForValueAxis = layout.getOffsetForValueAxis();
+        double offsetForLabelAxis = layout.getOffsetForLabelAxis();
 
         double offsetX = offsetForValueAxisCaption;
         double offsetY = offsetForLabelAxisCaption;
 
-        context.save();
+        context.saveState();
+        context.setLayer(Context2D.Layer.AXES);
 
         drawValueAxisCaption(0, offsetForValueAxisCaption + offsetForLabelAxis + (height - offsetForLabelAxisCaption - offsetForLabelAxis) / 2, context, valueAxisCaption);
         drawLabelAxisCaption(offsetForValueAxisCaption + offsetForValueAxis + (width - offsetForValueAxisCaption - offsetForValueAxis) / 2, height - offsetForLabelAxisCaption + getLabelAxisCaptionMargin(), context, labelAxisCaption);
 
-        context.restore();
+        context.restoreState();
 
         width -= offsetX;
         height -= offsetY;
@@ -293,7 +350,7 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
 
 
         offsetX = offsetForValueAxis;
-        offsetY = getOffsetForLabelAxis(context, labels);
+        offsetY = offsetForLabelAxis;
 
         width -= offsetX;
         height -= offsetY;
@@ -310,8 +367,9 @@ public class Basic2DHorizontalChartRenderer extends Basic2DChartRenderer {
 
         context.setClip(new Rectangle2D.Double(0, 0, width + 1, height + 1));
 
-        drawValueAxisAndHorizontalLines(context, series, labels, valueAxisMarks);
-        drawLabelAxisAndVericallLines(context, series, labels, valueAxisMarks);
+        context.setLayer(Context2D.Layer.AXES);
+        drawValueAxisAndHorizontalLines(context, series, labels, layout);
+        drawLabelAxisAndVericallLines(context, series, labels, layout);
 
         context.setClip(new Rectangle2D.Double(offsetX, 0, width - offsetX + 1, height - offsetY + 1));
 
@@ -25,13 +25,16 @@ package com.gmigdos.jawesomechart.renderers.twodimensional.horizontal;
 
 import com.gmigdos.jawesomechart.JAwesomeChart;
 import com.gmigdos.jawesomechart.core.*;
+import com.gmigdos.jawesomechart.renderers.GeometryCuller;
 import com.gmigdos.jawesomechart.util.Context2D;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
 import com.gmigdos.jawesomechart.util.StringsProvider;
 import com.gmigdos.jawesomechart.util.Utilities;
 import java.awt.*;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
 
 /**
@@ -46,6 +49,16 @@ public class ColumnChartRenderer extends Basic2DHorizontalChartRenderer {
     private Stroke columnBorderStroke;
     private DataSeriesList series;
     private Context2D context;
+    private double drawnColumnGroupStep;
+    private double drawnColumnStep;
+    private double drawnColumnWidth;
+    private double drawnBorderPadding;
+    private double drawnClipTop;
+    private double drawnClipBottom;
+    private Font drawnSeriesNameFont;
+    private Font drawnValueFont;
+    private double drawnWidestValue;
+    private int[][] valueLabelWidths;
 
     public ColumnChartRenderer() {
         gap = 20;
@@ -109,7 +122,8 @@ public class ColumnChartRenderer extends Basic2DHorizontalChartRenderer {
         
         super.draw(context, series, labels);
 
-        context.save();
+        context.saveState();
+        context.setLayer(Context2D.Layer.DATA);
 
         if (isShadowsOn()) {
             context.beginShadowedDrawing();
@@ -125,7 +139,7 @@ public class ColumnChartRenderer extends Basic2DHorizontalChartRenderer {
         double columnGroupWidth = (width - (numberOfColumnGroups - 1) * gap) / numberOfColumnGroups;
         double columnWidth = (columnGroupWidth - (numberOfColumnsPerGroup - 1) * gapBetweenCols) / numberOfColumnsPerGroup;
         double halfColumnWidth = columnWidth / 2;
-        double dataDistance = getDataDistance(series.getMaxValue(), series.getMinValue());
+        double dataDistance = getDataDistance(getMaxValue(series), getMinValue(series));
 
         double posH = getPositiveAreaSize(series, height);
         double negH = getNegativeAreaSize(series, height);
@@ -158,89 +172,258 @@ public class ColumnChartRenderer extends Basic2DHorizontalChartRenderer {
         context.adjustFontSizeToFitTextInWidth(Utilities.calculateWidestSeriesName(context, series), columnWidth);
         seriesNameFont = context.getFont();
         context.setFont(valueFont);
-        context.adjustFontSizeToFitTextInWidth(String.valueOf(Utilities.calculateWidestValue(context, series, df)), columnWidth);
+        double widestValue = Utilities.calculateWidestValue(context, series, df);
+        context.adjustFontSizeToFitTextInWidth(String.valueOf(widestValue), columnWidth);
         valueFont = context.getFont();
         double seriesNameLineHeight = context.getStandardLineHeight(seriesNameFont);
         double valueLineHeight = context.getStandardLineHeight(valueFont);
 
+        // Columns of the same series share their paint and stroke, so they are
+        // merged into one path per series and per clip region and drawn at
+        // once:
+        int numberOfSeries = series.size();
+        Path2D[] positiveColumns = new Path2D[numberOfSeries];
+        Path2D[] negativeColumns = new Path2D[numberOfSeries];
+        for (int s = 0; s < numberOfSeries; s++) {
+            positiveColumns[s] = new Path2D.Double();
+            negativeColumns[s] = new Path2D.Double();
+        }
+
+        // Columns outside the visible area are skipped and the ones thinner
+        // than a pixel are collapsed into one fill per series and per clip
+        // region, without borders:
+        boolean cullingOn = isCullingOn();
+        GeometryCuller culler = getCuller();
+        Path2D[] positiveCollapsed = new Path2D[numberOfSeries];
+        Path2D[] negativeCollapsed = new Path2D[numberOfSeries];
+        Rectangle2D.Double columnBounds = new Rectangle2D.Double();
+        double borderPadding = getColumnBorderPadding();
+
+        keepValueGeometry(context, series);
+        drawnColumnGroupStep = columnGroupWidth + gap;
+        drawnColumnStep = columnWidth + gapBetweenCols;
+        drawnColumnWidth = columnWidth;
+        drawnBorderPadding = borderPadding;
+        drawnClipTop = positiveClip.getMinY();
+        drawnClipBottom = negativeClip.getMaxY();
+        drawnSeriesNameFont = seriesNameFont;
+        drawnValueFont = valueFont;
+        drawnWidestValue = widestValue;
+        if (isValueRenderingOn) {
+            valueLabelWidths = new int[numberOfSeries][];
+            for (int s = 0; s < numberOfSeries; s++) {
+                valueLabelWidths[s] = new int[series.get(s).size()];
+            }
+        } else {
+            valueLabelWidths = null;
+        }
+
+        if (cullingOn) {
+            culler.begin(context);
+            for (int s = 0; s < numberOfSeries; s++) {
+                positiveCollapsed[s] = new Path2D.Double();
+                negativeCollapsed[s] = new Path2D.Double();
+            }
+        }
+
         for (int i = 0; i < numberOfColumnGroups; i++) {
 
             columnNo = 0;
-            for (DataSeries dataSeries : series) {
-                dp = dataSeries.get(i);
+            for (int s = 0; s < numberOfSeries; s++) {
+                dp = series.get(s).get(i);
 
                 if (dp != null) {
                     value = dp.getDataValue();
                     y = -(value * height / dataDistance);
                     x = i * (columnGroupWidth + gap) + (columnWidth + gapBetweenCols) * columnNo;
 
-                    column = new Path2D.Double();
+                    if (cullingOn) {
+                        columnBounds.setRect(x, Math.min(y, 0), columnWidth, Math.abs(y));
+                        int visibility = culler.classify(columnBounds, borderPadding, value >= 0 ? positiveClip : negativeClip);
+                        if (visibility != GeometryCuller.VISIBLE) {
+                            if (visibility == GeometryCuller.SUB_PIXEL) {
+                                culler.collapse(value >= 0 ? positiveCollapsed[s] : negativeCollapsed[s], columnBounds);
+                            }
+                            columnNo++;
+                            continue;
+                        }
+                    }
+
+                    column = value >= 0 ? positiveColumns[s] : negativeColumns[s];
                     column.moveTo(x, 0);
                     column.lineTo(x, y);
                     column.lineTo(x + columnWidth, y);
                     column.lineTo(x + columnWidth, 0);
 
+                    columnNo++;
+                }
+            }
+        }
 
-                    if (value >= 0) {
-                        context.setClip(positiveClip);
-                    } else {
-                        context.setClip(negativeClip);
-                    }
+        context.setLayer(Context2D.Layer.DATA);
+        for (int s = 0; s < numberOfSeries; s++) {
+            drawColumns(context, positiveColumns[s], positiveClip, series.get(s).getSeriesColor());
+            drawColumns(context, negativeColumns[s], negativeClip, series.get(s).getSeriesColor());
+            if (cullingOn) {
+                fillCollapsedColumns(context, positiveCollapsed[s], positiveClip, series.get(s).getSeriesColor());
+                fillCollapsedColumns(context, negativeCollapsed[s], negativeClip, series.get(s).getSeriesColor());
+            }
+        }
+
+        if (isSeriesNameRenderingOn || isValueRenderingOn) {
+            context.setLayer(Context2D.Layer.LABELS);
+            for (int i = 0; i < numberOfColumnGroups; i++) {
+
+                columnNo = 0;
+                for (int s = 0; s < numberOfSeries; s++) {
+                    DataSeries dataSeries = series.get(s);
+                    dp = dataSeries.get(i);
+
+                    if (dp != null) {
+                        value = dp.getDataValue();
+                        y = -(value * height / dataDistance);
+                        x = i * (columnGroupWidth + gap) + (columnWidth + gapBetweenCols) * columnNo;
 
-                    context.setPaint(dataSeries.getSeriesColor(), columnOpacity);
-                    context.fill(column);
-
-                    context.setStroke(columnBorderStroke);
-                    context.setPaint(columnBorderColor);
-                    context.draw(column);
-                    
-                    if(isSeriesNameRenderingOn){
-                        context.setFont(seriesNameFont);
-                        context.setPaint(dataSeries.getSeriesColor());
-                        if(y<0){
-                            y-=seriesNameMargin;
-                            textValign = Context2D.VERTICAL_ALIGN_BOTTOM;
-                        }else{
-                            y+=seriesNameMargin;
-                            textValign = Context2D.VERTICAL_ALIGN_TOP;
-                        }                       
-                        context.drawText(dataSeries.getName(), x+halfColumnWidth, y, Context2D.HORIZONTAL_ALIGN_CENTER, textValign);
-                        if(y<0){
-                            y-=seriesNameLineHeight;
-                        }else{
-                            y+=seriesNameLineHeight;
+                        if (value >= 0) {
+                            context.setClip(positiveClip);
+                        } else {
+                            context.setClip(negativeClip);
                         }
+
+                        if(isSeriesNameRenderingOn){
+                            context.setFont(seriesNameFont);
+                            context.setPaint(dataSeries.getSeriesColor());
+                            if(y<0){
+                                y-=seriesNameMargin;
+                                textValign = Context2D.VERTICAL_ALIGN_BOTTOM;
+                            }else{
+                                y+=seriesNameMargin;
+                                textValign = Context2D.VERTICAL_ALIGN_TOP;
+                            }                       
+                            context.drawText(dataSeries.getName(), x+halfColumnWidth, y, Context2D.HORIZONTAL_ALIGN_CENTER, textValign);
+                            if(y<0){
+                                y-=seriesNameLineHeight;
+                            }else{
+                                y+=seriesNameLineHeight;
+                            }
+                        }
+
+                        if(isValueRenderingOn){
+                            context.setFont(valueFont);
+                            context.setPaint(valuePaint);
+                            if(y<0){
+                                y-=valueMargin;
+                                textValign = Context2D.VERTICAL_ALIGN_BOTTOM;
+                            }else{
+                                y+=valueMargin;
+                                textValign = Context2D.VERTICAL_ALIGN_TOP;
+                            }                       
+                            String text = df.format(value);
+                            context.drawText(text, x+halfColumnWidth, y, Context2D.HORIZONTAL_ALIGN_CENTER, textValign);
+                            valueLabelWidths[s][i] = context.calculateStringWidth(text);
+                        }
+
+                        columnNo++;
                     }
-                    
-                    if(isValueRenderingOn){
-                        context.setFont(valueFont);
-                        context.setPaint(valuePaint);
-                        if(y<0){
-                            y-=valueMargin;
-                            textValign = Context2D.VERTICAL_ALIGN_BOTTOM;
-                        }else{
-                            y+=valueMargin;
-                            textValign = Context2D.VERTICAL_ALIGN_TOP;
-                        }                       
-                        context.drawText(df.format(value), x+halfColumnWidth, y, Context2D.HORIZONTAL_ALIGN_CENTER, textValign);
-                    }
-                    
-                    
 
-                    columnNo++;
                 }
 
             }
-
         }
 
         if (isShadowsOn()) {
             context.endShadowedDrawing();
         }
 
-        context.restore();
+        context.restoreState();
     }
 
+    /**
+     * Returns the vertical strip of the plot area holding the column of the
+     * value, with its border and labels, as last drawn. Columns keep their
+     * place when values change, unless the value range changes, and their
+     * labels only spread beyond them if a label is wider than its column.
+     * The value labels share a font fitted to the widest of them, so if
+     * another value becomes the widest, null is returned.
+     */
+    @Override
+    public Rectangle2D getValueArea(Context2D context, DataSeriesList series, int seriesIndex, int index) {
+        DataSeries dataSeries = series.get(seriesIndex);
+        DataSeriesDataProvider dp = dataSeries.get(index);
+        if (series != this.series || dp == null || dp.getDataValue() == null) {
+            return null;
+        }
+        DecimalFormat df = getDecimalFormat();
+        if (isValueRenderingOn()) {
+            if (valueLabelWidths == null || valueLabelWidths[seriesIndex].length <= index) {
+                return null;
+            }
+            context.setFont(getValueFont());
+            if (Double.compare(Utilities.calculateWidestValue(context, series, df), drawnWidestValue) != 0) {
+                return null;
+            }
+        }
+        int columnNo = 0;
+        for (int s = 0; s < seriesIndex; s++) {
+            if (series.get(s).get(index) != null) {
+                columnNo++;
+            }
+        }
+        double x = index * drawnColumnGroupStep + drawnColumnStep * columnNo;
+        double center = x + drawnColumnWidth / 2;
+        double halfWidth = drawnColumnWidth / 2 + drawnBorderPadding;
+        if (isSeriesNameRenderingOn()) {
+            halfWidth = Math.max(halfWidth, context.calculateStringWidth(dataSeries.getName(), drawnSeriesNameFont) / 2.0);
+        }
+        if (isValueRenderingOn()) {
+            int labelWidth = Math.max(valueLabelWidths[seriesIndex][index],
+                    context.calculateStringWidth(df.format(dp.getDataValue()), drawnValueFont));
+            halfWidth = Math.max(halfWidth, labelWidth / 2.0);
+        }
+        // A pixel more on each side for antialiasing and rounding:
+        halfWidth += 2;
+        return getValueArea(series, center - halfWidth, drawnClipTop - 1, center + halfWidth, drawnClipBottom + 1);
+    }
+
+    /**
+     * Fills and strokes the columns of a series that fall in one clip region.
+     */
+    private void drawColumns(Context2D context, Path2D columns, Rectangle2D clip, Color seriesColor) {
+        if (columns.getCurrentPoint() == null) {
+            return;
+        }
+        context.setClip(clip);
+        context.setPaint(seriesColor, columnOpacity);
+        context.fill(columns);
+
+        context.setStroke(columnBorderStroke);
+        context.setPaint(columnBorderColor);
+        context.draw(columns);
+    }
+
+    /**
+     * Fills the columns of a series that were collapsed by the culler.
+     */
+    private void fillCollapsedColumns(Context2D context, Path2D columns, Rectangle2D clip, Color seriesColor) {
+        if (columns.getCurrentPoint() == null) {
+            return;
+        }
+        context.setClip(clip);
+        context.setPaint(seriesColor, columnOpacity);
+        context.fill(columns);
+    }
+
+    /**
+     * Returns how far the border of a column may extend beyond the column.
+     * Columns only have right angles, so miters are never longer than the
+     * diagonal of half the line width.
+     */
+    private double getColumnBorderPadding() {
+        if (columnBorderStroke instanceof BasicStroke) {
+            return ((BasicStroke) columnBorderStroke).getLineWidth() / Math.sqrt(2);
+        }
+        return GeometryCuller.getStrokePadding(columnBorderStroke);
+    }
     
     @Override
     public double getPaddingTop() {
@@ -248,7 +431,7 @@ public class ColumnChartRenderer extends Basic2DHorizontalChartRenderer {
         if(series!=null && context!=null){  
             Font seriesNameFont = getLabelFont();
             Font valueFont = getValueFont();
-            double maxData = series.getMaxValue();
+            double maxData = getMaxValue(series);
             double seriesNameMargin = getLabelMargin();
             double valueMargin = getValueMargin();
             double spaceForSeriesName = isSeriesNameRenderingOn()?context.getStandardLineHeight(seriesNameFont)+seriesNameMargin:0;
@@ -264,7 +447,7 @@ public class ColumnChartRenderer extends Basic2DHorizontalChartRenderer {
         if(series!=null && context!=null){
             Font seriesNameFont = getLabelFont();
             Font valueFont = getValueFont();
-            double minData = series.getMinValue();
+            double minData = getMinValue(series);
             double seriesNameMargin = getLabelMargin();
             double valueMargin = getValueMargin();
             double spaceForSeriesName = isSeriesNameRenderingOn()?context.getStandardLineHeight(seriesNameFont)+seriesNameMargin:0;
@@ -279,7 +462,7 @@ public class ColumnChartRenderer extends Basic2DHorizontalChartRenderer {
         return StringsProvider.CHART_RENDERER_COLUMN;
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 
         JAwesomeChart ac = new JAwesomeChart(3000, 500);
         ColumnChartRenderer renderer = new ColumnChartRenderer();
@@ -329,4 +512,13 @@ public class ColumnChartRenderer extends Basic2DHorizontalChartRenderer {
 
         Utilities.xdgOpenFile(new File("/home/cyberpython/temp/awesomechart/05-column-chart.png"));
     }
+
+    @Override
+    public void addFingerprint(FingerprintBuilder builder) {
+        super.addFingerprint(builder);
+        builder.add(gap);
+        builder.add(columnOpacity);
+        builder.add(columnBorderColor);
+        builder.add(columnBorderStroke);
+    }
 }
@@ -24,10 +24,13 @@
 package com.gmigdos.jawesomechart.renderers.twodimensional.horizontal;
 
 import com.gmigdos.jawesomechart.JAwesomeChart;
+import com.gmigdos.jawesomechart.core.DataSeries;
 import com.gmigdos.jawesomechart.core.DataSeriesDataProvider;
 import com.gmigdos.jawesomechart.core.DataSeriesList;
 import com.gmigdos.jawesomechart.core.Labels;
+import com.gmigdos.jawesomechart.renderers.GeometryCuller;
 import com.gmigdos.jawesomechart.util.Context2D;
+import com.gmigdos.jawesomechart.util.FingerprintBuilder;
 import com.gmigdos.jawesomechart.util.StringsProvider;
 import com.gmigdos.jawesomechart.util.Utilities;
 import java.awt.BasicStroke;
@@ -35,7 +38,9 @@ import java.awt.Color;
 import java.awt.Stroke;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.io.File;
+import java.io.IOException;
 
 /**
  *
@@ -43,12 +48,20 @@ import java.io.File;
  */
 public class LineChartRenderer extends Basic2DHorizontalChartRenderer{
     
+    public static final int DEFAULT_DIRECT_RASTER_THRESHOLD = 10000;
+    public static final int DEFAULT_POINT_SPRITE_THRESHOLD = 1000;
+    
     private Stroke lineStroke;
     private float lineOpacity;
     private float pointOpacity;
     private double pointRadius;
     private boolean drawLines;
     private boolean drawPoints;
+    private int directRasterThreshold;
+    private int pointSpriteThreshold;
+    private final Rectangle2D.Double pointBounds;
+    private double drawnStep;
+    private double drawnScale;
 
     public LineChartRenderer() {
         this.lineStroke = new BasicStroke(4.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_MITER);
@@ -57,6 +70,9 @@ public class LineChartRenderer extends Basic2DHorizontalChartRenderer{
         this.pointRadius = 6;
         this.drawLines = true;
         this.drawPoints = false;
+        this.directRasterThreshold = DEFAULT_DIRECT_RASTER_THRESHOLD;
+        this.pointSpriteThreshold = DEFAULT_POINT_SPRITE_THRESHOLD;
+        this.pointBounds = new Rectangle2D.Double();
     }
     
     /**
@@ -142,6 +158,26 @@ public class LineChartRenderer extends Basic2DHorizontalChartRenderer{
     public void setDrawPoints(boolean drawPoints) {
         this.drawPoints = drawPoints;
     }
+
+    /**
+     * @return the number of points above which lines are drawn directly
+     * into the target image
+     */
+    public int getDirectRasterThreshold() {
+        return directRasterThreshold;
+    }
+
+    /**
+     * Sets the number of points of a series above which its line is drawn
+     * with {@link Context2D#drawPolylineDirect(double[], double[], int)},
+     * when the chart is drawn on an image, instead of as a path through the
+     * general stroker. Use Integer.MAX_VALUE to always draw paths.
+     * 
+     * @param directRasterThreshold the directRasterThreshold to set
+     */
+    public void setDirectRasterThreshold(int directRasterThreshold) {
+        this.directRasterThreshold = directRasterThreshold;
+    }
     
 
     @Override
@@ -149,13 +185,112 @@ public class LineChartRenderer extends Basic2DHorizontalChartRenderer{
         return StringsProvider.CHART_RENDERER_LINE;
     }
 
+    /**
+     * @return the number of points above which points are stamped from
+     * pre-rendered sprites
+     */
+    public int getPointSpriteThreshold() {
+        return pointSpriteThreshold;
+    }
+
+    /**
+     * Sets the number of points of a series above which its points are
+     * drawn with {@link Context2D#fillCircles(double[], double[], int, double)},
+     * which stamps a pre-rendered sprite per point, instead of filling an
+     * ellipse per point. Use Integer.MAX_VALUE to always fill ellipses.
+     * 
+     * @param pointSpriteThreshold the pointSpriteThreshold to set
+     */
+    public void setPointSpriteThreshold(int pointSpriteThreshold) {
+        this.pointSpriteThreshold = pointSpriteThreshold;
+    }
+
+    /**
+     * Draws the points of <code>dataSeries</code> as stamped sprites.
+     */
+    private void drawPointSprites(Context2D context, DataSeries dataSeries, double step, double scale) {
+        int n = dataSeries.size();
+        double[] xPoints = new double[n];
+        double[] yPoints = new double[n];
+        int count = 0;
+        DataSeriesDataProvider dp;
+        for (int x = 0; x < n; x++) {
+            dp = dataSeries.get(x);
+            if (dp != null) {
+                xPoints[count] = x * step;
+                yPoints[count] = -dp.getDataValue() * scale;
+                if (!isPointCulled(xPoints[count], yPoints[count])) {
+                    count++;
+                }
+            }
+        }
+        context.fillCircles(xPoints, yPoints, count, getPointRadius());
+    }
+
+    /**
+     * Returns true if culling is on and the point centered at (x, y) lies
+     * outside the visible area of the culler.
+     */
+    private boolean isPointCulled(double x, double y) {
+        if (!isCullingOn()) {
+            return false;
+        }
+        double radius = getPointRadius();
+        pointBounds.setRect(x - radius, y - radius, 2 * radius, 2 * radius);
+        return getCuller().isOutside(pointBounds, 0);
+    }
+
+    /**
+     * Stores the vertices of the line of <code>dataSeries</code> into
+     * <code>xPoints</code> and <code>yPoints</code>, with NaN for missing
+     * values.
+     */
+    private static void getLineVertices(DataSeries dataSeries, double step, double scale, double[] xPoints, double[] yPoints) {
+        DataSeriesDataProvider dp;
+        for (int x = 0; x < dataSeries.size(); x++) {
+            dp = dataSeries.get(x);
+            xPoints[x] = x * step;
+            yPoints[x] = dp == null || dp.getDataValue() == null ? Double.NaN : -dp.getDataValue() * scale;
+        }
+    }
+
+    /**
+     * Creates the path of the line of <code>dataSeries</code> through the
+     * culling stage, which leaves out segments outside the visible area and
+     * collapses vertices closer than a pixel.
+     */
+    private Path2D createCulledLine(DataSeries dataSeries, double step, double scale) {
+        int n = dataSeries.size();
+        double[] xPoints = new double[n];
+        double[] yPoints = new double[n];
+        getLineVertices(dataSeries, step, scale, xPoints, yPoints);
+        Path2D path = new Path2D.Double();
+        getCuller().appendPolyline(path, xPoints, yPoints, n, GeometryCuller.getStrokePadding(getLineStroke()));
+        return path;
+    }
+
+    /**
+     * Draws the line of <code>dataSeries</code> directly into the target
+     * image of the context, if possible.
+     * 
+     * @return true if the line was drawn
+     */
+    private boolean drawLineDirect(Context2D context, DataSeries dataSeries, double step, double scale) {
+        int n = dataSeries.size();
+        double[] xPoints = new double[n];
+        double[] yPoints = new double[n];
+        getLineVertices(dataSeries, step, scale, xPoints, yPoints);
+        return context.drawPolylineDirect(xPoints, yPoints, n);
+    }
+
     @Override
     public void draw(Context2D context, DataSeriesList series, Labels labels) {
         super.draw(context, series, labels);
         
         if(isDrawLinesOn() || isDrawPointsOn()){
         
-            context.save();
+            context.saveState();
+            context.setLayer(Context2D.Layer.DATA);
 
                 if (isShadowsOn()) {
                     context.beginShadowedDrawing();
@@ -167,8 +302,8 @@ public class LineChartRenderer extends Basic2DHorizontalChartRenderer{
 
                     double step = width / maxNumberOfPoints;
                     double halfStep = step/2;
-                    double minData = series.getMinValue();
-                    double maxData = series.getMaxValue();
+                    double minData = getMinValue(series);
+                    double maxData = getMaxValue(series);
                     double dataDistance = getDataDistance(maxData, minData);
 
                     double value;
@@ -182,11 +317,28 @@ public class LineChartRenderer extends Basic2DHorizontalChartRenderer{
                     context.setStroke(getLineStroke());
                     context.translate(halfStep, 0);
 
+                    keepValueGeometry(context, series);
+                    drawnStep = step;
+                    drawnScale = height / dataDistance;
+
+                    if (isCullingOn()) {
+                        getCuller().begin(context);
+                    }
+
                     for (int i=0; i<series.size(); i++) {
                         
                         dataSeriesColor = series.get(i).getSeriesColor();
                         
-                        if(isDrawLinesOn()){
+                        boolean lineDrawn = false;
+                        if(isDrawLinesOn() && series.get(i).size() > directRasterThreshold){
+                            context.setPaint(dataSeriesColor, getLineOpacity());
+                            lineDrawn = drawLineDirect(context, series.get(i), step, height / dataDistance);
+                        }
+                        
+                        if(isDrawLinesOn() && !lineDrawn && isCullingOn()){
+                            context.setPaint(dataSeriesColor, getLineOpacity());
+                            context.draw(createCulledLine(series.get(i), step, height / dataDistance));
+                        } else if(isDrawLinesOn() && !lineDrawn){
                             context.setPaint(dataSeriesColor, getLineOpacity());
 
                             Path2D path = new Path2D.Double();
@@ -220,12 +372,18 @@ public class LineChartRenderer extends Basic2DHorizontalChartRenderer{
                         
                         
                         // Draw the point:
-                        if (isDrawPointsOn()) {
+                        if (isDrawPointsOn() && series.get(i).size() > pointSpriteThreshold) {
+                            context.setPaint(dataSeriesColor, getPointOpacity());
+                            drawPointSprites(context, series.get(i), step, height / dataDistance);
+                        } else if (isDrawPointsOn()) {
                             context.setPaint(dataSeriesColor, getPointOpacity());
                             for (int x = 0; x < series.get(i).size(); x++) {
                                 dp = series.get(i).get(x);
                                 if (dp != null) {
                                     y = dp.getDataValue() * height / dataDistance;
+                                    if (isPointCulled(x * step, -y)) {
+                                        continue;
+                                    }
                                     Ellipse2D point = new Ellipse2D.Double(x * step - getPointRadius(), -y - getPointRadius(), diameter, diameter);
                                     context.fill(point);
                                 }
@@ -244,12 +402,37 @@ public class LineChartRenderer extends Basic2DHorizontalChartRenderer{
                     context.endShadowedDrawing();
                 }
 
-            context.restore();
+            context.restoreState();
         }
         
     }
     
-    public static void main(String[] args) {
+    /**
+     * Returns the part of the plot area between the neighbours of the value,
+     * which holds the two segments and the point the value moves. Values
+     * stay between the minimum and the maximum ones as long as the value
+     * range does not change.
+     */
+    @Override
+    public Rectangle2D getValueArea(Context2D context, DataSeriesList series, int seriesIndex, int index) {
+        int size = series.get(seriesIndex).size();
+        double from = Math.max(index - 1, 0) * drawnStep;
+        double to = Math.min(index + 1, size - 1) * drawnStep;
+        double padding = 0;
+        if (isDrawLinesOn()) {
+            padding = GeometryCuller.getStrokePadding(getLineStroke());
+        }
+        if (isDrawPointsOn()) {
+            // Point sprites are padded by up to two pixels:
+            padding = Math.max(padding, getPointRadius() + 2);
+        }
+        // A pixel more on each side for antialiasing and rounding:
+        padding += 1;
+        return getValueArea(series, from - padding, -getDrawnMaxData() * drawnScale - padding,
+                to + padding, -getDrawnMinData() * drawnScale + padding);
+    }
+
+    public static void main(String[] args) throws IOException {
         
         JAwesomeChart ac = new JAwesomeChart(600, 500);
         LineChartRenderer renderer = new LineChartRenderer();
@@ -280,4 +463,17 @@ public class LineChartRenderer extends Basic2DHorizontalChartRenderer{
         Utilities.xdgOpenFile(new File("/home/cyberpython/temp/awesomechart/07-line-chart.png"));
         
     }
+
+    @Override
+    public void addFingerprint(FingerprintBuilder builder) {
+        super.addFingerprint(builder);
+        builder.add(lineStroke);
+        builder.add(lineOpacity);
+        builder.add(pointOpacity);
+        builder.add(pointRadius);
+        builder.add(drawLines);
+        builder.add(drawPoints);
+        builder.add(directRasterThreshold);
+        builder.add(pointSpriteThreshold);
+    }
 }
@@ -0,0 +1,515 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Shape;
+import java.awt.font.LineMetrics;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A built-in 5x7 pixel font used by {@link RasterSurface} to draw text
+ * without the font system of the platform.
+ *
+ * Only the size and the bold style of a {@link Font} are taken into account.
+ * Each font pixel is a square of 1/10 of the font size; glyphs are drawn
+ * either as outlines of their pixels or, without rotation and shear, by
+ * stamping cached coverage bitmaps rendered for each size and sub-pixel phase,
+ * as {@link PointSprites} does for point markers. Characters outside
+ * printable ASCII are drawn as boxes.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+final class BitmapFont {
+
+    static final int PHASES = 4;
+    /** The advance of every character, in font pixels. */
+    static final int ADVANCE = 6;
+    static final int ASCENT = 9;
+    static final int DESCENT = 3;
+    private static final int COLUMNS = 5;
+    private static final int ROWS = 7;
+    private static final int CACHE_SIZE = 1024;
+    private static final char FIRST = ' ';
+    private static final char LAST = '~';
+    /**
+     * The columns of the glyphs from ' ' to '~', left to right; bit n is the
+     * pixel of row n counting from the top, and row 6 sits on the baseline.
+     */
+    private static final int[] GLYPHS = {
+        0x00, 0x00, 0x00, 0x00, 0x00, // ' '
+        0x00, 0x00, 0x5F, 0x00, 0x00, // !
+        0x00, 0x07, 0x00, 0x07, 0x00, // "
+        0x14, 0x7F, 0x14, 0x7F, 0x14, // #
+        0x24, 0x2A, 0x7F, 0x2A, 0x12, // $
+        0x23, 0x13, 0x08, 0x64, 0x62, // %
+        0x36, 0x49, 0x55, 0x22, 0x50, // &
+        0x00, 0x05, 0x03, 0x00, 0x00, // '
+        0x00, 0x1C, 0x22, 0x41, 0x00, // (
+        0x00, 0x41, 0x22, 0x1C, 0x00, // )
+        0x14, 0x08, 0x3E, 0x08, 0x14, // *
+        0x08, 0x08, 0x3E, 0x08, 0x08, // +
+        0x00, 0x50, 0x30, 0x00, 0x00, // ,
+        0x08, 0x08, 0x08, 0x08, 0x08, // -
+        0x00, 0x60, 0x60, 0x00, 0x00, // .
+        0x20, 0x10, 0x08, 0x04, 0x02, // /
+        0x3E, 0x51, 0x49, 0x45, 0x3E, // 0
+        0x00, 0x42, 0x7F, 0x40, 0x00, // 1
+        0x42, 0x61, 0x51, 0x49, 0x46, // 2
+        0x21, 0x41, 0x45, 0x4B, 0x31, // 3
+        0x18, 0x14, 0x12, 0x7F, 0x10, // 4
+        0x27, 0x45, 0x45, 0x45, 0x39, // 5
+        0x3C, 0x4A, 0x49, 0x49, 0x30, // 6
+        0x01, 0x71, 0x09, 0x05, 0x03, // 7
+        0x36, 0x49, 0x49, 0x49, 0x36, // 8
+        0x06, 0x49, 0x49, 0x29, 0x1E, // 9
+        0x00, 0x36, 0x36, 0x00, 0x00, // :
+        0x00, 0x56, 0x36, 0x00, 0x00, // ;
+        0x08, 0x14, 0x22, 0x41, 0x00, // <
+        0x14, 0x14, 0x14, 0x14, 0x14, // =
+        0x00, 0x41, 0x22, 0x14, 0x08, // >
+        0x02, 0x01, 0x51, 0x09, 0x06, // ?
+        0x32, 0x49, 0x79, 0x41, 0x3E, // @
+        0x7E, 0x11, 0x11, 0x11, 0x7E, // A
+        0x7F, 0x49, 0x49, 0x49, 0x36, // B
+        0x3E, 0x41, 0x41, 0x41, 0x22, // C
+        0x7F, 0x41, 0x41, 0x22, 0x1C, // D
+        0x7F, 0x49, 0x49, 0x49, 0x41, // E
+        0x7F, 0x09, 0x09, 0x09, 0x01, // F
+        0x3E, 0x41, 0x49, 0x49, 0x7A, // G
+        0x7F, 0x08, 0x08, 0x08, 0x7F, // H
+        0x00, 0x41, 0x7F, 0x41, 0x00, // I
+        0x20, 0x40, 0x41, 0x3F, 0x01, // J
+        0x7F, 0x08, 0x14, 0x22, 0x41, // K
+        0x7F, 0x40, 0x40, 0x40, 0x40, // L
+        0x7F, 0x02, 0x0C, 0x02, 0x7F, // M
+        0x7F, 0x04, 0x08, 0x10, 0x7F, // N
+        0x3E, 0x41, 0x41, 0x41, 0x3E, // O
+        0x7F, 0x09, 0x09, 0x09, 0x06, // P
+        0x3E, 0x41, 0x51, 0x21, 0x5E, // Q
+        0x7F, 0x09, 0x19, 0x29, 0x46, // R
+        0x46, 0x49, 0x49, 0x49, 0x31, // S
+        0x01, 0x01, 0x7F, 0x01, 0x01, // T
+        0x3F, 0x40, 0x40, 0x40, 0x3F, // U
+        0x1F, 0x20, 0x40, 0x20, 0x1F, // V
+        0x3F, 0x40, 0x38, 0x40, 0x3F, // W
+        0x63, 0x14, 0x08, 0x14, 0x63, // X
+        0x07, 0x08, 0x70, 0x08, 0x07, // Y
+        0x61, 0x51, 0x49, 0x45, 0x43, // Z
+        0x00, 0x7F, 0x41, 0x41, 0x00, // [
+        0x02, 0x04, 0x08, 0x10, 0x20, // \
+        0x00, 0x41, 0x41, 0x7F, 0x00, // ]
+        0x04, 0x02, 0x01, 0x02, 0x04, // ^
+        0x40, 0x40, 0x40, 0x40, 0x40, // _
+        0x00, 0x01, 0x02, 0x04, 0x00, // `
+        0x20, 0x54, 0x54, 0x54, 0x78, // a
+        0x7F, 0x48, 0x44, 0x44, 0x38, // b
+        0x38, 0x44, 0x44, 0x44, 0x20, // c
+        0x38, 0x44, 0x44, 0x48, 0x7F, // d
+        0x38, 0x54, 0x54, 0x54, 0x18, // e
+        0x08, 0x7E, 0x09, 0x01, 0x02, // f
+        0x08, 0x54, 0x54, 0x54, 0x3C, // g
+        0x7F, 0x08, 0x04, 0x04, 0x78, // h
+        0x00, 0x44, 0x7D, 0x40, 0x00, // i
+        0x20, 0x40, 0x44, 0x3D, 0x00, // j
+        0x7F, 0x10, 0x28, 0x44, 0x00, // k
+        0x00, 0x41, 0x7F, 0x40, 0x00, // l
+        0x7C, 0x04, 0x18, 0x04, 0x78, // m
+        0x7C, 0x08, 0x04, 0x04, 0x78, // n
+        0x38, 0x44, 0x44, 0x44, 0x38, // o
+        0x7C, 0x14, 0x14, 0x14, 0x08, // p
+        0x08, 0x14, 0x14, 0x14, 0x7C, // q
+        0x7C, 0x08, 0x04, 0x04, 0x08, // r
+        0x48, 0x54, 0x54, 0x54, 0x20, // s
+        0x04, 0x3F, 0x44, 0x40, 0x20, // t
+        0x3C, 0x40, 0x40, 0x20, 0x7C, // u
+        0x1C, 0x20, 0x40, 0x20, 0x1C, // v
+        0x3C, 0x40, 0x30, 0x40, 0x3C, // w
+        0x44, 0x28, 0x10, 0x28, 0x44, // x
+        0x0C, 0x50, 0x50, 0x50, 0x3C, // y
+        0x44, 0x64, 0x54, 0x4C, 0x44, // z
+        0x00, 0x08, 0x36, 0x41, 0x00, // {
+        0x00, 0x00, 0x7F, 0x00, 0x00, // |
+        0x00, 0x41, 0x36, 0x08, 0x00, // }
+        0x08, 0x04, 0x08, 0x10, 0x08, // ~
+    };
+    private static final int[] MISSING_GLYPH = {0x7F, 0x41, 0x41, 0x41, 0x7F};
+    private static final Map<GlyphKey, Glyph> GLYPH_CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<GlyphKey, Glyph>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<GlyphKey, Glyph> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private BitmapFont() {
+    }
+
+    /**
+     * Returns the size of a font pixel of <code>font</code>.
+     */
+    static double getUnit(Font font) {
+        return font.getSize2D() / 10;
+    }
+
+    private static double getBoldWidth(Font font, double unit) {
+        return font.isBold() ? unit / 2 : 0;
+    }
+
+    private static int getColumns(char c, int[] columns) {
+        if (c < FIRST || c > LAST) {
+            System.arraycopy(MISSING_GLYPH, 0, columns, 0, COLUMNS);
+        } else {
+            System.arraycopy(GLYPHS, (c - FIRST) * COLUMNS, columns, 0, COLUMNS);
+        }
+        int all = 0;
+        for (int column : columns) {
+            all |= column;
+        }
+        return all;
+    }
+
+    static Rectangle2D getStringBounds(String text, Font font) {
+        double unit = getUnit(font);
+        return new Rectangle2D.Double(0, -ASCENT * unit, text.length() * ADVANCE * unit, (ASCENT + DESCENT) * unit);
+    }
+
+    /**
+     * Returns the bounds of the font pixels of <code>text</code>, relative
+     * to the start of its baseline.
+     */
+    static Rectangle2D getVisualBounds(String text, Font font) {
+        double unit = getUnit(font);
+        double boldWidth = getBoldWidth(font, unit);
+        int[] columns = new int[COLUMNS];
+        Rectangle2D bounds = null;
+        for (int i = 0; i < text.length(); i++) {
+            if (getColumns(text.charAt(i), columns) == 0) {
+                continue;
+            }
+            for (int column = 0; column < COLUMNS; column++) {
+                for (int row = 0; row < ROWS; row++) {
+                    if ((columns[column] & (1 << row)) != 0) {
+                        Rectangle2D cell = new Rectangle2D.Double((i * ADVANCE + column) * unit,
+                                (row - ROWS) * unit, unit + boldWidth, unit);
+                        if (bounds == null) {
+                            bounds = cell;
+                        } else {
+                            bounds.add(cell);
+                        }
+                    }
+                }
+            }
+        }
+        return bounds == null ? new Rectangle2D.Double() : bounds;
+    }
+
+    /**
+     * Returns the outline of <code>text</code> with its baseline starting at
+     * (x, y): the union of its font pixels, merged into vertical runs.
+     */
+    static Shape createOutline(String text, Font font, double x, double y) {
+        double unit = getUnit(font);
+        double boldWidth = getBoldWidth(font, unit);
+        int[] columns = new int[COLUMNS];
+        Path2D.Double outline = new Path2D.Double(Path2D.WIND_NON_ZERO);
+        for (int i = 0; i < text.length(); i++) {
+            getColumns(text.charAt(i), columns);
+            for (int column = 0; column < COLUMNS; column++) {
+                double left = x + (i * ADVANCE + column) * unit;
+                int row = 0;
+                while (row < ROWS) {
+                    if ((columns[column] & (1 << row)) == 0) {
+                        row++;
+                        continue;
+                    }
+                    int end = row;
+                    while (end < ROWS && (columns[column] & (1 << end)) != 0) {
+                        end++;
+                    }
+                    outline.append(new Rectangle2D.Double(left, y + (row - ROWS) * unit,
+                            unit + boldWidth, (end - row) * unit), false);
+                    row = end;
+                }
+            }
+        }
+        return outline;
+    }
+
+    /**
+     * Returns the coverage bitmap of <code>c</code> for a font pixel of
+     * <code>unit</code> device pixels, with the origin of the glyph at
+     * (phaseX / PHASES, phaseY / PHASES) within pixel (0, 0), or null if the
+     * glyph is blank.
+     */
+    static Glyph getGlyph(char c, Font font, double unit, int phaseX, int phaseY) {
+        GlyphKey key = new GlyphKey(c, font.isBold(), unit, phaseX, phaseY);
+        Glyph glyph = GLYPH_CACHE.get(key);
+        if (glyph == null && !GLYPH_CACHE.containsKey(key)) {
+            glyph = createGlyph(c, getBoldWidth(font, unit), unit, phaseX / (double) PHASES, phaseY / (double) PHASES);
+            GLYPH_CACHE.put(key, glyph);
+        }
+        return glyph;
+    }
+
+    private static Glyph createGlyph(char c, double boldWidth, double unit, double originX, double originY) {
+        int[] columns = new int[COLUMNS];
+        if (getColumns(c, columns) == 0) {
+            return null;
+        }
+        double top = originY - ROWS * unit;
+        int x0 = (int) Math.floor(originX);
+        int y0 = (int) Math.floor(top);
+        int x1 = (int) Math.ceil(originX + COLUMNS * unit + boldWidth);
+        int y1 = (int) Math.ceil(originY);
+        int width = x1 - x0;
+        int height = y1 - y0;
+        float[] coverage = new float[width * height];
+        double[] overlapX = new double[width];
+        for (int column = 0; column < COLUMNS; column++) {
+            double left = originX + column * unit;
+            overlap(left, left + unit + boldWidth, x0, overlapX);
+            for (int row = 0; row < ROWS; row++) {
+                if ((columns[column] & (1 << row)) == 0) {
+                    continue;
+                }
+                double cellTop = top + row * unit;
+                int first = (int) Math.floor(cellTop) - y0;
+                int last = (int) Math.ceil(cellTop + unit) - y0;
+                for (int y = first; y < last; y++) {
+                    double overlapY = Math.min(cellTop + unit, y0 + y + 1) - Math.max(cellTop, y0 + y);
+                    for (int x = 0; x < width; x++) {
+                        coverage[y * width + x] += (float) (overlapX[x] * overlapY);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < coverage.length; i++) {
+            // Bold pixels overlap their neighbours:
+            coverage[i] = Math.min(coverage[i], 1f);
+        }
+        return new Glyph(x0, y0, width, height, coverage);
+    }
+
+    private static void overlap(double left, double right, int x0, double[] overlap) {
+        for (int x = 0; x < overlap.length; x++) {
+            overlap[x] = Math.max(Math.min(right, x0 + x + 1) - Math.max(left, x0 + x), 0);
+        }
+    }
+
+    /**
+     * The coverage of the pixels of a glyph, relative to the pixel that
+     * contains its origin.
+     */
+    static final class Glyph {
+
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+        final float[] coverage;
+
+        Glyph(int x, int y, int width, int height, float[] coverage) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.coverage = coverage;
+        }
+    }
+
+    private static final class GlyphKey {
+
+        private final char c;
+        private final boolean bold;
+        private final double unit;
+        private final int phaseX;
+        private final int phaseY;
+
+        GlyphKey(char c, boolean bold, double unit, int phaseX, int phaseY) {
+            this.c = c;
+            this.bold = bold;
+            this.unit = unit;
+            this.phaseX = phaseX;
+            this.phaseY = phaseY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GlyphKey)) {
+                return false;
+            }
+            GlyphKey k = (GlyphKey) o;
+            return c == k.c && bold == k.bold && Double.compare(unit, k.unit) == 0
+                    && phaseX == k.phaseX && phaseY == k.phaseY;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(unit);
+            int hash = c;
+            hash = 31 * hash + (bold ? 1 : 0);
+            hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+            hash = 31 * hash + phaseX;
+            hash = 31 * hash + phaseY;
+            return hash;
+        }
+    }
+
+    /**
+     * The metrics of the font, rounded the way Java2D rounds them.
+     */
+    static final class Metrics extends FontMetrics {
+
+        private static final long serialVersionUID = 1L;
+        private final double unit;
+
+        Metrics(Font font) {
+            super(font);
+            this.unit = getUnit(font);
+        }
+
+        @Override
+        public int getAscent() {
+            return (int) Math.ceil(ASCENT * unit);
+        }
+
+        @Override
+        public int getDescent() {
+            return (int) Math.ceil(DESCENT * unit);
+        }
+
+        @Override
+        public int getLeading() {
+            return 0;
+        }
+
+        @Override
+        public int getMaxAdvance() {
+            return (int) Math.ceil(ADVANCE * unit);
+        }
+
+        @Override
+        public int charWidth(char ch) {
+            return (int) (0.5 + ADVANCE * unit);
+        }
+
+        @Override
+        public int charWidth(int codePoint) {
+            return charWidth((char) codePoint);
+        }
+
+        @Override
+        public int stringWidth(String str) {
+            return (int) (0.5 + str.length() * ADVANCE * unit);
+        }
+
+        @Override
+        public int charsWidth(char[] data, int off, int len) {
+            return (int) (0.5 + len * ADVANCE * unit);
+        }
+
+        @Override
+        public Rectangle2D getStringBounds(String str, Graphics context) {
+            return BitmapFont.getStringBounds(str, getFont());
+        }
+
+        @Override
+        public LineMetrics getLineMetrics(String str, Graphics context) {
+            return new BitmapLineMetrics(str.length(), unit);
+        }
+    }
+
+    static final class BitmapLineMetrics extends LineMetrics {
+
+        private final int numChars;
+        private final double unit;
+
+        BitmapLineMetrics(int numChars, double unit) {
+            this.numChars = numChars;
+            this.unit = unit;
+        }
+
+        @Override
+        public int getNumChars() {
+            return numChars;
+        }
+
+        @Override
+        public float getAscent() {
+            return (float) (ASCENT * unit);
+        }
+
+        @Override
+        public float getDescent() {
+            return (float) (DESCENT * unit);
+        }
+
+        @Override
+        public float getLeading() {
+            return 0;
+        }
+
+        @Override
+        public float getHeight() {
+            return getAscent() + getDescent();
+        }
+
+        @Override
+        public int getBaselineIndex() {
+            return Font.ROMAN_BASELINE;
+        }
+
+        @Override
+        public float[] getBaselineOffsets() {
+            return new float[]{0, (float) (-ROWS * unit / 2), (float) (-ROWS * unit)};
+        }
+
+        @Override
+        public float getStrikethroughOffset() {
+            return (float) (-3 * unit);
+        }
+
+        @Override
+        public float getStrikethroughThickness() {
+            return (float) unit;
+        }
+
+        @Override
+        public float getUnderlineOffset() {
+            return (float) unit;
+        }
+
+        @Override
+        public float getUnderlineThickness() {
+            return (float) unit;
+        }
+    }
+}
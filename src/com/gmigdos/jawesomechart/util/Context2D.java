@@ -26,14 +26,22 @@ package com.gmigdos.jawesomechart.util;
 import java.awt.*;
 import java.awt.color.ColorSpace;
 import java.awt.font.FontRenderContext;
-import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.ConvolveOp;
-import java.awt.image.Kernel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -41,6 +49,23 @@ import java.util.Deque;
  */
 public class Context2D {
 
+    /**
+     * The layers a chart is made of, in the order they are drawn. Renderers
+     * tag what they draw with {@link Context2D#setLayer(Layer)} so that
+     * layers that do not change between frames can be cached.
+     */
+    public enum Layer {
+
+        /** Backgrounds, borders, title, subtitle and legend. */
+        BACKGROUND,
+        /** Axes, axis captions, tick labels and grid lines. */
+        AXES,
+        /** The geometry representing the data values. */
+        DATA,
+        /** Series names and values drawn next to the data. */
+        LABELS
+    };
+
     public static final int VERTICAL_ALIGN_MIDDLE = 0;
     public static final int VERTICAL_ALIGN_TOP = 1;
     public static final int VERTICAL_ALIGN_BOTTOM = 2;
@@ -48,13 +73,24 @@ public class Context2D {
     public static final int HORIZONTAL_ALIGN_LEFT = 4;
     public static final int HORIZONTAL_ALIGN_CENTER = 5;
     public static final int HORIZONTAL_ALIGN_RIGHT = 6;
-    private Deque<Graphics2D> stack;
-    //private Deque<Graphics2D> bufferStack;//TODO: Use stacks
-    //private Deque<Graphics2D> shadowStack;
-    BufferedImage temporaryImage;
-    BufferedImage shadowImage;
-    private Graphics2D buffer;
-    private Graphics2D shadow;
+    private static final float FONT_SIZE_STEP = 0.5f;
+    private static final int FITTED_FONTS_CACHE_SIZE = 512;
+    private static final Map<FittedFontKey, Font> FITTED_FONTS = Collections.synchronizedMap(
+            new LinkedHashMap<FittedFontKey, Font>(64, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<FittedFontKey, Font> eldest) {
+                    return size() > FITTED_FONTS_CACHE_SIZE;
+                }
+            });
+    private Surface graphics;
+    private Deque<GraphicsState> stack;
+    private long transformVersion;
+    private long clipVersion;
+    private long lastVersion;
+    private Surface buffer;
+    private Surface shadow;
+    private ShadowBuffers shadowBuffers;
     private Shape originalClip;
     private AffineTransform originalClipTransform;
     
@@ -65,25 +101,63 @@ public class Context2D {
     
     private double width;
     private double height;
-    private double originalWidth;
-    private double originalHeight;
+    private Rectangle deviceBounds;
+    private AffineTransform initialTransform;
+    private Layer layer;
+    private Set<Layer> visibleLayers;
+    private boolean shadowedDrawingSkipped;
+    private boolean shadowedDrawingNative;
+    private boolean shadowsOn;
 
     public Context2D(Graphics2D g2d, int width, int height) {
-        this.stack = new ArrayDeque<Graphics2D>();
+        this(new Graphics2DSurface(g2d), width, height);
+    }
+
+    /**
+     * Creates a context drawing on <code>image</code>. Knowing the target
+     * image allows some operations, such as
+     * {@link #drawPolylineDirect(double[], double[], int)}, to write to its
+     * pixels directly instead of going through its graphics.
+     * 
+     * @param image the image to draw on
+     * @param width the width of the chart
+     * @param height the height of the chart
+     */
+    public Context2D(BufferedImage image, int width, int height) {
+        this(new Graphics2DSurface(image), width, height);
+    }
 
-        Graphics2D g = (Graphics2D) g2d.create();
+    /**
+     * Creates a context drawing on <code>surface</code>, e.g. a
+     * {@link RasterSurface} to draw without Java2D.
+     * 
+     * @param surface the surface to draw on; its state is copied, not
+     * modified
+     * @param width the width of the chart
+     * @param height the height of the chart
+     */
+    public Context2D(Surface surface, int width, int height) {
+        this.stack = new ArrayDeque<GraphicsState>();
+
+        Surface g = surface.create();
         this.width = width;
         this.height = height;
-        this.originalWidth = width;
-        this.originalHeight = height;
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        stack.push(g);
-
-        temporaryImage = null;
-        shadowImage = null;
+        this.deviceBounds = calculateDeviceBounds(g, width, height);
+        this.initialTransform = g.getTransform();
+        this.layer = Layer.BACKGROUND;
+        this.visibleLayers = EnumSet.allOf(Layer.class);
+        this.shadowedDrawingSkipped = false;
+        this.shadowedDrawingNative = false;
+        this.shadowsOn = true;
+        g.setAntialiasingOn(true);
+        this.graphics = g;
+        this.transformVersion = 0;
+        this.clipVersion = 0;
+        this.lastVersion = 0;
+
         buffer = null;
         shadow = null;
+        shadowBuffers = null;
 
         originalClip = null;
         originalClipTransform = null;
@@ -97,17 +171,106 @@ public class Context2D {
 
     }
 
+    /**
+     * Returns the area of the device the chart is drawn on, i.e. the
+     * width x height area transformed by the initial transformation of the
+     * graphics object and limited by its initial clip. Off-screen buffers
+     * used for shadowed drawing cover exactly this area.
+     */
+    private static Rectangle calculateDeviceBounds(Surface g, int width, int height) {
+        AffineTransform transform = g.getTransform();
+        Rectangle bounds = transform.createTransformedShape(new Rectangle2D.Double(0, 0, width, height)).getBounds();
+        Shape clip = g.getClip();
+        if (clip != null) {
+            bounds = bounds.intersection(transform.createTransformedShape(clip).getBounds());
+        }
+        if (bounds.width < 1 || bounds.height < 1) {
+            bounds.setSize(Math.max(bounds.width, 1), Math.max(bounds.height, 1));
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the layer subsequent drawing operations belong to.
+     */
+    public Layer getLayer() {
+        return layer;
+    }
+
+    /**
+     * Sets the layer subsequent drawing operations belong to. Drawing
+     * operations on layers that are not visible are ignored while state
+     * changes (transformations, clip, paint etc.) are always applied.
+     * 
+     * @param layer the new current layer
+     */
+    public void setLayer(Layer layer) {
+        this.layer = layer;
+    }
+
+    public Set<Layer> getVisibleLayers() {
+        return visibleLayers;
+    }
+
+    /**
+     * Sets the layers that are actually drawn. All layers are visible by default.
+     * 
+     * @param visibleLayers the layers to draw
+     */
+    public void setVisibleLayers(Set<Layer> visibleLayers) {
+        this.visibleLayers = EnumSet.noneOf(Layer.class);
+        this.visibleLayers.addAll(visibleLayers);
+    }
+
+    private boolean isCurrentLayerVisible() {
+        return visibleLayers.contains(layer);
+    }
+
+    public boolean isShadowsOn() {
+        return shadowsOn;
+    }
+
+    /**
+     * Enables or disables shadows. When off, whatever is drawn between
+     * {@link #beginShadowedDrawing()} and {@link #endShadowedDrawing()} goes
+     * straight to the target, without off-screen buffers or blurring. Used
+     * for fast draft frames.
+     * 
+     * @param shadowsOn false to ignore shadowed drawing
+     */
+    public void setShadowsOn(boolean shadowsOn) {
+        this.shadowsOn = shadowsOn;
+    }
+
+    public boolean isAntialiasingOn() {
+        return graphics.isAntialiasingOn();
+    }
+
+    /**
+     * Enables or disables anti-aliasing of shapes and text. Anti-aliasing is
+     * on by default.
+     * 
+     * @param antialiasingOn false to draw aliased shapes and text
+     */
+    public void setAntialiasingOn(boolean antialiasingOn) {
+        for (Surface g : new Surface[]{graphics, buffer, shadow}) {
+            if (g != null) {
+                g.setAntialiasingOn(antialiasingOn);
+            }
+        }
+    }
+
     public Shape getOriginalClip() {
         return originalClip;
     }
 
     public void setOriginalClip(Shape originalClip) {
         this.originalClip = originalClip;
-        Graphics2D g;
+        Surface g;
         if (buffer != null) {
             g = buffer;
         } else {
-            g = stack.peek();
+            g = graphics;
         }
         this.originalClipTransform = g.getTransform();
         setClip(originalClip);
@@ -185,28 +348,30 @@ public class Context2D {
         //setClip(new Rectangle2D.Double(0, 0, width+1, height+1));
     }
 
-    public Graphics2D save() {
+    /**
+     * Pushes the current transform, clip, paint, stroke, font and composite
+     * on the state stack. Unlike {@link Graphics2D#create()} no new graphics
+     * object is allocated; {@link #restoreState()} re-applies only the parts
+     * of the state that have changed in between.
+     */
+    public void saveState() {
         //TODO: shadowed drawing
-        Graphics2D result = (Graphics2D) stack.peek().create();
-        stack.push(result);
-        return result;
+        stack.push(new GraphicsState(graphics, transformVersion, clipVersion));
     }
 
-    public Graphics2D restore() {
+    public void restoreState() {
         //TODO: shadowed drawing
-        stack.pop().dispose();
-        return stack.peek();
+        applyState(stack.pop());
     }
 
-    public Graphics2D reset() {
-        Graphics2D g = null;
+    public void resetState() {
+        GraphicsState state = null;
         while (!stack.isEmpty()) {
-            g = stack.pop();
-            if (stack.size() > 1) {
-                g.dispose();
-            }
+            state = stack.pop();
+        }
+        if (state != null) {
+            applyState(state);
         }
-        stack.push(g);
         if (buffer != null) {
             buffer.dispose();
         }
@@ -215,12 +380,117 @@ public class Context2D {
         }
         buffer = null;
         shadow = null;
-        return g;
+        shadowBuffers = null;
     }
-    
+
+    /**
+     * Saves the state like {@link #saveState()}.
+     *
+     * @return the graphics the context draws with, if it draws on a
+     * {@link Graphics2DSurface}, null otherwise
+     * @deprecated the state is no longer kept in separate graphics objects;
+     * use {@link #saveState()}
+     */
+    @Deprecated
+    public Graphics2D save() {
+        saveState();
+        return getGraphics2D();
+    }
+
+    /**
+     * Restores the state like {@link #restoreState()}.
+     *
+     * @return the graphics the context draws with, if it draws on a
+     * {@link Graphics2DSurface}, null otherwise
+     * @deprecated the state is no longer kept in separate graphics objects;
+     * use {@link #restoreState()}
+     */
+    @Deprecated
+    public Graphics2D restore() {
+        restoreState();
+        return getGraphics2D();
+    }
+
+    /**
+     * Resets the state like {@link #resetState()}.
+     *
+     * @return the graphics the context draws with, if it draws on a
+     * {@link Graphics2DSurface}, null otherwise
+     * @deprecated the state is no longer kept in separate graphics objects;
+     * use {@link #resetState()}
+     */
+    @Deprecated
+    public Graphics2D reset() {
+        resetState();
+        return getGraphics2D();
+    }
+
+    private Graphics2D getGraphics2D() {
+        return graphics instanceof Graphics2DSurface ? ((Graphics2DSurface) graphics).getGraphics() : null;
+    }
+
+    private void applyState(GraphicsState state) {
+        Surface g = graphics;
+        if (state.transformVersion != transformVersion) {
+            g.setTransform(state.transform);
+            transformVersion = state.transformVersion;
+        }
+        if (state.clipVersion != clipVersion) {
+            g.setClip(state.clip);
+            clipVersion = state.clipVersion;
+        }
+        if (g.getPaint() != state.paint) {
+            g.setPaint(state.paint);
+        }
+        if (g.getStroke() != state.stroke) {
+            g.setStroke(state.stroke);
+        }
+        if (g.getFont() != state.font) {
+            g.setFont(state.font);
+        }
+        if (g.getComposite() != state.composite) {
+            g.setComposite(state.composite);
+        }
+    }
+
+    private void transformChanged() {
+        transformVersion = ++lastVersion;
+    }
+
+    private void clipChanged() {
+        clipVersion = ++lastVersion;
+    }
+
+    /**
+     * Snapshot of the parts of a {@link Surface}'s state that the renderers
+     * modify. The clip is stored in the user space of the stored transform.
+     */
+    private static final class GraphicsState {
+
+        final AffineTransform transform;
+        final Shape clip;
+        final Paint paint;
+        final Stroke stroke;
+        final Font font;
+        final Composite composite;
+        final long transformVersion;
+        final long clipVersion;
+
+        GraphicsState(Surface g, long transformVersion, long clipVersion) {
+            this.transform = g.getTransform();
+            this.clip = g.getClip();
+            this.paint = g.getPaint();
+            this.stroke = g.getStroke();
+            this.font = g.getFont();
+            this.composite = g.getComposite();
+            this.transformVersion = transformVersion;
+            this.clipVersion = clipVersion;
+        }
+    }
+
     //TODO: fix (shadows)
     private void clear() {
-        Graphics2D g = stack.peek();
+        Surface g = graphics;
         Composite old = g.getComposite();
         Paint p = g.getPaint();
         Composite composite = AlphaComposite.getInstance(AlphaComposite.CLEAR, 0.0f);
@@ -238,12 +508,16 @@ public class Context2D {
                 shadow.setClip(clipRect);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.setClip(clipRect);
+            clipChanged();
         }
     }
     
     public void drawCurrentClip(Paint p){
+        if (!isCurrentLayerVisible()) {
+            return;
+        }
         Paint oldPaint;
         Stroke oldStroke;
         Rectangle2D bounds;
@@ -259,7 +533,7 @@ public class Context2D {
             buffer.setPaint(oldPaint);
             buffer.setStroke(oldStroke);
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             oldPaint = g.getPaint();
             oldStroke = g.getStroke();
             g.setPaint(p);
@@ -286,11 +560,12 @@ public class Context2D {
                 shadow.setTransform(t);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             t = g.getTransform();
             g.setTransform(originalClipTransform);
             g.setClip(originalClip);
             g.setTransform(t);
+            clipChanged();
         }
     }
 
@@ -301,8 +576,9 @@ public class Context2D {
                 shadow.setClip(null);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.setClip(null);
+            clipChanged();
         }
     }
 
@@ -313,8 +589,9 @@ public class Context2D {
                 shadow.translate(x, y);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.translate(x, y);
+            transformChanged();
         }
     }
 
@@ -325,8 +602,9 @@ public class Context2D {
                 shadow.translate(x, y);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.translate(x, y);
+            transformChanged();
         }
     }
 
@@ -337,8 +615,9 @@ public class Context2D {
                 shadow.rotate(theta);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.rotate(theta);
+            transformChanged();
         }
     }
 
@@ -349,8 +628,9 @@ public class Context2D {
                 shadow.rotate(theta, x, y);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.rotate(theta, x, y);
+            transformChanged();
         }
     }
 
@@ -361,8 +641,9 @@ public class Context2D {
                 shadow.scale(sx, sy);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.scale(sx, sy);
+            transformChanged();
         }
     }
 
@@ -373,32 +654,29 @@ public class Context2D {
                 shadow.transform(Tx);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.transform(Tx);
+            transformChanged();
         }
     }
 
     public FontMetrics getFontMetrics() {
-        if (buffer != null) {
-            return buffer.getFontMetrics();
-        } else {
-            return stack.peek().getFontMetrics();
-        }
+        Surface g = getCurrentSurface();
+        return g.getFontMetrics(g.getFont());
     }
 
     public Font getFont() {
         if (buffer != null) {
             return buffer.getFont();
         } else {
-            return stack.peek().getFont();
+            return graphics.getFont();
         }
     }
 
     @Override
     protected void finalize() throws Throwable {
-        while (!stack.isEmpty()) {
-            stack.pop().dispose();
-        }
+        stack.clear();
+        graphics.dispose();
         if (buffer != null) {
             buffer.dispose();
         }
@@ -407,6 +685,7 @@ public class Context2D {
         }
         buffer = null;
         shadow = null;
+        shadowBuffers = null;
         super.finalize();
     }
 
@@ -417,7 +696,7 @@ public class Context2D {
                 shadow.setFont(f);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.setFont(f);
         }
     }
@@ -426,7 +705,7 @@ public class Context2D {
         if (buffer != null) {
             buffer.setPaint(p);
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.setPaint(p);
         }
     }
@@ -436,12 +715,7 @@ public class Context2D {
         c.getRGBColorComponents(colorComponents);
         Color newColor = new Color(ColorSpace.getInstance(ColorSpace.CS_sRGB), colorComponents, opacity);
 
-        if (buffer != null) {
-            buffer.setPaint(newColor);
-        } else {
-            Graphics2D g = stack.peek();
-            g.setPaint(newColor);
-        }
+        setPaint(newColor);
     }
 
     public void setStroke(Stroke s) {
@@ -451,7 +725,7 @@ public class Context2D {
                 shadow.setStroke(s);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.setStroke(s);
         }
     }
@@ -463,7 +737,7 @@ public class Context2D {
                 shadow.setComposite(comp);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.setComposite(comp);
         }
     }
@@ -472,37 +746,274 @@ public class Context2D {
         if (buffer != null) {
             return buffer.getComposite();
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             return g.getComposite();
         }
     }
 
     public void draw(Shape s) {
+        if (!isCurrentLayerVisible()) {
+            return;
+        }
         if (buffer != null) {
             buffer.draw(s);
             if (shadow != null) {
                 shadow.draw(s);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.draw(s);
         }
     }
 
     public void fill(Shape s) {
+        if (!isCurrentLayerVisible()) {
+            return;
+        }
         if (buffer != null) {
             buffer.fill(s);
             if (shadow != null) {
                 shadow.fill(s);
             }
         } else {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             g.fill(s);
         }
     }
 
+    /**
+     * Draws <code>image</code> with its top-left corner at (x, y) in the
+     * current user space. The image does not cast a shadow.
+     * 
+     * @param image the image to draw
+     * @param x the x coordinate of the image's top-left corner
+     * @param y the y coordinate of the image's top-left corner
+     */
+    public void drawImage(Image image, double x, double y) {
+        if (!isCurrentLayerVisible()) {
+            return;
+        }
+        getCurrentSurface().drawImage(image, x, y);
+    }
+
+    /**
+     * Draws an anti-aliased polyline through the given points, in user
+     * space, by writing directly to the pixels of the target image with
+     * {@link WuRasterizer}. This is much faster than drawing a path when the
+     * number of points is large, but ignores the caps and joins of the stroke.
+     * Points with a NaN coordinate break the line.
+     * 
+     * The fast path is only available when the context draws on a
+     * TYPE_INT_ARGB image (or in shadowed drawing mode) with no rotation or
+     * shear, a rectangular clip, a plain color, a BasicStroke and the SrcOver
+     * composite. Otherwise nothing is drawn and false is returned, so that
+     * the caller can fall back to drawing a path.
+     * 
+     * @param xPoints the x coordinates of the points
+     * @param yPoints the y coordinates of the points
+     * @param nPoints the number of points
+     * @return true if the polyline was drawn
+     */
+    public boolean drawPolylineDirect(double[] xPoints, double[] yPoints, int nPoints) {
+        if (!isCurrentLayerVisible()) {
+            return true;
+        }
+        WuRasterizer lineRasterizer;
+        WuRasterizer shadowRasterizer = null;
+        if (buffer != null) {
+            lineRasterizer = createRasterizer(buffer);
+            if (shadow != null) {
+                shadowRasterizer = createRasterizer(shadow);
+                if (shadowRasterizer == null) {
+                    return false;
+                }
+            }
+        } else {
+            lineRasterizer = createRasterizer(graphics);
+        }
+        if (lineRasterizer == null) {
+            return false;
+        }
+        drawPolylineDirect(lineRasterizer, buffer != null ? buffer : graphics, xPoints, yPoints, nPoints);
+        if (shadowRasterizer != null) {
+            drawPolylineDirect(shadowRasterizer, shadow, xPoints, yPoints, nPoints);
+        }
+        return true;
+    }
+
+    private static void drawPolylineDirect(WuRasterizer rasterizer, Surface g, double[] xPoints, double[] yPoints, int nPoints) {
+        double[] points = new double[2 * nPoints];
+        for (int i = 0; i < nPoints; i++) {
+            points[2 * i] = xPoints[i];
+            points[2 * i + 1] = yPoints[i];
+        }
+        g.getTransform().transform(points, 0, points, 0, nPoints);
+        double[] x = new double[nPoints];
+        double[] y = new double[nPoints];
+        for (int i = 0; i < nPoints; i++) {
+            // NaN coordinates stay NaN through the transformation:
+            x[i] = points[2 * i];
+            y[i] = points[2 * i + 1];
+        }
+        rasterizer.drawPolyline(x, y, nPoints);
+    }
+
+    /**
+     * Returns a rasterizer writing to the pixels of <code>g</code> with its
+     * state, or null if the pixels are not accessible or the state is not
+     * supported.
+     */
+    private static WuRasterizer createRasterizer(Surface g) {
+        int[] data;
+        int offset;
+        int stride;
+        Rectangle clip;
+        if (g instanceof RasterSurface) {
+            RasterSurface raster = (RasterSurface) g;
+            data = raster.getPixels();
+            offset = 0;
+            stride = raster.getWidth();
+            clip = new Rectangle(0, 0, raster.getWidth(), raster.getHeight());
+        } else if (g instanceof Graphics2DSurface) {
+            BufferedImage image = ((Graphics2DSurface) g).getImage();
+            if (image == null || image.getType() != BufferedImage.TYPE_INT_ARGB) {
+                return null;
+            }
+            WritableRaster raster = image.getRaster();
+            SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+            data = dataBuffer.getData();
+            stride = sampleModel.getScanlineStride();
+            offset = dataBuffer.getOffset() - raster.getSampleModelTranslateX() - raster.getSampleModelTranslateY() * stride;
+            clip = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        } else {
+            return null;
+        }
+        AffineTransform t = g.getTransform();
+        if ((t.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE | AffineTransform.TYPE_GENERAL_SCALE)) != 0) {
+            return null;
+        }
+        if (!(g.getPaint() instanceof Color) || !(g.getStroke() instanceof BasicStroke)
+                || !(g.getComposite() instanceof AlphaComposite)
+                || ((AlphaComposite) g.getComposite()).getRule() != AlphaComposite.SRC_OVER) {
+            return null;
+        }
+        Shape userClip = g.getClip();
+        if (userClip != null) {
+            if (!(userClip instanceof Rectangle2D)) {
+                return null;
+            }
+            Rectangle2D deviceClip = t.createTransformedShape(userClip).getBounds2D();
+            int x0 = (int) Math.ceil(deviceClip.getMinX() - 0.5);
+            int y0 = (int) Math.ceil(deviceClip.getMinY() - 0.5);
+            int x1 = (int) Math.ceil(deviceClip.getMaxX() - 0.5);
+            int y1 = (int) Math.ceil(deviceClip.getMaxY() - 0.5);
+            clip = clip.intersection(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+        }
+        if (clip.isEmpty()) {
+            clip = new Rectangle();
+        }
+
+        double scale = (Math.abs(t.getScaleX()) + Math.abs(t.getScaleY())) / 2;
+        double width = ((BasicStroke) g.getStroke()).getLineWidth() * scale;
+        float extraAlpha = ((AlphaComposite) g.getComposite()).getAlpha();
+        return new WuRasterizer(data, offset, stride, clip, ((Color) g.getPaint()).getRGB(), extraAlpha, Math.max(width, 1));
+    }
+
+    /**
+     * Fills circles of the given radius centered at the given points, in
+     * user space, with the current paint. When the paint is a plain color,
+     * the composite is SrcOver and the transformation has no rotation, shear
+     * or non-uniform scaling, a pre-rendered sprite of the circle is stamped
+     * at each point (see {@link PointSprites}); otherwise each circle is
+     * filled as an ellipse.
+     * 
+     * @param xPoints the x coordinates of the centers
+     * @param yPoints the y coordinates of the centers
+     * @param nPoints the number of circles
+     * @param radius the radius of the circles
+     */
+    public void fillCircles(double[] xPoints, double[] yPoints, int nPoints, double radius) {
+        if (!isCurrentLayerVisible()) {
+            return;
+        }
+        Surface g = getCurrentSurface();
+        if (!canStampSprites(g) || (shadow != null && !canStampSprites(shadow))) {
+            double diameter = 2 * radius;
+            for (int i = 0; i < nPoints; i++) {
+                fill(new Ellipse2D.Double(xPoints[i] - radius, yPoints[i] - radius, diameter, diameter));
+            }
+            return;
+        }
+        stampSprites(g, xPoints, yPoints, nPoints, radius);
+        if (shadow != null) {
+            stampSprites(shadow, xPoints, yPoints, nPoints, radius);
+        }
+    }
+
+    private static boolean canStampSprites(Surface g) {
+        if (!(g instanceof Graphics2DSurface)) {
+            // The sprites themselves are rendered with Java2D.
+            return false;
+        }
+        AffineTransform t = g.getTransform();
+        if ((t.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0) {
+            return false;
+        }
+        return g.getPaint() instanceof Color
+                && g.getComposite() instanceof AlphaComposite
+                && ((AlphaComposite) g.getComposite()).getRule() == AlphaComposite.SRC_OVER;
+    }
+
+    private static void stampSprites(Surface g, double[] xPoints, double[] yPoints, int nPoints, double radius) {
+        AffineTransform transform = g.getTransform();
+        double deviceRadius = radius * Math.abs(transform.getScaleX());
+        int padding = PointSprites.getPadding(deviceRadius);
+        Color color = (Color) g.getPaint();
+        double[] point = new double[2];
+        g.setTransform(new AffineTransform());
+        for (int i = 0; i < nPoints; i++) {
+            point[0] = xPoints[i];
+            point[1] = yPoints[i];
+            transform.transform(point, 0, point, 0, 1);
+            long phasesX = Math.round(point[0] * PointSprites.PHASES);
+            long phasesY = Math.round(point[1] * PointSprites.PHASES);
+            int x = (int) Math.floor(phasesX / (double) PointSprites.PHASES);
+            int y = (int) Math.floor(phasesY / (double) PointSprites.PHASES);
+            int phaseX = (int) (phasesX - (long) x * PointSprites.PHASES);
+            int phaseY = (int) (phasesY - (long) y * PointSprites.PHASES);
+            g.drawImage(PointSprites.getSprite(color, deviceRadius, phaseX, phaseY), x - padding, y - padding);
+        }
+        g.setTransform(transform);
+    }
+
     public void beginShadowedDrawing() {
 
+        if (!isCurrentLayerVisible() || !shadowsOn) {
+            // Nothing will be drawn, or it will be drawn without a shadow:
+            // skip the off-screen buffers but keep the state changes made
+            // until endShadowedDrawing() local, as they would be if they
+            // went to the buffers.
+            saveState();
+            shadowedDrawingSkipped = true;
+            return;
+        }
+
+        if (graphics.beginShadow(shadowColor, shadowBlurRadius, shadowXOffset, shadowYOffset)) {
+            // The surface draws the shadows itself, e.g. as SVG filters:
+            saveState();
+            shadowedDrawingNative = true;
+            return;
+        }
+        shadowBuffers = graphics.getShadowBuffers();
+        if (shadowBuffers == null) {
+            // Breaking the contract of Surface; draw without a shadow
+            // rather than fail:
+            saveState();
+            shadowedDrawingSkipped = true;
+            return;
+        }
+
         if (buffer != null) {
             buffer.dispose();
         }
@@ -511,25 +1022,22 @@ public class Context2D {
         }
 
         
-        Graphics2D g = stack.peek();
+        Surface g = graphics;
         
         AffineTransform tranform = g.getTransform();
 
-        temporaryImage = new BufferedImage((int)Math.ceil(originalWidth), (int)Math.ceil(originalHeight), BufferedImage.TYPE_INT_ARGB);
-        shadowImage = new BufferedImage((int)Math.ceil(originalWidth), (int)Math.ceil(originalHeight), BufferedImage.TYPE_INT_ARGB);
-        
-        buffer = (Graphics2D) temporaryImage.getGraphics();
-        shadow = (Graphics2D) shadowImage.getGraphics();
+        buffer = shadowBuffers.createCompatibleSurface(deviceBounds.width, deviceBounds.height);
+        shadow = shadowBuffers.createCompatibleSurface(deviceBounds.width, deviceBounds.height);
 
-        buffer.setRenderingHints(g.getRenderingHints());
         buffer.setComposite(g.getComposite());
         buffer.setPaint(g.getPaint());
         buffer.setStroke(g.getStroke());
-        shadow.setRenderingHints(g.getRenderingHints());
         shadow.setComposite(g.getComposite());
         shadow.setPaint(shadowColor);
         shadow.setStroke(g.getStroke());
         
+        buffer.translate(-deviceBounds.x, -deviceBounds.y);
+        shadow.translate(-deviceBounds.x, -deviceBounds.y);
         buffer.transform(tranform);
         shadow.transform(tranform);
         
@@ -537,14 +1045,27 @@ public class Context2D {
     }
 
     public void endShadowedDrawing() {
+        if (shadowedDrawingSkipped) {
+            shadowedDrawingSkipped = false;
+            restoreState();
+            return;
+        }
+        if (shadowedDrawingNative) {
+            shadowedDrawingNative = false;
+            restoreState();
+            graphics.endShadow();
+            return;
+        }
         if (buffer != null && shadow != null) {
-            Graphics2D g = stack.peek();
+            Surface g = graphics;
             
             AffineTransform tranform = g.getTransform();
 
-            shadowImage = blur(shadowImage, shadowBlurRadius);
-            g.drawImage(shadowImage, (int) -tranform.getTranslateX(), (int) -tranform.getTranslateY(), null);
-            g.drawImage(temporaryImage, (int) -tranform.getTranslateX(), (int) -tranform.getTranslateY(), null);
+            shadowBuffers.blur(shadow, shadowBlurRadius);
+            g.setTransform(new AffineTransform());
+            shadowBuffers.drawSurface(shadow, deviceBounds.x, deviceBounds.y);
+            shadowBuffers.drawSurface(buffer, deviceBounds.x, deviceBounds.y);
+            g.setTransform(tranform);
         }
 
         if (buffer != null) {
@@ -555,50 +1076,22 @@ public class Context2D {
         }
         buffer = null;
         shadow = null;
-        temporaryImage = null;
-        shadowImage = null;
+        shadowBuffers = null;
     }
     
-    private BufferedImage blur(BufferedImage src, int blurRadius) {
-
-        int size = blurRadius * 2 + 1;
-        int kernelSize = size * size;
-        float weight = 1.0f / (kernelSize);
-        float[] blur = new float[kernelSize];
-
-        for (int i = 0; i < kernelSize; i++) {
-            blur[i] = weight;
-        }
-
-        Kernel kernel = new Kernel(size, size, blur);
-        ConvolveOp op = new ConvolveOp(kernel);
-
-        return op.filter(src, null);
-    }
-
     public void drawText(String text, double x, double y, int horizontalAlignment, int verticalAlignment) {
         drawText(text, x, y, horizontalAlignment, verticalAlignment, -1);
     }
 
     public void drawText(String text, double x, double y, int horizontalAlignment, int verticalAlignment, double maxWidth) {
-        Graphics2D g2d;
-        if (buffer != null) {
-            g2d = buffer;
-        } else {
-            g2d = stack.peek();
-        }
+        Surface g2d = getCurrentSurface();
 
-        Font oldFont = g2d.getFont();
+        Font font = g2d.getFont();
         if (maxWidth > 0) {
-            adjustFontSizeToFitTextInWidth(text, maxWidth);
+            font = fitFontToWidth(g2d, font, text, maxWidth);
         }
-        FontMetrics fontMetrics = g2d.getFontMetrics();
-        Rectangle stringBounds = fontMetrics.getStringBounds(text, g2d).getBounds();
-
-        Font font = g2d.getFont();
-        FontRenderContext renderContext = g2d.getFontRenderContext();
-        GlyphVector glyphVector = font.createGlyphVector(renderContext, text);
-        Rectangle visualBounds = glyphVector.getVisualBounds().getBounds();
+        Rectangle stringBounds = g2d.getStringBounds(text, font).getBounds();
+        Rectangle visualBounds = g2d.getVisualBounds(text, font).getBounds();
         
         Double textX;
         Double textY;
@@ -619,47 +1112,154 @@ public class Context2D {
             textY = y;
         }
 
-        g2d.drawString(text, textX.floatValue(), textY.floatValue());
+        drawString(text, font, textX.floatValue(), textY.floatValue());
+    }
+
+    /**
+     * Draws <code>text</code> with its baseline starting at (x, y) using the
+     * given font. The current font of the context is not modified.
+     * This is the final step of {@link #drawText(String, double, double, int, int, double)}
+     * after the text has been fitted and aligned.
+     */
+    protected void drawString(String text, Font font, float x, float y) {
+        if (!isCurrentLayerVisible()) {
+            return;
+        }
+        Surface g2d = getCurrentSurface();
+        Font oldFont = g2d.getFont();
+        g2d.setFont(font);
+        g2d.drawString(text, x, y);
+        g2d.setFont(oldFont);
         if (shadow != null) {
-            shadow.drawString(text, textX.floatValue(), textY.floatValue());
+            oldFont = shadow.getFont();
+            shadow.setFont(font);
+            shadow.drawString(text, x, y);
             shadow.setFont(oldFont);
         }
-        g2d.setFont(oldFont);
     }
 
     public void adjustFontSizeToFitTextInWidth(String text, double widthLimit) {
 
-        Graphics2D g2d;
-        if (buffer != null) {
-            g2d = buffer;
-        } else {
-            g2d = stack.peek();
-        }
+        Surface g2d = getCurrentSurface();
 
         if (widthLimit < 0) {
             return;
         }
-        Graphics2D g = (Graphics2D) g2d.create();
-        Font f = g2d.getFont();
-        float fontSize = f.getSize2D();
-        FontMetrics fontMetrics = g2d.getFontMetrics();
-        double textWidth = fontMetrics.stringWidth(text);
+        Font f = fitFontToWidth(g2d, g2d.getFont(), text, widthLimit);
 
-        while (textWidth > widthLimit) {
-            fontSize -= 0.5;
-            f = f.deriveFont(fontSize);
-            g2d.setFont(f);
-            fontMetrics = g2d.getFontMetrics();
-            textWidth = fontMetrics.stringWidth(text);
-        }
-
-        g.dispose();
         g2d.setFont(f);
         if (shadow != null) {
             shadow.setFont(f);
         }
     }
 
+    /**
+     * Returns the largest font derived from <code>font</code> by decreasing its
+     * size in {@link #FONT_SIZE_STEP} steps, that is narrow enough for
+     * <code>text</code> to fit in <code>widthLimit</code>.
+     * 
+     * The size is first estimated by scaling the measured text width to the
+     * limit, then refined with a bounded binary search. Results are cached per
+     * (font, text, width, surface class, font render context).
+     */
+    private static Font fitFontToWidth(Surface g2d, Font font, String text, double widthLimit) {
+        FontRenderContext renderContext = g2d.getFontRenderContext();
+        FittedFontKey key = new FittedFontKey(font, text, widthLimit, g2d.getClass(), renderContext);
+        Font result = FITTED_FONTS.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        float fontSize = font.getSize2D();
+        double textWidth = g2d.getFontMetrics(font).stringWidth(text);
+        if (textWidth <= widthLimit) {
+            result = font;
+        } else {
+            int maxSteps = Math.max((int) Math.floor(fontSize / FONT_SIZE_STEP), 1);
+            double estimatedSize = fontSize * widthLimit / textWidth;
+            int steps = (int) Math.ceil((fontSize - estimatedSize) / FONT_SIZE_STEP);
+            steps = Math.min(Math.max(steps, 1), maxSteps);
+
+            // Invariant: the text does not fit at 'low' steps and fits at 'high' steps,
+            // except that 'maxSteps' is never measured: it leaves the smallest size
+            // the search goes down to, which is returned even if the text still does
+            // not fit.
+            int low;
+            int high;
+            if (fitsInWidth(g2d, font, fontSize - steps * FONT_SIZE_STEP, text, widthLimit)) {
+                high = steps;
+                low = steps - 1;
+                if (low > 0 && fitsInWidth(g2d, font, fontSize - low * FONT_SIZE_STEP, text, widthLimit)) {
+                    high = low;
+                    low = 0;
+                }
+            } else {
+                low = steps;
+                high = Math.min(steps + 1, maxSteps);
+                if (high < maxSteps && !fitsInWidth(g2d, font, fontSize - high * FONT_SIZE_STEP, text, widthLimit)) {
+                    low = high;
+                    high = maxSteps;
+                }
+            }
+            while (high - low > 1) {
+                int middle = (low + high) >>> 1;
+                if (fitsInWidth(g2d, font, fontSize - middle * FONT_SIZE_STEP, text, widthLimit)) {
+                    high = middle;
+                } else {
+                    low = middle;
+                }
+            }
+            result = font.deriveFont(fontSize - high * FONT_SIZE_STEP);
+        }
+
+        FITTED_FONTS.put(key, result);
+        return result;
+    }
+
+    private static boolean fitsInWidth(Surface g2d, Font font, float fontSize, String text, double widthLimit) {
+        return g2d.getFontMetrics(font.deriveFont(fontSize)).stringWidth(text) <= widthLimit;
+    }
+
+    private static final class FittedFontKey {
+
+        private final Font font;
+        private final String text;
+        private final double widthLimit;
+        private final Class<?> surfaceClass;
+        private final FontRenderContext renderContext;
+
+        FittedFontKey(Font font, String text, double widthLimit, Class<?> surfaceClass, FontRenderContext renderContext) {
+            this.font = font;
+            this.text = text;
+            this.widthLimit = widthLimit;
+            this.surfaceClass = surfaceClass;
+            this.renderContext = renderContext;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FittedFontKey)) {
+                return false;
+            }
+            FittedFontKey other = (FittedFontKey) o;
+            return widthLimit == other.widthLimit
+                    && font.equals(other.font)
+                    && text.equals(other.text)
+                    && surfaceClass == other.surfaceClass
+                    && renderContext.equals(other.renderContext);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(widthLimit);
+            int hash = font.hashCode();
+            hash = 31 * hash + text.hashCode();
+            hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+            hash = 31 * hash + surfaceClass.hashCode();
+            return 31 * hash + renderContext.hashCode();
+        }
+    }
+
     public String calculateWidestLine(String[] textLines) {
         double maxWidth = 0.0;
         double textWidth;
@@ -676,11 +1276,18 @@ public class Context2D {
     }
     
     public String calculateWidestLine(String[] textLines, Font f) {
-        Font tmp = getFont();
-        setFont(f);
-        String result = calculateWidestLine(textLines);
-        setFont(tmp);
-        return result;
+        double maxWidth = 0.0;
+        double textWidth;
+        String widestLine = "";
+        FontMetrics fontMetrics = getCurrentSurface().getFontMetrics(f);
+        for (String line : textLines) {
+            textWidth = fontMetrics.stringWidth(line);
+            if (textWidth > maxWidth) {
+                maxWidth = textWidth;
+                widestLine = line;
+            }
+        }
+        return widestLine;
     }
 
     public int calculateStringWidth(String text) {
@@ -689,12 +1296,8 @@ public class Context2D {
     }
 
     public int calculateStringWidth(String text, Font f) {
-        Font tmp = getFont();
-        setFont(f);
-        FontMetrics fontMetrics = getFontMetrics();
-        int result = fontMetrics.stringWidth(text);
-        setFont(tmp);
-        return result;
+        FontMetrics fontMetrics = getCurrentSurface().getFontMetrics(f);
+        return fontMetrics.stringWidth(text);
     }
     
     public int getStandardLineHeight(){
@@ -704,43 +1307,126 @@ public class Context2D {
     }
     
     public int getStandardLineHeight(Font f){
-        Font tmp = getFont();
-        setFont(f);
-        FontMetrics fontMetrics = getFontMetrics();
-        int result = fontMetrics.getHeight();
-        setFont(tmp);
-        return result;
+        FontMetrics fontMetrics = getCurrentSurface().getFontMetrics(f);
+        return fontMetrics.getHeight();
     }
     
     public float getLineHeight(String line){
         if(line==null){return 0;}
         
-        FontMetrics fontMetrics = getFontMetrics();
-        Graphics2D g2d;
-        
-        if (buffer != null) {
-            g2d = buffer;
-        } else {
-            g2d = stack.peek();
-        }
-        float result = fontMetrics.getLineMetrics(line, g2d).getHeight();
+        Surface g2d = getCurrentSurface();
+        float result = g2d.getLineMetrics(line, g2d.getFont()).getHeight();
         return result;
     }
     
     public float getLineHeight(Font f, String line){
         if(line==null){return 0;}
-        Font tmp = getFont();
-        setFont(f);
-        FontMetrics fontMetrics = getFontMetrics();
-        Graphics2D g2d;
-        
+        float result = getCurrentSurface().getLineMetrics(line, f).getHeight();
+        return result;
+    }
+
+    /**
+     * Returns the current transformation from user space to the device
+     * space of the graphics object the context was created with, also while
+     * shadowed drawing is in progress.
+     */
+    public AffineTransform getTransform() {
         if (buffer != null) {
-            g2d = buffer;
-        } else {
-            g2d = stack.peek();
+            AffineTransform transform = AffineTransform.getTranslateInstance(deviceBounds.x, deviceBounds.y);
+            transform.concatenate(buffer.getTransform());
+            return transform;
         }
-        float result = fontMetrics.getLineMetrics(line, g2d).getHeight();
-        setFont(tmp);
-        return result;
+        return graphics.getTransform();
+    }
+
+    /**
+     * Returns the current transformation from user space to the space of the
+     * chart, whose origin is the top-left corner of the chart whatever the
+     * initial transformation of the graphics object the context was created
+     * with. Geometry kept in this space holds for any context the chart is
+     * drawn on.
+     *
+     * @return the transformation, or null if the initial transformation of
+     * the graphics object is not invertible
+     */
+    public AffineTransform getChartTransform() {
+        try {
+            AffineTransform transform = initialTransform.createInverse();
+            transform.concatenate(getTransform());
+            return transform;
+        } catch (NoninvertibleTransformException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the area, in device space, that drawing operations issued now
+     * may modify: the device bounds of the chart limited by the current clip
+     * and, while shadowed drawing is in progress, enlarged by the extent of
+     * the shadows. Anything whose device bounds do not intersect this area
+     * can be skipped without changing the result.
+     */
+    public Rectangle2D getVisibleArea() {
+        Surface g = getCurrentSurface();
+        AffineTransform transform = getTransform();
+        Rectangle2D area = new Rectangle2D.Double(deviceBounds.x, deviceBounds.y, deviceBounds.width, deviceBounds.height);
+        Shape clip = g.getClip();
+        if (clip != null) {
+            Rectangle2D.intersect(area, transform.createTransformedShape(clip).getBounds2D(), area);
+        }
+        if (shadow != null || shadowedDrawingNative) {
+            Point2D offset = transform.deltaTransform(new Point2D.Double(shadowXOffset, shadowYOffset), null);
+            double marginX = shadowBlurRadius + Math.abs(offset.getX()) + 1;
+            double marginY = shadowBlurRadius + Math.abs(offset.getY()) + 1;
+            area.setRect(area.getX() - marginX, area.getY() - marginY, area.getWidth() + 2 * marginX, area.getHeight() + 2 * marginY);
+        }
+        return area;
+    }
+
+    /**
+     * Returns a value that is equal for contexts that measure text alike:
+     * a layout computed on one of them, e.g. during a previous draw, holds
+     * for the others.
+     */
+    public Object getTextMeasurementKey() {
+        Surface g = getCurrentSurface();
+        return new MeasurementKey(g.getClass(), g.getFontRenderContext());
+    }
+
+    private static final class MeasurementKey {
+
+        private final Class<?> surfaceClass;
+        private final FontRenderContext renderContext;
+
+        MeasurementKey(Class<?> surfaceClass, FontRenderContext renderContext) {
+            this.surfaceClass = surfaceClass;
+            this.renderContext = renderContext;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MeasurementKey)) {
+                return false;
+            }
+            MeasurementKey other = (MeasurementKey) o;
+            return surfaceClass == other.surfaceClass && renderContext.equals(other.renderContext);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * surfaceClass.hashCode() + renderContext.hashCode();
+        }
+    }
+
+    /**
+     * Returns the surface drawing operations currently go to: the off-screen
+     * buffer while shadowed drawing is in progress, the target surface
+     * otherwise.
+     */
+    Surface getCurrentSurface() {
+        if (buffer != null) {
+            return buffer;
+        }
+        return graphics;
     }
 }
@@ -0,0 +1,275 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * Computes the exact anti-aliased coverage of the pixels of a shape, in pure
+ * Java.
+ *
+ * The shape is flattened into edges; each edge adds, to every pixel it
+ * crosses, the signed area it covers within the pixel and, to the pixel
+ * after it, the remaining height it covers in that row. Summing a row from
+ * left to right then yields the winding number weighted by the covered area
+ * of each pixel, from which the coverage follows for the winding rule of the
+ * shape.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+final class CoverageRasterizer {
+
+    private static final double FLATNESS = 0.25;
+    private double[] edges;
+    private int edgeCount;
+    private int windingRule;
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+    private float[] accumulation;
+    private int stride;
+
+    CoverageRasterizer() {
+        edges = new double[256];
+        accumulation = new float[0];
+    }
+
+    /**
+     * Sets the shape to rasterize, transformed to device space by
+     * <code>transform</code>.
+     */
+    void setShape(Shape shape, AffineTransform transform) {
+        edgeCount = 0;
+        minX = Double.POSITIVE_INFINITY;
+        minY = Double.POSITIVE_INFINITY;
+        maxX = Double.NEGATIVE_INFINITY;
+        maxY = Double.NEGATIVE_INFINITY;
+        PathIterator iterator = shape.getPathIterator(transform, FLATNESS);
+        windingRule = iterator.getWindingRule();
+        double[] coords = new double[6];
+        double startX = 0;
+        double startY = 0;
+        double lastX = 0;
+        double lastY = 0;
+        while (!iterator.isDone()) {
+            switch (iterator.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    // Filling closes open subpaths:
+                    addEdge(lastX, lastY, startX, startY);
+                    startX = coords[0];
+                    startY = coords[1];
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+                case PathIterator.SEG_LINETO:
+                    addEdge(lastX, lastY, coords[0], coords[1]);
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    addEdge(lastX, lastY, startX, startY);
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+            }
+            iterator.next();
+        }
+        addEdge(lastX, lastY, startX, startY);
+    }
+
+    private void addEdge(double x0, double y0, double x1, double y1) {
+        if (Double.isNaN(x0) || Double.isNaN(y0) || Double.isNaN(x1) || Double.isNaN(y1)) {
+            return;
+        }
+        minX = Math.min(minX, Math.min(x0, x1));
+        minY = Math.min(minY, Math.min(y0, y1));
+        maxX = Math.max(maxX, Math.max(x0, x1));
+        maxY = Math.max(maxY, Math.max(y0, y1));
+        if (y0 == y1) {
+            // Horizontal edges cover nothing.
+            return;
+        }
+        if (edgeCount + 4 > edges.length) {
+            edges = Arrays.copyOf(edges, 2 * edges.length);
+        }
+        edges[edgeCount++] = x0;
+        edges[edgeCount++] = y0;
+        edges[edgeCount++] = x1;
+        edges[edgeCount++] = y1;
+    }
+
+    /**
+     * Returns the pixels the shape may cover within <code>clip</code>.
+     */
+    Rectangle getBounds(Rectangle clip) {
+        if (edgeCount == 0) {
+            return new Rectangle();
+        }
+        double x0 = Math.max(Math.floor(minX), clip.x);
+        double y0 = Math.max(Math.floor(minY), clip.y);
+        double x1 = Math.min(Math.ceil(maxX), clip.x + clip.width);
+        double y1 = Math.min(Math.ceil(maxY), clip.y + clip.height);
+        if (x0 >= x1 || y0 >= y1) {
+            return new Rectangle();
+        }
+        return new Rectangle((int) x0, (int) y0, (int) (x1 - x0), (int) (y1 - y0));
+    }
+
+    /**
+     * Computes the coverage of the pixels of <code>area</code>, which can
+     * then be read with {@link #getRow(int, int, float[])}.
+     */
+    void rasterize(Rectangle area) {
+        stride = area.width + 2;
+        int size = stride * area.height;
+        if (accumulation.length < size) {
+            accumulation = new float[size];
+        } else {
+            Arrays.fill(accumulation, 0, size, 0f);
+        }
+        for (int i = 0; i < edgeCount; i += 4) {
+            addLine(edges[i] - area.x, edges[i + 1] - area.y, edges[i + 2] - area.x, edges[i + 3] - area.y,
+                    area.width, area.height);
+        }
+    }
+
+    /**
+     * Stores the coverage of the first <code>width</code> pixels of
+     * <code>row</code> of the rasterized area in <code>coverage</code>.
+     */
+    void getRow(int row, int width, float[] coverage) {
+        int index = row * stride;
+        double sum = 0;
+        for (int x = 0; x < width; x++) {
+            sum += accumulation[index + x];
+            double winding = Math.abs(sum);
+            if (windingRule == PathIterator.WIND_EVEN_ODD) {
+                winding %= 2;
+                if (winding > 1) {
+                    winding = 2 - winding;
+                }
+            } else if (winding > 1) {
+                winding = 1;
+            }
+            coverage[x] = (float) winding;
+        }
+    }
+
+    /**
+     * Adds a line, in the coordinates of the area, splitting it where it
+     * leaves the area horizontally: the parts on either side are moved to the
+     * left or right border, where they still contribute to the winding of the
+     * pixels on their right.
+     */
+    private void addLine(double x0, double y0, double x1, double y1, int width, int height) {
+        double dx = x1 - x0;
+        double t0 = 0;
+        double tLeft = dx != 0 ? -x0 / dx : -1;
+        double tRight = dx != 0 ? (width - x0) / dx : -1;
+        double first = Math.min(tLeft, tRight);
+        double second = Math.max(tLeft, tRight);
+        for (double t : new double[]{first, second, 1}) {
+            if (t <= t0 || t > 1) {
+                continue;
+            }
+            double xa = clamp(x0 + t0 * dx, width);
+            double ya = y0 + t0 * (y1 - y0);
+            double xb = clamp(x0 + t * dx, width);
+            double yb = y0 + t * (y1 - y0);
+            accumulate(xa, ya, xb, yb, height);
+            t0 = t;
+        }
+    }
+
+    private static double clamp(double x, int width) {
+        return Math.min(Math.max(x, 0), width);
+    }
+
+    private void accumulate(double x0, double y0, double x1, double y1, int height) {
+        if (y0 == y1) {
+            return;
+        }
+        double direction = 1;
+        if (y0 > y1) {
+            direction = -1;
+            double t = x0;
+            x0 = x1;
+            x1 = t;
+            t = y0;
+            y0 = y1;
+            y1 = t;
+        }
+        double top = Math.max(y0, 0);
+        double bottom = Math.min(y1, height);
+        if (top >= bottom) {
+            return;
+        }
+        double dxdy = (x1 - x0) / (y1 - y0);
+        double x = x0 + (top - y0) * dxdy;
+        float[] a = accumulation;
+        for (int y = (int) top; y < bottom; y++) {
+            int lineStart = y * stride;
+            double dy = Math.min(y + 1, bottom) - Math.max(y, top);
+            double xNext = x + dxdy * dy;
+            double d = dy * direction;
+            double left = Math.max(Math.min(x, xNext), 0);
+            double right = Math.max(Math.max(x, xNext), left);
+            double leftFloor = Math.floor(left);
+            int leftIndex = (int) leftFloor;
+            double rightCeil = Math.ceil(right);
+            int rightIndex = (int) rightCeil;
+            if (rightIndex <= leftIndex + 1) {
+                // Within a single pixel: split by the mean x.
+                double middle = 0.5 * (x + xNext) - leftFloor;
+                a[lineStart + leftIndex] += d - d * middle;
+                a[lineStart + leftIndex + 1] += d * middle;
+            } else {
+                double s = 1 / (right - left);
+                double leftFraction = left - leftFloor;
+                double firstArea = 0.5 * s * (1 - leftFraction) * (1 - leftFraction);
+                double rightFraction = right - rightCeil + 1;
+                double lastArea = 0.5 * s * rightFraction * rightFraction;
+                a[lineStart + leftIndex] += d * firstArea;
+                if (rightIndex == leftIndex + 2) {
+                    a[lineStart + leftIndex + 1] += d * (1 - firstArea - lastArea);
+                } else {
+                    double secondArea = s * (1.5 - leftFraction);
+                    a[lineStart + leftIndex + 1] += d * (secondArea - firstArea);
+                    for (int i = leftIndex + 2; i < rightIndex - 1; i++) {
+                        a[lineStart + i] += d * s;
+                    }
+                    double beforeLastArea = secondArea + (rightIndex - leftIndex - 3) * s;
+                    a[lineStart + rightIndex - 1] += d * (1 - beforeLastArea - lastArea);
+                }
+                a[lineStart + rightIndex] += d * lastArea;
+            }
+            x = xNext;
+        }
+    }
+}
@@ -0,0 +1,623 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Sequence of {@link Context2D} operations recorded by a
+ * {@link RecordingContext2D}.
+ *
+ * A display list holds the outcome of a chart's layout: text has already been
+ * fitted, aligned and formatted, so replaying it onto a {@link Graphics2D}
+ * only performs the actual drawing.
+ *
+ * Operations are stored as opcodes in a byte array, with their numeric
+ * arguments in a double array and their object arguments (shapes, paints,
+ * fonts etc.) in an object array. Shapes and paints are kept by reference and
+ * must not be modified after they have been passed to the context.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class DisplayList {
+
+    static final byte SAVE = 1;
+    static final byte RESTORE = 2;
+    static final byte RESET = 3;
+    static final byte TRANSLATE = 4;
+    static final byte ROTATE = 5;
+    static final byte ROTATE_AROUND = 6;
+    static final byte SCALE = 7;
+    static final byte TRANSFORM = 8;
+    static final byte SET_CLIP = 9;
+    static final byte SET_ORIGINAL_CLIP = 10;
+    static final byte RESET_CLIP = 11;
+    static final byte CLEAR_CLIP = 12;
+    static final byte SET_FONT = 13;
+    static final byte SET_PAINT = 14;
+    static final byte SET_STROKE = 15;
+    static final byte SET_COMPOSITE = 16;
+    static final byte DRAW = 17;
+    static final byte FILL = 18;
+    static final byte DRAW_STRING = 19;
+    static final byte DRAW_CURRENT_CLIP = 20;
+    static final byte BEGIN_SHADOWED_DRAWING = 21;
+    static final byte END_SHADOWED_DRAWING = 22;
+    static final byte SET_SHADOW_COLOR = 23;
+    static final byte SET_SHADOW_BLUR_RADIUS = 24;
+    static final byte SET_SHADOW_X_OFFSET = 25;
+    static final byte SET_SHADOW_Y_OFFSET = 26;
+    static final byte SET_LAYER = 27;
+    static final byte DRAW_IMAGE = 28;
+    /**
+     * Number of numeric and object arguments of each operation, indexed by
+     * opcode.
+     */
+    private static final int[] NUMBER_ARGUMENTS = {0, 0, 0, 0, 2, 1, 3, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2, 0, 0, 0, 0, 1, 1, 1, 0, 2};
+    private static final int[] OBJECT_ARGUMENTS = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 0, 0, 1, 1, 1, 1, 1, 1, 2, 1, 0, 0, 1, 0, 0, 0, 1, 1};
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int width;
+    private final int height;
+    private byte[] operations;
+    private int operationCount;
+    private double[] numbers;
+    private int numberCount;
+    private Object[] objects;
+    private int objectCount;
+
+    public DisplayList(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.operations = new byte[INITIAL_CAPACITY];
+        this.numbers = new double[INITIAL_CAPACITY];
+        this.objects = new Object[INITIAL_CAPACITY];
+        this.operationCount = 0;
+        this.numberCount = 0;
+        this.objectCount = 0;
+    }
+
+    /**
+     * Returns the width of the area the operations were recorded for.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the area the operations were recorded for.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of recorded operations.
+     */
+    public int size() {
+        return operationCount;
+    }
+
+    void add(byte operation) {
+        if (operationCount == operations.length) {
+            operations = Arrays.copyOf(operations, operationCount * 2);
+        }
+        operations[operationCount++] = operation;
+    }
+
+    void add(byte operation, double number) {
+        add(operation);
+        addNumber(number);
+    }
+
+    void add(byte operation, double number1, double number2) {
+        add(operation);
+        addNumber(number1);
+        addNumber(number2);
+    }
+
+    void add(byte operation, Object object) {
+        add(operation);
+        addObject(object);
+    }
+
+    private void addNumber(double number) {
+        if (numberCount == numbers.length) {
+            numbers = Arrays.copyOf(numbers, numberCount * 2);
+        }
+        numbers[numberCount++] = number;
+    }
+
+    void addObject(Object object) {
+        if (objectCount == objects.length) {
+            objects = Arrays.copyOf(objects, objectCount * 2);
+        }
+        objects[objectCount++] = object;
+    }
+
+    void addDrawString(String text, Font font, float x, float y) {
+        add(DRAW_STRING, x, y);
+        addObject(text);
+        addObject(font);
+    }
+
+    void addDrawImage(Image image, double x, double y) {
+        add(DRAW_IMAGE, x, y);
+        addObject(image);
+    }
+
+    void addRotate(double theta, double x, double y) {
+        add(ROTATE_AROUND, theta, x);
+        addNumber(y);
+    }
+
+    /**
+     * Draws the recorded operations on <code>g</code> at the size they were
+     * recorded for.
+     *
+     * @param g the graphics object to draw on
+     */
+    public void replay(Graphics g) {
+        replay(g, width, height);
+    }
+
+    /**
+     * Draws the recorded operations on <code>g</code>, scaled to fit in
+     * <code>targetWidth</code> x <code>targetHeight</code>.
+     *
+     * @param g the graphics object to draw on
+     * @param targetWidth the width of the area to draw on
+     * @param targetHeight the height of the area to draw on
+     */
+    public void replay(Graphics g, int targetWidth, int targetHeight) {
+        replay(g, targetWidth, targetHeight, EnumSet.allOf(Context2D.Layer.class));
+    }
+
+    /**
+     * Draws the operations of the given layers on <code>g</code>, scaled to
+     * fit in <code>targetWidth</code> x <code>targetHeight</code>.
+     *
+     * @param g the graphics object to draw on
+     * @param targetWidth the width of the area to draw on
+     * @param targetHeight the height of the area to draw on
+     * @param layers the layers to draw
+     */
+    public void replay(Graphics g, int targetWidth, int targetHeight, Set<Context2D.Layer> layers) {
+        Graphics2D g2d = (Graphics2D) g.create();
+        if (targetWidth != width || targetHeight != height) {
+            g2d.scale(targetWidth / (double) width, targetHeight / (double) height);
+        }
+        Context2D context = new Context2D(g2d, width, height);
+        context.setVisibleLayers(layers);
+        replay(context);
+        g2d.dispose();
+    }
+
+    /**
+     * Executes the recorded operations on <code>context</code>.
+     *
+     * @param context the context to draw on
+     */
+    public void replay(Context2D context) {
+        int n = 0;
+        int o = 0;
+        for (int i = 0; i < operationCount; i++) {
+            switch (operations[i]) {
+                case SAVE:
+                    context.saveState();
+                    break;
+                case RESTORE:
+                    context.restoreState();
+                    break;
+                case RESET:
+                    context.resetState();
+                    break;
+                case TRANSLATE:
+                    context.translate(numbers[n], numbers[n + 1]);
+                    n += 2;
+                    break;
+                case ROTATE:
+                    context.rotate(numbers[n++]);
+                    break;
+                case ROTATE_AROUND:
+                    context.rotate(numbers[n], numbers[n + 1], numbers[n + 2]);
+                    n += 3;
+                    break;
+                case SCALE:
+                    context.scale(numbers[n], numbers[n + 1]);
+                    n += 2;
+                    break;
+                case TRANSFORM:
+                    context.transform((AffineTransform) objects[o++]);
+                    break;
+                case SET_CLIP:
+                    context.setClip((Shape) objects[o++]);
+                    break;
+                case SET_ORIGINAL_CLIP:
+                    context.setOriginalClip((Shape) objects[o++]);
+                    break;
+                case RESET_CLIP:
+                    context.resetClip();
+                    break;
+                case CLEAR_CLIP:
+                    context.clearClip();
+                    break;
+                case SET_FONT:
+                    context.setFont((Font) objects[o++]);
+                    break;
+                case SET_PAINT:
+                    context.setPaint((Paint) objects[o++]);
+                    break;
+                case SET_STROKE:
+                    context.setStroke((Stroke) objects[o++]);
+                    break;
+                case SET_COMPOSITE:
+                    context.setComposite((Composite) objects[o++]);
+                    break;
+                case DRAW:
+                    context.draw((Shape) objects[o++]);
+                    break;
+                case FILL:
+                    context.fill((Shape) objects[o++]);
+                    break;
+                case DRAW_STRING:
+                    context.drawString((String) objects[o], (Font) objects[o + 1], (float) numbers[n], (float) numbers[n + 1]);
+                    n += 2;
+                    o += 2;
+                    break;
+                case DRAW_CURRENT_CLIP:
+                    context.drawCurrentClip((Paint) objects[o++]);
+                    break;
+                case BEGIN_SHADOWED_DRAWING:
+                    context.beginShadowedDrawing();
+                    break;
+                case END_SHADOWED_DRAWING:
+                    context.endShadowedDrawing();
+                    break;
+                case SET_SHADOW_COLOR:
+                    context.setShadowColor((Paint) objects[o++]);
+                    break;
+                case SET_SHADOW_BLUR_RADIUS:
+                    context.setShadowBlurRadius((int) numbers[n++]);
+                    break;
+                case SET_SHADOW_X_OFFSET:
+                    context.setShadowXOffset(numbers[n++]);
+                    break;
+                case SET_SHADOW_Y_OFFSET:
+                    context.setShadowYOffset(numbers[n++]);
+                    break;
+                case SET_LAYER:
+                    context.setLayer((Context2D.Layer) objects[o++]);
+                    break;
+                case DRAW_IMAGE:
+                    context.drawImage((Image) objects[o++], numbers[n], numbers[n + 1]);
+                    n += 2;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown display list operation: " + operations[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns true if drawing only the given layers of this list and of
+     * <code>other</code> produces the same output, i.e. if both lists issue
+     * the same operations up to the last drawing operation on these layers.
+     * Arguments of drawing operations on other layers are not compared.
+     *
+     * @param other the list to compare with
+     * @param layers the layers to compare
+     * @return true if the layers are drawn identically by both lists
+     */
+    public boolean hasSameContent(DisplayList other, Set<Context2D.Layer> layers) {
+        if (other == null || width != other.width || height != other.height) {
+            return false;
+        }
+        int last = lastDrawingOperation(layers);
+        if (last != other.lastDrawingOperation(layers)) {
+            return false;
+        }
+        Context2D.Layer layer = Context2D.Layer.BACKGROUND;
+        int n = 0;
+        int o = 0;
+        for (int i = 0; i <= last; i++) {
+            byte operation = operations[i];
+            if (operation != other.operations[i]) {
+                return false;
+            }
+            int numberArguments = NUMBER_ARGUMENTS[operation];
+            int objectArguments = OBJECT_ARGUMENTS[operation];
+            if (operation == SET_LAYER) {
+                layer = (Context2D.Layer) objects[o];
+            }
+            if (!isDrawingOperation(operation) || layers.contains(layer)) {
+                for (int j = 0; j < numberArguments; j++) {
+                    if (Double.compare(numbers[n + j], other.numbers[n + j]) != 0) {
+                        return false;
+                    }
+                }
+                for (int j = 0; j < objectArguments; j++) {
+                    if (!isSameArgument(objects[o + j], other.objects[o + j])) {
+                        return false;
+                    }
+                }
+            }
+            n += numberArguments;
+            o += objectArguments;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the area, in device space at the recorded size, in which the
+     * output of this list differs from the output of <code>previous</code>.
+     * The area is empty if both lists draw the same.
+     *
+     * The lists are compared operation by operation; the area covers the
+     * drawing operations whose arguments differ, at their position in both
+     * lists, along with their shadows. If the lists differ in any other way,
+     * e.g. in their transformations, paints or number of operations, the
+     * whole area of the list is returned.
+     *
+     * @param previous the list to compare with
+     * @return the area that must be redrawn
+     */
+    public Rectangle getChangedArea(DisplayList previous) {
+        Rectangle all = new Rectangle(0, 0, width, height);
+        if (previous == null || width != previous.width || height != previous.height
+                || operationCount != previous.operationCount
+                || numberCount != previous.numberCount
+                || objectCount != previous.objectCount) {
+            return all;
+        }
+        boolean[] changed = new boolean[operationCount];
+        boolean anyChanged = false;
+        int drawingOperations = 0;
+        int n = 0;
+        int o = 0;
+        for (int i = 0; i < operationCount; i++) {
+            byte operation = operations[i];
+            if (operation != previous.operations[i]) {
+                return all;
+            }
+            int numberArguments = NUMBER_ARGUMENTS[operation];
+            int objectArguments = OBJECT_ARGUMENTS[operation];
+            boolean same = true;
+            for (int j = 0; j < numberArguments && same; j++) {
+                same = Double.compare(numbers[n + j], previous.numbers[n + j]) == 0;
+            }
+            for (int j = 0; j < objectArguments && same; j++) {
+                same = isSameArgument(objects[o + j], previous.objects[o + j]);
+            }
+            if (isMeasurable(operation)) {
+                changed[drawingOperations++] = !same;
+                anyChanged |= !same;
+            } else if (!same) {
+                return all;
+            }
+            n += numberArguments;
+            o += objectArguments;
+        }
+        if (!anyChanged) {
+            return new Rectangle();
+        }
+        Rectangle2D bounds = measure(changed);
+        bounds.add(previous.measure(changed));
+        return bounds.getBounds().intersection(all);
+    }
+
+    private Rectangle2D measure(boolean[] drawingOperations) {
+        MeasuringContext2D context = new MeasuringContext2D(width, height, drawingOperations);
+        replay(context);
+        Rectangle2D bounds = context.getBounds();
+        return bounds == null ? new Rectangle2D.Double() : bounds;
+    }
+
+    private static boolean isMeasurable(byte operation) {
+        return operation != BEGIN_SHADOWED_DRAWING && operation != END_SHADOWED_DRAWING && isDrawingOperation(operation);
+    }
+
+    /**
+     * Returns the distance, in pixels, up to which drawing at a point may
+     * affect the output of the list at another point through shadows. This
+     * is the blur radius plus the offset of the largest shadow drawn, as
+     * recorded; charts are not scaled while they are drawn.
+     */
+    public int getShadowMargin() {
+        // Defaults of Context2D:
+        double blurRadius = 5;
+        double xOffset = 3;
+        double yOffset = 0;
+        double margin = 0;
+        int n = 0;
+        for (int i = 0; i < operationCount; i++) {
+            switch (operations[i]) {
+                case SET_SHADOW_BLUR_RADIUS:
+                    blurRadius = numbers[n];
+                    break;
+                case SET_SHADOW_X_OFFSET:
+                    xOffset = numbers[n];
+                    break;
+                case SET_SHADOW_Y_OFFSET:
+                    yOffset = numbers[n];
+                    break;
+                case BEGIN_SHADOWED_DRAWING:
+                    margin = Math.max(margin, blurRadius + Math.abs(xOffset) + Math.abs(yOffset));
+                    break;
+                default:
+                    break;
+            }
+            n += NUMBER_ARGUMENTS[operations[i]];
+        }
+        return margin == 0 ? 0 : (int) Math.ceil(margin) + 1;
+    }
+
+    /**
+     * Renders the part of the output of this list that falls in
+     * <code>area</code>, in device space at the recorded size. The pixels of
+     * the returned image are identical to the corresponding pixels of a full
+     * replay: the list is replayed on the area enlarged by
+     * {@link #getShadowMargin()}, so that shadows cast across its borders are
+     * included.
+     *
+     * @param area the area to render
+     * @return an image of the size of <code>area</code>
+     */
+    public BufferedImage renderArea(Rectangle area) {
+        int margin = getShadowMargin();
+        Rectangle enlarged = new Rectangle(area.x - margin, area.y - margin, area.width + 2 * margin, area.height + 2 * margin);
+        enlarged = enlarged.intersection(new Rectangle(0, 0, width, height));
+        if (enlarged.isEmpty()) {
+            return new BufferedImage(Math.max(area.width, 1), Math.max(area.height, 1), BufferedImage.TYPE_INT_ARGB);
+        }
+        BufferedImage image = new BufferedImage(enlarged.width, enlarged.height, BufferedImage.TYPE_INT_ARGB);
+        replay(image, enlarged);
+        if (enlarged.equals(area)) {
+            return image;
+        }
+        BufferedImage result = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = result.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(image, enlarged.x - area.x, enlarged.y - area.y, null);
+        g2d.dispose();
+        return result;
+    }
+
+    /**
+     * Draws the part of the output of this list that falls in
+     * <code>area</code>, in device space at the recorded size, on
+     * <code>image</code>, with the top-left corner of the area at the origin
+     * of the image. Only the pixels of the image inside the size of the area
+     * are modified, so a large image can be reused for smaller areas.
+     *
+     * Shadows cast from outside the area are not drawn; pixels closer than
+     * {@link #getShadowMargin()} to the borders of the area may therefore
+     * differ from the ones of a full replay, unless the borders are the ones
+     * of the whole list.
+     *
+     * @param image the image to draw on
+     * @param area the area to draw
+     */
+    public void replay(BufferedImage image, Rectangle area) {
+        Graphics2D g2d = image.createGraphics();
+        g2d.clipRect(0, 0, area.width, area.height);
+        g2d.translate(-area.x, -area.y);
+        replay(new Context2D(g2d, width, height));
+        g2d.dispose();
+    }
+
+    private int lastDrawingOperation(Set<Context2D.Layer> layers) {
+        Context2D.Layer layer = Context2D.Layer.BACKGROUND;
+        int last = -1;
+        int o = 0;
+        for (int i = 0; i < operationCount; i++) {
+            byte operation = operations[i];
+            if (operation == SET_LAYER) {
+                layer = (Context2D.Layer) objects[o];
+            } else if (isDrawingOperation(operation) && layers.contains(layer)) {
+                last = i;
+            }
+            o += OBJECT_ARGUMENTS[operation];
+        }
+        return last;
+    }
+
+    private static boolean isDrawingOperation(byte operation) {
+        switch (operation) {
+            case DRAW:
+            case FILL:
+            case DRAW_STRING:
+            case DRAW_CURRENT_CLIP:
+            case DRAW_IMAGE:
+            case BEGIN_SHADOWED_DRAWING:
+            case END_SHADOWED_DRAWING:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Compares two recorded arguments by value. Shapes and gradients, whose
+     * classes mostly do not implement equals(), are compared by their
+     * geometry and colors.
+     */
+    private static boolean isSameArgument(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a.equals(b)) {
+            return true;
+        }
+        if (a instanceof GradientPaint && b instanceof GradientPaint) {
+            GradientPaint p1 = (GradientPaint) a;
+            GradientPaint p2 = (GradientPaint) b;
+            return p1.getPoint1().equals(p2.getPoint1())
+                    && p1.getPoint2().equals(p2.getPoint2())
+                    && p1.getColor1().equals(p2.getColor1())
+                    && p1.getColor2().equals(p2.getColor2())
+                    && p1.isCyclic() == p2.isCyclic();
+        }
+        if (a instanceof Shape && b instanceof Shape) {
+            return isSameShape((Shape) a, (Shape) b);
+        }
+        return false;
+    }
+
+    private static boolean isSameShape(Shape a, Shape b) {
+        PathIterator i1 = a.getPathIterator(null);
+        PathIterator i2 = b.getPathIterator(null);
+        if (i1.getWindingRule() != i2.getWindingRule()) {
+            return false;
+        }
+        double[] c1 = new double[6];
+        double[] c2 = new double[6];
+        while (!i1.isDone() && !i2.isDone()) {
+            int type = i1.currentSegment(c1);
+            if (type != i2.currentSegment(c2)) {
+                return false;
+            }
+            int coordinates = type == PathIterator.SEG_CUBICTO ? 6 : type == PathIterator.SEG_QUADTO ? 4 : type == PathIterator.SEG_CLOSE ? 0 : 2;
+            for (int j = 0; j < coordinates; j++) {
+                if (Double.compare(c1[j], c2[j]) != 0) {
+                    return false;
+                }
+            }
+            i1.next();
+            i2.next();
+        }
+        return i1.isDone() && i2.isDone();
+    }
+}
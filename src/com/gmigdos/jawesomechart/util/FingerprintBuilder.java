@@ -0,0 +1,338 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Paint;
+import java.awt.Stroke;
+import java.awt.geom.Point2D;
+
+/**
+ * Builds a {@link Fingerprint} from a sequence of values.
+ *
+ * Values are hashed with a type tag, and strings and arrays with their
+ * length, so that different sequences of values do not run together into
+ * the same bytes. Values of types whose content cannot be hashed, e.g.
+ * custom paints, make the fingerprint unstable: {@link #build()} then
+ * returns null, since equal objects could not be told apart from different
+ * ones.
+ *
+ * The values are hashed as they are added, with the 128-bit variant of
+ * MurmurHash3 for 64-bit platforms, so the builder holds no more than a
+ * block of 16 bytes. The hash is not cryptographic: it tells apart charts
+ * that differ by accident, not ones crafted to collide.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class FingerprintBuilder {
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_BOOLEAN = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_COLOR = 6;
+    private static final byte TAG_GRADIENT = 7;
+    private static final byte TAG_FONT = 8;
+    private static final byte TAG_STROKE = 9;
+    private static final byte TAG_FINGERPRINTABLE = 10;
+    private static final byte TAG_FINGERPRINT = 11;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private long h1;
+    private long h2;
+    private long k1;
+    private long k2;
+    private int blockLength;
+    private long length;
+    private boolean stable;
+
+    public FingerprintBuilder() {
+        this.stable = true;
+    }
+
+    /**
+     * Returns the fingerprint of the values added so far, or null if one of
+     * them could not be hashed.
+     */
+    public Fingerprint build() {
+        if (!stable) {
+            return null;
+        }
+        long a = h1;
+        long b = h2;
+        if (blockLength > 8) {
+            long k = k2 * C2;
+            k = Long.rotateLeft(k, 33);
+            k *= C1;
+            b ^= k;
+        }
+        if (blockLength > 0) {
+            long k = k1 * C1;
+            k = Long.rotateLeft(k, 31);
+            k *= C2;
+            a ^= k;
+        }
+        a ^= length;
+        b ^= length;
+        a += b;
+        b += a;
+        a = mix(a);
+        b = mix(b);
+        a += b;
+        b += a;
+        return new Fingerprint(a, b);
+    }
+
+    /**
+     * Returns false if a value that could not be hashed was added.
+     */
+    public boolean isStable() {
+        return stable;
+    }
+
+    /**
+     * Marks the fingerprint as unstable, e.g. for a value of unknown type.
+     */
+    public void addUnknown() {
+        stable = false;
+    }
+
+    public void add(boolean value) {
+        update(TAG_BOOLEAN);
+        update((byte) (value ? 1 : 0));
+    }
+
+    public void add(int value) {
+        update(TAG_INT);
+        updateInt(value);
+    }
+
+    public void add(long value) {
+        update(TAG_LONG);
+        updateLong(value);
+    }
+
+    public void add(double value) {
+        update(TAG_DOUBLE);
+        updateLong(Double.doubleToLongBits(value));
+    }
+
+    public void add(String value) {
+        if (value == null) {
+            update(TAG_NULL);
+            return;
+        }
+        update(TAG_STRING);
+        updateInt(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            update((byte) (c >>> 8));
+            update((byte) c);
+        }
+    }
+
+    /**
+     * Adds a paint: colors and gradients are hashed, other paints make the
+     * fingerprint unstable.
+     */
+    public void add(Paint paint) {
+        if (paint == null) {
+            update(TAG_NULL);
+        } else if (paint instanceof Color) {
+            update(TAG_COLOR);
+            updateInt(((Color) paint).getRGB());
+        } else if (paint instanceof GradientPaint) {
+            GradientPaint gradient = (GradientPaint) paint;
+            update(TAG_GRADIENT);
+            addPoint(gradient.getPoint1());
+            addPoint(gradient.getPoint2());
+            updateInt(gradient.getColor1().getRGB());
+            updateInt(gradient.getColor2().getRGB());
+            update((byte) (gradient.isCyclic() ? 1 : 0));
+        } else {
+            addUnknown();
+        }
+    }
+
+    private void addPoint(Point2D point) {
+        updateLong(Double.doubleToLongBits(point.getX()));
+        updateLong(Double.doubleToLongBits(point.getY()));
+    }
+
+    public void add(Font font) {
+        if (font == null) {
+            update(TAG_NULL);
+            return;
+        }
+        update(TAG_FONT);
+        add(font.getName());
+        updateInt(font.getStyle());
+        updateLong(Double.doubleToLongBits(font.getSize2D()));
+        if (font.isTransformed()) {
+            double[] matrix = new double[6];
+            font.getTransform().getMatrix(matrix);
+            for (double m : matrix) {
+                updateLong(Double.doubleToLongBits(m));
+            }
+        }
+    }
+
+    /**
+     * Adds a stroke: basic strokes are hashed, other strokes make the
+     * fingerprint unstable.
+     */
+    public void add(Stroke stroke) {
+        if (stroke == null) {
+            update(TAG_NULL);
+        } else if (stroke instanceof BasicStroke) {
+            BasicStroke basicStroke = (BasicStroke) stroke;
+            update(TAG_STROKE);
+            updateInt(Float.floatToIntBits(basicStroke.getLineWidth()));
+            updateInt(basicStroke.getEndCap());
+            updateInt(basicStroke.getLineJoin());
+            updateInt(Float.floatToIntBits(basicStroke.getMiterLimit()));
+            float[] dashes = basicStroke.getDashArray();
+            updateInt(dashes == null ? -1 : dashes.length);
+            if (dashes != null) {
+                for (float dash : dashes) {
+                    updateInt(Float.floatToIntBits(dash));
+                }
+                updateInt(Float.floatToIntBits(basicStroke.getDashPhase()));
+            }
+        } else {
+            addUnknown();
+        }
+    }
+
+    /**
+     * Adds a fingerprint, e.g. the one of a part of the object computed
+     * earlier.
+     */
+    public void add(Fingerprint fingerprint) {
+        if (fingerprint == null) {
+            update(TAG_NULL);
+            return;
+        }
+        update(TAG_FINGERPRINT);
+        updateLong(fingerprint.getHigh());
+        updateLong(fingerprint.getLow());
+    }
+
+    /**
+     * Adds an object with its class, which makes the fingerprint unstable
+     * if it is not {@link Fingerprintable}.
+     */
+    public void addObject(Object object) {
+        if (object == null) {
+            update(TAG_NULL);
+        } else if (object instanceof Fingerprintable) {
+            update(TAG_FINGERPRINTABLE);
+            add(object.getClass().getName());
+            ((Fingerprintable) object).addFingerprint(this);
+        } else {
+            addUnknown();
+        }
+    }
+
+    private void updateInt(int value) {
+        update((byte) (value >>> 24));
+        update((byte) (value >>> 16));
+        update((byte) (value >>> 8));
+        update((byte) value);
+    }
+
+    private void updateLong(long value) {
+        // The bytes of the value, in the little-endian order of the blocks:
+        long bytes = Long.reverseBytes(value);
+        int shift = 8 * (blockLength & 7);
+        length += 8;
+        if (blockLength < 8) {
+            if (shift == 0) {
+                k1 = bytes;
+            } else {
+                k1 |= bytes << shift;
+                k2 = bytes >>> (64 - shift);
+            }
+            blockLength += 8;
+        } else {
+            k2 |= bytes << shift;
+            int remaining = blockLength - 8;
+            mixBlock();
+            if (remaining > 0) {
+                k1 = bytes >>> (64 - shift);
+                blockLength = remaining;
+            }
+        }
+    }
+
+    private void update(byte value) {
+        long b = value & 0xffL;
+        if (blockLength < 8) {
+            k1 |= b << (8 * blockLength);
+            blockLength++;
+            length++;
+        } else {
+            k2 |= b << (8 * (blockLength - 8));
+            blockLength++;
+            length++;
+            if (blockLength == 16) {
+                mixBlock();
+            }
+        }
+    }
+
+    private void mixBlock() {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        h1 ^= k1;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        h2 ^= k2;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+        k1 = 0;
+        k2 = 0;
+        blockLength = 0;
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
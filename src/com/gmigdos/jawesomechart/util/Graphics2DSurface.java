@@ -0,0 +1,313 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+
+/**
+ * A {@link Surface} drawing through a {@link Graphics2D}, optionally knowing
+ * the image the graphics draws on.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class Graphics2DSurface implements Surface, ShadowBuffers {
+
+    private Graphics2D graphics;
+    private BufferedImage image;
+    private boolean scratch;
+
+    /**
+     * Creates a surface drawing through <code>graphics</code>, which is used
+     * as is, not copied.
+     */
+    public Graphics2DSurface(Graphics2D graphics) {
+        this(graphics, null);
+    }
+
+    /**
+     * Creates a surface drawing on <code>image</code>. Knowing the image
+     * allows some operations of {@link Context2D} to write to its pixels
+     * directly.
+     */
+    public Graphics2DSurface(BufferedImage image) {
+        this(image.createGraphics(), image);
+    }
+
+    private Graphics2DSurface(Graphics2D graphics, BufferedImage image) {
+        this.graphics = graphics;
+        this.image = image;
+        this.scratch = false;
+    }
+
+    public Graphics2D getGraphics() {
+        return graphics;
+    }
+
+    /**
+     * Returns the image the surface draws on, or null if it is not known.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return graphics.getTransform();
+    }
+
+    @Override
+    public void setTransform(AffineTransform transform) {
+        graphics.setTransform(transform);
+    }
+
+    @Override
+    public void translate(double x, double y) {
+        graphics.translate(x, y);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        graphics.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        graphics.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        graphics.scale(sx, sy);
+    }
+
+    @Override
+    public void transform(AffineTransform transform) {
+        graphics.transform(transform);
+    }
+
+    @Override
+    public Shape getClip() {
+        return graphics.getClip();
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        graphics.setClip(clip);
+    }
+
+    @Override
+    public Paint getPaint() {
+        return graphics.getPaint();
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        graphics.setPaint(paint);
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return graphics.getStroke();
+    }
+
+    @Override
+    public void setStroke(Stroke stroke) {
+        graphics.setStroke(stroke);
+    }
+
+    @Override
+    public Font getFont() {
+        return graphics.getFont();
+    }
+
+    @Override
+    public void setFont(Font font) {
+        graphics.setFont(font);
+    }
+
+    @Override
+    public Composite getComposite() {
+        return graphics.getComposite();
+    }
+
+    @Override
+    public void setComposite(Composite composite) {
+        graphics.setComposite(composite);
+    }
+
+    @Override
+    public boolean isAntialiasingOn() {
+        return graphics.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON;
+    }
+
+    @Override
+    public void setAntialiasingOn(boolean antialiasingOn) {
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                antialiasingOn ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                antialiasingOn ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+    }
+
+    @Override
+    public void draw(Shape shape) {
+        graphics.draw(shape);
+    }
+
+    @Override
+    public void fill(Shape shape) {
+        graphics.fill(shape);
+    }
+
+    @Override
+    public void drawImage(Image image, double x, double y) {
+        if (x == (int) x && y == (int) y) {
+            graphics.drawImage(image, (int) x, (int) y, null);
+        } else {
+            graphics.drawImage(image, AffineTransform.getTranslateInstance(x, y), null);
+        }
+    }
+
+    @Override
+    public void drawString(String text, float x, float y) {
+        graphics.drawString(text, x, y);
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font font) {
+        return graphics.getFontMetrics(font);
+    }
+
+    @Override
+    public Rectangle2D getStringBounds(String text, Font font) {
+        return graphics.getFontMetrics(font).getStringBounds(text, graphics);
+    }
+
+    @Override
+    public Rectangle2D getVisualBounds(String text, Font font) {
+        return font.createGlyphVector(graphics.getFontRenderContext(), text).getVisualBounds();
+    }
+
+    @Override
+    public LineMetrics getLineMetrics(String text, Font font) {
+        return graphics.getFontMetrics(font).getLineMetrics(text, graphics);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return graphics.getFontRenderContext();
+    }
+
+    @Override
+    public Surface create() {
+        return new Graphics2DSurface((Graphics2D) graphics.create(), image);
+    }
+
+    @Override
+    public boolean beginShadow(Paint color, int blurRadius, double xOffset, double yOffset) {
+        return false;
+    }
+
+    @Override
+    public void endShadow() {
+    }
+
+    @Override
+    public ShadowBuffers getShadowBuffers() {
+        return this;
+    }
+
+    @Override
+    public Surface createCompatibleSurface(int width, int height) {
+        BufferedImage bufferImage = ScratchImages.acquire(width, height);
+        Graphics2D g = bufferImage.createGraphics();
+        g.setRenderingHints(graphics.getRenderingHints());
+        Graphics2DSurface surface = new Graphics2DSurface(g, bufferImage);
+        surface.scratch = true;
+        return surface;
+    }
+
+    @Override
+    public void drawSurface(Surface surface, int x, int y) {
+        graphics.drawImage(((Graphics2DSurface) surface).image, x, y, null);
+    }
+
+    @Override
+    public void blur(Surface buffer, int radius) {
+        ((Graphics2DSurface) buffer).blur(radius);
+    }
+
+    /**
+     * Blurs the image of the surface with a box filter of the given radius.
+     */
+    public void blur(int radius) {
+        int size = radius * 2 + 1;
+        int kernelSize = size * size;
+        float weight = 1.0f / (kernelSize);
+        float[] blur = new float[kernelSize];
+
+        for (int i = 0; i < kernelSize; i++) {
+            blur[i] = weight;
+        }
+
+        Kernel kernel = new Kernel(size, size, blur);
+        ConvolveOp op = new ConvolveOp(kernel);
+
+        BufferedImage blurred;
+        if (scratch) {
+            blurred = op.filter(image, ScratchImages.acquire(image.getWidth(), image.getHeight()));
+            ScratchImages.release(image);
+        } else {
+            blurred = op.filter(image, null);
+        }
+        Graphics2D g = blurred.createGraphics();
+        g.setRenderingHints(graphics.getRenderingHints());
+        graphics.dispose();
+        graphics = g;
+        image = blurred;
+    }
+
+    @Override
+    public void dispose() {
+        graphics.dispose();
+        if (scratch) {
+            ScratchImages.release(image);
+            scratch = false;
+        }
+    }
+}
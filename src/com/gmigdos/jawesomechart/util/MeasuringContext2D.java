@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * {@link Context2D} that does not draw anything but accumulates the device
+ * space bounds of selected drawing operations of a {@link DisplayList}.
+ *
+ * Drawing operations (draw, fill, text, images and clip outlines) are numbered
+ * in the order they are issued; only the ones flagged in <code>measured</code>
+ * contribute to the bounds. Operations issued during shadowed drawing also
+ * cover the area of their shadow.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+class MeasuringContext2D extends Context2D {
+
+    private final boolean[] measured;
+    private int drawingOperation;
+    private boolean shadowed;
+    private Rectangle2D bounds;
+
+    MeasuringContext2D(int width, int height, boolean[] measured) {
+        super(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics(), width, height);
+        this.measured = measured;
+        this.drawingOperation = 0;
+        this.shadowed = false;
+        this.bounds = null;
+    }
+
+    /**
+     * Returns the union of the bounds of the measured operations, or null if
+     * none of them was issued.
+     */
+    Rectangle2D getBounds() {
+        return bounds;
+    }
+
+    private boolean isMeasured() {
+        return measured[drawingOperation++];
+    }
+
+    private void add(Shape userSpaceShape, double padding) {
+        Surface g = getCurrentSurface();
+        Rectangle2D r = g.getTransform().createTransformedShape(userSpaceShape).getBounds2D();
+        // Anti-aliasing may touch the pixels around the exact bounds:
+        padding += 1;
+        if (shadowed) {
+            double blurRadius = getShadowBlurRadius();
+            AffineTransform t = g.getTransform();
+            double dx = Math.abs(getShadowXOffset() * t.getScaleX()) + Math.abs(getShadowYOffset() * t.getShearX());
+            double dy = Math.abs(getShadowXOffset() * t.getShearY()) + Math.abs(getShadowYOffset() * t.getScaleY());
+            padding += blurRadius + Math.max(dx, dy);
+        }
+        r.setRect(r.getX() - padding, r.getY() - padding, r.getWidth() + 2 * padding, r.getHeight() + 2 * padding);
+        if (bounds == null) {
+            bounds = r;
+        } else {
+            bounds.add(r);
+        }
+    }
+
+    private static double getStrokePadding(Stroke s, AffineTransform t) {
+        if (s instanceof BasicStroke) {
+            BasicStroke stroke = (BasicStroke) s;
+            double halfWidth = stroke.getLineWidth() / 2;
+            if (stroke.getLineJoin() == BasicStroke.JOIN_MITER) {
+                halfWidth *= Math.max(stroke.getMiterLimit(), 1);
+            }
+            if (stroke.getEndCap() == BasicStroke.CAP_SQUARE) {
+                halfWidth *= Math.sqrt(2);
+            }
+            return halfWidth * Math.max(Math.hypot(t.getScaleX(), t.getShearY()), Math.hypot(t.getShearX(), t.getScaleY()));
+        }
+        return -1;
+    }
+
+    @Override
+    public void draw(Shape s) {
+        if (isMeasured()) {
+            Surface g = getCurrentSurface();
+            double padding = getStrokePadding(g.getStroke(), g.getTransform());
+            if (padding < 0) {
+                add(g.getStroke().createStrokedShape(s), 0);
+            } else {
+                add(s, padding);
+            }
+        }
+    }
+
+    @Override
+    public void fill(Shape s) {
+        if (isMeasured()) {
+            add(s, 0);
+        }
+    }
+
+    @Override
+    public void drawCurrentClip(Paint p) {
+        if (isMeasured()) {
+            Shape clip = getCurrentSurface().getClip();
+            add(clip == null ? new Rectangle2D.Double(0, 0, getWidth(), getHeight()) : clip, 1);
+        }
+    }
+
+    @Override
+    public void drawImage(Image image, double x, double y) {
+        if (isMeasured()) {
+            add(new Rectangle2D.Double(x, y, image.getWidth(null), image.getHeight(null)), 0);
+        }
+    }
+
+    @Override
+    protected void drawString(String text, Font font, float x, float y) {
+        if (isMeasured()) {
+            Rectangle2D r = getCurrentSurface().getVisualBounds(text, font);
+            r.setRect(r.getX() + x, r.getY() + y, r.getWidth(), r.getHeight());
+            add(r, 1);
+        }
+    }
+
+    @Override
+    public void beginShadowedDrawing() {
+        saveState();
+        shadowed = true;
+    }
+
+    @Override
+    public void endShadowedDrawing() {
+        shadowed = false;
+        restoreState();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of pre-rendered, anti-aliased filled circles used to stamp point
+ * markers instead of filling an ellipse per point.
+ *
+ * A sprite is rendered for each color, device radius and sub-pixel phase of
+ * the center, with {@link #PHASES} phases per axis, so stamped markers are
+ * within 1/(2 * PHASES) of a pixel from their exact position.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+final class PointSprites {
+
+    static final int PHASES = 4;
+    private static final int CACHE_SIZE = 256;
+    private static final Map<SpriteKey, BufferedImage> SPRITES = Collections.synchronizedMap(
+            new LinkedHashMap<SpriteKey, BufferedImage>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SpriteKey, BufferedImage> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private PointSprites() {
+    }
+
+    /**
+     * Returns the distance between the top-left corner of a sprite of the
+     * given radius and the pixel that contains the center of the circle.
+     */
+    static int getPadding(double radius) {
+        return (int) Math.ceil(radius) + 1;
+    }
+
+    /**
+     * Returns the sprite of a circle of the given color and radius whose
+     * center lies at (padding + phaseX / PHASES, padding + phaseY / PHASES).
+     */
+    static BufferedImage getSprite(Color color, double radius, int phaseX, int phaseY) {
+        SpriteKey key = new SpriteKey(color.getRGB(), radius, phaseX, phaseY);
+        BufferedImage sprite = SPRITES.get(key);
+        if (sprite == null) {
+            sprite = createSprite(color, radius, phaseX, phaseY);
+            SPRITES.put(key, sprite);
+        }
+        return sprite;
+    }
+
+    private static BufferedImage createSprite(Color color, double radius, int phaseX, int phaseY) {
+        int padding = getPadding(radius);
+        int size = 2 * padding + 1;
+        BufferedImage sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = sprite.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(color);
+        double cx = padding + phaseX / (double) PHASES;
+        double cy = padding + phaseY / (double) PHASES;
+        g.fill(new Ellipse2D.Double(cx - radius, cy - radius, 2 * radius, 2 * radius));
+        g.dispose();
+        return sprite;
+    }
+
+    private static final class SpriteKey {
+
+        private final int argb;
+        private final double radius;
+        private final int phaseX;
+        private final int phaseY;
+
+        SpriteKey(int argb, double radius, int phaseX, int phaseY) {
+            this.argb = argb;
+            this.radius = radius;
+            this.phaseX = phaseX;
+            this.phaseY = phaseY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SpriteKey)) {
+                return false;
+            }
+            SpriteKey k = (SpriteKey) o;
+            return argb == k.argb && Double.compare(radius, k.radius) == 0
+                    && phaseX == k.phaseX && phaseY == k.phaseY;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(radius);
+            int hash = argb;
+            hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+            hash = 31 * hash + phaseX;
+            hash = 31 * hash + phaseY;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,729 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.GradientPaint;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * A {@link Surface} that rasterizes into an array of non-premultiplied ARGB
+ * pixels in pure Java, so that charts can be drawn without starting the AWT
+ * toolkit, Java2D or the font system of the platform (e.g. in a server).
+ *
+ * Shapes are filled with exact anti-aliased coverage by a
+ * {@link CoverageRasterizer} and stroked through
+ * {@link Stroke#createStrokedShape(Shape)}; text is drawn with the built-in
+ * {@link BitmapFont}, whatever the family of the font. Supported paints are
+ * {@link Color} and {@link GradientPaint}; supported composites are the
+ * SrcOver, Src and Clear rules of {@link AlphaComposite}, with any extra
+ * alpha. Images must be {@link BufferedImage}s and are sampled without
+ * interpolation.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class RasterSurface implements Surface, ShadowBuffers {
+
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    private AffineTransform transform;
+    private Shape deviceClip;
+    private Paint paint;
+    private Stroke stroke;
+    private Font font;
+    private Composite composite;
+    private boolean antialiasingOn;
+    private CoverageRasterizer rasterizer;
+    private float[] rowCoverage;
+    private boolean clipValid;
+    private Rectangle clipBounds;
+    private float[] clipMask;
+    private int paintColor;
+    private GradientPaint gradient;
+    private int gradientColor1;
+    private int gradientColor2;
+    private double gradientX;
+    private double gradientY;
+    private double gradientDx;
+    private double gradientDy;
+    private int compositeRule;
+    private float extraAlpha;
+
+    /**
+     * Creates a transparent surface of the given size.
+     */
+    public RasterSurface(int width, int height) {
+        this(new int[width * height], width, height);
+    }
+
+    /**
+     * Creates a surface drawing on <code>pixels</code>, rows of
+     * <code>width</code> non-premultiplied ARGB pixels from top to bottom.
+     */
+    public RasterSurface(int[] pixels, int width, int height) {
+        if (width < 1 || height < 1 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Invalid raster: " + pixels.length + " pixels for " + width + "x" + height);
+        }
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.transform = new AffineTransform();
+        this.deviceClip = null;
+        this.paint = Color.WHITE;
+        this.stroke = new BasicStroke();
+        this.font = new Font(Font.DIALOG, Font.PLAIN, 12);
+        this.composite = AlphaComposite.SrcOver;
+        this.antialiasingOn = false;
+        this.rasterizer = new CoverageRasterizer();
+        this.rowCoverage = new float[width];
+        this.clipValid = false;
+    }
+
+    private RasterSurface(RasterSurface surface) {
+        this.pixels = surface.pixels;
+        this.width = surface.width;
+        this.height = surface.height;
+        this.transform = new AffineTransform(surface.transform);
+        this.deviceClip = surface.deviceClip;
+        this.paint = surface.paint;
+        this.stroke = surface.stroke;
+        this.font = surface.font;
+        this.composite = surface.composite;
+        this.antialiasingOn = surface.antialiasingOn;
+        this.rasterizer = new CoverageRasterizer();
+        this.rowCoverage = new float[width];
+        this.clipValid = false;
+    }
+
+    /**
+     * Returns the pixels of the surface, which are not copied.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    @Override
+    public void setTransform(AffineTransform transform) {
+        this.transform = new AffineTransform(transform);
+    }
+
+    @Override
+    public void translate(double x, double y) {
+        transform.translate(x, y);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    @Override
+    public void transform(AffineTransform transform) {
+        this.transform.concatenate(transform);
+    }
+
+    @Override
+    public Shape getClip() {
+        if (deviceClip == null) {
+            return null;
+        }
+        try {
+            AffineTransform inverse = transform.createInverse();
+            if (deviceClip instanceof Rectangle2D && isRectilinear(transform)) {
+                return inverse.createTransformedShape(deviceClip).getBounds2D();
+            }
+            return inverse.createTransformedShape(deviceClip);
+        } catch (NoninvertibleTransformException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        if (clip == null) {
+            deviceClip = null;
+        } else if (clip instanceof Rectangle2D && isRectilinear(transform)) {
+            deviceClip = transform.createTransformedShape(clip).getBounds2D();
+        } else {
+            deviceClip = transform.createTransformedShape(clip);
+        }
+        clipValid = false;
+    }
+
+    private static boolean isRectilinear(AffineTransform t) {
+        return (t.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE
+                | AffineTransform.TYPE_GENERAL_SCALE | AffineTransform.TYPE_FLIP)) == 0;
+    }
+
+    @Override
+    public Paint getPaint() {
+        return paint;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        if (!(paint instanceof Color) && !(paint instanceof GradientPaint)) {
+            throw new IllegalArgumentException("Unsupported paint: " + paint);
+        }
+        this.paint = paint;
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    @Override
+    public void setStroke(Stroke stroke) {
+        this.stroke = stroke;
+    }
+
+    @Override
+    public Font getFont() {
+        return font;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        this.font = font;
+    }
+
+    @Override
+    public Composite getComposite() {
+        return composite;
+    }
+
+    @Override
+    public void setComposite(Composite composite) {
+        if (!(composite instanceof AlphaComposite)) {
+            throw new IllegalArgumentException("Unsupported composite: " + composite);
+        }
+        int rule = ((AlphaComposite) composite).getRule();
+        if (rule != AlphaComposite.SRC_OVER && rule != AlphaComposite.SRC && rule != AlphaComposite.CLEAR) {
+            throw new IllegalArgumentException("Unsupported composite rule: " + rule);
+        }
+        this.composite = composite;
+    }
+
+    @Override
+    public boolean isAntialiasingOn() {
+        return antialiasingOn;
+    }
+
+    @Override
+    public void setAntialiasingOn(boolean antialiasingOn) {
+        this.antialiasingOn = antialiasingOn;
+    }
+
+    @Override
+    public void draw(Shape shape) {
+        fill(stroke.createStrokedShape(shape));
+    }
+
+    @Override
+    public void fill(Shape shape) {
+        validateClip();
+        if (clipBounds.isEmpty()) {
+            return;
+        }
+        rasterizer.setShape(shape, transform);
+        Rectangle area = rasterizer.getBounds(clipBounds);
+        if (area.isEmpty()) {
+            return;
+        }
+        rasterizer.rasterize(area);
+        preparePaint();
+        float[] coverage = rowCoverage;
+        for (int row = 0; row < area.height; row++) {
+            rasterizer.getRow(row, area.width, coverage);
+            int y = area.y + row;
+            for (int i = 0; i < area.width; i++) {
+                if (coverage[i] > 0) {
+                    paintPixel(area.x + i, y, coverage[i]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void drawImage(Image image, double x, double y) {
+        if (!(image instanceof BufferedImage)) {
+            throw new IllegalArgumentException("Only buffered images can be drawn: " + image);
+        }
+        BufferedImage bufferedImage = (BufferedImage) image;
+        int imageWidth = bufferedImage.getWidth();
+        int imageHeight = bufferedImage.getHeight();
+        int[] argb = bufferedImage.getRGB(0, 0, imageWidth, imageHeight, null, 0, imageWidth);
+        AffineTransform t = new AffineTransform(transform);
+        t.translate(x, y);
+        drawPixels(argb, imageWidth, imageHeight, t);
+    }
+
+    @Override
+    public void drawSurface(Surface surface, int x, int y) {
+        RasterSurface raster = (RasterSurface) surface;
+        AffineTransform t = new AffineTransform(transform);
+        t.translate(x, y);
+        drawPixels(raster.pixels, raster.width, raster.height, t);
+    }
+
+    /**
+     * Draws rows of <code>sourceWidth</code> ARGB pixels transformed by
+     * <code>t</code>, sampling the source pixel under the center of each
+     * device pixel.
+     */
+    private void drawPixels(int[] source, int sourceWidth, int sourceHeight, AffineTransform t) {
+        validateClip();
+        prepareComposite();
+        Rectangle area = t.createTransformedShape(new Rectangle2D.Double(0, 0, sourceWidth, sourceHeight))
+                .getBounds().intersection(clipBounds);
+        if (area.isEmpty()) {
+            return;
+        }
+        if (t.getType() == AffineTransform.TYPE_IDENTITY
+                || (t.getType() == AffineTransform.TYPE_TRANSLATION
+                && t.getTranslateX() == Math.floor(t.getTranslateX())
+                && t.getTranslateY() == Math.floor(t.getTranslateY()))) {
+            int dx = (int) t.getTranslateX();
+            int dy = (int) t.getTranslateY();
+            for (int y = area.y; y < area.y + area.height; y++) {
+                int sourceIndex = (y - dy) * sourceWidth - dx;
+                for (int x = area.x; x < area.x + area.width; x++) {
+                    compositePixel(x, y, source[sourceIndex + x], 1);
+                }
+            }
+            return;
+        }
+        AffineTransform inverse;
+        try {
+            inverse = t.createInverse();
+        } catch (NoninvertibleTransformException ex) {
+            return;
+        }
+        Point2D.Double point = new Point2D.Double();
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                point.setLocation(x + 0.5, y + 0.5);
+                inverse.transform(point, point);
+                int sx = (int) Math.floor(point.x);
+                int sy = (int) Math.floor(point.y);
+                if (sx >= 0 && sy >= 0 && sx < sourceWidth && sy < sourceHeight) {
+                    compositePixel(x, y, source[sy * sourceWidth + sx], 1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void drawString(String text, float x, float y) {
+        AffineTransform t = transform;
+        if ((t.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0
+                || t.getScaleX() <= 0) {
+            fill(BitmapFont.createOutline(text, font, x, y));
+            return;
+        }
+        validateClip();
+        if (clipBounds.isEmpty()) {
+            return;
+        }
+        preparePaint();
+        double unit = BitmapFont.getUnit(font) * t.getScaleX();
+        Point2D origin = t.transform(new Point2D.Double(x, y), null);
+        for (int i = 0; i < text.length(); i++) {
+            double glyphX = origin.getX() + i * BitmapFont.ADVANCE * unit;
+            long phasesX = Math.round(glyphX * BitmapFont.PHASES);
+            long phasesY = Math.round(origin.getY() * BitmapFont.PHASES);
+            int pixelX = (int) Math.floor(phasesX / (double) BitmapFont.PHASES);
+            int pixelY = (int) Math.floor(phasesY / (double) BitmapFont.PHASES);
+            int phaseX = (int) (phasesX - (long) pixelX * BitmapFont.PHASES);
+            int phaseY = (int) (phasesY - (long) pixelY * BitmapFont.PHASES);
+            BitmapFont.Glyph glyph = BitmapFont.getGlyph(text.charAt(i), font, unit, phaseX, phaseY);
+            if (glyph == null) {
+                continue;
+            }
+            int left = pixelX + glyph.x;
+            int top = pixelY + glyph.y;
+            for (int row = 0; row < glyph.height; row++) {
+                for (int column = 0; column < glyph.width; column++) {
+                    float coverage = glyph.coverage[row * glyph.width + column];
+                    if (coverage > 0) {
+                        paintPixel(left + column, top + row, coverage);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font font) {
+        return new BitmapFont.Metrics(font);
+    }
+
+    @Override
+    public Rectangle2D getStringBounds(String text, Font font) {
+        return BitmapFont.getStringBounds(text, font);
+    }
+
+    @Override
+    public Rectangle2D getVisualBounds(String text, Font font) {
+        return BitmapFont.getVisualBounds(text, font);
+    }
+
+    @Override
+    public LineMetrics getLineMetrics(String text, Font font) {
+        return new BitmapFont.BitmapLineMetrics(text.length(), BitmapFont.getUnit(font));
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return new FontRenderContext(null, antialiasingOn, false);
+    }
+
+    @Override
+    public Surface create() {
+        return new RasterSurface(this);
+    }
+
+    @Override
+    public boolean beginShadow(Paint color, int blurRadius, double xOffset, double yOffset) {
+        return false;
+    }
+
+    @Override
+    public void endShadow() {
+    }
+
+    @Override
+    public ShadowBuffers getShadowBuffers() {
+        return this;
+    }
+
+    @Override
+    public Surface createCompatibleSurface(int width, int height) {
+        RasterSurface surface = new RasterSurface(width, height);
+        surface.antialiasingOn = antialiasingOn;
+        return surface;
+    }
+
+    @Override
+    public void blur(Surface buffer, int radius) {
+        ((RasterSurface) buffer).blur(radius);
+    }
+
+    /**
+     * Blurs the surface with a separable box filter on premultiplied
+     * components, treating the pixels outside it as transparent. Only the
+     * area around non-transparent pixels is processed.
+     */
+    public void blur(int radius) {
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((pixels[y * width + x] >>> 24) != 0) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0 || radius < 1) {
+            return;
+        }
+        int x0 = Math.max(minX - radius, 0);
+        int y0 = Math.max(minY - radius, 0);
+        int w = Math.min(maxX + radius + 1, width) - x0;
+        int h = Math.min(maxY + radius + 1, height) - y0;
+        int size = 2 * radius + 1;
+        int[][] channels = new int[4][w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int argb = pixels[(y0 + y) * width + x0 + x];
+                int a = argb >>> 24;
+                channels[0][y * w + x] = a;
+                channels[1][y * w + x] = ((argb >> 16) & 0xff) * a;
+                channels[2][y * w + x] = ((argb >> 8) & 0xff) * a;
+                channels[3][y * w + x] = (argb & 0xff) * a;
+            }
+        }
+        int[] line = new int[Math.max(w, h)];
+        for (int[] channel : channels) {
+            for (int y = 0; y < h; y++) {
+                boxFilter(channel, y * w, 1, w, radius, line);
+            }
+            for (int x = 0; x < w; x++) {
+                boxFilter(channel, x, w, h, radius, line);
+            }
+        }
+        int area = size * size;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int i = y * w + x;
+                int a = (channels[0][i] + area / 2) / area;
+                int argb = 0;
+                if (a > 0) {
+                    // The color sums are weighted by alpha:
+                    long divisor = (long) a * area;
+                    int r = (int) Math.min((channels[1][i] + divisor / 2) / divisor, 255);
+                    int g = (int) Math.min((channels[2][i] + divisor / 2) / divisor, 255);
+                    int b = (int) Math.min((channels[3][i] + divisor / 2) / divisor, 255);
+                    argb = (a << 24) | (r << 16) | (g << 8) | b;
+                }
+                pixels[(y0 + y) * width + x0 + x] = argb;
+            }
+        }
+    }
+
+    /**
+     * Replaces <code>length</code> values of <code>data</code>, from
+     * <code>offset</code> every <code>step</code>, by the sums of the
+     * values within <code>radius</code> of them.
+     */
+    private static void boxFilter(int[] data, int offset, int step, int length, int radius, int[] line) {
+        for (int i = 0; i < length; i++) {
+            line[i] = data[offset + i * step];
+        }
+        int sum = 0;
+        for (int i = 0; i < Math.min(radius, length); i++) {
+            sum += line[i];
+        }
+        for (int i = 0; i < length; i++) {
+            if (i + radius < length) {
+                sum += line[i + radius];
+            }
+            if (i - radius - 1 >= 0) {
+                sum -= line[i - radius - 1];
+            }
+            data[offset + i * step] = sum;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        rasterizer = null;
+    }
+
+    private void validateClip() {
+        if (clipValid) {
+            return;
+        }
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        clipMask = null;
+        if (deviceClip instanceof Rectangle2D) {
+            // Pixels whose centers are inside, as Java2D does:
+            Rectangle2D r = (Rectangle2D) deviceClip;
+            int x0 = (int) Math.ceil(r.getMinX() - 0.5);
+            int y0 = (int) Math.ceil(r.getMinY() - 0.5);
+            int x1 = (int) Math.ceil(r.getMaxX() - 0.5);
+            int y1 = (int) Math.ceil(r.getMaxY() - 0.5);
+            bounds = bounds.intersection(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+        } else if (deviceClip != null) {
+            rasterizer.setShape(deviceClip, new AffineTransform());
+            bounds = rasterizer.getBounds(bounds);
+            if (!bounds.isEmpty()) {
+                rasterizer.rasterize(bounds);
+                clipMask = new float[bounds.width * bounds.height];
+                float[] coverage = new float[bounds.width];
+                for (int row = 0; row < bounds.height; row++) {
+                    rasterizer.getRow(row, bounds.width, coverage);
+                    System.arraycopy(coverage, 0, clipMask, row * bounds.width, bounds.width);
+                }
+            }
+        }
+        if (bounds.isEmpty()) {
+            bounds = new Rectangle();
+        }
+        clipBounds = bounds;
+        clipValid = true;
+    }
+
+    private void preparePaint() {
+        prepareComposite();
+        if (paint instanceof GradientPaint) {
+            gradient = (GradientPaint) paint;
+            gradientColor1 = gradient.getColor1().getRGB();
+            gradientColor2 = gradient.getColor2().getRGB();
+            Point2D p1 = transform.transform(gradient.getPoint1(), null);
+            Point2D p2 = transform.transform(gradient.getPoint2(), null);
+            double dx = p2.getX() - p1.getX();
+            double dy = p2.getY() - p1.getY();
+            double lengthSquared = dx * dx + dy * dy;
+            gradientX = p1.getX();
+            gradientY = p1.getY();
+            gradientDx = lengthSquared > 0 ? dx / lengthSquared : 0;
+            gradientDy = lengthSquared > 0 ? dy / lengthSquared : 0;
+        } else {
+            gradient = null;
+            paintColor = ((Color) paint).getRGB();
+        }
+    }
+
+    private void prepareComposite() {
+        AlphaComposite alphaComposite = (AlphaComposite) composite;
+        compositeRule = alphaComposite.getRule();
+        extraAlpha = alphaComposite.getAlpha();
+    }
+
+    private int getPaintColor(int x, int y) {
+        if (gradient == null) {
+            return paintColor;
+        }
+        double t = (x + 0.5 - gradientX) * gradientDx + (y + 0.5 - gradientY) * gradientDy;
+        if (gradient.isCyclic()) {
+            t = Math.abs(t) % 2;
+            if (t > 1) {
+                t = 2 - t;
+            }
+        } else {
+            t = Math.min(Math.max(t, 0), 1);
+        }
+        int color = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int a = (gradientColor1 >>> shift) & 0xff;
+            int b = (gradientColor2 >>> shift) & 0xff;
+            color |= ((int) (a + (b - a) * t + 0.5)) << shift;
+        }
+        return color;
+    }
+
+    private void paintPixel(int x, int y, float coverage) {
+        if (!antialiasingOn) {
+            if (coverage < 0.5f) {
+                return;
+            }
+            coverage = 1;
+        }
+        compositePixel(x, y, getPaintColor(x, y), coverage);
+    }
+
+    /**
+     * Composites <code>argb</code> with the given coverage over pixel (x, y)
+     * if the pixel is within the clip.
+     */
+    private void compositePixel(int x, int y, int argb, float coverage) {
+        Rectangle clip = clipBounds;
+        if (x < clip.x || y < clip.y || x >= clip.x + clip.width || y >= clip.y + clip.height) {
+            return;
+        }
+        if (clipMask != null) {
+            coverage *= clipMask[(y - clip.y) * clip.width + x - clip.x];
+            if (coverage <= 0) {
+                return;
+            }
+        }
+        int index = y * width + x;
+        double alpha = ((argb >>> 24) / 255.0) * extraAlpha;
+        switch (compositeRule) {
+            case AlphaComposite.SRC_OVER:
+                pixels[index] = blendSrcOver(pixels[index], argb, alpha * Math.min(coverage, 1));
+                break;
+            case AlphaComposite.SRC:
+                pixels[index] = blendSrc(pixels[index], argb, alpha, Math.min(coverage, 1));
+                break;
+            case AlphaComposite.CLEAR:
+                pixels[index] = blendSrc(pixels[index], 0, 0, Math.min(coverage, 1));
+                break;
+        }
+    }
+
+    private static int blendSrcOver(int dst, int src, double alpha) {
+        int sa = (int) (alpha * 255 + 0.5);
+        if (sa == 0) {
+            return dst;
+        }
+        int da = dst >>> 24;
+        if (da == 0 || sa == 255) {
+            return (sa << 24) | (src & 0xffffff);
+        }
+        // Non-premultiplied SrcOver, in 0..255 fixed point:
+        int dw = da * (255 - sa) / 255;
+        int oa = sa + dw;
+        int r = (((src >> 16) & 0xff) * sa + ((dst >> 16) & 0xff) * dw) / oa;
+        int g = (((src >> 8) & 0xff) * sa + ((dst >> 8) & 0xff) * dw) / oa;
+        int b = ((src & 0xff) * sa + (dst & 0xff) * dw) / oa;
+        return (oa << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Replaces the pixel by the source with the given alpha, in proportion
+     * to the coverage.
+     */
+    private static int blendSrc(int dst, int src, double alpha, double coverage) {
+        double sa = alpha * coverage;
+        double da = ((dst >>> 24) / 255.0) * (1 - coverage);
+        double oa = sa + da;
+        if (oa <= 0) {
+            return 0;
+        }
+        int color = (int) (oa * 255 + 0.5) << 24;
+        for (int shift = 0; shift < 24; shift += 8) {
+            double c = (((src >> shift) & 0xff) * sa + ((dst >> shift) & 0xff) * da) / oa;
+            color |= ((int) (c + 0.5)) << shift;
+        }
+        return color;
+    }
+}
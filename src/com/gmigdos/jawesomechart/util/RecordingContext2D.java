@@ -0,0 +1,249 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * {@link Context2D} that does not draw anything but records the operations
+ * issued to it into a {@link DisplayList}.
+ *
+ * Text measurement and font fitting are performed against an anti-aliased
+ * scratch graphics object, so the recorded text layout matches the one of a
+ * {@link Context2D} drawing on an image.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class RecordingContext2D extends Context2D {
+
+    private final DisplayList displayList;
+
+    public RecordingContext2D(int width, int height) {
+        super(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics(), width, height);
+        this.displayList = new DisplayList(width, height);
+    }
+
+    /**
+     * Returns the display list the operations are recorded into.
+     */
+    public DisplayList getDisplayList() {
+        return displayList;
+    }
+
+    @Override
+    public void setLayer(Layer layer) {
+        displayList.add(DisplayList.SET_LAYER, layer);
+        super.setLayer(layer);
+    }
+
+    @Override
+    public void drawImage(Image image, double x, double y) {
+        displayList.addDrawImage(image, x, y);
+    }
+
+    @Override
+    public void setOriginalClip(Shape originalClip) {
+        displayList.add(DisplayList.SET_ORIGINAL_CLIP, originalClip);
+        super.setOriginalClip(originalClip);
+    }
+
+    @Override
+    public void setShadowBlurRadius(int shadowBlurRadius) {
+        displayList.add(DisplayList.SET_SHADOW_BLUR_RADIUS, shadowBlurRadius);
+        super.setShadowBlurRadius(shadowBlurRadius);
+    }
+
+    @Override
+    public void setShadowColor(Paint shadowColor) {
+        displayList.add(DisplayList.SET_SHADOW_COLOR, shadowColor);
+        super.setShadowColor(shadowColor);
+    }
+
+    @Override
+    public void setShadowXOffset(double shadowXOffset) {
+        displayList.add(DisplayList.SET_SHADOW_X_OFFSET, shadowXOffset);
+        super.setShadowXOffset(shadowXOffset);
+    }
+
+    @Override
+    public void setShadowYOffset(double shadowYOffset) {
+        displayList.add(DisplayList.SET_SHADOW_Y_OFFSET, shadowYOffset);
+        super.setShadowYOffset(shadowYOffset);
+    }
+
+    @Override
+    public void saveState() {
+        displayList.add(DisplayList.SAVE);
+        super.saveState();
+    }
+
+    @Override
+    public void restoreState() {
+        displayList.add(DisplayList.RESTORE);
+        super.restoreState();
+    }
+
+    @Override
+    public void resetState() {
+        displayList.add(DisplayList.RESET);
+        super.resetState();
+    }
+
+    @Override
+    public void setClip(Shape clipRect) {
+        displayList.add(DisplayList.SET_CLIP, clipRect);
+        super.setClip(clipRect);
+    }
+
+    @Override
+    public void drawCurrentClip(Paint p) {
+        displayList.add(DisplayList.DRAW_CURRENT_CLIP, p);
+    }
+
+    @Override
+    public void resetClip() {
+        displayList.add(DisplayList.RESET_CLIP);
+        super.resetClip();
+    }
+
+    @Override
+    public void clearClip() {
+        displayList.add(DisplayList.CLEAR_CLIP);
+        super.clearClip();
+    }
+
+    @Override
+    public void translate(double x, double y) {
+        displayList.add(DisplayList.TRANSLATE, x, y);
+        super.translate(x, y);
+    }
+
+    @Override
+    public void translate(int x, int y) {
+        displayList.add(DisplayList.TRANSLATE, x, y);
+        super.translate(x, y);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        displayList.add(DisplayList.ROTATE, theta);
+        super.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        displayList.addRotate(theta, x, y);
+        super.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        displayList.add(DisplayList.SCALE, sx, sy);
+        super.scale(sx, sy);
+    }
+
+    @Override
+    public void transform(AffineTransform Tx) {
+        displayList.add(DisplayList.TRANSFORM, new AffineTransform(Tx));
+        super.transform(Tx);
+    }
+
+    @Override
+    public void setFont(Font f) {
+        displayList.add(DisplayList.SET_FONT, f);
+        super.setFont(f);
+    }
+
+    @Override
+    public void setPaint(Paint p) {
+        displayList.add(DisplayList.SET_PAINT, p);
+        super.setPaint(p);
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        displayList.add(DisplayList.SET_STROKE, s);
+        super.setStroke(s);
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        displayList.add(DisplayList.SET_COMPOSITE, comp);
+        super.setComposite(comp);
+    }
+
+    @Override
+    public void draw(Shape s) {
+        displayList.add(DisplayList.DRAW, s);
+    }
+
+    @Override
+    public void fill(Shape s) {
+        displayList.add(DisplayList.FILL, s);
+    }
+
+    /**
+     * Records each circle as an ellipse fill, so that the display list does
+     * not depend on the sprites of the recording target.
+     */
+    @Override
+    public void fillCircles(double[] xPoints, double[] yPoints, int nPoints, double radius) {
+        double diameter = 2 * radius;
+        for (int i = 0; i < nPoints; i++) {
+            fill(new Ellipse2D.Double(xPoints[i] - radius, yPoints[i] - radius, diameter, diameter));
+        }
+    }
+
+    /**
+     * Records the start of shadowed drawing. No off-screen buffers are
+     * allocated; instead the state is saved so that, as with the buffers of a
+     * drawing context, changes made until {@link #endShadowedDrawing()} are
+     * discarded.
+     */
+    @Override
+    public void beginShadowedDrawing() {
+        displayList.add(DisplayList.BEGIN_SHADOWED_DRAWING);
+        super.saveState();
+    }
+
+    @Override
+    public void endShadowedDrawing() {
+        displayList.add(DisplayList.END_SHADOWED_DRAWING);
+        super.restoreState();
+    }
+
+    @Override
+    public void adjustFontSizeToFitTextInWidth(String text, double widthLimit) {
+        super.adjustFontSizeToFitTextInWidth(text, widthLimit);
+        displayList.add(DisplayList.SET_FONT, getFont());
+    }
+
+    @Override
+    protected void drawString(String text, Font font, float x, float y) {
+        displayList.addDrawString(text, font, x, y);
+    }
+}
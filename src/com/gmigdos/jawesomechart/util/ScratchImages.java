@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-thread pools of the off-screen images {@link Context2D} draws shadows
+ * with.
+ *
+ * Shadowed drawing needs two images the size of the drawn area, plus one for
+ * the blur, which are usually allocated and dropped for every shadowed
+ * element. Threads that render many charts, e.g. the ones of a
+ * {@link com.gmigdos.jawesomechart.BatchRenderer}, can call
+ * {@link #install()} to reuse them instead: images are then handed out as
+ * cleared sub-images of a few retained ones, grown as needed. Other threads
+ * keep allocating images, so they retain no memory.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public final class ScratchImages {
+
+    private static final int MAX_IMAGES = 4;
+    private static final int GRANULARITY = 64;
+    private static final ThreadLocal<ScratchImages> POOLS = new ThreadLocal<ScratchImages>();
+    private final List<BufferedImage> freeImages;
+    private final Map<BufferedImage, BufferedImage> usedImages;
+    private int imageCount;
+
+    private ScratchImages() {
+        this.freeImages = new ArrayList<BufferedImage>();
+        this.usedImages = new IdentityHashMap<BufferedImage, BufferedImage>();
+        this.imageCount = 0;
+    }
+
+    /**
+     * Makes the current thread reuse its off-screen images, until
+     * {@link #uninstall()} is called.
+     */
+    public static void install() {
+        if (POOLS.get() == null) {
+            POOLS.set(new ScratchImages());
+        }
+    }
+
+    /**
+     * Drops the images retained for the current thread.
+     */
+    public static void uninstall() {
+        POOLS.remove();
+    }
+
+    /**
+     * Returns true if the current thread reuses its off-screen images.
+     */
+    public static boolean isInstalled() {
+        return POOLS.get() != null;
+    }
+
+    /**
+     * Returns a transparent TYPE_INT_ARGB image of the given size, to be
+     * handed back with {@link #release(BufferedImage)}.
+     */
+    static BufferedImage acquire(int width, int height) {
+        ScratchImages pool = POOLS.get();
+        if (pool == null) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        return pool.acquireImage(width, height);
+    }
+
+    /**
+     * Hands back an image returned by {@link #acquire(int, int)}, which must
+     * not be used afterwards.
+     */
+    static void release(BufferedImage image) {
+        ScratchImages pool = POOLS.get();
+        if (pool != null) {
+            pool.releaseImage(image);
+        }
+    }
+
+    private BufferedImage acquireImage(int width, int height) {
+        BufferedImage best = null;
+        for (BufferedImage candidate : freeImages) {
+            if (candidate.getWidth() >= width && candidate.getHeight() >= height
+                    && (best == null || area(candidate) < area(best))) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            if (imageCount == MAX_IMAGES && !freeImages.isEmpty()) {
+                // Replace the smallest free image by a larger one:
+                BufferedImage smallest = freeImages.get(0);
+                for (BufferedImage candidate : freeImages) {
+                    if (area(candidate) < area(smallest)) {
+                        smallest = candidate;
+                    }
+                }
+                freeImages.remove(smallest);
+                imageCount--;
+            }
+            if (imageCount == MAX_IMAGES) {
+                return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            }
+            best = new BufferedImage(roundUp(width), roundUp(height), BufferedImage.TYPE_INT_ARGB);
+            imageCount++;
+        } else {
+            freeImages.remove(best);
+        }
+        BufferedImage image = best.getSubimage(0, 0, width, height);
+        clear(image);
+        usedImages.put(image, best);
+        return image;
+    }
+
+    private void releaseImage(BufferedImage image) {
+        BufferedImage backing = usedImages.remove(image);
+        if (backing != null) {
+            freeImages.add(backing);
+        }
+    }
+
+    private static long area(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight();
+    }
+
+    private static int roundUp(int size) {
+        return (size + GRANULARITY - 1) / GRANULARITY * GRANULARITY;
+    }
+
+    private static void clear(BufferedImage image) {
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) image.getSampleModel();
+        int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int stride = sampleModel.getScanlineStride();
+        int offset = -image.getRaster().getSampleModelTranslateX() - image.getRaster().getSampleModelTranslateY() * stride;
+        for (int y = 0; y < image.getHeight(); y++) {
+            int start = offset + y * stride;
+            Arrays.fill(data, start, start + image.getWidth(), 0);
+        }
+    }
+}
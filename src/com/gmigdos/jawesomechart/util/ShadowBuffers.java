@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+/**
+ * The off-screen buffers {@link Context2D} draws shadows with on a
+ * {@link Surface} that cannot draw them itself: what casts the shadow is
+ * drawn into one buffer and its silhouette into another, which is blurred
+ * and drawn under the first.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public interface ShadowBuffers {
+
+    /**
+     * Returns a new, transparent, off-screen surface of the same kind as
+     * the surface these buffers belong to, with the same rendering settings,
+     * whose device space starts at (0, 0).
+     */
+    public Surface createCompatibleSurface(int width, int height);
+
+    /**
+     * Draws the contents of <code>buffer</code>, which must have been
+     * created by {@link #createCompatibleSurface(int, int)}, with its
+     * top-left corner at (x, y) in the current user space of the surface
+     * these buffers belong to.
+     */
+    public void drawSurface(Surface buffer, int x, int y);
+
+    /**
+     * Blurs the contents of <code>buffer</code>, which must have been
+     * created by {@link #createCompatibleSurface(int, int)}, with a box
+     * filter of the given radius.
+     */
+    public void blur(Surface buffer, int radius);
+}
@@ -38,4 +38,5 @@ public class StringsProvider {
     public final static String CHART_RENDERER_PARETO = "Pareto";
     public final static String CHART_RENDERER_PIE = "pie";
     public final static String CHART_RENDERER_STACKED_AREA = "stacked area";
+    public final static String LEGEND_MORE_ENTRIES = "+%d more";
 }
@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * The device a {@link Context2D} draws on: the subset of the operations of
+ * {@link java.awt.Graphics2D} the context actually uses. Transformations,
+ * clip, paint, stroke, font and composite have the semantics of their
+ * Graphics2D counterparts.
+ *
+ * {@link Graphics2DSurface} draws through Java2D; {@link RasterSurface}
+ * rasterizes into an array of pixels in pure Java, without starting the AWT
+ * toolkit.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public interface Surface {
+
+    public AffineTransform getTransform();
+
+    public void setTransform(AffineTransform transform);
+
+    public void translate(double x, double y);
+
+    public void rotate(double theta);
+
+    public void rotate(double theta, double x, double y);
+
+    public void scale(double sx, double sy);
+
+    public void transform(AffineTransform transform);
+
+    /**
+     * Returns the clip in the current user space, or null if there is none.
+     */
+    public Shape getClip();
+
+    public void setClip(Shape clip);
+
+    public Paint getPaint();
+
+    public void setPaint(Paint paint);
+
+    public Stroke getStroke();
+
+    public void setStroke(Stroke stroke);
+
+    public Font getFont();
+
+    public void setFont(Font font);
+
+    public Composite getComposite();
+
+    public void setComposite(Composite composite);
+
+    public boolean isAntialiasingOn();
+
+    /**
+     * Enables or disables anti-aliasing of shapes and text.
+     */
+    public void setAntialiasingOn(boolean antialiasingOn);
+
+    public void draw(Shape shape);
+
+    public void fill(Shape shape);
+
+    /**
+     * Draws <code>image</code> with its top-left corner at (x, y) in the
+     * current user space.
+     */
+    public void drawImage(Image image, double x, double y);
+
+    /**
+     * Draws <code>text</code> with the current font, its baseline starting
+     * at (x, y).
+     */
+    public void drawString(String text, float x, float y);
+
+    public FontMetrics getFontMetrics(Font font);
+
+    /**
+     * Returns the logical bounds of <code>text</code> drawn with
+     * <code>font</code>, relative to the start of its baseline.
+     */
+    public Rectangle2D getStringBounds(String text, Font font);
+
+    /**
+     * Returns the bounds of the pixels <code>text</code> drawn with
+     * <code>font</code> actually covers, relative to the start of its
+     * baseline.
+     */
+    public Rectangle2D getVisualBounds(String text, Font font);
+
+    public LineMetrics getLineMetrics(String text, Font font);
+
+    /**
+     * Returns the context text is measured in. Measurements only depend on
+     * the class of the surface, the font and this context.
+     */
+    public FontRenderContext getFontRenderContext();
+
+    /**
+     * Returns a new surface drawing on the same device, with a copy of the
+     * state of this one.
+     */
+    public Surface create();
+
+    /**
+     * Starts a group of drawing operations that cast a shadow, if the surface
+     * can draw shadows itself. Otherwise returns false and {@link Context2D}
+     * renders the shadows with the buffers of {@link #getShadowBuffers()}.
+     * 
+     * @param color the paint of the shadow
+     * @param blurRadius the radius of the box blur of the shadow, in pixels
+     * @param xOffset the horizontal offset of the shadow, in user space
+     * @param yOffset the vertical offset of the shadow, in user space
+     * @return true if the surface draws the shadow of what is drawn until
+     * {@link #endShadow()}
+     */
+    public boolean beginShadow(Paint color, int blurRadius, double xOffset, double yOffset);
+
+    /**
+     * Ends a group started by a successful
+     * {@link #beginShadow(Paint, int, double, double)}.
+     */
+    public void endShadow();
+
+    /**
+     * Returns the off-screen buffers shadows are drawn with when
+     * {@link #beginShadow(Paint, int, double, double)} returns false, or null
+     * if the surface draws every shadow itself and never returns false.
+     */
+    public ShadowBuffers getShadowBuffers();
+
+    public void dispose();
+}
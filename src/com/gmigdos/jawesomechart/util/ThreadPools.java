@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factories of the thread pools of the library.
+ *
+ * The library is built for Java 7, so virtual threads are looked up by
+ * reflection and used only on runtimes that have them.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public final class ThreadPools {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadExecutorFactory();
+    private static ExecutorService computeExecutor;
+
+    private ThreadPools() {
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (SecurityException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if the runtime supports virtual threads.
+     */
+    public static boolean areVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Returns an executor running each task on a new virtual thread, or null
+     * if the runtime does not support virtual threads.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (Exception ex) {
+            // Virtual threads may exist but be disabled, e.g. as a preview
+            // feature that was not enabled:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the pool shared by the CPU-bound tasks of the library, such as
+     * the compression of large PNG images, created on first use with one
+     * daemon thread per available processor. However many charts are drawn
+     * or encoded at a time, these tasks never run on more threads than
+     * there are processors. The pool lives as long as the VM and must not be
+     * shut down; its tasks must not wait for other tasks of the pool.
+     */
+    public static synchronized ExecutorService getComputeExecutor() {
+        if (computeExecutor == null) {
+            computeExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    newDaemonThreadFactory("JAwesomeChart-compute", null));
+        }
+        return computeExecutor;
+    }
+
+    /**
+     * Returns a factory of daemon threads named <code>name-N</code>, which
+     * run <code>initializer</code>, if not null, before their first task.
+     */
+    public static ThreadFactory newDaemonThreadFactory(final String name, final Runnable initializer) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (initializer != null) {
+                            initializer.run();
+                        }
+                        runnable.run();
+                    }
+                }, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
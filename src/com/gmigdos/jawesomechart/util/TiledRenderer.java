@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rasterizes a {@link DisplayList} in square tiles on several threads and
+ * stitches them into one image.
+ *
+ * Each tile is rendered by {@link DisplayList#renderArea(Rectangle)}, on an
+ * area enlarged by the shadow margin of the list, so shadows that cross tile
+ * borders are identical to the ones of a single-threaded replay. Besides the
+ * speed-up, off-screen shadow buffers only cover a tile instead of the whole
+ * canvas, which keeps memory usage bounded for very large charts.
+ *
+ * The tiles are rendered on the shared pool of
+ * {@link ThreadPools#getComputeExecutor()}, by at most
+ * {@link #getThreadCount()} threads including the calling one, so renderers
+ * can be created and used freely without starting threads of their own.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class TiledRenderer {
+
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private int tileSize;
+    private int threadCount;
+
+    public TiledRenderer() {
+        this(DEFAULT_TILE_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public TiledRenderer(int tileSize, int threadCount) {
+        if (tileSize < 1 || threadCount < 1) {
+            throw new IllegalArgumentException("Tile size and thread count must be positive");
+        }
+        this.tileSize = tileSize;
+        this.threadCount = threadCount;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Renders <code>displayList</code> into a new image of the size it was
+     * recorded for.
+     *
+     * @param displayList the operations to render
+     * @return the rendered image
+     */
+    public BufferedImage render(DisplayList displayList) {
+        BufferedImage image = new BufferedImage(displayList.getWidth(), displayList.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        render(displayList, image);
+        return image;
+    }
+
+    /**
+     * Renders <code>displayList</code> into <code>target</code>, replacing
+     * its pixels in the area the list was recorded for.
+     *
+     * @param displayList the operations to render
+     * @param target the image to render into; TYPE_INT_ARGB images are
+     * written to directly, others through their graphics
+     */
+    public void render(final DisplayList displayList, final BufferedImage target) {
+        List<Rectangle> tiles = new ArrayList<Rectangle>();
+        int width = Math.min(displayList.getWidth(), target.getWidth());
+        int height = Math.min(displayList.getHeight(), target.getHeight());
+        for (int y = 0; y < height; y += tileSize) {
+            for (int x = 0; x < width; x += tileSize) {
+                tiles.add(new Rectangle(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y)));
+            }
+        }
+
+        if (tiles.size() == 1 || threadCount == 1) {
+            for (Rectangle tile : tiles) {
+                renderTile(displayList, tile, target);
+            }
+            return;
+        }
+
+        // The calling thread renders tiles too, and only waits for the ones
+        // other threads have taken, so rendering also completes when the
+        // shared pool is busy or when it is called from a task of the pool.
+        ExecutorService executor = ThreadPools.getComputeExecutor();
+        TileQueue queue = new TileQueue(displayList, tiles, target);
+        List<Future<?>> helpers = new ArrayList<Future<?>>();
+        try {
+            for (int i = 1; i < Math.min(threadCount, tiles.size()); i++) {
+                helpers.add(executor.submit(queue));
+            }
+            queue.run();
+            queue.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rendering tiles", e);
+        } finally {
+            // Helpers that have not started yet would find no tiles left:
+            for (Future<?> helper : helpers) {
+                helper.cancel(false);
+            }
+        }
+        Throwable failure = queue.getFailure();
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * Renders one tile and copies it into its place. Tiles do not overlap, so
+     * they can be written to the raster of the target concurrently.
+     */
+    private static void renderTile(DisplayList displayList, Rectangle tile, BufferedImage target) {
+        BufferedImage image = displayList.renderArea(tile);
+        if (target.getType() == BufferedImage.TYPE_INT_ARGB) {
+            target.getRaster().setDataElements(tile.x, tile.y, image.getRaster());
+        } else {
+            synchronized (target) {
+                Graphics2D g2d = target.createGraphics();
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.drawImage(image, tile.x, tile.y, null);
+                g2d.dispose();
+            }
+        }
+    }
+
+    /**
+     * The tiles left to render, taken one at a time by the threads working
+     * on them.
+     */
+    private static class TileQueue implements Runnable {
+
+        private final DisplayList displayList;
+        private final List<Rectangle> tiles;
+        private final BufferedImage target;
+        private final AtomicInteger next;
+        private final CountDownLatch done;
+        private volatile Throwable failure;
+
+        TileQueue(DisplayList displayList, List<Rectangle> tiles, BufferedImage target) {
+            this.displayList = displayList;
+            this.tiles = tiles;
+            this.target = target;
+            this.next = new AtomicInteger();
+            this.done = new CountDownLatch(tiles.size());
+        }
+
+        @Override
+        public void run() {
+            int index;
+            while ((index = next.getAndIncrement()) < tiles.size()) {
+                try {
+                    if (failure == null) {
+                        renderTile(displayList, tiles.get(index), target);
+                    }
+                } catch (RuntimeException e) {
+                    failure = e;
+                } catch (Error e) {
+                    failure = e;
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        /**
+         * Waits until every tile is rendered or skipped after a failure.
+         */
+        void await() throws InterruptedException {
+            done.await();
+        }
+
+        Throwable getFailure() {
+            return failure;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.Rectangle;
+
+/**
+ * Draws anti-aliased polylines directly into the pixel array of a
+ * non-premultiplied ARGB raster.
+ *
+ * Lines are rasterized in the manner of Wu's algorithm: one step per pixel
+ * along the major axis, with the coverage of the pixels across the line
+ * computed from their overlap with the line's extent on the minor axis. Lines
+ * wider than a pixel are handled by widening that extent, so line width is
+ * exact but caps and joins are not drawn. Pixels are blended with the SrcOver
+ * rule.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+final class WuRasterizer {
+
+    private final int[] data;
+    private final int offset;
+    private final int scanlineStride;
+    private final int clipX0;
+    private final int clipY0;
+    private final int clipX1;
+    private final int clipY1;
+    private final int red;
+    private final int green;
+    private final int blue;
+    private final double alpha;
+    private final double width;
+
+    /**
+     * @param data the pixels of the raster
+     * @param offset the index of pixel (0, 0) in <code>data</code>
+     * @param scanlineStride the distance between two rows in <code>data</code>
+     * @param clip the area of the raster that may be modified
+     * @param argb the color of the lines
+     * @param alpha an alpha factor applied on top of the one of the color
+     * @param width the width of the lines, in pixels
+     */
+    WuRasterizer(int[] data, int offset, int scanlineStride, Rectangle clip, int argb, double alpha, double width) {
+        this.data = data;
+        this.offset = offset;
+        this.scanlineStride = scanlineStride;
+        this.clipX0 = clip.x;
+        this.clipY0 = clip.y;
+        this.clipX1 = clip.x + clip.width;
+        this.clipY1 = clip.y + clip.height;
+        this.red = (argb >> 16) & 0xff;
+        this.green = (argb >> 8) & 0xff;
+        this.blue = argb & 0xff;
+        this.alpha = alpha * ((argb >>> 24) / 255.0);
+        this.width = width;
+    }
+
+    /**
+     * Draws a polyline through the given points, in device coordinates.
+     * Points with a NaN coordinate break the line.
+     */
+    void drawPolyline(double[] xPoints, double[] yPoints, int nPoints) {
+        for (int i = 1; i < nPoints; i++) {
+            double x0 = xPoints[i - 1];
+            double y0 = yPoints[i - 1];
+            double x1 = xPoints[i];
+            double y1 = yPoints[i];
+            if (Double.isNaN(x0) || Double.isNaN(y0) || Double.isNaN(x1) || Double.isNaN(y1)) {
+                continue;
+            }
+            drawLine(x0, y0, x1, y1);
+        }
+    }
+
+    /**
+     * Draws the segment from (x0, y0) to (x1, y1). The pixels whose centers
+     * lie on the major axis in [start, end) are covered, so consecutive
+     * segments of a polyline do not blend their common end point twice.
+     */
+    void drawLine(double x0, double y0, double x1, double y1) {
+        double halfWidth = width / 2;
+        double margin = halfWidth + 1;
+        if (Math.max(x0, x1) + margin < clipX0 || Math.min(x0, x1) - margin >= clipX1
+                || Math.max(y0, y1) + margin < clipY0 || Math.min(y0, y1) - margin >= clipY1) {
+            return;
+        }
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        if (Math.abs(dx) >= Math.abs(dy)) {
+            if (dx == 0) {
+                return;
+            }
+            double slope = dy / dx;
+            double extent = halfWidth * Math.sqrt(1 + slope * slope);
+            int start = (int) Math.ceil(Math.min(x0, x1) - 0.5);
+            int end = (int) Math.ceil(Math.max(x0, x1) - 0.5);
+            start = Math.max(start, clipX0);
+            end = Math.min(end, clipX1);
+            for (int x = start; x < end; x++) {
+                double center = y0 + slope * (x + 0.5 - x0);
+                span(x, center - extent, center + extent, true);
+            }
+        } else {
+            double slope = dx / dy;
+            double extent = halfWidth * Math.sqrt(1 + slope * slope);
+            int start = (int) Math.ceil(Math.min(y0, y1) - 0.5);
+            int end = (int) Math.ceil(Math.max(y0, y1) - 0.5);
+            start = Math.max(start, clipY0);
+            end = Math.min(end, clipY1);
+            for (int y = start; y < end; y++) {
+                double center = x0 + slope * (y + 0.5 - y0);
+                span(y, center - extent, center + extent, false);
+            }
+        }
+    }
+
+    /**
+     * Covers the pixels of column (or row) <code>major</code> between
+     * <code>low</code> and <code>high</code> on the minor axis.
+     */
+    private void span(int major, double low, double high, boolean xMajor) {
+        int min = xMajor ? clipY0 : clipX0;
+        int max = xMajor ? clipY1 : clipX1;
+        int first = Math.max((int) Math.floor(low), min);
+        int last = Math.min((int) Math.floor(high), max - 1);
+        for (int minor = first; minor <= last; minor++) {
+            double coverage = Math.min(high, minor + 1) - Math.max(low, minor);
+            if (coverage > 0) {
+                if (xMajor) {
+                    blend(offset + minor * scanlineStride + major, coverage);
+                } else {
+                    blend(offset + major * scanlineStride + minor, coverage);
+                }
+            }
+        }
+    }
+
+    private void blend(int index, double coverage) {
+        double a = alpha * Math.min(coverage, 1);
+        int sa = (int) (a * 255 + 0.5);
+        if (sa == 0) {
+            return;
+        }
+        int dst = data[index];
+        int da = dst >>> 24;
+        if (da == 0 || sa == 255) {
+            data[index] = (sa << 24) | (red << 16) | (green << 8) | blue;
+            return;
+        }
+        // Non-premultiplied SrcOver, in 0..255 fixed point:
+        int dw = da * (255 - sa) / 255;
+        int oa = sa + dw;
+        int r = (red * sa + ((dst >> 16) & 0xff) * dw) / oa;
+        int g = (green * sa + ((dst >> 8) & 0xff) * dw) / oa;
+        int b = (blue * sa + (dst & 0xff) * dw) / oa;
+        data[index] = (oa << 24) | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart;
+
+import com.gmigdos.jawesomechart.core.DataSeriesList;
+import com.gmigdos.jawesomechart.core.Labels;
+import com.gmigdos.jawesomechart.renderers.twodimensional.horizontal.ColumnChartRenderer;
+import com.gmigdos.jawesomechart.util.Context2D;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the incremental redraw of {@link JAwesomeChart}.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class JAwesomeChartTest {
+
+    @Test
+    public void testDirtyRegionRecordingIsReused() {
+        CountingRenderer renderer = new CountingRenderer();
+        JAwesomeChart chart = createChart(renderer);
+        BufferedImage image = new BufferedImage(200, 150, BufferedImage.TYPE_INT_ARGB);
+        draw(chart, image);
+
+        // A new title cannot be located from changed values, so the chart is
+        // recorded once, by getDirtyRegion():
+        chart.setTitle("Other");
+        renderer.drawCount = 0;
+        assertEquals(new Rectangle(0, 0, 200, 150), chart.getDirtyRegion());
+        draw(chart, image);
+        assertEquals(1, renderer.drawCount);
+
+        // Unless the chart changes in between:
+        chart.setTitle("Third");
+        renderer.drawCount = 0;
+        chart.getDirtyRegion();
+        chart.setTitle("Fourth");
+        draw(chart, image);
+        assertEquals(2, renderer.drawCount);
+
+        JAwesomeChart expected = createChart(new ColumnChartRenderer());
+        expected.setIncrementalRedraw(false);
+        expected.setTitle("Fourth");
+        BufferedImage expectedImage = new BufferedImage(200, 150, BufferedImage.TYPE_INT_ARGB);
+        expected.draw(expectedImage);
+        assertImagesEqual(expectedImage, image);
+    }
+
+    private static void draw(JAwesomeChart chart, BufferedImage image) {
+        Graphics2D g2d = image.createGraphics();
+        chart.draw(g2d);
+        g2d.dispose();
+    }
+
+    private static void assertImagesEqual(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("Pixel " + x + ", " + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    private static JAwesomeChart createChart(ColumnChartRenderer renderer) {
+        JAwesomeChart chart = new JAwesomeChart(200, 150);
+        chart.setRenderer(renderer);
+        chart.setIncrementalRedraw(true);
+        chart.setTitle("Title");
+        chart.addSeries("A", new double[]{1, 3, 2});
+        return chart;
+    }
+
+    private static class CountingRenderer extends ColumnChartRenderer {
+
+        int drawCount;
+
+        @Override
+        public void draw(Context2D context, DataSeriesList series, Labels labels) {
+            drawCount++;
+            super.draw(context, series, labels);
+        }
+    }
+}
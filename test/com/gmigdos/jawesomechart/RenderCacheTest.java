@@ -0,0 +1,242 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart;
+
+import com.gmigdos.jawesomechart.core.DataSeriesList;
+import com.gmigdos.jawesomechart.core.Labels;
+import com.gmigdos.jawesomechart.io.ImageFormat;
+import com.gmigdos.jawesomechart.renderers.twodimensional.horizontal.ColumnChartRenderer;
+import com.gmigdos.jawesomechart.util.Context2D;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the eviction and the accounting of {@link RenderCache}, and the
+ * rendering of charts requested by several threads at once.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class RenderCacheTest {
+
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    public void testWaitingForARenderHoldsNoPermit() throws Exception {
+        final RenderCache cache = new RenderCache(16 * 1024 * 1024);
+        final Semaphore permits = new Semaphore(2);
+        final BlockingRenderer renderer = new BlockingRenderer();
+        final JAwesomeChart[] charts = {createChart(renderer), createChart(renderer)};
+        final byte[][] results = new byte[2][];
+        final Exception[] failures = new Exception[2];
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        results[index] = cache.renderAfterMiss(charts[index], ImageFormat.PNG, null, permits, TIMEOUT);
+                    } catch (Exception ex) {
+                        failures[index] = ex;
+                    }
+                }
+            };
+            threads[i].setDaemon(true);
+        }
+
+        try {
+            threads[0].start();
+            assertTrue(renderer.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            threads[1].start();
+            // The second request waits for the first one to render the chart:
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (threads[1].getState() != Thread.State.WAITING) {
+                assertTrue("The second request does not wait", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            assertEquals(1, permits.availablePermits());
+
+            // An unrelated chart is rendered with the permit left:
+            JAwesomeChart other = createChart(new ColumnChartRenderer());
+            other.setTitle("Other");
+            assertNotNull(cache.renderAfterMiss(other, ImageFormat.PNG, null, permits, 0));
+        } finally {
+            renderer.proceed.countDown();
+        }
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT);
+        }
+        assertNull(failures[0]);
+        assertNull(failures[1]);
+        assertSame(results[0], results[1]);
+        assertEquals(1, renderer.drawCount);
+        assertEquals(2, permits.availablePermits());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRenderWithoutPermit() throws IOException {
+        RenderCache cache = new RenderCache(16 * 1024 * 1024);
+        cache.renderAfterMiss(createChart(new ColumnChartRenderer()), ImageFormat.PNG, null, new Semaphore(0), 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        RenderCache cache = new RenderCache(300, RenderCache.EvictionPolicy.LRU);
+        JAwesomeChart[] charts = createCharts(4);
+        for (int i = 0; i < 3; i++) {
+            cache.put(charts[i], ImageFormat.PNG, null, new byte[100]);
+        }
+        assertNotNull(cache.get(charts[0], ImageFormat.PNG, null));
+        // Does not count as a use:
+        assertTrue(cache.contains(charts[1], ImageFormat.PNG, null));
+
+        cache.put(charts[3], ImageFormat.PNG, null, new byte[100]);
+        assertTrue(cache.contains(charts[0], ImageFormat.PNG, null));
+        assertFalse(cache.contains(charts[1], ImageFormat.PNG, null));
+        assertTrue(cache.contains(charts[2], ImageFormat.PNG, null));
+        assertTrue(cache.contains(charts[3], ImageFormat.PNG, null));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, cache.getEntryCount());
+        assertEquals(300, cache.getSize());
+    }
+
+    @Test
+    public void testLeastFrequentlyUsedEviction() {
+        RenderCache cache = new RenderCache(300, RenderCache.EvictionPolicy.LFU);
+        JAwesomeChart[] charts = createCharts(5);
+        for (int i = 0; i < 3; i++) {
+            cache.put(charts[i], ImageFormat.PNG, null, new byte[100]);
+        }
+        cache.get(charts[0], ImageFormat.PNG, null);
+        cache.get(charts[0], ImageFormat.PNG, null);
+        cache.get(charts[2], ImageFormat.PNG, null);
+
+        cache.put(charts[3], ImageFormat.PNG, null, new byte[100]);
+        assertFalse(cache.contains(charts[1], ImageFormat.PNG, null));
+
+        // The least recently added of the least used images goes first, but
+        // never the one being added:
+        cache.put(charts[4], ImageFormat.PNG, null, new byte[100]);
+        assertTrue(cache.contains(charts[0], ImageFormat.PNG, null));
+        assertTrue(cache.contains(charts[2], ImageFormat.PNG, null));
+        assertFalse(cache.contains(charts[3], ImageFormat.PNG, null));
+        assertTrue(cache.contains(charts[4], ImageFormat.PNG, null));
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(300, cache.getSize());
+    }
+
+    @Test
+    public void testByteAccounting() {
+        RenderCache cache = new RenderCache(300);
+        JAwesomeChart[] charts = createCharts(4);
+        cache.put(charts[0], ImageFormat.PNG, null, new byte[100]);
+        cache.put(charts[1], ImageFormat.PNG, null, new byte[50]);
+        assertEquals(150, cache.getSize());
+
+        // Replacing an image counts its new size only:
+        cache.put(charts[1], ImageFormat.PNG, null, new byte[80]);
+        assertEquals(180, cache.getSize());
+        assertEquals(2, cache.getEntryCount());
+
+        // Images larger than the cache are not added:
+        cache.put(charts[2], ImageFormat.PNG, null, new byte[301]);
+        assertFalse(cache.contains(charts[2], ImageFormat.PNG, null));
+        assertEquals(180, cache.getSize());
+
+        // As many images as needed are evicted to make room:
+        cache.put(charts[3], ImageFormat.PNG, null, new byte[250]);
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(250, cache.getSize());
+        assertEquals(2, cache.getEvictionCount());
+
+        // Each format has its own entry:
+        cache.put(charts[3], ImageFormat.SVG, null, new byte[50]);
+        assertEquals(300, cache.getSize());
+        assertEquals(2, cache.getEntryCount());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testStatistics() throws IOException {
+        RenderCache cache = new RenderCache(16 * 1024 * 1024);
+        JAwesomeChart chart = createChart(new ColumnChartRenderer());
+        assertNull(cache.get(chart, ImageFormat.PNG, null));
+        byte[] data = cache.render(chart, ImageFormat.PNG, null);
+        assertSame(data, cache.render(chart, ImageFormat.PNG, null));
+        assertSame(data, cache.get(chart, ImageFormat.PNG, null));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio(), 0);
+        assertEquals(data.length, cache.getSize());
+    }
+
+    /**
+     * Returns charts with different fingerprints.
+     */
+    private static JAwesomeChart[] createCharts(int count) {
+        JAwesomeChart[] charts = new JAwesomeChart[count];
+        for (int i = 0; i < count; i++) {
+            charts[i] = createChart(new ColumnChartRenderer());
+            charts[i].setTitle("Chart " + i);
+        }
+        return charts;
+    }
+
+    private static JAwesomeChart createChart(ColumnChartRenderer renderer) {
+        JAwesomeChart chart = new JAwesomeChart(200, 150);
+        chart.setRenderer(renderer);
+        chart.addSeries("A", new double[]{1, 3, 2});
+        return chart;
+    }
+
+    /**
+     * Blocks the first draw until {@link #proceed} is counted down.
+     */
+    private static class BlockingRenderer extends ColumnChartRenderer {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        volatile int drawCount;
+
+        @Override
+        public void draw(Context2D context, DataSeriesList series, Labels labels) {
+            drawCount++;
+            started.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            super.draw(context, series, labels);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.core;
+
+import com.gmigdos.jawesomechart.util.Context2D;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the pages of a paged {@link Legend}.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class LegendTest {
+
+    private static final double MAX_HEIGHT = 200;
+
+    @Test
+    public void testUnpagedLegendShowsAllEntries() {
+        Legend legend = createLegend(Legend.LegendPosition.LEGEND_POSITION_RIGHT, 100);
+        layOut(legend);
+        assertEquals(100, legend.getVisibleEntryCount());
+        assertFalse(legend.hasNextPage());
+        assertFalse(legend.hasPreviousPage());
+    }
+
+    @Test
+    public void testPagesOnTheRightCoverAllEntries() {
+        assertPagesCoverAllEntries(Legend.LegendPosition.LEGEND_POSITION_RIGHT, 100);
+    }
+
+    @Test
+    public void testPagesAtTheBottomCoverAllEntries() {
+        assertPagesCoverAllEntries(Legend.LegendPosition.LEGEND_POSITION_BOTTOM, 1000);
+    }
+
+    @Test
+    public void testFewEntriesFitInOnePage() {
+        Legend legend = createLegend(Legend.LegendPosition.LEGEND_POSITION_RIGHT, 3);
+        legend.setPagingOn(true);
+        layOut(legend);
+        assertEquals(3, legend.getVisibleEntryCount());
+        assertFalse(legend.hasNextPage());
+        legend.nextPage();
+        assertEquals(0, legend.getFirstVisibleEntry());
+    }
+
+    @Test
+    public void testPreviousPage() {
+        Legend legend = createLegend(Legend.LegendPosition.LEGEND_POSITION_RIGHT, 100);
+        legend.setPagingOn(true);
+        layOut(legend);
+        legend.previousPage();
+        assertEquals(0, legend.getFirstVisibleEntry());
+
+        int pageSize = legend.getVisibleEntryCount();
+        legend.nextPage();
+        layOut(legend);
+        assertTrue(legend.hasPreviousPage());
+        legend.previousPage();
+        layOut(legend);
+        assertEquals(0, legend.getFirstVisibleEntry());
+        assertEquals(pageSize, legend.getVisibleEntryCount());
+        assertFalse(legend.hasPreviousPage());
+    }
+
+    @Test
+    public void testFirstVisibleEntryIsLimitedToTheSeries() {
+        Legend legend = createLegend(Legend.LegendPosition.LEGEND_POSITION_RIGHT, 100);
+        legend.setPagingOn(true);
+        legend.setFirstVisibleEntry(150);
+        layOut(legend);
+        assertEquals(99, legend.getFirstVisibleEntry());
+        assertEquals(1, legend.getVisibleEntryCount());
+        assertFalse(legend.hasNextPage());
+
+        legend.scrollBy(-10);
+        layOut(legend);
+        assertEquals(89, legend.getFirstVisibleEntry());
+        legend.scrollBy(1000);
+        assertEquals(99, legend.getFirstVisibleEntry());
+    }
+
+    /**
+     * Pages through the legend from the first entry and checks that the
+     * pages follow each other, fit in the height of the legend and end with
+     * the last entry.
+     */
+    private static void assertPagesCoverAllEntries(Legend.LegendPosition position, int seriesCount) {
+        Legend legend = createLegend(position, seriesCount);
+        legend.setPagingOn(true);
+        layOut(legend);
+        assertFalse(legend.hasPreviousPage());
+        int expectedFirst = 0;
+        int pages = 0;
+        while (true) {
+            assertEquals(expectedFirst, legend.getFirstVisibleEntry());
+            assertTrue(legend.getVisibleEntryCount() > 0);
+            assertTrue(legend.getHeight() <= MAX_HEIGHT);
+            expectedFirst += legend.getVisibleEntryCount();
+            pages++;
+            if (!legend.hasNextPage()) {
+                break;
+            }
+            legend.nextPage();
+            layOut(legend);
+            assertTrue(legend.hasPreviousPage());
+        }
+        assertEquals(seriesCount, expectedFirst);
+        assertTrue(pages > 1);
+    }
+
+    private static Legend createLegend(Legend.LegendPosition position, int seriesCount) {
+        DataSeriesList series = new DataSeriesList();
+        for (int i = 0; i < seriesCount; i++) {
+            series.add(new DataSeries("Series " + i + (i % 7 == 0 ? " with a longer name" : ""), null));
+        }
+        return new Legend(position, 150, 600, series);
+    }
+
+    /**
+     * Lays the legend out again, as drawing the chart does.
+     */
+    private static void layOut(Legend legend) {
+        legend.setContext(new Context2D(new BufferedImage(600, 400, BufferedImage.TYPE_INT_ARGB), 600, 400), MAX_HEIGHT);
+    }
+}
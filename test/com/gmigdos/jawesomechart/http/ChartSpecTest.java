@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.http;
+
+import com.gmigdos.jawesomechart.JAwesomeChart;
+import com.gmigdos.jawesomechart.exceptions.IllegalValueException;
+import com.gmigdos.jawesomechart.io.ImageFormat;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the parameters {@link ChartSpec} accepts and the ones it rejects.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class ChartSpecTest {
+
+    @Test
+    public void testValidSpec() throws IllegalValueException {
+        ChartSpec spec = ChartSpec.parse("type=line&width=300&height=200&title=Sales+2012&labels=Q1,Q2,Q3"
+                + "&series=A|1,2,3|%23FF2400&series=B|4,5,6&format=svg&colors=16");
+        assertEquals(ImageFormat.SVG, spec.getFormat(ImageFormat.PNG));
+        assertEquals(16, spec.getOptions().getMaxColors());
+        assertEquals("Sales 2012", spec.getParameter("title"));
+        assertEquals(2, spec.getParameters("series").size());
+        JAwesomeChart chart = spec.createChart();
+        assertEquals(300, chart.getWidth());
+        assertEquals(200, chart.getHeight());
+    }
+
+    @Test
+    public void testDefaults() throws IllegalValueException {
+        ChartSpec spec = ChartSpec.parse(null);
+        assertEquals(ImageFormat.PNG, spec.getFormat(ImageFormat.PNG));
+        assertEquals(0, spec.getOptions().getMaxColors());
+        assertNotNull(spec.createChart());
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testMalformedEncoding() throws IllegalValueException {
+        ChartSpec.parse("title=%zz");
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testUnknownFormat() throws IllegalValueException {
+        ChartSpec.parse("format=gif").getFormat(ImageFormat.PNG);
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testUnknownType() throws IllegalValueException {
+        ChartSpec.parse("type=radar").createChart();
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testZeroWidth() throws IllegalValueException {
+        ChartSpec.parse("width=0").createChart();
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testHeightAboveMaximum() throws IllegalValueException {
+        ChartSpec.parse("height=" + (ChartSpec.MAX_SIZE + 1)).createChart();
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testNonNumericWidth() throws IllegalValueException {
+        ChartSpec.parse("width=wide").createChart();
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testTooManyColors() throws IllegalValueException {
+        ChartSpec.parse("colors=257").getOptions();
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testSeriesWithoutValues() throws IllegalValueException {
+        ChartSpec.parse("series=A").createChart();
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testSeriesWithTooManyFields() throws IllegalValueException {
+        ChartSpec.parse("series=A|1|%23FFFFFF|x").createChart();
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testInvalidValue() throws IllegalValueException {
+        ChartSpec.parse("series=A|1,x,3").createChart();
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testInvalidColor() throws IllegalValueException {
+        ChartSpec.parse("series=A|1,2|red").createChart();
+    }
+
+    @Test(expected = IllegalValueException.class)
+    public void testTooManyValues() throws IllegalValueException {
+        // Each series is within the limit, but not their total:
+        StringBuilder values = new StringBuilder("0");
+        for (int i = 1; i < ChartSpec.MAX_VALUES / 2 + 1; i++) {
+            values.append(",0");
+        }
+        ChartSpec.parse("series=A|" + values + "&series=B|" + values).createChart();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.io;
+
+import com.gmigdos.jawesomechart.io.PngEncoder.FilterStrategy;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Encodes images with {@link PngEncoder} and checks that ImageIO decodes
+ * them back to the same pixels.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class PngEncoderTest {
+
+    // Large enough for the filtered scanlines to span several blocks, so
+    // that they are compressed in parallel with more than one thread:
+    private static final int WIDTH = 1040;
+    private static final int HEIGHT = 320;
+
+    @Test
+    public void testRoundTripOnOneThread() throws IOException {
+        BufferedImage image = createImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (FilterStrategy filterStrategy : FilterStrategy.values()) {
+            assertRoundTrip(image, null, filterStrategy, 1);
+        }
+    }
+
+    @Test
+    public void testRoundTripOnSeveralThreads() throws IOException {
+        BufferedImage image = createImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (FilterStrategy filterStrategy : FilterStrategy.values()) {
+            assertRoundTrip(image, null, filterStrategy, 4);
+        }
+    }
+
+    @Test
+    public void testRoundTripOfOtherImageTypes() throws IOException {
+        BufferedImage image = createImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        assertRoundTrip(image, null, FilterStrategy.UP, 1);
+        assertRoundTrip(image, null, FilterStrategy.ADAPTIVE, 4);
+    }
+
+    @Test
+    public void testRoundTripOfSmallImages() throws IOException {
+        for (FilterStrategy filterStrategy : FilterStrategy.values()) {
+            assertRoundTrip(createImage(1, 1, BufferedImage.TYPE_INT_ARGB), null, filterStrategy, 4);
+            assertRoundTrip(createImage(3, 2, BufferedImage.TYPE_INT_ARGB), null, filterStrategy, 4);
+        }
+    }
+
+    @Test
+    public void testIndexedRoundTrip() throws IOException {
+        BufferedImage image = createImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Palette palette = Palette.quantize(image, Palette.MAX_COLORS);
+        BufferedImage indexed = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                indexed.setRGB(x, y, palette.getColor(palette.findClosest(image.getRGB(x, y))));
+            }
+        }
+        for (FilterStrategy filterStrategy : FilterStrategy.values()) {
+            assertRoundTrip(indexed, palette, filterStrategy, 1);
+            assertRoundTrip(indexed, palette, filterStrategy, 4);
+        }
+    }
+
+    @Test
+    public void testEncodeIndexed() throws IOException {
+        BufferedImage image = createImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Palette palette = Palette.quantize(image, Palette.MAX_COLORS);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngEncoder.encodeIndexed(image, out);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int expected = palette.getColor(palette.findClosest(image.getRGB(x, y)));
+                assertEquals("Pixel (" + x + ", " + y + ")", expected, decoded.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteAfterClose() throws IOException {
+        PngEncoder encoder = new PngEncoder(new ByteArrayOutputStream(), 2, 2);
+        encoder.close();
+        encoder.writeRows(new int[4], 0, 2, 2);
+    }
+
+    private static void assertRoundTrip(BufferedImage image, Palette palette, FilterStrategy filterStrategy, int threadCount) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngEncoder encoder = new PngEncoder(out, image.getWidth(), image.getHeight(), palette);
+        encoder.setFilterStrategy(filterStrategy);
+        encoder.setThreadCount(threadCount);
+        try {
+            encoder.writeImage(image);
+            encoder.finish();
+        } finally {
+            encoder.close();
+        }
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        String message = filterStrategy + " on " + threadCount + " thread(s)";
+        assertNotNull(message, decoded);
+        assertEquals(message, image.getWidth(), decoded.getWidth());
+        assertEquals(message, image.getHeight(), decoded.getHeight());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(message + ", pixel (" + x + ", " + y + ")", image.getRGB(x, y), decoded.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Creates an image with the flat areas and gradients of a chart, partly
+     * translucent, and some noise.
+     */
+    private static BufferedImage createImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(width * 31 + height);
+        Graphics2D g = image.createGraphics();
+        for (int y = 0; y < height; y++) {
+            g.setColor(new Color(255 * y / height, 128, 255 - 255 * y / height));
+            g.drawLine(0, y, width, y);
+        }
+        for (int i = 0; i < 20; i++) {
+            g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            g.fillRect(random.nextInt(width), random.nextInt(height), random.nextInt(width / 2 + 1), random.nextInt(height / 2 + 1));
+        }
+        g.dispose();
+        for (int i = 0; i < width * height / 50; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt());
+        }
+        return image;
+    }
+}
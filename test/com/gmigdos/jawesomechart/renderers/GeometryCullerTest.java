@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.renderers;
+
+import com.gmigdos.jawesomechart.util.Context2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the culling and collapsing of {@link GeometryCuller} on a 100 by
+ * 100 pixel context.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class GeometryCullerTest {
+
+    @Test
+    public void testRunInOnePixelColumnIsCollapsed() {
+        Context2D context = createContext();
+        GeometryCuller culler = new GeometryCuller();
+        culler.begin(context);
+        int n = 1000;
+        double[] x = new double[n + 1];
+        double[] y = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            x[i] = 10 + i / (double) n;
+            y[i] = 50 + (i % 7);
+        }
+        y[0] = 50;
+        y[300] = 20;
+        y[700] = 80;
+        y[n - 1] = 55;
+        x[n] = 20;
+        y[n] = 40;
+
+        Path2D path = new Path2D.Double();
+        culler.appendPolyline(path, x, y, n + 1, 0);
+
+        // The first, lowest, highest and last vertices of the column, in
+        // their order along the line, then the next column:
+        assertEquals("M10.0,50.0 L10.3,20.0 L10.7,80.0 L10.999,55.0 L20.0,40.0", describe(path));
+        assertEquals(5, culler.getVisibleCount());
+        assertEquals(n - 4, culler.getCollapsedCount());
+        assertEquals(0, culler.getCulledCount());
+    }
+
+    @Test
+    public void testColumnsFollowTheTransform() {
+        Context2D context = createContext();
+        // Ten units of user space per pixel:
+        context.scale(0.1, 1);
+        GeometryCuller culler = new GeometryCuller();
+        culler.begin(context);
+        double[] x = {0, 2, 4, 6, 9, 10, 12};
+        double[] y = {5, 1, 9, 3, 4, 5, 6};
+
+        Path2D path = new Path2D.Double();
+        culler.appendPolyline(path, x, y, x.length, 0);
+
+        assertEquals("M0.0,5.0 L2.0,1.0 L4.0,9.0 L9.0,4.0 L10.0,5.0 L12.0,6.0", describe(path));
+        assertEquals(1, culler.getCollapsedCount());
+    }
+
+    @Test
+    public void testSegmentsOutsideAreCulled() {
+        Context2D context = createContext();
+        GeometryCuller culler = new GeometryCuller();
+        culler.begin(context);
+        double[] x = {10, 20, 150, 160, 170, 30};
+        double[] y = {10, 10, 10, 10, 10, 20};
+
+        Path2D path = new Path2D.Double();
+        culler.appendPolyline(path, x, y, x.length, 0);
+
+        // The segments 150-160 and 160-170 are outside: the line lifts the
+        // pen at 150 and resumes at 170, dropping 160:
+        assertEquals("M10.0,10.0 L20.0,10.0 L150.0,10.0 M170.0,10.0 L30.0,20.0", describe(path));
+        assertEquals(5, culler.getVisibleCount());
+        assertEquals(3, culler.getCulledCount());
+    }
+
+    @Test
+    public void testPaddingKeepsSegmentsNearTheEdge() {
+        Context2D context = createContext();
+        GeometryCuller culler = new GeometryCuller();
+        culler.begin(context);
+        double[] x = {10, 20, 30};
+        double[] y = {-5, -5, -5};
+
+        // Only a move is left, which draws nothing:
+        Path2D culled = new Path2D.Double();
+        culler.appendPolyline(culled, x, y, x.length, 0);
+        assertFalse(describe(culled).contains("L"));
+        assertTrue(culler.getCulledCount() > 0);
+
+        Path2D kept = new Path2D.Double();
+        culler.appendPolyline(kept, x, y, x.length, 5);
+        assertEquals("M10.0,-5.0 L20.0,-5.0 L30.0,-5.0", describe(kept));
+    }
+
+    @Test
+    public void testNaNBreaksTheLine() {
+        Context2D context = createContext();
+        GeometryCuller culler = new GeometryCuller();
+        culler.begin(context);
+        double[] x = {10, 15, Double.NaN, 20, 30};
+        double[] y = {10, 15, Double.NaN, 20, 30};
+
+        Path2D path = new Path2D.Double();
+        culler.appendPolyline(path, x, y, x.length, 0);
+
+        assertEquals("M10.0,10.0 L15.0,15.0 M20.0,20.0 L30.0,30.0", describe(path));
+    }
+
+    @Test
+    public void testClassify() {
+        Context2D context = createContext();
+        GeometryCuller culler = new GeometryCuller();
+        culler.begin(context);
+        assertEquals(GeometryCuller.VISIBLE, culler.classify(new Rectangle2D.Double(10, 10, 20, 20), 0));
+        assertEquals(GeometryCuller.OUTSIDE, culler.classify(new Rectangle2D.Double(120, 10, 20, 20), 0));
+        assertEquals(GeometryCuller.VISIBLE, culler.classify(new Rectangle2D.Double(102, 10, 20, 20), 5));
+        assertEquals(GeometryCuller.SUB_PIXEL, culler.classify(new Rectangle2D.Double(10, 10, 0.5, 20), 0));
+        assertEquals(GeometryCuller.OUTSIDE, culler.classify(new Rectangle2D.Double(10, 10, 20, 20), 0, new Rectangle2D.Double(50, 50, 10, 10)));
+        assertEquals(2, culler.getVisibleCount());
+        assertTrue(culler.getCulledCount() > 0);
+        assertEquals(1, culler.getCollapsedCount());
+
+        culler.reset();
+        assertEquals(0, culler.getVisibleCount() + culler.getCulledCount() + culler.getCollapsedCount());
+    }
+
+    private static Context2D createContext() {
+        return new Context2D(new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB), 100, 100);
+    }
+
+    /**
+     * Returns the segments of <code>path</code> as "M" for moves and "L" for
+     * lines, followed by their end points.
+     */
+    private static String describe(Path2D path) {
+        List<String> segments = new ArrayList<String>();
+        double[] coords = new double[6];
+        for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+            String type = it.currentSegment(coords) == PathIterator.SEG_MOVETO ? "M" : "L";
+            segments.add(type + coords[0] + "," + coords[1]);
+        }
+        StringBuilder description = new StringBuilder();
+        for (String segment : segments) {
+            if (description.length() > 0) {
+                description.append(' ');
+            }
+            description.append(segment);
+        }
+        return description.toString();
+    }
+}
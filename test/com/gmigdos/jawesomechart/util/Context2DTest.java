@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the deprecated state methods of {@link Context2D} still hand
+ * out the graphics they draw with.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class Context2DTest {
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedStateMethodsReturnTheGraphics() {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        Context2D context = new Context2D(g2d, 10, 10);
+        Graphics2D saved = context.save();
+        assertNotNull(saved);
+        context.setPaint(Color.RED);
+        assertSame(saved, context.restore());
+        assertSame(saved, context.reset());
+        g2d.dispose();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedStateMethodsWithoutGraphics() {
+        Context2D context = new Context2D(new RasterSurface(10, 10), 10, 10);
+        assertNull(context.save());
+        assertNull(context.restore());
+        assertNull(context.reset());
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2012 Georgios Migdos <cyberpython@gmail.com>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.gmigdos.jawesomechart.util;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link FingerprintBuilder}, which hashes whole longs at a time
+ * where it can, computes the MurmurHash3 of the byte sequence of its values,
+ * as a plain byte-by-byte implementation does.
+ *
+ * @author Georgios Migdos <cyberpython@gmail.com>
+ */
+public class FingerprintBuilderTest {
+
+    // The tags FingerprintBuilder writes before the values:
+    private static final int TAG_BOOLEAN = 1;
+    private static final int TAG_INT = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_STRING = 5;
+    private static final int TAG_COLOR = 6;
+
+    @Test
+    public void testReferenceHash() {
+        assertEquals(new Fingerprint(0, 0), murmurHash3(new byte[0]));
+        assertEquals(new Fingerprint(0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L), murmurHash3(new byte[]{'h', 'e', 'l', 'l', 'o'}));
+    }
+
+    @Test
+    public void testLongsAtEveryOffset() throws IOException {
+        // Booleans take 2 bytes and ints 5, so the longs start at every
+        // offset within the 16-byte blocks:
+        for (int booleans = 0; booleans < 8; booleans++) {
+            for (int ints = 0; ints < 2; ints++) {
+                FingerprintBuilder builder = new FingerprintBuilder();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream data = new DataOutputStream(bytes);
+                for (int i = 0; i < booleans; i++) {
+                    builder.add(true);
+                    data.writeByte(TAG_BOOLEAN);
+                    data.writeByte(1);
+                }
+                for (int i = 0; i < ints; i++) {
+                    builder.add(-7);
+                    data.writeByte(TAG_INT);
+                    data.writeInt(-7);
+                }
+                for (int i = 0; i < 3; i++) {
+                    builder.add(0x0123456789abcdefL * (i + 1));
+                    data.writeByte(TAG_LONG);
+                    data.writeLong(0x0123456789abcdefL * (i + 1));
+                }
+                assertEquals("After " + bytes.size() + " bytes", murmurHash3(bytes.toByteArray()), builder.build());
+            }
+        }
+    }
+
+    @Test
+    public void testRandomSequences() throws IOException {
+        Random random = new Random(1);
+        for (int sequence = 0; sequence < 200; sequence++) {
+            FingerprintBuilder builder = new FingerprintBuilder();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            int count = random.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                switch (random.nextInt(6)) {
+                    case 0:
+                        boolean b = random.nextBoolean();
+                        builder.add(b);
+                        data.writeByte(TAG_BOOLEAN);
+                        data.writeByte(b ? 1 : 0);
+                        break;
+                    case 1:
+                        int n = random.nextInt();
+                        builder.add(n);
+                        data.writeByte(TAG_INT);
+                        data.writeInt(n);
+                        break;
+                    case 2:
+                        long l = random.nextLong();
+                        builder.add(l);
+                        data.writeByte(TAG_LONG);
+                        data.writeLong(l);
+                        break;
+                    case 3:
+                        double d = random.nextGaussian();
+                        builder.add(d);
+                        data.writeByte(TAG_DOUBLE);
+                        data.writeLong(Double.doubleToLongBits(d));
+                        break;
+                    case 4:
+                        String s = Long.toString(random.nextLong(), 36).substring(0, random.nextInt(5));
+                        builder.add(s);
+                        data.writeByte(TAG_STRING);
+                        data.writeInt(s.length());
+                        data.writeChars(s);
+                        break;
+                    default:
+                        Color c = new Color(random.nextInt(), true);
+                        builder.add(c);
+                        data.writeByte(TAG_COLOR);
+                        data.writeInt(c.getRGB());
+                        break;
+                }
+            }
+            assertEquals("Sequence " + sequence, murmurHash3(bytes.toByteArray()), builder.build());
+        }
+    }
+
+    @Test
+    public void testValuesDoNotRunTogether() {
+        FingerprintBuilder ab = new FingerprintBuilder();
+        ab.add("ab");
+        FingerprintBuilder aAndB = new FingerprintBuilder();
+        aAndB.add("a");
+        aAndB.add("b");
+        assertFalse(ab.build().equals(aAndB.build()));
+    }
+
+    @Test
+    public void testUnknownValuesMakeTheFingerprintUnstable() {
+        FingerprintBuilder builder = new FingerprintBuilder();
+        builder.add(1);
+        builder.addObject(new Object());
+        assertFalse(builder.isStable());
+        assertNull(builder.build());
+    }
+
+    /**
+     * The 128-bit MurmurHash3 for 64-bit platforms, with a seed of 0,
+     * computed one byte at a time.
+     */
+    private static Fingerprint murmurHash3(byte[] data) {
+        long c1 = 0x87c37b91114253d5L;
+        long c2 = 0x4cf5ad432745937fL;
+        long h1 = 0;
+        long h2 = 0;
+        int blocks = data.length / 16;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLittleEndianLong(data, i * 16, 8);
+            long k2 = getLittleEndianLong(data, i * 16 + 8, 8);
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int tail = blocks * 16;
+        int remaining = data.length - tail;
+        if (remaining > 8) {
+            long k2 = getLittleEndianLong(data, tail + 8, remaining - 8);
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+        }
+        if (remaining > 0) {
+            long k1 = getLittleEndianLong(data, tail, Math.min(remaining, 8));
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+        h1 ^= data.length;
+        h2 ^= data.length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new Fingerprint(h1, h2);
+    }
+
+    private static long getLittleEndianLong(byte[] data, int offset, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value |= (data[offset + i] & 0xffL) << (8 * i);
+        }
+        return value;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}